@@ -0,0 +1,317 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.ByteArrayPool;
+import com.zero.support.net.internal.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffers response bodies so that they can be read more than once, for example parsed and then
+ * archived. Bodies up to a threshold are kept in memory; larger ones, and any that would take the
+ * memory held by all bodies buffered here past its limit, are spilled to a temporary file and read
+ * back through a memory-mapped view.
+ *
+ * <p>A client's buffer is shared with the clients built from it by {@link
+ * HttpClient#newBuilder()}, so the memory limit is client-wide:
+ *
+ * <pre>   {@code
+ *
+ *   Response response = client.newCall(request).execute();
+ *   ResponseBody body = client.bodyBuffer().buffer(response.body());
+ *   try {
+ *     parse(body.byteStream());
+ *     body.writeTo(archiveFile); // Also closes the body.
+ *   } finally {
+ *     body.close();
+ *   }
+ * }</pre>
+ *
+ * <p>Each call to {@link ResponseBody#source()} of a buffered body returns a new stream from the
+ * first byte, while {@link ResponseBody#read(ByteBuffer)} continues where its previous call
+ * stopped. Closing the body frees its memory or deletes its file.
+ */
+public final class BodyBuffer {
+    private final long inMemoryThreshold;
+    private final long maxInMemoryBytes;
+    private final File directory;
+    private long inMemoryBytes;
+
+    /**
+     * Creates a buffer that keeps bodies of up to 256 KiB in memory, at most 16 MiB in total, and
+     * spills the rest to the {@code java.io.tmpdir} directory, which is the application's cache
+     * directory on Android.
+     */
+    public BodyBuffer() {
+        this(256 * 1024, 16 * 1024 * 1024, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param inMemoryThreshold the largest body kept in memory.
+     * @param maxInMemoryBytes  the most memory held by the bodies buffered here at once.
+     * @param directory         where larger bodies are spilled.
+     */
+    public BodyBuffer(long inMemoryThreshold, long maxInMemoryBytes, File directory) {
+        if (inMemoryThreshold < 0) throw new IllegalArgumentException("inMemoryThreshold < 0");
+        if (inMemoryThreshold > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("inMemoryThreshold > Integer.MAX_VALUE");
+        }
+        if (maxInMemoryBytes < 0) throw new IllegalArgumentException("maxInMemoryBytes < 0");
+        if (directory == null) throw new IllegalArgumentException("directory == null");
+        this.inMemoryThreshold = inMemoryThreshold;
+        this.maxInMemoryBytes = maxInMemoryBytes;
+        this.directory = directory;
+    }
+
+    public long inMemoryThreshold() {
+        return inMemoryThreshold;
+    }
+
+    public long maxInMemoryBytes() {
+        return maxInMemoryBytes;
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    /**
+     * Returns the memory currently held by bodies buffered here.
+     */
+    public synchronized long inMemoryBytes() {
+        return inMemoryBytes;
+    }
+
+    /**
+     * Reads {@code body} to its end, closes it, and returns a repeatable body with the same
+     * content. Bodies that are already buffered are returned as is.
+     */
+    public ResponseBody buffer(ResponseBody body) throws IOException {
+        if (body instanceof BufferedBody) return body;
+        InputStream source = body.source();
+        try {
+            long contentLength = body.contentLength();
+            if (contentLength != -1L && contentLength > inMemoryThreshold) {
+                return spill(body.contentType(), null, source);
+            }
+
+            // Hold the body in memory while it fits, reserving its bytes as they arrive.
+            long reserved = 0L;
+            Buffer buffer = new Buffer();
+            byte[] scratch = ByteArrayPool.take();
+            try {
+                for (int read; (read = source.read(scratch)) != -1; ) {
+                    buffer.write(scratch, 0, read);
+                    if (buffer.size() > reserved) {
+                        long want = Math.max(buffer.size(), contentLength);
+                        if (want > inMemoryThreshold || !reserve(want - reserved)) {
+                            return spill(body.contentType(), buffer, source);
+                        }
+                        reserved = want;
+                    }
+                }
+                byte[] bytes = buffer.readByteArray();
+                if (contentLength != -1L && bytes.length != contentLength) {
+                    throw new IOException("Content-Length ("
+                            + contentLength
+                            + ") and stream length ("
+                            + bytes.length
+                            + ") disagree");
+                }
+                release(reserved - bytes.length);
+                reserved = 0L; // The body releases its bytes when it is closed.
+                return new BufferedBody(body.contentType(), bytes, null, null);
+            } finally {
+                release(reserved);
+                ByteArrayPool.recycle(scratch);
+                buffer.close();
+            }
+        } finally {
+            Util.closeQuietly(source);
+        }
+    }
+
+    /**
+     * Writes {@code prefix}, if any, and the rest of {@code source} to a new temporary file.
+     */
+    private BufferedBody spill(MediaType contentType, Buffer prefix, InputStream source) throws IOException {
+        File file = File.createTempFile("body", ".tmp", directory);
+        boolean success = false;
+        try {
+            FileOutputStream sink = new FileOutputStream(file);
+            try {
+                if (prefix != null) prefix.writeTo(sink);
+                byte[] buffer = ByteArrayPool.take();
+                try {
+                    for (int read; (read = source.read(buffer)) != -1; ) {
+                        sink.write(buffer, 0, read);
+                    }
+                } finally {
+                    ByteArrayPool.recycle(buffer);
+                }
+            } finally {
+                sink.close();
+            }
+
+            // A mapping outlives its channel. Files too large for one mapping are streamed instead.
+            MappedByteBuffer mapped = null;
+            if (file.length() <= Integer.MAX_VALUE) {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                try {
+                    mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                } finally {
+                    randomAccessFile.close();
+                }
+            }
+            success = true;
+            return new BufferedBody(contentType, null, file, mapped);
+        } finally {
+            if (!success) file.delete();
+        }
+    }
+
+    private synchronized boolean reserve(long byteCount) {
+        if (inMemoryBytes + byteCount > maxInMemoryBytes) return false;
+        inMemoryBytes += byteCount;
+        return true;
+    }
+
+    private synchronized void release(long byteCount) {
+        inMemoryBytes -= byteCount;
+    }
+
+    private final class BufferedBody extends ResponseBody {
+        private final MediaType contentType;
+        private final long contentLength;
+        private byte[] bytes;
+        private File file;
+        private ByteBuffer mapped;
+        /**
+         * Where {@link #read(ByteBuffer)} continues: a view of the content, or of the file if it
+         * couldn't be mapped.
+         */
+        private ByteBuffer cursor;
+        private FileChannel fileCursor;
+
+        BufferedBody(MediaType contentType, byte[] bytes, File file, ByteBuffer mapped) {
+            this.contentType = contentType;
+            this.contentLength = bytes != null ? bytes.length : file.length();
+            this.bytes = bytes;
+            this.file = file;
+            this.mapped = mapped;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public synchronized InputStream source() {
+            if (bytes != null) return new ByteArrayInputStream(bytes);
+            if (mapped != null) return new ByteBufferInputStream(mapped.duplicate());
+            if (file != null) {
+                try {
+                    return new FileInputStream(file);
+                } catch (IOException e) {
+                    throw new IllegalStateException("buffered body is gone: " + file, e);
+                }
+            }
+            throw new IllegalStateException("closed");
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer sink) throws IOException {
+            if (!sink.hasRemaining()) return 0;
+            if (cursor == null && fileCursor == null) {
+                if (bytes != null) {
+                    cursor = ByteBuffer.wrap(bytes);
+                } else if (mapped != null) {
+                    cursor = mapped.duplicate();
+                } else if (file != null) {
+                    fileCursor = new RandomAccessFile(file, "r").getChannel();
+                } else {
+                    throw new IllegalStateException("closed");
+                }
+            }
+            if (fileCursor != null) return fileCursor.read(sink);
+            if (!cursor.hasRemaining()) return -1;
+            int count = Math.min(sink.remaining(), cursor.remaining());
+            ByteBuffer slice = cursor.duplicate();
+            slice.limit(slice.position() + count);
+            sink.put(slice);
+            cursor.position(cursor.position() + count);
+            return count;
+        }
+
+        @Override
+        public synchronized void close() {
+            cursor = null;
+            Util.closeQuietly(fileCursor);
+            fileCursor = null;
+            if (bytes != null) {
+                release(bytes.length);
+                bytes = null;
+            }
+            if (file != null) {
+                mapped = null;
+                file.delete();
+                file = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "BufferedBody[" + contentLength + " bytes " + (bytes != null ? "in memory" : "in " + file) + "]";
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer source;
+
+        ByteBufferInputStream(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() {
+            return source.hasRemaining() ? source.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            Util.checkOffsetAndCount(b.length, off, len);
+            if (len == 0) return 0;
+            if (!source.hasRemaining()) return -1;
+            int count = Math.min(len, source.remaining());
+            source.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0L, Math.min(n, source.remaining()));
+            source.position(source.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return source.remaining();
+        }
+    }
+}
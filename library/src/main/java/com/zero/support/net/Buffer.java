@@ -0,0 +1,364 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.Util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A queue of bytes held in fixed-size segments. Bytes are written at the tail and read from the
+ * head; segments that are drained go back to a process-wide pool, so that buffering bodies at a
+ * high request rate reuses memory instead of allocating a growing array, and its copies, per call.
+ *
+ * <p>A buffer doesn't grow by copying: appending takes another segment, and {@link
+ * #readByteArray()} copies the content once into an array of the exact size. Use {@link
+ * #outputStream()} and {@link #inputStream()} to hand a buffer to stream-based code.
+ *
+ * <p>Buffers aren't thread safe. Closing a buffer discards its content and recycles its segments.
+ */
+public final class Buffer implements Closeable {
+    static final int SEGMENT_SIZE = 8192;
+    private static final int MAX_POOLED_SEGMENTS = 32;
+
+    private static final Segment[] pool = new Segment[MAX_POOLED_SEGMENTS];
+    private static int pooled;
+
+    private Segment head;
+    private Segment tail;
+    private long size;
+
+    /**
+     * Returns the number of bytes that can be read.
+     */
+    public long size() {
+        return size;
+    }
+
+    public Buffer writeByte(int b) {
+        Segment segment = writableSegment();
+        segment.data[segment.limit++] = (byte) b;
+        size++;
+        return this;
+    }
+
+    public Buffer write(byte[] source) {
+        return write(source, 0, source.length);
+    }
+
+    public Buffer write(byte[] source, int offset, int byteCount) {
+        Util.checkOffsetAndCount(source.length, offset, byteCount);
+        while (byteCount > 0) {
+            Segment segment = writableSegment();
+            int count = Math.min(byteCount, SEGMENT_SIZE - segment.limit);
+            System.arraycopy(source, offset, segment.data, segment.limit, count);
+            segment.limit += count;
+            offset += count;
+            byteCount -= count;
+            size += count;
+        }
+        return this;
+    }
+
+    /**
+     * Writes the remaining bytes of {@code source}, advancing its position.
+     */
+    public Buffer write(ByteBuffer source) {
+        while (source.hasRemaining()) {
+            Segment segment = writableSegment();
+            int count = Math.min(source.remaining(), SEGMENT_SIZE - segment.limit);
+            source.get(segment.data, segment.limit, count);
+            segment.limit += count;
+            size += count;
+        }
+        return this;
+    }
+
+    /**
+     * Writes the low byte of each char of {@code string}, as {@link
+     * java.io.DataOutputStream#writeBytes} does. Use it for text that is ASCII by construction, like
+     * header lines and URL-encoded forms.
+     */
+    public Buffer writeAscii(String string) {
+        for (int i = 0, length = string.length(); i < length; ) {
+            Segment segment = writableSegment();
+            int end = Math.min(length, i + SEGMENT_SIZE - segment.limit);
+            byte[] data = segment.data;
+            int limit = segment.limit;
+            while (i < end) {
+                data[limit++] = (byte) string.charAt(i++);
+            }
+            size += limit - segment.limit;
+            segment.limit = limit;
+        }
+        return this;
+    }
+
+    public Buffer writeString(String string, Charset charset) {
+        return write(string.getBytes(charset));
+    }
+
+    public Buffer writeDecimalLong(long value) {
+        return writeAscii(Long.toString(value));
+    }
+
+    /**
+     * Reads {@code source} to its end into this buffer, and returns the number of bytes read.
+     * Bytes go straight into segments, without a scratch array.
+     */
+    public long readFrom(InputStream source) throws IOException {
+        long total = 0L;
+        while (true) {
+            Segment segment = tail;
+            boolean fresh = segment == null || segment.limit == SEGMENT_SIZE;
+            if (fresh) segment = take();
+            int read = source.read(segment.data, segment.limit, SEGMENT_SIZE - segment.limit);
+            if (read == -1) {
+                if (fresh) recycle(segment);
+                return total;
+            }
+            if (fresh) append(segment);
+            segment.limit += read;
+            size += read;
+            total += read;
+        }
+    }
+
+    /**
+     * Removes up to {@code byteCount} bytes and copies them to {@code sink}, returning the number
+     * copied, or -1 if this buffer is empty.
+     */
+    public int read(byte[] sink, int offset, int byteCount) {
+        Util.checkOffsetAndCount(sink.length, offset, byteCount);
+        if (size == 0) return -1;
+        int total = 0;
+        while (byteCount > 0 && head != null) {
+            Segment segment = head;
+            int count = Math.min(byteCount, segment.limit - segment.pos);
+            System.arraycopy(segment.data, segment.pos, sink, offset, count);
+            segment.pos += count;
+            offset += count;
+            byteCount -= count;
+            total += count;
+            if (segment.pos == segment.limit) popHead();
+        }
+        size -= total;
+        return total;
+    }
+
+    /**
+     * Removes up to {@code sink.remaining()} bytes and puts them in {@code sink}, returning the
+     * number moved, or -1 if this buffer is empty.
+     */
+    public int read(ByteBuffer sink) {
+        if (size == 0) return -1;
+        int total = 0;
+        while (sink.hasRemaining() && head != null) {
+            Segment segment = head;
+            int count = Math.min(sink.remaining(), segment.limit - segment.pos);
+            sink.put(segment.data, segment.pos, count);
+            segment.pos += count;
+            total += count;
+            if (segment.pos == segment.limit) popHead();
+        }
+        size -= total;
+        return total;
+    }
+
+    /**
+     * Removes and returns one byte, or -1 if this buffer is empty.
+     */
+    public int readByte() {
+        if (size == 0) return -1;
+        Segment segment = head;
+        int b = segment.data[segment.pos++] & 0xff;
+        size--;
+        if (segment.pos == segment.limit) popHead();
+        return b;
+    }
+
+    /**
+     * Removes all bytes and returns them in an array of exactly {@link #size()} bytes.
+     */
+    public byte[] readByteArray() {
+        if (size > Integer.MAX_VALUE) throw new IllegalStateException("size > Integer.MAX_VALUE: " + size);
+        byte[] result = new byte[(int) size];
+        read(result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Removes all bytes and writes them to {@code sink}, a segment at a time. Returns the number
+     * of bytes written.
+     */
+    public long writeTo(OutputStream sink) throws IOException {
+        long total = 0L;
+        while (head != null) {
+            Segment segment = head;
+            int count = segment.limit - segment.pos;
+            sink.write(segment.data, segment.pos, count);
+            total += count;
+            size -= count;
+            popHead();
+        }
+        return total;
+    }
+
+    /**
+     * Writes all bytes to {@code sink} without removing them.
+     */
+    public void copyTo(OutputStream sink) throws IOException {
+        for (Segment segment = head; segment != null; segment = segment.next) {
+            sink.write(segment.data, segment.pos, segment.limit - segment.pos);
+        }
+    }
+
+    /**
+     * Discards all bytes and recycles the segments that held them.
+     */
+    public void clear() {
+        while (head != null) {
+            popHead();
+        }
+        size = 0L;
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Returns a stream that appends to this buffer.
+     */
+    public OutputStream outputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                Buffer.this.write(b, off, len);
+            }
+
+            @Override
+            public String toString() {
+                return Buffer.this + ".outputStream()";
+            }
+        };
+    }
+
+    /**
+     * Returns a stream that removes bytes from this buffer as they are read. Closing it clears
+     * the buffer.
+     */
+    public InputStream inputStream() {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return readByte();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) return 0;
+                return Buffer.this.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = 0L;
+                while (skipped < n && head != null) {
+                    Segment segment = head;
+                    int count = (int) Math.min(n - skipped, segment.limit - segment.pos);
+                    segment.pos += count;
+                    skipped += count;
+                    if (segment.pos == segment.limit) popHead();
+                }
+                size -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(size, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public void close() {
+                clear();
+            }
+
+            @Override
+            public String toString() {
+                return Buffer.this + ".inputStream()";
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Buffer[size=" + size + "]";
+    }
+
+    /**
+     * Returns the tail segment if it has room, or appends a new one.
+     */
+    private Segment writableSegment() {
+        if (tail != null && tail.limit < SEGMENT_SIZE) return tail;
+        Segment segment = take();
+        append(segment);
+        return segment;
+    }
+
+    private void append(Segment segment) {
+        if (tail == null) {
+            head = segment;
+        } else {
+            tail.next = segment;
+        }
+        tail = segment;
+    }
+
+    private void popHead() {
+        Segment segment = head;
+        head = segment.next;
+        if (head == null) tail = null;
+        recycle(segment);
+    }
+
+    private static Segment take() {
+        synchronized (pool) {
+            if (pooled > 0) {
+                Segment segment = pool[--pooled];
+                pool[pooled] = null;
+                return segment;
+            }
+        }
+        return new Segment();
+    }
+
+    private static void recycle(Segment segment) {
+        segment.next = null;
+        segment.pos = 0;
+        segment.limit = 0;
+        synchronized (pool) {
+            if (pooled < MAX_POOLED_SEGMENTS) pool[pooled++] = segment;
+        }
+    }
+
+    private static final class Segment {
+        final byte[] data = new byte[SEGMENT_SIZE];
+        /** The next byte to read. */
+        int pos;
+        /** The first byte that is free to write. */
+        int limit;
+        Segment next;
+    }
+}
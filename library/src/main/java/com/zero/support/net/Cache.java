@@ -0,0 +1,606 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.Http1Codec;
+import com.zero.support.net.internal.Util;
+import com.zero.support.net.internal.cache.CacheRequest;
+import com.zero.support.net.internal.cache.CacheStrategy;
+import com.zero.support.net.internal.cache.DiskLruCache;
+import com.zero.support.net.internal.cache.InternalCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Caches HTTP and HTTPS responses to the filesystem so they may be reused, saving time and
+ * bandwidth. Install it with {@link HttpClient.Builder#cache}.
+ *
+ * <h3>Cache Optimization</h3>
+ *
+ * <p>To measure cache effectiveness, this class tracks three statistics:
+ * <ul>
+ *     <li><strong>{@linkplain #requestCount() Request Count:}</strong> the number of HTTP
+ *         requests issued since this cache was created.
+ *     <li><strong>{@linkplain #networkCount() Network Count:}</strong> the number of those
+ *         requests that required network use.
+ *     <li><strong>{@linkplain #hitCount() Hit Count:}</strong> the number of those requests
+ *         whose responses were served by the cache.
+ * </ul>
+ *
+ * <p>Sometimes a request will result in a conditional cache hit. If the cache contains a stale
+ * copy of the response, the client will issue a conditional {@code GET}. The server will then
+ * send either the updated response if it has changed, or a short 'not modified' response if the
+ * client's copy is still valid. Such responses increment both the network count and hit count.
+ *
+ * <p>Freshness follows <a href="https://tools.ietf.org/html/rfc7234">RFC 7234</a>: responses
+ * are reused while their {@code max-age} or {@code Expires} allow, and requests may tune that with
+ * their own {@link CacheControl}. Use {@link CacheControl#FORCE_NETWORK} to skip the cache and
+ * {@link CacheControl#FORCE_CACHE} to use only the cache; a request that can't be satisfied
+ * without the network then fails with a {@code 504 Unsatisfiable Request}.
+ *
+ * <p>Only {@code GET} responses are stored. A response body is written to the cache while the
+ * application reads it, and the entry is published once the body has been read to the end; a body
+ * that is closed early isn't cached. Bodies are stored as received, so a compressed response is
+ * cached compressed and decoded each time it is served.
+ */
+public final class Cache implements Closeable, Flushable {
+    private static final int VERSION = 201105;
+    private static final int ENTRY_METADATA = 0;
+    private static final int ENTRY_BODY = 1;
+    private static final int ENTRY_COUNT = 2;
+
+    final InternalCache internalCache = new InternalCache() {
+        @Override
+        public Response get(Request request) throws IOException {
+            return Cache.this.get(request);
+        }
+
+        @Override
+        public CacheRequest put(Response response) throws IOException {
+            return Cache.this.put(response);
+        }
+
+        @Override
+        public void remove(Request request) throws IOException {
+            Cache.this.remove(request);
+        }
+
+        @Override
+        public void update(Response cached, Response network) {
+            Cache.this.update(cached, network);
+        }
+
+        @Override
+        public void trackConditionalCacheHit() {
+            Cache.this.trackConditionalCacheHit();
+        }
+
+        @Override
+        public void trackResponse(CacheStrategy cacheStrategy) {
+            Cache.this.trackResponse(cacheStrategy);
+        }
+    };
+
+    final DiskLruCache cache;
+
+    /* read and write statistics, all guarded by 'this' */
+    int writeSuccessCount;
+    int writeAbortCount;
+    private int networkCount;
+    private int hitCount;
+    private int requestCount;
+
+    public Cache(File directory, long maxSize) {
+        this.cache = DiskLruCache.create(directory, VERSION, ENTRY_COUNT, maxSize);
+    }
+
+    public static String key(java.net.URL url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.toExternalForm().getBytes(Util.UTF_8));
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    Response get(Request request) {
+        String key = key(request.url());
+        DiskLruCache.Snapshot snapshot;
+        Entry entry;
+        try {
+            snapshot = cache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+        } catch (IOException e) {
+            // Give up because the cache cannot be read.
+            return null;
+        }
+
+        try {
+            entry = new Entry(snapshot.getSource(ENTRY_METADATA));
+        } catch (IOException e) {
+            Util.closeQuietly(snapshot);
+            return null;
+        }
+
+        Response response = entry.response(snapshot);
+
+        if (!entry.matches(request)) {
+            Util.closeQuietly(response.body());
+            return null;
+        }
+
+        return response;
+    }
+
+    CacheRequest put(Response response) {
+        String requestMethod = response.request().method();
+
+        if (HttpMethod.invalidatesCache(requestMethod)) {
+            try {
+                remove(response.request());
+            } catch (IOException ignored) {
+                // The cache cannot be written.
+            }
+            return null;
+        }
+        if (!requestMethod.equals("GET")) {
+            // Don't cache non-GET responses. We're technically allowed to cache HEAD requests and
+            // some POST requests, but the complexity of doing so is high and the benefit is low.
+            return null;
+        }
+
+        Set<String> varyFields = varyFields(response.headers());
+        if (varyFields.contains("*")) {
+            return null;
+        }
+
+        Entry entry = new Entry(response, varyFields);
+        DiskLruCache.Editor editor = null;
+        try {
+            editor = cache.edit(key(response.request().url()));
+            if (editor == null) {
+                return null;
+            }
+            entry.writeTo(editor);
+            return new CacheRequestImpl(editor);
+        } catch (IOException e) {
+            abortQuietly(editor);
+            return null;
+        }
+    }
+
+    void remove(Request request) throws IOException {
+        cache.remove(key(request.url()));
+    }
+
+    void update(Response cached, Response network) {
+        Entry entry = new Entry(network, varyFields(network.headers()));
+        DiskLruCache.Snapshot snapshot = ((CacheResponseBody) cached.body()).snapshot;
+        DiskLruCache.Editor editor = null;
+        try {
+            editor = snapshot.edit(); // Returns null if snapshot is not current.
+            if (editor != null) {
+                entry.writeTo(editor);
+                editor.commit();
+            }
+        } catch (IOException e) {
+            abortQuietly(editor);
+        }
+    }
+
+    private void abortQuietly(DiskLruCache.Editor editor) {
+        // Give up because the cache cannot be written.
+        try {
+            if (editor != null) {
+                editor.abort();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Initialize the cache. This will include reading the journal files from the storage and
+     * building up the necessary in-memory cache information.
+     *
+     * <p>The initialization time may vary depending on the journal file size and the current
+     * actual cache size. The application needs to be aware of calling this function during the
+     * initialization phase and preferably in a background worker thread.
+     *
+     * <p>Note that if the application chooses to not call this method to initialize the cache. By
+     * default, the cache will perform lazy initialization upon the first usage of the cache.
+     */
+    public void initialize() throws IOException {
+        cache.initialize();
+    }
+
+    /**
+     * Closes the cache and deletes all of its stored values. This will delete all files in the
+     * cache directory including files that weren't created by the cache.
+     */
+    public void delete() throws IOException {
+        cache.delete();
+    }
+
+    /**
+     * Deletes all values stored in the cache. In-flight writes to the cache will complete normally,
+     * but the corresponding responses will not be stored.
+     */
+    public void evictAll() throws IOException {
+        cache.evictAll();
+    }
+
+    public synchronized int writeAbortCount() {
+        return writeAbortCount;
+    }
+
+    public synchronized int writeSuccessCount() {
+        return writeSuccessCount;
+    }
+
+    public long size() throws IOException {
+        return cache.size();
+    }
+
+    /**
+     * Max size of the cache (in bytes).
+     */
+    public long maxSize() {
+        return cache.getMaxSize();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        cache.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.close();
+    }
+
+    public File directory() {
+        return cache.getDirectory();
+    }
+
+    public boolean isClosed() {
+        return cache.isClosed();
+    }
+
+    synchronized void trackResponse(CacheStrategy cacheStrategy) {
+        requestCount++;
+
+        if (cacheStrategy.networkRequest != null) {
+            // If this is a conditional request, we'll increment hitCount if/when it hits.
+            networkCount++;
+        } else if (cacheStrategy.cacheResponse != null) {
+            // This response uses the cache and not the network. That's a cache hit.
+            hitCount++;
+        }
+    }
+
+    synchronized void trackConditionalCacheHit() {
+        hitCount++;
+    }
+
+    public synchronized int networkCount() {
+        return networkCount;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int requestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the names of the request headers that need to be checked for equality when caching.
+     */
+    static Set<String> varyFields(Headers responseHeaders) {
+        Set<String> result = Collections.emptySet();
+        for (int i = 0, size = responseHeaders.size(); i < size; i++) {
+            if (!"Vary".equalsIgnoreCase(responseHeaders.name(i))) continue;
+
+            String value = responseHeaders.value(i);
+            if (result.isEmpty()) {
+                result = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            }
+            for (String varyField : value.split(",")) {
+                varyField = varyField.trim();
+                if (!varyField.isEmpty()) result.add(varyField);
+            }
+        }
+        return result;
+    }
+
+    private final class CacheRequestImpl implements CacheRequest {
+        private final DiskLruCache.Editor editor;
+        private final OutputStream cacheOut;
+        private final OutputStream body;
+        boolean done;
+
+        CacheRequestImpl(final DiskLruCache.Editor editor) throws IOException {
+            this.editor = editor;
+            this.cacheOut = editor.newSink(ENTRY_BODY);
+            this.body = new FilterOutputStream(cacheOut) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    synchronized (Cache.this) {
+                        if (done) {
+                            return;
+                        }
+                        done = true;
+                        writeSuccessCount++;
+                    }
+                    super.close();
+                    editor.commit();
+                }
+            };
+        }
+
+        @Override
+        public void abort() {
+            synchronized (Cache.this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                writeAbortCount++;
+            }
+            Util.closeQuietly(cacheOut);
+            try {
+                editor.abort();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public OutputStream body() {
+            return body;
+        }
+    }
+
+    /**
+     * The metadata of a cache entry, stored as UTF-8 lines:
+     *
+     * <pre>
+     *     http://google.com/foo
+     *     GET
+     *     2
+     *     Accept-Language: fr-CA
+     *     Accept-Charset: UTF-8
+     *     HTTP/1.1 200 OK
+     *     3
+     *     Content-Type: image/png
+     *     Content-Length: 100
+     *     Cache-Control: max-age=600
+     *     1507210000000
+     *     1507210000125
+     * </pre>
+     *
+     * <p>That is the URL, the request method, the request headers named by the response's {@code
+     * Vary}, the status line, the response headers, and the times the request was sent and the
+     * response received.
+     */
+    private static final class Entry {
+        private final String url;
+        private final String requestMethod;
+        private final Headers varyHeaders;
+        private final int code;
+        private final String message;
+        private final Headers responseHeaders;
+        private final long sentRequestMillis;
+        private final long receivedResponseMillis;
+
+        /**
+         * Reads an entry from an input stream, closing it.
+         */
+        Entry(InputStream in) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, Util.UTF_8));
+            try {
+                url = readLine(reader);
+                requestMethod = readLine(reader);
+                varyHeaders = readHeaders(reader);
+
+                Http1Codec.StatusLine statusLine = Http1Codec.StatusLine.parse(readLine(reader));
+                code = statusLine.code;
+                message = statusLine.message;
+                responseHeaders = readHeaders(reader);
+                sentRequestMillis = readLong(reader);
+                receivedResponseMillis = readLong(reader);
+            } finally {
+                reader.close();
+            }
+        }
+
+        Entry(Response response, Set<String> varyFields) {
+            this.url = response.request().url().toExternalForm();
+            this.requestMethod = response.request().method();
+            this.varyHeaders = varyHeaders(response.request().headers(), varyFields);
+            this.code = response.code();
+            this.message = response.message();
+            this.responseHeaders = response.headers();
+            this.sentRequestMillis = response.sentRequestAtMillis();
+            this.receivedResponseMillis = response.receivedResponseAtMillis();
+        }
+
+        void writeTo(DiskLruCache.Editor editor) throws IOException {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    editor.newSink(ENTRY_METADATA), Util.UTF_8));
+            try {
+                writer.write(url + '\n');
+                writer.write(requestMethod + '\n');
+                writeHeaders(writer, varyHeaders);
+                writer.write("HTTP/1.1 " + code + ' ' + message + '\n');
+                writeHeaders(writer, responseHeaders);
+                writer.write(Long.toString(sentRequestMillis) + '\n');
+                writer.write(Long.toString(receivedResponseMillis) + '\n');
+            } finally {
+                writer.close();
+            }
+        }
+
+        /**
+         * Returns true if this entry was stored for {@code request}: the same URL and method, and
+         * the same values for each request header the response varies on.
+         */
+        boolean matches(Request request) {
+            if (!url.equals(request.url().toExternalForm())
+                    || !requestMethod.equals(request.method())) {
+                return false;
+            }
+            for (String field : varyFields(responseHeaders)) {
+                if (!varyHeaders.values(field).equals(request.headers(field))) return false;
+            }
+            return true;
+        }
+
+        Response response(DiskLruCache.Snapshot snapshot) {
+            String contentType = responseHeaders.get("Content-Type");
+            Request cacheRequest = new Request.Builder()
+                    .url(url)
+                    .method(requestMethod, null)
+                    .headers(varyHeaders)
+                    .build();
+            return new Response.Builder()
+                    .request(cacheRequest)
+                    .code(code)
+                    .message(message)
+                    .headers(responseHeaders)
+                    .body(new CacheResponseBody(snapshot, contentType))
+                    .sentRequestAtMillis(sentRequestMillis)
+                    .receivedResponseAtMillis(receivedResponseMillis)
+                    .build();
+        }
+
+        private static Headers varyHeaders(Headers requestHeaders, Set<String> varyFields) {
+            if (varyFields.isEmpty()) return Util.EMPTY_HEADERS;
+
+            Headers.Builder result = new Headers.Builder();
+            for (int i = 0, size = requestHeaders.size(); i < size; i++) {
+                String fieldName = requestHeaders.name(i);
+                if (varyFields.contains(fieldName)) {
+                    result.addUnsafeNonAscii(fieldName, requestHeaders.value(i));
+                }
+            }
+            return result.build();
+        }
+
+        private static void writeHeaders(Writer writer, Headers headers) throws IOException {
+            writer.write(Integer.toString(headers.size()) + '\n');
+            for (int i = 0, size = headers.size(); i < size; i++) {
+                writer.write(headers.name(i) + ": " + headers.value(i) + '\n');
+            }
+        }
+
+        private static Headers readHeaders(BufferedReader reader) throws IOException {
+            int count = (int) readLong(reader);
+            Headers.Builder result = new Headers.Builder();
+            for (int i = 0; i < count; i++) {
+                String line = readLine(reader);
+                int index = line.indexOf(':', 1);
+                if (index == -1) throw new IOException("unexpected header line: " + line);
+                result.addUnsafeNonAscii(line.substring(0, index), line.substring(index + 1).trim());
+            }
+            return result.build();
+        }
+
+        private static long readLong(BufferedReader reader) throws IOException {
+            String line = readLine(reader);
+            try {
+                return Long.parseLong(line);
+            } catch (NumberFormatException e) {
+                throw new IOException("expected a number but was \"" + line + "\"");
+            }
+        }
+
+        private static String readLine(BufferedReader reader) throws IOException {
+            String line = reader.readLine();
+            if (line == null) throw new java.io.EOFException();
+            return line;
+        }
+    }
+
+    /**
+     * A body read from the cache. Closing it releases the snapshot it was read from.
+     */
+    private static final class CacheResponseBody extends ResponseBody {
+        final DiskLruCache.Snapshot snapshot;
+        private final InputStream source;
+        private final String contentType;
+
+        CacheResponseBody(final DiskLruCache.Snapshot snapshot, String contentType) {
+            this.snapshot = snapshot;
+            this.contentType = contentType;
+            this.source = new FilterInputStream(snapshot.getSource(ENTRY_BODY)) {
+                @Override
+                public void close() throws IOException {
+                    snapshot.close();
+                    super.close();
+                }
+            };
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType != null ? MediaType.parse(contentType) : null;
+        }
+
+        @Override
+        public long contentLength() {
+            return snapshot.getLength(ENTRY_BODY);
+        }
+
+        @Override
+        public InputStream source() {
+            return source;
+        }
+    }
+}
@@ -17,8 +17,6 @@ package com.zero.support.net;
 
 import java.util.concurrent.TimeUnit;
 
-//todo http 缓存控制,先预留
-
 /**
  * A Cache-Control header with cache directives from a server or client. These directives set policy
  * on what responses can be stored, and which requests can be satisfied by those stored responses.
@@ -112,81 +110,81 @@ public final class CacheControl {
         boolean canUseHeaderValue = true;
         String headerValue = null;
 
-//    for (int i = 0, size = headers.size(); i < size; i++) {
-//      String name = headers.name(i);
-//      String value = headers.value(i);
-//
-//      if (name.equalsIgnoreCase("Cache-Control")) {
-//        if (headerValue != null) {
-//          // Multiple cache-control headers means we can't use the raw value.
-//          canUseHeaderValue = false;
-//        } else {
-//          headerValue = value;
-//        }
-//      } else if (name.equalsIgnoreCase("Pragma")) {
-//        // Might specify additional cache-control params. We invalidate just in case.
-//        canUseHeaderValue = false;
-//      } else {
-//        continue;
-//      }
-//
-//      int pos = 0;
-//      while (pos < value.length()) {
-//        int tokenStart = pos;
-//        pos = HttpHeaders.skipUntil(value, pos, "=,;");
-//        String directive = value.substring(tokenStart, pos).trim();
-//        String parameter;
-//
-//        if (pos == value.length() || value.charAt(pos) == ',' || value.charAt(pos) == ';') {
-//          pos++; // consume ',' or ';' (if necessary)
-//          parameter = null;
-//        } else {
-//          pos++; // consume '='
-//          pos = HttpHeaders.skipWhitespace(value, pos);
-//
-//          // quoted string
-//          if (pos < value.length() && value.charAt(pos) == '\"') {
-//            pos++; // consume '"' openZipArchive quote
-//            int parameterStart = pos;
-//            pos = HttpHeaders.skipUntil(value, pos, "\"");
-//            parameter = value.substring(parameterStart, pos);
-//            pos++; // consume '"' close quote (if necessary)
-//
-//            // unquoted string
-//          } else {
-//            int parameterStart = pos;
-//            pos = HttpHeaders.skipUntil(value, pos, ",;");
-//            parameter = value.substring(parameterStart, pos).trim();
-//          }
-//        }
-//
-//        if ("no-cache".equalsIgnoreCase(directive)) {
-//          noCache = true;
-//        } else if ("no-store".equalsIgnoreCase(directive)) {
-//          noStore = true;
-//        } else if ("max-age".equalsIgnoreCase(directive)) {
-//          maxAgeSeconds = HttpHeaders.parseSeconds(parameter, -1);
-//        } else if ("s-maxage".equalsIgnoreCase(directive)) {
-//          sMaxAgeSeconds = HttpHeaders.parseSeconds(parameter, -1);
-//        } else if ("private".equalsIgnoreCase(directive)) {
-//          isPrivate = true;
-//        } else if ("public".equalsIgnoreCase(directive)) {
-//          isPublic = true;
-//        } else if ("must-revalidate".equalsIgnoreCase(directive)) {
-//          mustRevalidate = true;
-//        } else if ("max-stale".equalsIgnoreCase(directive)) {
-//          maxStaleSeconds = HttpHeaders.parseSeconds(parameter, Integer.MAX_VALUE);
-//        } else if ("min-fresh".equalsIgnoreCase(directive)) {
-//          minFreshSeconds = HttpHeaders.parseSeconds(parameter, -1);
-//        } else if ("only-if-cached".equalsIgnoreCase(directive)) {
-//          onlyIfCached = true;
-//        } else if ("no-transform".equalsIgnoreCase(directive)) {
-//          noTransform = true;
-//        } else if ("immutable".equalsIgnoreCase(directive)) {
-//          immutable = true;
-//        }
-//      }
-//    }
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            String name = headers.name(i);
+            String value = headers.value(i);
+
+            if (name.equalsIgnoreCase("Cache-Control")) {
+                if (headerValue != null) {
+                    // Multiple cache-control headers means we can't use the raw value.
+                    canUseHeaderValue = false;
+                } else {
+                    headerValue = value;
+                }
+            } else if (name.equalsIgnoreCase("Pragma")) {
+                // Might specify additional cache-control params. We invalidate just in case.
+                canUseHeaderValue = false;
+            } else {
+                continue;
+            }
+
+            int pos = 0;
+            while (pos < value.length()) {
+                int tokenStart = pos;
+                pos = skipUntil(value, pos, "=,;");
+                String directive = value.substring(tokenStart, pos).trim();
+                String parameter;
+
+                if (pos == value.length() || value.charAt(pos) == ',' || value.charAt(pos) == ';') {
+                    pos++; // consume ',' or ';' (if necessary)
+                    parameter = null;
+                } else {
+                    pos++; // consume '='
+                    pos = skipWhitespace(value, pos);
+
+                    // quoted string
+                    if (pos < value.length() && value.charAt(pos) == '\"') {
+                        pos++; // consume '"' open quote
+                        int parameterStart = pos;
+                        pos = skipUntil(value, pos, "\"");
+                        parameter = value.substring(parameterStart, pos);
+                        pos++; // consume '"' close quote (if necessary)
+
+                        // unquoted string
+                    } else {
+                        int parameterStart = pos;
+                        pos = skipUntil(value, pos, ",;");
+                        parameter = value.substring(parameterStart, pos).trim();
+                    }
+                }
+
+                if ("no-cache".equalsIgnoreCase(directive)) {
+                    noCache = true;
+                } else if ("no-store".equalsIgnoreCase(directive)) {
+                    noStore = true;
+                } else if ("max-age".equalsIgnoreCase(directive)) {
+                    maxAgeSeconds = parseSeconds(parameter, -1);
+                } else if ("s-maxage".equalsIgnoreCase(directive)) {
+                    sMaxAgeSeconds = parseSeconds(parameter, -1);
+                } else if ("private".equalsIgnoreCase(directive)) {
+                    isPrivate = true;
+                } else if ("public".equalsIgnoreCase(directive)) {
+                    isPublic = true;
+                } else if ("must-revalidate".equalsIgnoreCase(directive)) {
+                    mustRevalidate = true;
+                } else if ("max-stale".equalsIgnoreCase(directive)) {
+                    maxStaleSeconds = parseSeconds(parameter, Integer.MAX_VALUE);
+                } else if ("min-fresh".equalsIgnoreCase(directive)) {
+                    minFreshSeconds = parseSeconds(parameter, -1);
+                } else if ("only-if-cached".equalsIgnoreCase(directive)) {
+                    onlyIfCached = true;
+                } else if ("no-transform".equalsIgnoreCase(directive)) {
+                    noTransform = true;
+                } else if ("immutable".equalsIgnoreCase(directive)) {
+                    immutable = true;
+                }
+            }
+        }
 
         if (!canUseHeaderValue) {
             headerValue = null;
@@ -209,6 +207,38 @@ public final class CacheControl {
         return pos;
     }
 
+    /**
+     * Returns the next index in {@code input} at or after {@code pos} that isn't a space or a tab.
+     */
+    private static int skipWhitespace(String input, int pos) {
+        for (; pos < input.length(); pos++) {
+            char c = input.charAt(pos);
+            if (c != ' ' && c != '\t') {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Returns {@code value} as a positive integer, or 0 if it is negative, or {@code defaultValue}
+     * if it cannot be parsed.
+     */
+    private static int parseSeconds(String value, int defaultValue) {
+        try {
+            long seconds = Long.parseLong(value);
+            if (seconds > Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            } else if (seconds < 0) {
+                return 0;
+            } else {
+                return (int) seconds;
+            }
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * In a response, this field's name "no-cache" is misleading. It doesn't prevent us from caching
      * the response; it only means we have to validate the response with the origin server before
@@ -27,11 +27,30 @@ public interface Call extends Cloneable {
 
     com.zero.support.net.Response execute() throws IOException;
 
+    /**
+     * Schedules the request to be executed at some point in the future.
+     *
+     * <p>The {@link HttpClient#dispatcher dispatcher} defines when the request will run: usually
+     * immediately unless there are several other requests currently being executed.
+     *
+     * <p>This client will later call back {@code responseCallback} with either an HTTP response or a
+     * failure exception.
+     *
+     * @throws IllegalStateException when the call has already been executed.
+     */
+    void enqueue(Callback responseCallback);
+
     /**
      * Cancels the request, if possible. Requests that are already complete cannot be canceled.
      */
     void cancel();
 
+    /**
+     * Returns true if this call has been either {@linkplain #execute() executed} or {@linkplain
+     * #enqueue(Callback) enqueued}. It is an error to execute a call more than once.
+     */
+    boolean isExecuted();
+
     boolean isCanceled();
 
     /**
@@ -0,0 +1,225 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An application interceptor that collapses concurrent identical GET requests into one network
+ * exchange. Requests are identical if they have the same URL and the same values for each of the
+ * configured key headers; a request that arrives while an identical one is in flight waits for that
+ * one's response instead of making its own.
+ *
+ * <p>The shared response body is buffered in memory and every waiter gets its own {@link
+ * ResponseBody} over that buffer. Responses larger than {@code maxBodySize} aren't buffered: the
+ * first caller streams its body as usual and the waiters make their own requests. If the shared
+ * exchange fails, every waiter fails with an exception caused by that failure; if it was canceled,
+ * the waiters make their own requests. A waiter that is canceled, or whose call times out, stops
+ * waiting at once.
+ *
+ * <pre>   {@code
+ *
+ *   HttpClient client = new HttpClient.Builder()
+ *       .addInterceptor(new CoalescingInterceptor("Authorization", "Accept-Language"))
+ *       .build();
+ * }</pre>
+ *
+ * <p>Include every request header that changes the response in the key; requests that differ only
+ * in other headers share a response.
+ */
+public final class CoalescingInterceptor implements Interceptor {
+    /**
+     * The default limit on bodies that are buffered for sharing.
+     */
+    public static final long DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    private final long maxBodySize;
+    private final String[] keyHeaders;
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    public CoalescingInterceptor(String... keyHeaders) {
+        this(DEFAULT_MAX_BODY_SIZE, keyHeaders);
+    }
+
+    public CoalescingInterceptor(long maxBodySize, String... keyHeaders) {
+        if (maxBodySize < 0) throw new IllegalArgumentException("maxBodySize < 0: " + maxBodySize);
+        this.maxBodySize = maxBodySize;
+        this.keyHeaders = keyHeaders.clone();
+        for (String name : this.keyHeaders) {
+            if (name == null) throw new IllegalArgumentException("keyHeaders must not contain null");
+        }
+    }
+
+    /**
+     * Returns the number of distinct requests currently in flight through this interceptor.
+     */
+    public synchronized int inFlightCount() {
+        return flights.size();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!request.method().equals("GET") || request.body() != null) {
+            return chain.proceed(request);
+        }
+
+        String key = key(request);
+        Flight flight;
+        boolean leader = false;
+        synchronized (this) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight();
+                flights.put(key, flight);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            return lead(chain, request, key, flight);
+        }
+
+        Response shared = flight.await(chain.call());
+        if (shared == null) {
+            return chain.proceed(request); // Not shareable; fetch our own copy.
+        }
+        Response.Builder builder = shared.newBuilder().request(request);
+        if (flight.bytes != null) {
+            builder.body(ResponseBody.create(flight.contentType, flight.bytes));
+        }
+        return builder.build();
+    }
+
+    private Response lead(Chain chain, Request request, String key, Flight flight) throws IOException {
+        IOException failure = null;
+        try {
+            Response response = chain.proceed(request);
+            ResponseBody body = response.body();
+            if (body == null) {
+                flight.response = response;
+                return response;
+            }
+
+            long contentLength = body.contentLength();
+            if (contentLength > maxBodySize) {
+                return response; // Waiters fetch their own.
+            }
+            InputStream source = body.source();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                    contentLength > 0 ? (int) contentLength : 1024);
+            if (!readAtMost(source, buffer, maxBodySize)) {
+                // Too large after all: hand what we have plus the rest of the stream to the caller.
+                InputStream rest = new SequenceInputStream(
+                        new ByteArrayInputStream(buffer.toByteArray()), source);
+                return response.newBuilder()
+                        .body(ResponseBody.create(body.contentType(), contentLength, rest))
+                        .build();
+            }
+            Util.closeQuietly(source);
+
+            flight.contentType = body.contentType();
+            flight.bytes = buffer.toByteArray();
+            flight.response = response;
+            return response.newBuilder()
+                    .body(ResponseBody.create(body.contentType(), flight.bytes))
+                    .build();
+        } catch (IOException e) {
+            // The leader's cancellation is its own business: waiters fetch their own copies.
+            if (!chain.call().isCanceled()) failure = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                flights.remove(key);
+            }
+            flight.complete(failure);
+        }
+    }
+
+    /**
+     * Copies {@code source} to {@code sink} until it is exhausted, returning true, or until more
+     * than {@code limit} bytes have been copied, returning false.
+     */
+    private static boolean readAtMost(InputStream source, ByteArrayOutputStream sink, long limit)
+            throws IOException {
+        byte[] buffer = new byte[8192];
+        for (int count; (count = source.read(buffer)) != -1; ) {
+            sink.write(buffer, 0, count);
+            if (sink.size() > limit) return false;
+        }
+        return true;
+    }
+
+    private String key(Request request) {
+        StringBuilder key = new StringBuilder(request.url().toString());
+        Headers headers = request.headers();
+        for (String name : keyHeaders) {
+            key.append('\n').append(name.toLowerCase(Locale.US)).append(':')
+                    .append(headers.values(name));
+        }
+        return key.toString();
+    }
+
+    /**
+     * One network exchange and the callers waiting on it.
+     */
+    private static final class Flight {
+        // Guarded by this. The other fields are written by the leader before done is set. The
+        // response is null if it can't be shared; the bytes are null if it has no body. The
+        // failure is null if the leader was canceled.
+        private boolean done;
+        Response response;
+        MediaType contentType;
+        byte[] bytes;
+        IOException failure;
+
+        synchronized void complete(IOException failure) {
+            this.failure = failure;
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * Returns the shared response, or null if it can't be shared. Fails early if {@code call}
+         * is canceled while waiting.
+         */
+        Response await(Call call) throws IOException {
+            Runnable wakeUp = new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (Flight.this) {
+                        Flight.this.notifyAll();
+                    }
+                }
+            };
+            RealCall realCall = call instanceof RealCall ? (RealCall) call : null;
+            if (realCall != null) realCall.whenCanceled(wakeUp);
+            try {
+                synchronized (this) {
+                    while (!done && !call.isCanceled()) {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted");
+            } finally {
+                if (realCall != null) realCall.removeCancelListener(wakeUp);
+            }
+            if (call.isCanceled()) throw new IOException("Canceled");
+            // Each waiter gets its own exception: a shared instance would collect suppressed
+            // exceptions and stack traces from every thread that rethrew it.
+            if (failure != null) throw new IOException(failure.getMessage(), failure);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.RealConnectionPool;
+import com.zero.support.net.internal.nio.NioConnectionPool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages reuse of HTTP connections to reduce network latency. HTTP requests that share the same
+ * route (scheme, host, port and TLS configuration) may share a connection. This class implements
+ * the policy of which connections to keep open for future use.
+ *
+ * <p>The {@link Engine#SOCKET} and {@link Engine#NIO} engines draw from this pool, each from
+ * connections of its own kind; {@link Engine#URL_CONNECTION} leaves connection reuse to the
+ * platform.
+ */
+public final class ConnectionPool {
+    final RealConnectionPool delegate;
+    final NioConnectionPool nioDelegate;
+
+    /**
+     * Create a new connection pool with tuning parameters appropriate for a single-user application.
+     * The tuning parameters in this pool are subject to change in future versions. Currently this
+     * pool holds up to 5 idle connections per route which will be evicted after 5 minutes of
+     * inactivity.
+     */
+    public ConnectionPool() {
+        this(5, 5, TimeUnit.MINUTES);
+    }
+
+    public ConnectionPool(int maxIdleConnectionsPerRoute, long keepAliveDuration, TimeUnit timeUnit) {
+        this.delegate = new RealConnectionPool(maxIdleConnectionsPerRoute, keepAliveDuration, timeUnit);
+        this.nioDelegate = new NioConnectionPool(maxIdleConnectionsPerRoute, keepAliveDuration, timeUnit);
+    }
+
+    /**
+     * Returns the number of idle connections in the pool.
+     */
+    public int idleConnectionCount() {
+        return delegate.idleConnectionCount() + nioDelegate.idleConnectionCount();
+    }
+
+    /**
+     * Returns total number of connections in the pool.
+     */
+    public int connectionCount() {
+        return delegate.connectionCount() + nioDelegate.connectionCount();
+    }
+
+    /**
+     * Close and remove all idle connections in the pool.
+     */
+    public void evictAll() {
+        delegate.evictAll();
+        nioDelegate.evictAll();
+    }
+}
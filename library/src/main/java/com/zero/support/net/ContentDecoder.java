@@ -0,0 +1,80 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.InflaterSource;
+import com.zero.support.net.internal.compress.BrotliSource;
+import com.zero.support.net.internal.compress.ZstdSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a response content coding like {@code gzip}. A client offers the codings of its decoders
+ * in {@code Accept-Encoding}, in order of preference, and decodes responses that use them; see
+ * {@link HttpClient.Builder#contentDecoders}. Responses to requests that set their own {@code
+ * Accept-Encoding} are left encoded.
+ *
+ * <p>The built-in decoders are pure Java. {@link #BROTLI} and {@link #ZSTD} keep a history window
+ * of up to 16 and 8 MiB respectively while a body is read; windows are pooled between responses.
+ */
+public interface ContentDecoder {
+    ContentDecoder GZIP = new ContentDecoder() {
+        @Override
+        public String encoding() {
+            return "gzip";
+        }
+
+        @Override
+        public InputStream decode(InputStream source) {
+            return new InflaterSource(source, true);
+        }
+    };
+
+    ContentDecoder DEFLATE = new ContentDecoder() {
+        @Override
+        public String encoding() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream decode(InputStream source) {
+            return new InflaterSource(source, false);
+        }
+    };
+
+    ContentDecoder BROTLI = new ContentDecoder() {
+        @Override
+        public String encoding() {
+            return "br";
+        }
+
+        @Override
+        public InputStream decode(InputStream source) {
+            return new BrotliSource(source);
+        }
+    };
+
+    ContentDecoder ZSTD = new ContentDecoder() {
+        @Override
+        public String encoding() {
+            return "zstd";
+        }
+
+        @Override
+        public InputStream decode(InputStream source) {
+            return new ZstdSource(source);
+        }
+    };
+
+    /**
+     * Returns the name of the coding, as it appears in {@code Content-Encoding}. Names are
+     * compared case-insensitively.
+     */
+    String encoding();
+
+    /**
+     * Returns a stream of the decoded content of {@code source}. Closing the returned stream must
+     * close {@code source}.
+     */
+    InputStream decode(InputStream source) throws IOException;
+}
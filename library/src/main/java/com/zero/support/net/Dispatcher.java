@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net;
+
+
+import com.zero.support.net.RealCall.AsyncCall;
+import com.zero.support.net.internal.Util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Policy on when async requests are executed.
+ *
+ * <p>Each dispatcher uses an {@link ExecutorService} to run calls internally. If you supply your
+ * own executor, it should be able to run {@linkplain #getMaxRequests the configured maximum} number
+ * of calls concurrently.
+ */
+public final class Dispatcher {
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 5;
+    private Runnable idleCallback;
+
+    /**
+     * Executes calls. Created lazily.
+     */
+    private ExecutorService executorService;
+
+    /**
+     * Ready async calls in the order they'll be run.
+     */
+    private final Deque<AsyncCall> readyAsyncCalls = new ArrayDeque<>();
+
+    /**
+     * Running asynchronous calls. Includes canceled calls that haven't finished yet.
+     */
+    private final Deque<AsyncCall> runningAsyncCalls = new ArrayDeque<>();
+
+    /**
+     * Running synchronous calls, and asynchronous calls on the {@link Engine#NIO} engine which don't
+     * occupy a thread. Includes canceled calls that haven't finished yet. A set, since there may be
+     * tens of thousands of these and each one removes itself when it finishes.
+     */
+    private final Collection<RealCall> runningSyncCalls = new LinkedHashSet<>();
+
+    /**
+     * Calls whose response body is still being read. Held weakly so that an unclosed body doesn't
+     * pin its call.
+     */
+    private final Set<RealCall> streamingCalls =
+            Collections.newSetFromMap(new WeakHashMap<RealCall, Boolean>());
+
+    public Dispatcher(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public Dispatcher() {
+    }
+
+    public synchronized ExecutorService executorService() {
+        if (executorService == null) {
+            executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), Util.threadFactory("Net Dispatcher", false));
+        }
+        return executorService;
+    }
+
+    /**
+     * Set the maximum number of requests to execute concurrently. Above this requests queue in
+     * memory, waiting for the running calls to complete.
+     *
+     * <p>If more than {@code maxRequests} requests are in flight when this is invoked, those requests
+     * will remain in flight.
+     */
+    public void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxRequests);
+        }
+        synchronized (this) {
+            this.maxRequests = maxRequests;
+        }
+        promoteAndExecute();
+    }
+
+    public synchronized int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Set the maximum number of requests for each host to execute concurrently. This limits requests
+     * by the URL's host name. Note that concurrent requests to a single IP address may still exceed
+     * this limit: multiple hostnames may share an IP address or be routed through the same HTTP
+     * proxy.
+     *
+     * <p>If more than {@code maxRequestsPerHost} requests are in flight when this is invoked, those
+     * requests will remain in flight.
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxRequestsPerHost);
+        }
+        synchronized (this) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+        promoteAndExecute();
+    }
+
+    public synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Set a callback to be invoked each time the dispatcher becomes idle (when the number of running
+     * calls returns to zero).
+     *
+     * <p>Note: The time at which a {@linkplain Call call} is considered idle is different depending
+     * on whether it was run {@linkplain Call#enqueue(Callback) asynchronously} or
+     * {@linkplain Call#execute() synchronously}. Asynchronous calls become idle after the
+     * {@link Callback#onResponse onResponse} or {@link Callback#onFailure onFailure} callback has
+     * returned. Synchronous calls become idle once {@link Call#execute() execute()} returns. This
+     * means that if you are doing synchronous calls the network layer will not truly be idle until
+     * every returned {@link Response} has been closed.
+     */
+    public synchronized void setIdleCallback(Runnable idleCallback) {
+        this.idleCallback = idleCallback;
+    }
+
+    void enqueue(AsyncCall call) {
+        synchronized (this) {
+            readyAsyncCalls.add(call);
+
+            // Mutate the AsyncCall so that it shares the AtomicInteger of an existing running call to
+            // the same host.
+            AsyncCall existingCall = findExistingCallWithHost(call.host());
+            if (existingCall != null) call.reuseCallsPerHostFrom(existingCall);
+        }
+        promoteAndExecute();
+    }
+
+    private AsyncCall findExistingCallWithHost(String host) {
+        for (AsyncCall existingCall : runningAsyncCalls) {
+            if (existingCall.host().equals(host)) return existingCall;
+        }
+        for (AsyncCall existingCall : readyAsyncCalls) {
+            if (existingCall.host().equals(host)) return existingCall;
+        }
+        return null;
+    }
+
+    /**
+     * Cancel all calls currently enqueued or executing. Includes calls executed both {@linkplain
+     * Call#execute() synchronously} and {@linkplain Call#enqueue asynchronously}, and calls whose
+     * response body is still being read.
+     */
+    public void cancelAll() {
+        cancel(null);
+    }
+
+    /**
+     * Cancels the calls that {@link #cancelAll()} would whose request has {@code tag} as its
+     * {@linkplain Request#tag() tag}. Their connections are closed right away, and canceled calls
+     * that are still queued run at once, bypassing the dispatcher's limits, to report their failure.
+     */
+    public void cancelAll(Object tag) {
+        if (tag == null) throw new NullPointerException("tag == null");
+        cancel(tag);
+    }
+
+    private void cancel(Object tag) {
+        List<RealCall> calls = new ArrayList<>();
+        synchronized (this) {
+            for (AsyncCall call : readyAsyncCalls) {
+                calls.add(call.get());
+            }
+            for (AsyncCall call : runningAsyncCalls) {
+                calls.add(call.get());
+            }
+            calls.addAll(runningSyncCalls);
+            calls.addAll(streamingCalls);
+        }
+        // Closing sockets can block; do it without holding the lock.
+        for (int i = 0, size = calls.size(); i < size; i++) {
+            RealCall call = calls.get(i);
+            if (tag == null || tag.equals(call.request().tag())) {
+                call.cancel();
+            }
+        }
+        promoteAndExecute();
+    }
+
+    /**
+     * Promotes eligible calls from {@link #readyAsyncCalls} to {@link #runningAsyncCalls} and runs
+     * them on the executor service. Must not be called with synchronization because executing calls
+     * can call into user code.
+     *
+     * <p>Calls whose host is already at {@link #getMaxRequestsPerHost} are skipped rather than
+     * blocking the queue, so a single slow host can't hold back calls to other hosts.
+     *
+     * @return true if the dispatcher is currently running calls.
+     */
+    private boolean promoteAndExecute() {
+        assert (!Thread.holdsLock(this));
+
+        List<AsyncCall> executableCalls = new ArrayList<>();
+        boolean isRunning;
+        synchronized (this) {
+            for (Iterator<AsyncCall> i = readyAsyncCalls.iterator(); i.hasNext(); ) {
+                AsyncCall asyncCall = i.next();
+
+                if (!asyncCall.get().isCanceled()) { // Canceled calls fail at once.
+                    if (runningAsyncCalls.size() >= maxRequests) continue; // Max capacity.
+                    if (asyncCall.callsPerHost().get() >= maxRequestsPerHost) continue; // Host max capacity.
+                }
+
+                i.remove();
+                asyncCall.callsPerHost().incrementAndGet();
+                executableCalls.add(asyncCall);
+                runningAsyncCalls.add(asyncCall);
+            }
+            isRunning = runningCallsCount() > 0;
+        }
+
+        for (int i = 0, size = executableCalls.size(); i < size; i++) {
+            AsyncCall asyncCall = executableCalls.get(i);
+            asyncCall.executeOn(executorService());
+        }
+
+        return isRunning;
+    }
+
+    /**
+     * Used by {@code Call#execute} and NIO {@code Call#enqueue} to signal it is in-flight.
+     */
+    synchronized void executed(RealCall call) {
+        runningSyncCalls.add(call);
+    }
+
+    /**
+     * Used by {@code Call#execute} and {@code Call#enqueue} to signal that the response body is
+     * being read.
+     */
+    synchronized void streaming(RealCall call) {
+        streamingCalls.add(call);
+    }
+
+    /**
+     * Used by {@code Call#execute} and {@code Call#enqueue} to signal that the response body has
+     * been consumed.
+     */
+    synchronized void streamFinished(RealCall call) {
+        streamingCalls.remove(call);
+    }
+
+    /**
+     * Used by {@code AsyncCall#run} to signal completion.
+     */
+    void finished(AsyncCall call) {
+        call.callsPerHost().decrementAndGet();
+        finished(runningAsyncCalls, call);
+    }
+
+    /**
+     * Used by {@code Call#execute} and NIO {@code Call#enqueue} to signal completion.
+     */
+    void finished(RealCall call) {
+        finished(runningSyncCalls, call);
+    }
+
+    private <T> void finished(Collection<T> calls, T call) {
+        Runnable idleCallback;
+        synchronized (this) {
+            if (!calls.remove(call)) throw new AssertionError("Call wasn't in-flight!");
+            idleCallback = this.idleCallback;
+        }
+
+        boolean isRunning = promoteAndExecute();
+
+        if (!isRunning && idleCallback != null) {
+            idleCallback.run();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the calls currently awaiting execution.
+     */
+    public synchronized List<Call> queuedCalls() {
+        List<Call> result = new ArrayList<>();
+        for (AsyncCall asyncCall : readyAsyncCalls) {
+            result.add(asyncCall.get());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns a snapshot of the calls currently being executed.
+     */
+    public synchronized List<Call> runningCalls() {
+        List<Call> result = new ArrayList<>();
+        result.addAll(runningSyncCalls);
+        for (AsyncCall asyncCall : runningAsyncCalls) {
+            result.add(asyncCall.get());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public synchronized int queuedCallsCount() {
+        return readyAsyncCalls.size();
+    }
+
+    public synchronized int runningCallsCount() {
+        return runningAsyncCalls.size() + runningSyncCalls.size();
+    }
+}
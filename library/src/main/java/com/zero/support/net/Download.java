@@ -0,0 +1,498 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.Util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Downloads a resource to a file over several connections at once. A {@code HEAD} request learns
+ * the resource's length and whether the server accepts {@code Range} requests; if it does, the file
+ * is preallocated and split into segments that are fetched in parallel and written in place.
+ * Otherwise the resource is downloaded over a single connection.
+ *
+ * <p>Progress is saved to a checkpoint file next to the target, {@code <file>.download}, so a
+ * download that fails or is canceled can be resumed by a new {@code Download} of the same request
+ * and file: only the missing part of each segment is fetched again. Resuming needs an {@code ETag}
+ * or {@code Last-Modified} validator, which is sent as {@code If-Range} so that a resource that
+ * changed in between is not stitched together from two versions.
+ *
+ * <pre>   {@code
+ *
+ *   Download download = client.newDownload(request, new File("artifact.zip"), 4);
+ *   download.execute();
+ * }</pre>
+ */
+public final class Download {
+    static final int DEFAULT_SEGMENTS = 4;
+
+    /**
+     * Resources are not split into segments smaller than this.
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * How many bytes are downloaded between checkpoints.
+     */
+    private static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;
+
+    private final HttpClient client;
+    private final Request request;
+    private final File file;
+    private final File checkpointFile;
+    private final int segmentCount;
+
+    // Guarded by this.
+    private boolean executed;
+    private boolean canceled;
+    /** True once a segment has failed; no further segment requests are made. */
+    private boolean segmentFailed;
+    private final List<Call> calls = new ArrayList<>();
+    private List<Segment> segments;
+    private long contentLength = -1L;
+    private long singleStreamBytes;
+    private long uncheckpointedBytes;
+
+    // Set once the resource has been probed.
+    private String url;
+    private String validator;
+    private FileChannel channel;
+
+    Download(HttpClient client, Request request, File file, int segmentCount) {
+        if (segmentCount < 1) throw new IllegalArgumentException("segmentCount < 1: " + segmentCount);
+        this.client = client;
+        this.request = request;
+        this.file = file;
+        this.checkpointFile = new File(file.getPath() + ".download");
+        this.segmentCount = segmentCount;
+    }
+
+    public Request request() {
+        return request;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Returns the length of the resource, or -1 if it isn't known yet.
+     */
+    public synchronized long contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Returns how many bytes of the resource are in the file, including those kept from an earlier
+     * attempt.
+     */
+    public synchronized long bytesDownloaded() {
+        if (segments == null) return singleStreamBytes;
+        long result = 0L;
+        for (Segment segment : segments) {
+            result += segment.position - segment.start;
+        }
+        return result;
+    }
+
+    /**
+     * Downloads the resource, blocking until the file is complete.
+     *
+     * @throws IOException if the download failed or was canceled. The checkpoint is kept so that
+     *     it can be resumed.
+     */
+    public File execute() throws IOException {
+        synchronized (this) {
+            if (executed) throw new IllegalStateException("Already Executed");
+            executed = true;
+        }
+
+        Call probeCall = newCall(request.newBuilder().head().build());
+        Response probe;
+        try {
+            probe = probeCall.execute();
+            Util.closeQuietly(probe.body());
+        } finally {
+            release(probeCall);
+        }
+        long length = parseLength(probe.header("Content-Length"));
+        url = request.url().toString();
+        validator = validator(probe);
+        synchronized (this) {
+            contentLength = length;
+        }
+
+        // Some servers refuse HEAD; the GET will tell whether the resource itself is there.
+        if (!probe.isSuccessful()
+                || length == -1L
+                || !"bytes".equalsIgnoreCase(probe.header("Accept-Ranges"))) {
+            checkpointFile.delete();
+            downloadSingleStream();
+            return file;
+        }
+
+        List<Segment> segments = readCheckpoint(length);
+        boolean resumed = segments != null;
+        if (!resumed) {
+            segments = split(length);
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (!resumed || randomAccessFile.length() != length) {
+                randomAccessFile.setLength(length);
+            }
+            channel = randomAccessFile.getChannel();
+            synchronized (this) {
+                this.segments = segments;
+            }
+            downloadSegments(segments);
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                if (channel != null) {
+                    channel.force(false); // Don't checkpoint bytes that aren't on disk yet.
+                    saveCheckpoint();
+                }
+            } catch (IOException ignored) {
+                // Without the bytes on disk the last checkpoint is the best we have.
+            }
+            throw e;
+        } finally {
+            Util.closeQuietly(randomAccessFile);
+        }
+        checkpointFile.delete();
+        return file;
+    }
+
+    /**
+     * Cancels the download. Segments that are in flight fail and the checkpoint is kept.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (canceled) return;
+            canceled = true;
+        }
+        cancelCalls();
+    }
+
+    private void cancelCalls() {
+        List<Call> toCancel;
+        synchronized (this) {
+            toCancel = new ArrayList<>(calls);
+        }
+        for (Call call : toCancel) {
+            call.cancel();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return canceled;
+    }
+
+    private List<Segment> split(long length) {
+        int count = (int) Math.max(1, Math.min(segmentCount, length / MIN_SEGMENT_SIZE));
+        List<Segment> result = new ArrayList<>(count);
+        long size = length / count;
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? length : start + size;
+            result.add(new Segment(start, end, start));
+        }
+        return result;
+    }
+
+    /**
+     * Fetches every incomplete segment, one on the calling thread and the rest on the dispatcher's
+     * executor, and throws the first failure once they have all stopped.
+     */
+    private void downloadSegments(List<Segment> segments) throws IOException {
+        final List<Segment> pending = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.position < segment.end) pending.add(segment);
+        }
+        if (pending.isEmpty()) return;
+
+        final Tracker tracker = new Tracker(pending.size());
+        for (int i = 1; i < pending.size(); i++) {
+            final Segment segment = pending.get(i);
+            try {
+                client.dispatcher().executorService().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A sibling already failed: the file can't be completed, don't start.
+                        tracker.finished(tracker.failed() ? null : download(segment));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                tracker.finished(new IOException("executor rejected", e));
+            }
+        }
+        tracker.finished(download(pending.get(0)));
+
+        IOException failure = tracker.await();
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Fetches the missing part of {@code segment}, returning the failure if it didn't complete.
+     */
+    private IOException download(Segment segment) {
+        Call call = null;
+        Response response = null;
+        try {
+            long position = segment.position;
+            Request.Builder rangeRequest = request.newBuilder()
+                    .header("Range", "bytes=" + position + "-" + (segment.end - 1));
+            if (validator != null) {
+                rangeRequest.header("If-Range", validator);
+            }
+            call = newCall(rangeRequest.build());
+            response = call.execute();
+            if (response.code() != 206) {
+                throw new ProtocolException("Expected a partial response for bytes " + position
+                        + "-" + (segment.end - 1) + " but was " + response.code());
+            }
+            String contentRange = response.header("Content-Range");
+            if (contentRange != null && !contentRange.startsWith("bytes " + position + "-")) {
+                throw new ProtocolException("Unexpected Content-Range: " + contentRange);
+            }
+
+            InputStream source = response.body().byteStream();
+            byte[] buffer = new byte[8192];
+            while (position < segment.end) {
+                int read = source.read(buffer, 0, (int) Math.min(buffer.length, segment.end - position));
+                if (read == -1) throw new EOFException("Segment ended " + (segment.end - position) + " bytes early");
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+                advance(segment, position);
+            }
+            return null;
+        } catch (IOException e) {
+            return isCanceled() ? new IOException("Canceled", e) : e;
+        } finally {
+            if (response != null) Util.closeQuietly(response.body());
+            if (call != null) release(call);
+        }
+    }
+
+    private void advance(Segment segment, long position) throws IOException {
+        boolean checkpoint;
+        synchronized (this) {
+            uncheckpointedBytes += position - segment.position;
+            segment.position = position;
+            checkpoint = uncheckpointedBytes >= CHECKPOINT_INTERVAL;
+            if (checkpoint) uncheckpointedBytes = 0L;
+        }
+        if (checkpoint) {
+            channel.force(false); // The checkpoint must not claim bytes that aren't on disk yet.
+            saveCheckpoint();
+        }
+    }
+
+    private void downloadSingleStream() throws IOException {
+        Call call = newCall(request);
+        try {
+            Response response = call.execute();
+            if (!response.isSuccessful()) {
+                Util.closeQuietly(response.body());
+                throw new IOException("Unexpected response: " + response.code() + " " + response.message());
+            }
+            response.body().writeTo(file, 0L, new ResponseBody.ProgressListener() {
+                @Override
+                public void onProgress(long bytesWritten, long contentLength) {
+                    synchronized (Download.this) {
+                        singleStreamBytes = bytesWritten;
+                    }
+                }
+            });
+        } finally {
+            release(call);
+        }
+    }
+
+    /**
+     * Returns a call for {@code request} that {@link #cancel} reaches until it is released, which
+     * must be after its response body is closed.
+     */
+    private Call newCall(Request request) throws IOException {
+        Call call = client.newCall(request);
+        synchronized (this) {
+            if (canceled || segmentFailed) throw new IOException("Canceled");
+            calls.add(call);
+        }
+        return call;
+    }
+
+    private synchronized void release(Call call) {
+        calls.remove(call);
+    }
+
+    /**
+     * Returns the segments saved by an earlier download of the same resource, or null if there
+     * are none that can be trusted.
+     */
+    private List<Segment> readCheckpoint(long length) {
+        if (validator == null || !checkpointFile.exists() || !file.exists()) return null;
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(checkpointFile);
+            properties.load(in);
+            if (!url.equals(properties.getProperty("url"))
+                    || !validator.equals(properties.getProperty("validator"))
+                    || length != Long.parseLong(properties.getProperty("length"))) {
+                return null;
+            }
+            int count = Integer.parseInt(properties.getProperty("segments"));
+            List<Segment> result = new ArrayList<>(count);
+            long expectedStart = 0L;
+            for (int i = 0; i < count; i++) {
+                String[] parts = properties.getProperty("segment." + i).split(",");
+                Segment segment = new Segment(
+                        Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                if (segment.start != expectedStart || segment.end < segment.start
+                        || segment.position < segment.start || segment.position > segment.end) {
+                    return null;
+                }
+                expectedStart = segment.end;
+                result.add(segment);
+            }
+            return expectedStart == length ? result : null;
+        } catch (IOException | RuntimeException e) {
+            return null; // A damaged checkpoint; start over.
+        } finally {
+            Util.closeQuietly(in);
+        }
+    }
+
+    private void saveCheckpoint() {
+        if (validator == null) return; // It couldn't be resumed safely.
+        Properties properties = new Properties();
+        synchronized (this) {
+            if (segments == null) return;
+            properties.setProperty("url", url);
+            properties.setProperty("validator", validator);
+            properties.setProperty("length", Long.toString(contentLength));
+            properties.setProperty("segments", Integer.toString(segments.size()));
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                properties.setProperty("segment." + i,
+                        segment.start + "," + segment.end + "," + segment.position);
+            }
+        }
+        // Written aside and renamed so that a crash can't leave a half-written checkpoint.
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            properties.store(out, null);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(checkpointFile)) {
+                checkpointFile.delete();
+                temp.renameTo(checkpointFile);
+            }
+        } catch (IOException ignored) {
+            // The download can still finish; it just can't resume from here.
+        } finally {
+            Util.closeQuietly(out);
+        }
+    }
+
+    private static long parseLength(String value) {
+        if (value == null) return -1L;
+        try {
+            long result = Long.parseLong(value.trim());
+            return result >= 0 ? result : -1L;
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Returns a strong validator for {@code If-Range}, or null if the response has none. Weak
+     * entity tags aren't allowed there.
+     */
+    private static String validator(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * A byte range {@code [start, end)} of the file, downloaded up to {@code position}.
+     */
+    private static final class Segment {
+        final long start;
+        final long end;
+        long position;
+
+        Segment(long start, long end, long position) {
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Waits for every segment to stop, keeping the first failure. A failure cancels the rest of
+     * the download, since the file can't be completed without the failed segment.
+     */
+    private final class Tracker {
+        private int running;
+        private IOException failure;
+
+        Tracker(int running) {
+            this.running = running;
+        }
+
+        void finished(IOException e) {
+            boolean first;
+            synchronized (this) {
+                running--;
+                first = e != null && failure == null;
+                if (first) failure = e;
+                notifyAll();
+            }
+            if (first) {
+                synchronized (Download.this) {
+                    segmentFailed = true;
+                }
+                cancelCalls();
+            }
+        }
+
+        synchronized boolean failed() {
+            return failure != null;
+        }
+
+        synchronized IOException await() throws InterruptedIOException {
+            try {
+                while (running > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new InterruptedIOException("interrupted");
+            }
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.zero.support.net;
+
+/**
+ * The transport used by {@link HttpClient} to carry calls to the network.
+ */
+public enum Engine {
+    /**
+     * Delegates each exchange to the platform's {@link java.net.HttpURLConnection}. Connection reuse
+     * is handled (or not) by the platform and cannot be observed or configured.
+     */
+    URL_CONNECTION,
+
+    /**
+     * Speaks HTTP/1.1 or HTTP/2 directly over sockets created by {@link HttpClient#socketFactory}
+     * and {@link HttpClient#sslSocketFactory}. Connections are kept alive and reused through the
+     * client's {@link ConnectionPool}; HTTP/2 connections carry concurrent calls to the same host
+     * as streams on one socket. See {@link HttpClient.Builder#protocols}.
+     */
+    SOCKET,
+
+    /**
+     * Speaks HTTP/1.1 over non-blocking {@link java.nio.channels.SocketChannel}s serviced by a few
+     * shared selector threads, with {@link javax.net.ssl.SSLEngine} for TLS (configured through
+     * {@link HttpClient.Builder#sslContext}). No thread waits on the network, so tens of thousands
+     * of {@linkplain Call#enqueue enqueued} calls can be in flight at once.
+     *
+     * <p>Request and response bodies are buffered in memory, responses up to {@link
+     * HttpClient.Builder#maxResponseBufferSize}, so this engine suits many small exchanges rather
+     * than large transfers. Connections per host are capped at {@link
+     * Dispatcher#getMaxRequestsPerHost()}; further calls to that host wait for a free connection.
+     */
+    NIO
+}
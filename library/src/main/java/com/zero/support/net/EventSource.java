@@ -0,0 +1,320 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.NamedRunnable;
+import com.zero.support.net.internal.ServerSentEventReader;
+import com.zero.support.net.internal.Util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">server-sent
+ * events</a> from a {@code text/event-stream} resource. Events are parsed as the response body
+ * streams in, and are read either one at a time with {@link #next()} or delivered to a {@link
+ * Listener} on a dispatcher thread:
+ *
+ * <pre>   {@code
+ *
+ *   EventSource events = client.newEventSource(request);
+ *   for (EventSource.Event event; (event = events.next()) != null; ) {
+ *     handle(event.data());
+ *   }
+ * }</pre>
+ *
+ * <p>When the stream ends or its connection fails, the event source reconnects after the delay
+ * the server asked for with {@code retry:}, 3 seconds by default, and sends the ID of the last
+ * event it received as {@code Last-Event-ID} so that the server can resume the stream. It stops
+ * when it is canceled, when the server answers {@code 204 No Content}, or when the server answers
+ * with anything other than a {@code 200} event stream, which is reported as a failure.
+ *
+ * <p>The client's read timeout applies between the bytes of the stream; a stream that is idle for
+ * longer reconnects. Servers usually send comments periodically to keep streams alive, or the
+ * client can be built with a longer read timeout. Clients on the {@link Engine#NIO} engine stream
+ * events over the {@link Engine#SOCKET} engine, since NIO buffers whole response bodies.
+ */
+public final class EventSource implements Closeable {
+    static final long DEFAULT_RETRY_MILLIS = 3000L;
+
+    private final HttpClient client;
+    private final Request request;
+    private final ServerSentEventReader.Callback callback = new ServerSentEventReader.Callback() {
+        @Override
+        public void onEvent(String id, String type, String data) {
+            pendingEvent = new Event(id, type != null ? type : "message", data);
+        }
+
+        @Override
+        public void onRetryChange(long timeMillis) {
+            retryMillis = timeMillis;
+        }
+    };
+
+    // Guarded by this.
+    private boolean started;
+    private boolean canceled;
+    private Call call;
+
+    // Confined to the thread that reads events.
+    private Listener listener;
+    private Response response;
+    private ServerSentEventReader reader;
+    private Event pendingEvent;
+    private boolean reconnecting;
+    private boolean closed;
+    private volatile long retryMillis = DEFAULT_RETRY_MILLIS;
+    private volatile String lastEventId;
+
+    EventSource(HttpClient client, Request request) {
+        // The NIO engine delivers bodies once they are complete, which an event stream never is.
+        this.client = client.engine() == Engine.NIO
+                ? client.newBuilder().engine(Engine.SOCKET).build()
+                : client;
+        this.request = request;
+    }
+
+    public Request request() {
+        return request;
+    }
+
+    /**
+     * Returns the ID of the last event received, which is sent as {@code Last-Event-ID} when the
+     * stream reconnects, or null if the server hasn't sent one.
+     */
+    public String lastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Returns the next event, connecting or reconnecting as needed, or null once the event source
+     * is canceled or the server closed the stream with {@code 204 No Content}.
+     *
+     * @throws ProtocolException if the server answers with anything other than an event stream.
+     *                           The event source is closed afterwards.
+     */
+    public Event next() throws IOException {
+        while (!closed) {
+            if (reader == null && !connect()) break;
+            pendingEvent = null;
+            boolean dispatched;
+            try {
+                dispatched = reader.processNextEvent();
+            } catch (IOException e) {
+                dispatched = false; // Reconnect, unless the failure is a cancellation.
+            }
+            lastEventId = reader.lastEventId();
+            if (dispatched) return pendingEvent;
+            closeResponse();
+            reconnecting = true;
+        }
+        closed = true;
+        closeResponse();
+        return null;
+    }
+
+    /**
+     * Connects to the event stream, retrying failed attempts. Returns false if the event source
+     * is canceled or closed by the server.
+     */
+    private boolean connect() throws IOException {
+        while (true) {
+            if (reconnecting && !awaitRetry()) return false;
+            reconnecting = true;
+
+            Request.Builder builder = request.newBuilder()
+                    .header("Accept", "text/event-stream")
+                    .header("Cache-Control", "no-cache");
+            String lastEventId = this.lastEventId;
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                builder.header("Last-Event-ID", lastEventId);
+            }
+            if (request.callTimeoutMillis() == -1) {
+                builder.callTimeout(0, TimeUnit.MILLISECONDS); // Streams run as long as they need.
+            }
+            Call call = client.newCall(builder.build());
+            synchronized (this) {
+                if (canceled) return false;
+                this.call = call;
+            }
+
+            Response response;
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                if (isCanceled()) return false;
+                continue;
+            }
+            if (response.code() == 204) {
+                Util.closeQuietly(response.body());
+                return false;
+            }
+            MediaType contentType = MediaType.parse(response.header("Content-Type", ""));
+            if (response.code() != 200 || response.body() == null || contentType == null
+                    || !"text".equals(contentType.type()) || !"event-stream".equals(contentType.subtype())) {
+                Util.closeQuietly(response.body());
+                closed = true;
+                throw new ProtocolException("Expected a 200 text/event-stream response but was "
+                        + response.code() + " " + contentType);
+            }
+            this.response = response;
+            this.reader = new ServerSentEventReader(response.body().source(), lastEventId, callback);
+            if (listener != null) listener.onOpen(this, response);
+            return true;
+        }
+    }
+
+    /**
+     * Waits for the reconnection delay. Returns false if the event source is canceled meanwhile.
+     */
+    private synchronized boolean awaitRetry() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        try {
+            for (long remaining; !canceled && (remaining = deadline - System.nanoTime()) > 0; ) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+        return !canceled;
+    }
+
+    private void closeResponse() {
+        reader = null;
+        if (response != null) {
+            Util.closeQuietly(response);
+            response = null;
+        }
+    }
+
+    /**
+     * Reads events on a dispatcher thread and delivers them to {@code listener}, until the event
+     * source is canceled or closed. Events must be read either this way or with {@link #next()},
+     * not both.
+     *
+     * @throws IllegalStateException if this event source has already been started.
+     */
+    public void start(final Listener listener) {
+        if (listener == null) throw new IllegalArgumentException("listener == null");
+        synchronized (this) {
+            if (started) throw new IllegalStateException("Already started");
+            started = true;
+        }
+        client.dispatcher().executorService().execute(new NamedRunnable("Net EventSource %s", request.url()) {
+            @Override
+            protected void execute() {
+                EventSource.this.listener = listener;
+                try {
+                    for (Event event; (event = next()) != null; ) {
+                        listener.onEvent(EventSource.this, event);
+                    }
+                    listener.onClosed(EventSource.this);
+                } catch (IOException e) {
+                    listener.onFailure(EventSource.this, e);
+                } finally {
+                    closeResponse();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops receiving events, immediately closing the stream's connection. A blocked {@link
+     * #next()} returns null.
+     */
+    public void cancel() {
+        Call call;
+        synchronized (this) {
+            if (canceled) return;
+            canceled = true;
+            call = this.call;
+            notifyAll();
+        }
+        if (call != null) call.cancel();
+    }
+
+    public synchronized boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Cancels this event source.
+     */
+    @Override
+    public void close() {
+        cancel();
+    }
+
+    /**
+     * A server-sent event.
+     */
+    public static final class Event {
+        private final String id;
+        private final String type;
+        private final String data;
+
+        Event(String id, String type, String data) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+
+        /**
+         * Returns the ID of this event, or of the last event that had one, or null.
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Returns the event's type, {@code message} unless the server named another.
+         */
+        public String type() {
+            return type;
+        }
+
+        /**
+         * Returns the event's data, with the lines of multi-line data joined by {@code '\n'}.
+         */
+        public String data() {
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return "Event{id=" + id + ", type=" + type + ", data=" + data + "}";
+        }
+    }
+
+    /**
+     * Receives the events of an event source started with {@link #start}. Methods are called on
+     * the event source's dispatcher thread, one at a time.
+     */
+    public abstract static class Listener {
+        /**
+         * Called each time the event source connects, before the events of the connection.
+         */
+        public void onOpen(EventSource eventSource, Response response) {
+        }
+
+        public void onEvent(EventSource eventSource, Event event) {
+        }
+
+        /**
+         * Called when the event source stops without an error: it was canceled, or the server
+         * answered {@code 204 No Content}.
+         */
+        public void onClosed(EventSource eventSource) {
+        }
+
+        /**
+         * Called when the server answers with anything other than an event stream. The event
+         * source stops afterwards.
+         */
+        public void onFailure(EventSource eventSource, IOException e) {
+        }
+    }
+}
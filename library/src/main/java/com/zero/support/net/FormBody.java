@@ -18,7 +18,6 @@ package com.zero.support.net;
 
 import com.zero.support.net.internal.Util;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
@@ -34,12 +33,6 @@ import java.util.Set;
 public final class FormBody extends RequestBody {
     public static final com.zero.support.net.MediaType CONTENT_TYPE = com.zero.support.net.MediaType.get("application/x-www-form-urlencoded");
     static final String FORM_ENCODE_SET = " \"':;<=>@[]^`{}|/\\?#&!$(),~";
-    static final OutputStream EMPTY_OUTPUT_STREAM = new OutputStream() {
-        @Override
-        public void write(int b) throws IOException {
-
-        }
-    };
     private final List<String> encodedNames;
     private final List<String> encodedValues;
 
@@ -70,30 +63,31 @@ public final class FormBody extends RequestBody {
     }
 
     @Override
-    public long contentLength() throws IOException {
-        return writeOrCountBytes(null);
+    public long contentLength() {
+        // Encoded names and values are ASCII, so each char is one byte.
+        long result = 0L;
+        for (int i = 0, size = encodedNames.size(); i < size; i++) {
+            if (i > 0) result++;
+            result += encodedNames.get(i).length() + 1 + encodedValues.get(i).length();
+        }
+        return result;
     }
 
 
     @Override
     public void writeTo(OutputStream stream) throws IOException {
-        writeOrCountBytes(stream);
-    }
-
-    private long writeOrCountBytes(OutputStream outputStream) throws IOException {
-        DataOutputStream output;
-        if (outputStream == null) {
-            output = new DataOutputStream(EMPTY_OUTPUT_STREAM);
-        } else {
-            output = new DataOutputStream(outputStream);
-        }
-        for (int i = 0, size = encodedNames.size(); i < size; i++) {
-            if (i > 0) output.writeByte('&');
-            output.writeBytes(encodedNames.get(i));
-            output.writeByte('=');
-            output.writeBytes(encodedValues.get(i));
+        Buffer buffer = new Buffer();
+        try {
+            for (int i = 0, size = encodedNames.size(); i < size; i++) {
+                if (i > 0) buffer.writeByte('&');
+                buffer.writeAscii(encodedNames.get(i));
+                buffer.writeByte('=');
+                buffer.writeAscii(encodedValues.get(i));
+            }
+            buffer.writeTo(stream);
+        } finally {
+            buffer.close();
         }
-        return output.size();
     }
 
     /**
@@ -0,0 +1,178 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.TimerWheel;
+import com.zero.support.net.internal.Util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedges idempotent requests as configured by the client's {@link HedgingPolicy}. Each copy of the
+ * request is a separate attempt through the rest of the interceptor chain: the first runs on the
+ * calling thread and the hedge, if any, on the dispatcher's executor.
+ */
+final class HedgingInterceptor implements Interceptor {
+    private final HedgingPolicy policy;
+    private final Dispatcher dispatcher;
+    /**
+     * The position of the interceptor after this one in the client's chain.
+     */
+    private final int next;
+
+    HedgingInterceptor(HedgingPolicy policy, Dispatcher dispatcher, int next) {
+        this.policy = policy;
+        this.dispatcher = dispatcher;
+        this.next = next;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!HttpMethod.isIdempotent(request.method())
+                || request.body() != null
+                || !(chain.call() instanceof RealCall)) {
+            return chain.proceed(request);
+        }
+        policy.budget.deposit();
+        return new Race((RealCall) chain.call(), request).execute();
+    }
+
+    /**
+     * The attempts of one call, racing for the first response.
+     */
+    private final class Race implements Runnable {
+        private final RealCall call;
+        private final Request request;
+        private final long startNanos = System.nanoTime();
+
+        // Guarded by this.
+        private boolean primaryDone;
+        private RealCall primary;
+        private RealCall hedge;
+        private boolean hedgeDone;
+        private Response winner;
+
+        Race(RealCall call, Request request) {
+            this.call = call;
+            this.request = request;
+        }
+
+        Response execute() throws IOException {
+            RealCall primary = call.newAttempt(request, next);
+            synchronized (this) {
+                this.primary = primary;
+            }
+            TimerWheel.Timeout timeout = TimerWheel.get().schedule(
+                    this, policy.hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = primary.executeAttempt();
+                recordLatency(startNanos);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                timeout.cancel();
+            }
+
+            RealCall loser = null;
+            synchronized (this) {
+                primaryDone = true;
+                if (response != null) {
+                    if (winner != null) {
+                        Util.closeQuietly(response.body()); // The hedge beat us to it.
+                        return winner;
+                    }
+                    winner = response;
+                    loser = hedge;
+                } else {
+                    awaitHedge();
+                    if (winner == null) throw failure;
+                    return winner;
+                }
+            }
+            if (loser != null) loser.cancel();
+            return response;
+        }
+
+        private void awaitHedge() throws InterruptedIOException {
+            try {
+                while (hedge != null && !hedgeDone) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted");
+            }
+        }
+
+        /**
+         * Sends the hedge once the delay elapses. This runs on the timer thread so it must not
+         * block.
+         */
+        @Override
+        public void run() {
+            final RealCall hedge;
+            synchronized (this) {
+                if (primaryDone || call.isCanceled() || !policy.budget.tryAcquire()) return;
+                hedge = call.newAttempt(request, next);
+                this.hedge = hedge;
+            }
+            try {
+                dispatcher.executorService().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runHedge(hedge);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                hedgeFinished(null);
+            }
+        }
+
+        private void runHedge(RealCall hedge) {
+            long hedgeStartNanos = System.nanoTime();
+            Response response = null;
+            try {
+                response = hedge.executeAttempt();
+                recordLatency(hedgeStartNanos);
+            } catch (IOException ignored) {
+                // The primary's outcome stands.
+            }
+            hedgeFinished(response);
+        }
+
+        /**
+         * Samples the time to response headers of an attempt started at {@code attemptStartNanos}.
+         * Every attempt that gets a response is sampled, winner or not, so that the percentile
+         * isn't skewed toward the faster of each pair.
+         */
+        private void recordLatency(long attemptStartNanos) {
+            policy.recordLatency(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attemptStartNanos));
+        }
+
+        /**
+         * Records the hedge's outcome.
+         */
+        private void hedgeFinished(Response response) {
+            RealCall loser = null;
+            synchronized (this) {
+                hedgeDone = true;
+                notifyAll();
+                if (response != null) {
+                    if (winner != null) {
+                        Util.closeQuietly(response.body());
+                        return;
+                    }
+                    winner = response;
+                    loser = primary;
+                }
+            }
+            if (loser != null) loser.cancel();
+        }
+    }
+}
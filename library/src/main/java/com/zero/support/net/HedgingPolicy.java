@@ -0,0 +1,145 @@
+package com.zero.support.net;
+
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures hedged requests, which trade a little extra load for a shorter latency tail. If an
+ * idempotent request without a body hasn't received its response headers within the hedging delay,
+ * a second copy is sent; the call takes whichever response arrives first and cancels the other.
+ *
+ * <p>The delay is either fixed or a percentile of the time to response headers of recent calls, so
+ * that only the slowest calls are hedged. Until enough calls have been observed the fixed delay is
+ * used. Every attempt that receives its headers is sampled, hedges and late losers included; an
+ * attempt canceled because the other copy won isn't, so the percentile still leans slightly low.
+ *
+ * <p>Hedges are limited by a budget so that a slow server doesn't see its load doubled. It works
+ * like the {@link RetryPolicy} budget: every hedgeable call deposits {@code tokenRatio} tokens up
+ * to {@code maxTokens}, and every hedge withdraws one. Clients built with the same policy share
+ * its budget and latency history.
+ *
+ * <pre>   {@code
+ *
+ *   HttpClient client = new HttpClient.Builder()
+ *       .hedgingPolicy(new HedgingPolicy.Builder()
+ *           .delayPercentile(95)
+ *           .build())
+ *       .build();
+ * }</pre>
+ */
+public final class HedgingPolicy {
+    /**
+     * How often the percentile delay is recomputed, in samples.
+     */
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    final long delayMillis;
+    final double percentile;
+    final int minSamples;
+    final TokenBucket budget;
+
+    // Guarded by this.
+    private final long[] samples;
+    private int sampleCount;
+    private int nextSample;
+    private long percentileMillis = -1;
+
+    HedgingPolicy(Builder builder) {
+        this.delayMillis = builder.delayMillis;
+        this.percentile = builder.percentile;
+        this.minSamples = Math.min(builder.minSamples, builder.windowSize);
+        this.samples = new long[builder.windowSize];
+        this.budget = new TokenBucket(builder.maxTokens, builder.tokenRatio);
+    }
+
+    /**
+     * Returns how many hedges the budget currently allows.
+     */
+    public int availableHedges() {
+        return budget.available();
+    }
+
+    /**
+     * Returns how long to wait for response headers before hedging the next call.
+     */
+    public synchronized long hedgeDelayMillis() {
+        return percentileMillis != -1 ? percentileMillis : delayMillis;
+    }
+
+    /**
+     * Records how long an attempt waited for its response headers.
+     */
+    synchronized void recordLatency(long millis) {
+        if (percentile == 0) return;
+        samples[nextSample] = millis;
+        nextSample = (nextSample + 1) % samples.length;
+        if (sampleCount < samples.length) sampleCount++;
+        if (sampleCount >= minSamples && (percentileMillis == -1 || nextSample % RECOMPUTE_INTERVAL == 0)) {
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            percentileMillis = sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+        }
+    }
+
+    public static final class Builder {
+        long delayMillis = 100;
+        double percentile;
+        int windowSize = 128;
+        int minSamples = 32;
+        int maxTokens = 10;
+        double tokenRatio = 0.1;
+
+        /**
+         * Sets the fixed hedging delay. With {@link #delayPercentile} it only applies until enough
+         * calls have been observed. The default is 100 milliseconds.
+         */
+        public Builder delay(long delay, TimeUnit unit) {
+            if (delay < 0) throw new IllegalArgumentException("delay < 0: " + delay);
+            this.delayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Hedge calls that take longer than {@code percentile} percent of recent calls to receive
+         * their response headers, like 95 to hedge the slowest 5%.
+         */
+        public Builder delayPercentile(double percentile) {
+            if (!(percentile > 0 && percentile < 100)) {
+                throw new IllegalArgumentException("percentile not in (0, 100): " + percentile);
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets how many recent calls the percentile is taken over and how many must be observed
+         * before it is used. The defaults are 128 and 32.
+         */
+        public Builder latencyWindow(int windowSize, int minSamples) {
+            if (windowSize < 1) throw new IllegalArgumentException("windowSize < 1: " + windowSize);
+            if (minSamples < 1) throw new IllegalArgumentException("minSamples < 1: " + minSamples);
+            this.windowSize = windowSize;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Configures the hedge budget: it holds at most {@code maxTokens} hedges and gains {@code
+         * tokenRatio} of a hedge for each hedgeable call. The defaults are 10 and 0.1, so that
+         * beyond an initial burst of 10, hedging adds at most 10% to the traffic.
+         */
+        public Builder hedgeBudget(int maxTokens, double tokenRatio) {
+            if (maxTokens < 0) throw new IllegalArgumentException("maxTokens < 0: " + maxTokens);
+            if (!(tokenRatio >= 0)) throw new IllegalArgumentException("tokenRatio < 0: " + tokenRatio);
+            this.maxTokens = maxTokens;
+            this.tokenRatio = tokenRatio;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
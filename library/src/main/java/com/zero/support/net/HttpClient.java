@@ -16,11 +16,19 @@
 package com.zero.support.net;
 
 
+import com.zero.support.net.internal.BridgeInterceptor;
+import com.zero.support.net.internal.CacheInterceptor;
+import com.zero.support.net.internal.SocketEngine;
 import com.zero.support.net.internal.Util;
+import com.zero.support.net.internal.nio.NioEngine;
+import com.zero.support.net.internal.ws.RealWebSocket;
 
+import java.io.File;
 import java.net.Proxy;
 import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -32,27 +40,56 @@ import javax.net.ssl.X509TrustManager;
 
 
 public class HttpClient implements Cloneable, Call.Factory {
+    static final List<Protocol> DEFAULT_PROTOCOLS = Util.immutableList(
+            Protocol.HTTP_2, Protocol.HTTP_1_1);
+
+    final Dispatcher dispatcher;
     final List<Interceptor> interceptors;
     final List<Interceptor> networkInterceptors;
+    /**
+     * Application interceptors, the cache and network interceptors, in the order every call runs
+     * them. Each call appends its own server interceptor.
+     */
+    final Interceptor[] interceptorChain;
+    /**
+     * The chain's bridge, which NIO calls that skip the chain apply themselves.
+     */
+    final BridgeInterceptor bridgeInterceptor;
     final SocketFactory socketFactory;
     final SSLSocketFactory sslSocketFactory;
+    final SSLContext sslContext;
     final javax.net.ssl.HostnameVerifier hostnameVerifier;
-
+    final Engine engine;
+    final ConnectionPool connectionPool;
+    final List<Protocol> protocols;
+    final SocketEngine socketEngine;
+    final NioEngine nioEngine;
 
     final boolean followSslRedirects;
     final boolean followRedirects;
     final boolean retryOnConnectionFailure;
+    final RetryPolicy retryPolicy;
+    final HedgingPolicy hedgingPolicy;
+    final List<ContentDecoder> contentDecoders;
+    final BodyBuffer bodyBuffer;
+    final Cache cache;
     final int callTimeout;
     final int connectTimeout;
     final int readTimeout;
     final int writeTimeout;
+    final int pingInterval;
+    final boolean tcpNoDelay;
+    final int socketSendBufferSize;
+    final int socketReceiveBufferSize;
+    final int requestChunkSize;
+    final long maxResponseBufferSize;
 
     public HttpClient() {
         this(new Builder());
     }
 
     HttpClient(Builder builder) {
-
+        this.dispatcher = builder.dispatcher;
         this.interceptors = Util.immutableList(builder.interceptors);
         this.networkInterceptors = Util.immutableList(builder.networkInterceptors);
 
@@ -62,14 +99,31 @@ public class HttpClient implements Cloneable, Call.Factory {
         } else {
             this.sslSocketFactory = null;
         }
+        this.sslContext = builder.sslContext;
         this.hostnameVerifier = builder.hostnameVerifier;
+        this.engine = builder.engine;
+        this.connectionPool = builder.connectionPool;
+        this.protocols = Util.immutableList(builder.protocols);
         this.followSslRedirects = builder.followSslRedirects;
         this.followRedirects = builder.followRedirects;
         this.retryOnConnectionFailure = builder.retryOnConnectionFailure;
+        this.retryPolicy = builder.retryPolicy;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.contentDecoders = Util.immutableList(builder.contentDecoders);
+        this.bodyBuffer = builder.bodyBuffer;
+        this.cache = builder.cache;
         this.callTimeout = builder.callTimeout;
         this.connectTimeout = builder.connectTimeout;
         this.readTimeout = builder.readTimeout;
         this.writeTimeout = builder.writeTimeout;
+        this.pingInterval = builder.pingInterval;
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.socketSendBufferSize = builder.socketSendBufferSize;
+        this.socketReceiveBufferSize = builder.socketReceiveBufferSize;
+        this.requestChunkSize = builder.requestChunkSize;
+        this.maxResponseBufferSize = builder.maxResponseBufferSize;
+        this.socketEngine = new SocketEngine(this, connectionPool.delegate);
+        this.nioEngine = new NioEngine(this, connectionPool.nioDelegate);
 
         if (interceptors.contains(null)) {
             throw new IllegalStateException("Null interceptor: " + interceptors);
@@ -77,6 +131,20 @@ public class HttpClient implements Cloneable, Call.Factory {
         if (networkInterceptors.contains(null)) {
             throw new IllegalStateException("Null network interceptor: " + networkInterceptors);
         }
+
+        List<Interceptor> chain = new ArrayList<>(interceptors.size() + 4 + networkInterceptors.size());
+        chain.addAll(interceptors);
+        if (retryPolicy != null) {
+            chain.add(new RetryInterceptor(this, retryPolicy));
+        }
+        if (hedgingPolicy != null) {
+            chain.add(new HedgingInterceptor(hedgingPolicy, dispatcher, chain.size() + 1));
+        }
+        this.bridgeInterceptor = new BridgeInterceptor(contentDecoders);
+        chain.add(bridgeInterceptor);
+        chain.add(new CacheInterceptor(cache != null ? cache.internalCache : null));
+        chain.addAll(networkInterceptors);
+        this.interceptorChain = chain.toArray(new Interceptor[chain.size()]);
     }
 
     private static SSLSocketFactory newSslSocketFactory(X509TrustManager trustManager) {
@@ -118,16 +186,85 @@ public class HttpClient implements Cloneable, Call.Factory {
         return writeTimeout;
     }
 
+    /**
+     * Web socket ping interval (in milliseconds). The default is 0, which disables client-initiated
+     * pings.
+     */
+    public int pingIntervalMillis() {
+        return pingInterval;
+    }
+
+
+    /**
+     * Whether sockets opened by the {@link Engine#SOCKET} engine disable Nagle's algorithm. The
+     * default is true.
+     */
+    public boolean tcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * The {@code SO_SNDBUF} size for sockets opened by the {@link Engine#SOCKET} engine, or 0 to use
+     * the platform default.
+     */
+    public int socketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    /**
+     * The {@code SO_RCVBUF} size for sockets opened by the {@link Engine#SOCKET} engine, or 0 to use
+     * the platform default.
+     */
+    public int socketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    /**
+     * The size of the chunks that request bodies of unknown length are sent in.
+     */
+    public int requestChunkSize() {
+        return requestChunkSize;
+    }
+
+    /**
+     * The largest response body the {@link Engine#NIO} engine reads into memory.
+     */
+    public long maxResponseBufferSize() {
+        return maxResponseBufferSize;
+    }
+
+    public SocketFactory socketFactory() {
+        return socketFactory;
+    }
 
     public SSLSocketFactory sslSocketFactory() {
         return sslSocketFactory;
     }
 
+    /**
+     * The TLS context of the {@link Engine#NIO} engine, or null to use the platform default.
+     */
+    public SSLContext sslContext() {
+        return sslContext;
+    }
+
     public javax.net.ssl.HostnameVerifier hostnameVerifier() {
         return hostnameVerifier;
     }
 
 
+    public Engine engine() {
+        return engine;
+    }
+
+    public ConnectionPool connectionPool() {
+        return connectionPool;
+    }
+
+    public List<Protocol> protocols() {
+        return protocols;
+    }
+
     public boolean followSslRedirects() {
         return followSslRedirects;
     }
@@ -140,6 +277,46 @@ public class HttpClient implements Cloneable, Call.Factory {
         return retryOnConnectionFailure;
     }
 
+    /**
+     * The policy for retrying failed calls, or null if calls aren't retried.
+     */
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * The policy for hedging slow calls, or null if calls aren't hedged.
+     */
+    public HedgingPolicy hedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * The decoders of response content codings, in order of preference.
+     */
+    public List<ContentDecoder> contentDecoders() {
+        return contentDecoders;
+    }
+
+    /**
+     * Returns the buffer that makes response bodies repeatable. Its memory limit is shared by this
+     * client and the clients built from it.
+     */
+    public BodyBuffer bodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * Returns the cache that stores responses, or null if responses aren't cached.
+     */
+    public Cache cache() {
+        return cache;
+    }
+
+    public Dispatcher dispatcher() {
+        return dispatcher;
+    }
+
     public List<Interceptor> interceptors() {
         return interceptors;
     }
@@ -149,6 +326,17 @@ public class HttpClient implements Cloneable, Call.Factory {
         return networkInterceptors;
     }
 
+    /**
+     * Cancels every queued, running or streaming call whose request is tagged with {@code tag},
+     * closing its connection at once. Use it to release the sockets and threads of work that is
+     * no longer needed, like the requests of a screen the user left.
+     *
+     * @see Dispatcher#cancelAll(Object)
+     */
+    public void cancelAll(Object tag) {
+        dispatcher.cancelAll(tag);
+    }
+
     /**
      * Prepares the {@code request} to be executed at some point in the future.
      */
@@ -158,59 +346,145 @@ public class HttpClient implements Cloneable, Call.Factory {
     }
 
 
+    /**
+     * Prepares an event source that receives the server-sent events of {@code request}.
+     */
+    public EventSource newEventSource(Request request) {
+        return new EventSource(this, request);
+    }
+
+    /**
+     * Opens a web socket to the {@code ws:} or {@code wss:} URL of {@code request} and delivers its
+     * messages to {@code listener}. The connection is made asynchronously; the returned web socket
+     * queues messages until it is open.
+     */
+    public WebSocket newWebSocket(Request request, WebSocketListener listener) {
+        RealWebSocket webSocket = new RealWebSocket(request, listener, new SecureRandom(), pingInterval);
+        webSocket.connect(this);
+        return webSocket;
+    }
+
+    /**
+     * Prepares a download of the resource of {@code request} to {@code file}, fetching it over up
+     * to 4 connections at once if the server supports range requests.
+     */
+    public Download newDownload(Request request, File file) {
+        return newDownload(request, file, Download.DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Prepares a download of the resource of {@code request} to {@code file}, fetching it over up
+     * to {@code segmentCount} connections at once if the server supports range requests.
+     */
+    public Download newDownload(Request request, File file, int segmentCount) {
+        return new Download(this, request, file, segmentCount);
+    }
+
     public Builder newBuilder() {
         return new Builder(this);
     }
 
     public static final class Builder {
-
+        Dispatcher dispatcher;
         final List<Interceptor> interceptors = new ArrayList<>();
         final List<Interceptor> networkInterceptors = new ArrayList<>();
         Proxy proxy;
         SocketFactory socketFactory;
         SSLSocketFactory sslSocketFactory;
+        SSLContext sslContext;
 
         javax.net.ssl.HostnameVerifier hostnameVerifier;
-
+        Engine engine;
+        ConnectionPool connectionPool;
+        List<Protocol> protocols;
 
         boolean followSslRedirects;
         boolean followRedirects;
         boolean retryOnConnectionFailure;
+        RetryPolicy retryPolicy;
+        HedgingPolicy hedgingPolicy;
+        final List<ContentDecoder> contentDecoders = new ArrayList<>();
+        BodyBuffer bodyBuffer;
+        Cache cache;
         int callTimeout;
         int connectTimeout;
         int readTimeout;
         int writeTimeout;
         int pingInterval;
+        boolean tcpNoDelay;
+        int socketSendBufferSize;
+        int socketReceiveBufferSize;
+        int requestChunkSize;
+        long maxResponseBufferSize;
 
         public Builder() {
+            dispatcher = new Dispatcher();
             socketFactory = SocketFactory.getDefault();
             hostnameVerifier = com.zero.support.net.HostnameVerifier.INSTANCE;
+            engine = Engine.URL_CONNECTION;
+            connectionPool = new ConnectionPool();
+            protocols = DEFAULT_PROTOCOLS;
             followSslRedirects = true;
             followRedirects = true;
             retryOnConnectionFailure = true;
+            contentDecoders.add(ContentDecoder.GZIP);
+            contentDecoders.add(ContentDecoder.DEFLATE);
+            contentDecoders.add(ContentDecoder.BROTLI);
+            contentDecoders.add(ContentDecoder.ZSTD);
+            bodyBuffer = new BodyBuffer();
             callTimeout = 0;
             connectTimeout = 10_000;
             readTimeout = 10_000;
             writeTimeout = 10_000;
             pingInterval = 0;
+            tcpNoDelay = true;
+            socketSendBufferSize = 0;
+            socketReceiveBufferSize = 0;
+            requestChunkSize = 8 * 1024;
+            maxResponseBufferSize = 64 * 1024 * 1024;
         }
 
         Builder(com.zero.support.net.HttpClient httpClient) {
+            this.dispatcher = httpClient.dispatcher;
             this.interceptors.addAll(httpClient.interceptors);
             this.networkInterceptors.addAll(httpClient.networkInterceptors);
             this.socketFactory = httpClient.socketFactory;
             this.sslSocketFactory = httpClient.sslSocketFactory;
+            this.sslContext = httpClient.sslContext;
             this.hostnameVerifier = httpClient.hostnameVerifier;
+            this.engine = httpClient.engine;
+            this.connectionPool = httpClient.connectionPool;
+            this.protocols = httpClient.protocols;
             this.followSslRedirects = httpClient.followSslRedirects;
             this.followRedirects = httpClient.followRedirects;
             this.retryOnConnectionFailure = httpClient.retryOnConnectionFailure;
+            this.retryPolicy = httpClient.retryPolicy;
+            this.hedgingPolicy = httpClient.hedgingPolicy;
+            this.contentDecoders.addAll(httpClient.contentDecoders);
+            this.bodyBuffer = httpClient.bodyBuffer;
+            this.cache = httpClient.cache;
             this.callTimeout = httpClient.callTimeout;
             this.connectTimeout = httpClient.connectTimeout;
             this.readTimeout = httpClient.readTimeout;
             this.writeTimeout = httpClient.writeTimeout;
+            this.pingInterval = httpClient.pingInterval;
+            this.tcpNoDelay = httpClient.tcpNoDelay;
+            this.socketSendBufferSize = httpClient.socketSendBufferSize;
+            this.socketReceiveBufferSize = httpClient.socketReceiveBufferSize;
+            this.requestChunkSize = httpClient.requestChunkSize;
+            this.maxResponseBufferSize = httpClient.maxResponseBufferSize;
         }
 
 
+        /**
+         * Sets the default timeout for complete calls. The call timeout spans the entire call:
+         * resolving DNS, connecting, writing the request body, server processing, and reading the
+         * response body, including redirects. When it elapses the call is canceled, tearing down
+         * its connection, and the call fails with an {@link java.io.InterruptedIOException}.
+         *
+         * <p>The default value is 0 which imposes no timeout. Requests may override it with {@link
+         * Request.Builder#callTimeout}.
+         */
         public Builder callTimeout(long timeout, TimeUnit unit) {
             callTimeout = Util.checkDuration("timeout", timeout, unit);
             return this;
@@ -232,6 +506,142 @@ public class HttpClient implements Cloneable, Call.Factory {
             return this;
         }
 
+        /**
+         * Sets the interval between pings sent by web sockets. A web socket that doesn't receive
+         * the pong of a ping before the next one is due fails with a {@link
+         * java.net.SocketTimeoutException}, which detects connections that went dead silently.
+         *
+         * <p>The default value is 0 which disables pings. Web sockets ignore the read timeout once
+         * they are open, so without pings a dead connection goes unnoticed until a write fails.
+         */
+        public Builder pingInterval(long interval, TimeUnit unit) {
+            pingInterval = Util.checkDuration("interval", interval, unit);
+            return this;
+        }
+
+
+        /**
+         * Sets the transport used to carry calls. Defaults to {@link Engine#URL_CONNECTION}.
+         */
+        public Builder engine(Engine engine) {
+            if (engine == null) throw new NullPointerException("engine == null");
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * Sets the connection pool used to recycle HTTP and HTTPS connections for the {@link
+         * Engine#SOCKET} engine.
+         *
+         * <p>If unset, a new connection pool will be used.
+         */
+        public Builder connectionPool(ConnectionPool connectionPool) {
+            if (connectionPool == null) throw new NullPointerException("connectionPool == null");
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * Configure the protocols used by the {@link Engine#SOCKET} engine to communicate with remote
+         * servers. By default this client will prefer the most efficient transport available, falling
+         * back to more ubiquitous protocols. Applications should only call this method to avoid
+         * specific compatibility problems, such as web servers that behave incorrectly when HTTP/2 is
+         * enabled.
+         *
+         * <p>The following protocols are currently supported:
+         *
+         * <ul>
+         *     <li><a href="http://www.w3.org/Protocols/rfc2616/rfc2616.html">http/1.1</a>
+         *     <li><a href="https://tools.ietf.org/html/rfc7540">h2</a>
+         *     <li><a href="https://tools.ietf.org/html/rfc7540#section-3.4">h2 with prior knowledge
+         *         (cleartext only)</a>
+         * </ul>
+         *
+         * <p>HTTP/2 is offered through ALPN for {@code https} URLs and used only when the server
+         * selects it; {@code http} URLs use HTTP/1.1 unless {@link Protocol#H2_PRIOR_KNOWLEDGE} is
+         * configured.
+         *
+         * @param protocols the protocols to use, in order of preference. If the list contains {@link
+         * Protocol#H2_PRIOR_KNOWLEDGE} then that must be the only protocol and HTTPS URLs will not be
+         * supported. Otherwise the list must contain {@link Protocol#HTTP_1_1}. The list must not
+         * contain null.
+         */
+        public Builder protocols(List<Protocol> protocols) {
+            // Create a private copy of the list.
+            List<Protocol> protocolsCopy = new ArrayList<>(protocols);
+
+            // Validate that the list has everything we require and nothing we forbid.
+            if (!protocolsCopy.contains(Protocol.H2_PRIOR_KNOWLEDGE)
+                    && !protocolsCopy.contains(Protocol.HTTP_1_1)) {
+                throw new IllegalArgumentException(
+                        "protocols must contain h2_prior_knowledge or http/1.1: " + protocolsCopy);
+            }
+            if (protocolsCopy.contains(Protocol.H2_PRIOR_KNOWLEDGE) && protocolsCopy.size() > 1) {
+                throw new IllegalArgumentException(
+                        "protocols containing h2_prior_knowledge cannot use other protocols: "
+                                + protocolsCopy);
+            }
+            if (protocolsCopy.contains(null)) {
+                throw new IllegalArgumentException("protocols must not contain null");
+            }
+
+            // Assign as an unmodifiable list. This is effectively immutable.
+            this.protocols = Collections.unmodifiableList(protocolsCopy);
+            return this;
+        }
+
+        /**
+         * Configure whether sockets opened by the {@link Engine#SOCKET} engine set {@code
+         * TCP_NODELAY}. Enabled by default, since request heads and small bodies would otherwise
+         * wait on delayed ACKs.
+         */
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Sets the {@code SO_SNDBUF} size for sockets opened by the {@link Engine#SOCKET} engine. Use 0
+         * to keep the platform default.
+         */
+        public Builder socketSendBufferSize(int size) {
+            if (size < 0) throw new IllegalArgumentException("size < 0: " + size);
+            this.socketSendBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the {@code SO_RCVBUF} size for sockets opened by the {@link Engine#SOCKET} engine. Use 0
+         * to keep the platform default.
+         */
+        public Builder socketReceiveBufferSize(int size) {
+            if (size < 0) throw new IllegalArgumentException("size < 0: " + size);
+            this.socketReceiveBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the size of the chunks that request bodies of unknown length are sent in by the
+         * {@link Engine#URL_CONNECTION} and {@link Engine#SOCKET} engines. Bodies of known length
+         * are streamed with a {@code Content-Length} header instead. Larger chunks mean less
+         * framing overhead; smaller ones get data on the wire sooner. The default is 8 KiB.
+         */
+        public Builder requestChunkSize(int size) {
+            if (size <= 0) throw new IllegalArgumentException("size <= 0: " + size);
+            this.requestChunkSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the largest response body the {@link Engine#NIO} engine reads into memory. That
+         * engine completes a call only once its whole body has arrived, so a larger body fails the
+         * call with a {@link java.net.ProtocolException} instead. The default is 64 MiB.
+         */
+        public Builder maxResponseBufferSize(long size) {
+            if (size < 0) throw new IllegalArgumentException("size < 0: " + size);
+            this.maxResponseBufferSize = size;
+            return this;
+        }
 
         public Builder socketFactory(SocketFactory socketFactory) {
             if (socketFactory == null) throw new NullPointerException("socketFactory == null");
@@ -260,6 +670,19 @@ public class HttpClient implements Cloneable, Call.Factory {
             return this;
         }
 
+        /**
+         * Sets the TLS context used by the {@link Engine#NIO} engine to create its {@link
+         * javax.net.ssl.SSLEngine}s. That engine can't use an {@link SSLSocketFactory}, so trust and
+         * key material for it are configured here instead.
+         *
+         * <p>If unset, {@link SSLContext#getDefault()} will be used.
+         */
+        public Builder sslContext(SSLContext sslContext) {
+            if (sslContext == null) throw new NullPointerException("sslContext == null");
+            this.sslContext = sslContext;
+            return this;
+        }
+
         /**
          * Sets the verifier used to confirm that response certificates apply to requested hostnames for
          * HTTPS connections.
@@ -293,6 +716,111 @@ public class HttpClient implements Cloneable, Call.Factory {
             return this;
         }
 
+        /**
+         * Configure this client to retry or not when a connectivity problem is encountered. By
+         * default this client silently recovers from the following problems:
+         *
+         * <ul>
+         *     <li><strong>Stale pooled connections.</strong> A pooled connection that the server
+         *         closed while it sat idle fails before the response starts; the request is sent
+         *         again on a new connection.
+         *     <li><strong>Unreachable or reset connections.</strong> If a {@link #retryPolicy}
+         *         is set, idempotent requests whose connection can't be established or is reset
+         *         are retried as the policy allows.
+         * </ul>
+         *
+         * <p>Set this to false to avoid retrying requests when doing so is destructive. In this case
+         * the calling application should do its own recovery of connectivity failures.
+         */
+        public Builder retryOnConnectionFailure(boolean retryOnConnectionFailure) {
+            this.retryOnConnectionFailure = retryOnConnectionFailure;
+            return this;
+        }
+
+        /**
+         * Sets the policy for retrying idempotent requests that fail to connect or get a retryable
+         * response code. Calls aren't retried if this is null, which is the default.
+         *
+         * <p>Retried calls on the {@link Engine#NIO} engine occupy a dispatcher thread while they
+         * run.
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the policy for hedging idempotent requests that are slow to respond. Calls aren't
+         * hedged if this is null, which is the default. Each attempt of a retried call is hedged
+         * separately.
+         *
+         * <p>A hedge runs on the dispatcher's executor, outside of {@link
+         * Dispatcher#getMaxRequests()}, and the attempt that loses the race is canceled.
+         */
+        public Builder hedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the decoders of response content codings, in order of preference. Their codings are
+         * offered in {@code Accept-Encoding} and responses that use them are decoded before the
+         * application sees them. The default is {@code gzip}, {@code deflate}, {@code br} and
+         * {@code zstd}; an empty list turns transparent decoding off.
+         */
+        public Builder contentDecoders(List<ContentDecoder> contentDecoders) {
+            for (ContentDecoder decoder : contentDecoders) {
+                if (decoder == null) throw new IllegalArgumentException("contentDecoders contains null");
+            }
+            this.contentDecoders.clear();
+            this.contentDecoders.addAll(contentDecoders);
+            return this;
+        }
+
+        /**
+         * Adds a decoder, replacing any decoder of the same coding.
+         */
+        public Builder addContentDecoder(ContentDecoder decoder) {
+            if (decoder == null) throw new IllegalArgumentException("decoder == null");
+            for (int i = 0; i < contentDecoders.size(); i++) {
+                if (contentDecoders.get(i).encoding().equalsIgnoreCase(decoder.encoding())) {
+                    contentDecoders.set(i, decoder);
+                    return this;
+                }
+            }
+            contentDecoders.add(decoder);
+            return this;
+        }
+
+        /**
+         * Sets the buffer that makes response bodies repeatable; see {@link HttpClient#bodyBuffer()}.
+         * Must not be null.
+         */
+        public Builder bodyBuffer(BodyBuffer bodyBuffer) {
+            if (bodyBuffer == null) throw new IllegalArgumentException("bodyBuffer == null");
+            this.bodyBuffer = bodyBuffer;
+            return this;
+        }
+
+        /**
+         * Sets the response cache to be used to read and write cached responses, or null to not
+         * cache. Calls on the {@link Engine#NIO} engine go through the interceptor chain when a
+         * cache is set.
+         */
+        public Builder cache(Cache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Sets the dispatcher used to set policy and execute asynchronous requests. Must not be null.
+         */
+        public Builder dispatcher(Dispatcher dispatcher) {
+            if (dispatcher == null) throw new IllegalArgumentException("dispatcher == null");
+            this.dispatcher = dispatcher;
+            return this;
+        }
+
         /**
          * Returns a modifiable list of interceptors that observe the full span of each call: from
          * before the connection is established (if any) until after the response source is selected
@@ -19,6 +19,19 @@ public final class HttpMethod {
     private HttpMethod() {
     }
 
+    /**
+     * Returns true if repeating a request with {@code method} has the same effect as making it once,
+     * so that it can safely be retried.
+     */
+    public static boolean isIdempotent(String method) {
+        return method.equals("GET")
+                || method.equals("HEAD")
+                || method.equals("OPTIONS")
+                || method.equals("TRACE")
+                || method.equals("PUT")
+                || method.equals("DELETE");
+    }
+
     public static boolean invalidatesCache(String method) {
         return method.equals("POST")
                 || method.equals("PATCH")
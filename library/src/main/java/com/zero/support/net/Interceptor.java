@@ -30,6 +30,11 @@ public interface Interceptor {
     interface Chain {
         Request request();
 
+        /**
+         * Returns the call this chain is running.
+         */
+        Call call();
+
         com.zero.support.net.Response proceed(Request request) throws IOException;
     }
 }
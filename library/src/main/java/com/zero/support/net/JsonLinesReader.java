@@ -0,0 +1,329 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.ByteArrayPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a stream of <a href="https://jsonlines.org/">newline-delimited JSON</a> records one at a
+ * time, so that exports of any size are processed in constant memory. Records are split on
+ * {@code '\n'} directly over the bytes of the stream, a trailing {@code '\r'} is dropped, and
+ * lines that are empty or only spaces and tabs are skipped. Each record is handed to a {@link
+ * RecordDecoder}, in place in the read buffer whenever it fits.
+ *
+ * <pre>   {@code
+ *
+ *   JsonLinesReader<Order> orders = response.body().jsonLines(ORDER_DECODER);
+ *   try {
+ *     for (Order order; (order = orders.read()) != null; ) {
+ *       process(order);
+ *     }
+ *   } finally {
+ *     orders.close();
+ *   }
+ * }</pre>
+ *
+ * <p>Reading is driven by the consumer: the stream is read only as fast as records are taken, so a
+ * slow consumer slows the download instead of buffering it. With {@link #parallel} records are
+ * decoded in batches on an executor while the consumer works, still in order and with a bounded
+ * number of batches read ahead.
+ *
+ * <p>This class also implements {@link Iterable}, for use in for-each loops. Iterators can't
+ * throw {@link IOException}, so they wrap it in a {@link RuntimeException}.
+ */
+public final class JsonLinesReader<T> implements Iterable<T>, Closeable {
+    private final InputStream source;
+    private final RecordDecoder<T> decoder;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean started;
+    private boolean firstLine = true;
+    private boolean exhausted;
+    private boolean closed;
+
+    private ExecutorService executor;
+    private int batchSize;
+    private int maxPendingBatches;
+    private final ArrayDeque<Future<List<T>>> pendingBatches = new ArrayDeque<>();
+    private Iterator<T> currentBatch;
+
+    // The record found by nextRecord(), in buffer.
+    private int recordOffset;
+    private int recordLength;
+
+    JsonLinesReader(InputStream source, RecordDecoder<T> decoder) {
+        this.source = source;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Decodes records on {@code executor} in batches of {@code batchSize}, with up to {@code
+     * maxPendingBatches} batches read ahead of the consumer. Records are still returned in order.
+     * Must be called before the first record is read.
+     */
+    public JsonLinesReader<T> parallel(ExecutorService executor, int batchSize, int maxPendingBatches) {
+        if (executor == null) throw new IllegalArgumentException("executor == null");
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize < 1: " + batchSize);
+        if (maxPendingBatches < 1) {
+            throw new IllegalArgumentException("maxPendingBatches < 1: " + maxPendingBatches);
+        }
+        if (started) throw new IllegalStateException("reading has started");
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxPendingBatches = maxPendingBatches;
+        return this;
+    }
+
+    /**
+     * Returns the next decoded record, or null if there are no more.
+     */
+    public T read() throws IOException {
+        if (closed) throw new IllegalStateException("closed");
+        started = true;
+        if (executor == null) {
+            if (!nextRecord()) return null;
+            return checkDecoded(decoder.decode(buffer, recordOffset, recordLength));
+        }
+
+        while (currentBatch == null || !currentBatch.hasNext()) {
+            while (!exhausted && pendingBatches.size() < maxPendingBatches) {
+                Batch batch = readBatch();
+                if (batch == null) break;
+                pendingBatches.add(executor.submit(batch));
+            }
+            Future<List<T>> next = pendingBatches.poll();
+            if (next == null) return null;
+            currentBatch = await(next).iterator();
+        }
+        return currentBatch.next();
+    }
+
+    private T checkDecoded(T result) {
+        if (result == null) throw new NullPointerException("decoder returned null");
+        return result;
+    }
+
+    private List<T> await(Future<List<T>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Copies up to {@code batchSize} records out of the read buffer. Returns null if there are
+     * none left.
+     */
+    private Batch readBatch() throws IOException {
+        Batch batch = null;
+        while (batch == null || batch.count < batchSize) {
+            if (!nextRecord()) break;
+            if (batch == null) batch = new Batch(batchSize);
+            batch.add(buffer, recordOffset, recordLength);
+        }
+        return batch;
+    }
+
+    /**
+     * Finds the next non-blank record and points {@link #recordOffset} and {@link #recordLength}
+     * at it. Returns false at the end of the stream.
+     */
+    private boolean nextRecord() throws IOException {
+        if (exhausted) {
+            release();
+            return false;
+        }
+        if (buffer == null) buffer = ByteArrayPool.take();
+        if (buffer.length > ByteArrayPool.BUFFER_SIZE && limit - pos <= ByteArrayPool.BUFFER_SIZE) {
+            // The long record that grew the buffer has been consumed; don't keep its array.
+            byte[] pooled = ByteArrayPool.take();
+            System.arraycopy(buffer, pos, pooled, 0, limit - pos);
+            buffer = pooled;
+            limit -= pos;
+            pos = 0;
+        }
+        int scanned = pos; // There is no newline in buffer[pos..scanned).
+        while (true) {
+            int newline = scanned;
+            while (newline < limit && buffer[newline] != '\n') {
+                newline++;
+            }
+            if (newline < limit) {
+                int start = pos;
+                pos = newline + 1;
+                if (setRecord(start, newline)) return true;
+                scanned = pos;
+                continue;
+            }
+            int scannedCount = limit - pos;
+            if (!fill()) {
+                exhausted = true;
+                int start = pos;
+                pos = limit;
+                if (setRecord(start, limit)) return true;
+                release();
+                return false;
+            }
+            scanned = pos + scannedCount;
+        }
+    }
+
+    /**
+     * Points at {@code buffer[start..end)}, less a trailing CR and, on the first line, a byte
+     * order mark. Returns false if the record is blank.
+     */
+    private boolean setRecord(int start, int end) {
+        if (firstLine) {
+            firstLine = false;
+            if (end - start >= 3 && (buffer[start] & 0xff) == 0xef
+                    && (buffer[start + 1] & 0xff) == 0xbb && (buffer[start + 2] & 0xff) == 0xbf) {
+                start += 3;
+            }
+        }
+        if (end > start && buffer[end - 1] == '\r') end--;
+        int firstNonBlank = start;
+        while (firstNonBlank < end && (buffer[firstNonBlank] == ' ' || buffer[firstNonBlank] == '\t')) {
+            firstNonBlank++;
+        }
+        if (firstNonBlank == end) return false;
+        recordOffset = start;
+        recordLength = end - start;
+        return true;
+    }
+
+    /**
+     * Reads more bytes after the unconsumed ones, moving them to the front of the buffer or into a
+     * larger buffer as needed. A larger buffer is only kept until the next record that fits in a
+     * pooled one. Returns false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            // A record longer than the buffer; it gets an array of its own.
+            byte[] larger = Arrays.copyOf(buffer, buffer.length * 2);
+            release();
+            buffer = larger;
+        }
+        int read = source.read(buffer, limit, buffer.length - limit);
+        if (read == -1) return false;
+        limit += read;
+        return true;
+    }
+
+    private void release() {
+        if (buffer != null && buffer.length == ByteArrayPool.BUFFER_SIZE) {
+            ByteArrayPool.recycle(buffer);
+        }
+        buffer = null;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private T next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                try {
+                    next = read();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                T result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    /**
+     * Stops reading, discarding batches that are being decoded, and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        exhausted = true;
+        for (Future<List<T>> batch; (batch = pendingBatches.poll()) != null; ) {
+            batch.cancel(false);
+        }
+        currentBatch = null;
+        release();
+        source.close();
+    }
+
+    /**
+     * Records copied out of the read buffer, decoded together on the executor.
+     */
+    private final class Batch implements Callable<List<T>> {
+        private byte[] data = new byte[4096];
+        private int size;
+        private final int[] offsets;
+        private final int[] lengths;
+        int count;
+
+        Batch(int capacity) {
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+        }
+
+        void add(byte[] source, int offset, int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+            System.arraycopy(source, offset, data, size, length);
+            offsets[count] = size;
+            lengths[count] = length;
+            size += length;
+            count++;
+        }
+
+        @Override
+        public List<T> call() throws IOException {
+            List<T> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(checkDecoded(decoder.decode(data, offsets[i], lengths[i])));
+            }
+            return result;
+        }
+    }
+}
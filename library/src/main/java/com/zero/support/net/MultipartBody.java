@@ -18,11 +18,12 @@ package com.zero.support.net;
 
 import com.zero.support.net.internal.Util;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -163,60 +164,153 @@ public final class MultipartBody extends RequestBody {
      * Either writes this request to {@code sink} or measures its content length. We have one method
      * do double-duty to make sure the counting and content are consistent, particularly when it comes
      * to awkward operations like measuring the encoded length of header strings, or the
-     * length-in-digits of an encoded integer.
+     * length-in-digits of an encoded integer. Returns -1 unless counting.
      */
     private long writeOrCountBytes(OutputStream stream, boolean countBytes) throws IOException {
-        DataOutputStream output;
-        if (stream == null) {
-            output = new DataOutputStream(com.zero.support.net.FormBody.EMPTY_OUTPUT_STREAM);
-        } else {
-            output = new DataOutputStream(stream);
-        }
-        for (int p = 0, partCount = parts.size(); p < partCount; p++) {
-            Part part = parts.get(p);
-            Headers headers = part.headers;
-            RequestBody body = part.body;
-            output.write(DASHDASH);
-            output.writeBytes(boundary);
-            output.write(CRLF);
-
-            if (headers != null) {
-                for (int h = 0, headerCount = headers.size(); h < headerCount; h++) {
-                    output.writeBytes(headers.name(h));
-                    output.write(COLONSPACE);
-                    output.writeBytes(headers.value(h));
-                    output.write(CRLF);
+        Buffer buffer = new Buffer();
+        try {
+            long bodyBytes = 0L;
+            for (int p = 0, partCount = parts.size(); p < partCount; p++) {
+                Part part = parts.get(p);
+                long contentLength = part.body.contentLength();
+                if (contentLength == -1 && countBytes) {
+                    // We can't measure the body's size without the sizes of its components.
+                    return -1L;
                 }
+                writePartHead(buffer, part, contentLength);
+                if (countBytes) {
+                    bodyBytes += contentLength;
+                } else {
+                    // Send the head, then let the part write its body straight through.
+                    buffer.writeTo(stream);
+                    part.body.writeTo(stream);
+                }
+                buffer.write(CRLF);
             }
+            writeClose(buffer);
+            if (countBytes) return bodyBytes + buffer.size();
+            buffer.writeTo(stream);
+            return -1L;
+        } finally {
+            buffer.close();
+        }
+    }
 
-            com.zero.support.net.MediaType contentType = body.contentType();
-            if (contentType != null) {
-                output.writeBytes("Content-Type: ");
-                output.writeBytes(contentType.toString());
-                output.write(CRLF);
-            }
-
-            long contentLength = body.contentLength();
-            if (contentLength != -1) {
-                output.writeBytes("Content-Length: ");
-                output.writeLong(contentLength);
+    /**
+     * Writes the boundary and headers that precede {@code part}'s body.
+     */
+    private void writePartHead(Buffer output, Part part, long contentLength) {
+        Headers headers = part.headers;
+        output.write(DASHDASH);
+        output.writeAscii(boundary);
+        output.write(CRLF);
+        if (headers != null) {
+            for (int h = 0, headerCount = headers.size(); h < headerCount; h++) {
+                output.writeAscii(headers.name(h));
+                output.write(COLONSPACE);
+                output.writeAscii(headers.value(h));
                 output.write(CRLF);
-            } else if (countBytes) {
-                // We can't measure the body's size without the sizes of its components.
-                return -1L;
             }
-
+        }
+        com.zero.support.net.MediaType contentType = part.body.contentType();
+        if (contentType != null) {
+            output.writeAscii("Content-Type: ");
+            output.writeAscii(contentType.toString());
             output.write(CRLF);
-            body.writeTo(output);
+        }
+        if (contentLength != -1) {
+            output.writeAscii("Content-Length: ");
+            output.writeDecimalLong(contentLength);
             output.write(CRLF);
         }
+        output.write(CRLF);
+    }
 
+    private void writeClose(Buffer output) {
         output.write(DASHDASH);
-        output.writeBytes(boundary);
+        output.writeAscii(boundary);
         output.write(DASHDASH);
         output.write(CRLF);
+    }
+
+    /**
+     * Returns a writer that sends the parts with channel writers of their own, like files, through
+     * them, and everything between them from memory. Returns null if no part has a channel writer,
+     * or if a part without one has an unknown length and so may be too large to buffer.
+     */
+    @Override
+    public ChannelWriter channelWriter() throws IOException {
+        List<Object> segments = new ArrayList<>();
+        Buffer output = new Buffer();
+        boolean hasWriter = false;
+        for (int p = 0, partCount = parts.size(); p < partCount; p++) {
+            Part part = parts.get(p);
+            long contentLength = part.body.contentLength();
+            writePartHead(output, part, contentLength);
+            ChannelWriter writer = part.body.channelWriter();
+            if (writer != null) {
+                hasWriter = true;
+                segments.add(ByteBuffer.wrap(output.readByteArray()));
+                segments.add(writer);
+            } else if (contentLength != -1) {
+                part.body.writeTo(output.outputStream());
+            } else {
+                output.close();
+                closeWriters(segments);
+                return null;
+            }
+            output.write(CRLF);
+        }
+        writeClose(output);
+        if (!hasWriter) {
+            output.close();
+            return null;
+        }
+        segments.add(ByteBuffer.wrap(output.readByteArray()));
+        return new SegmentedWriter(segments);
+    }
 
-        return output.size();
+    private static void closeWriters(List<Object> segments) {
+        for (Object segment : segments) {
+            if (segment instanceof ChannelWriter) {
+                Util.closeQuietly((ChannelWriter) segment);
+            }
+        }
+    }
+
+    /**
+     * Writes buffered bytes and the parts' own channel writers in turn.
+     */
+    private static final class SegmentedWriter implements ChannelWriter {
+        private final List<Object> segments;
+        private int next;
+
+        SegmentedWriter(List<Object> segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public boolean writeTo(WritableByteChannel channel) throws IOException {
+            for (; next < segments.size(); next++) {
+                Object segment = segments.get(next);
+                if (segment instanceof ByteBuffer) {
+                    ByteBuffer buffer = (ByteBuffer) segment;
+                    while (buffer.hasRemaining()) {
+                        if (channel.write(buffer) == 0) return false;
+                    }
+                } else {
+                    ChannelWriter writer = (ChannelWriter) segment;
+                    if (!writer.writeTo(channel)) return false;
+                    Util.closeQuietly(writer);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closeWriters(segments.subList(next, segments.size()));
+        }
     }
 
     public static final class Part {
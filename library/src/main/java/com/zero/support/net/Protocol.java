@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net;
+
+
+import java.io.IOException;
+
+/**
+ * Protocols that the {@link Engine#SOCKET} engine implements for <a
+ * href="http://tools.ietf.org/html/draft-ietf-tls-applayerprotoneg">ALPN</a> selection.
+ *
+ * <h3>Protocol vs Scheme</h3> Despite its name, {@link java.net.URL#getProtocol()} returns the
+ * {@linkplain java.net.URI#getScheme() scheme} (http, https, etc.) of the URL, not the protocol
+ * (http/1.1, h2, etc.). This library uses the word <i>protocol</i> to identify how HTTP messages
+ * are framed.
+ */
+public enum Protocol {
+    /**
+     * A plaintext framing that uses persistent sockets by default. This is the fallback when the
+     * peer does not negotiate anything else.
+     */
+    HTTP_1_1("http/1.1"),
+
+    /**
+     * The IETF's binary-framed protocol that includes header compression, multiplexing multiple
+     * requests on the same socket, and server-push. HTTP/1.1 semantics are layered on HTTP/2.
+     *
+     * <p>For {@code https} URLs this is offered through ALPN and only used when the server selects
+     * it. Push is disabled.
+     */
+    HTTP_2("h2"),
+
+    /**
+     * Cleartext HTTP/2 with no "upgrade" round trip. This option requires the client to have prior
+     * knowledge that the server supports cleartext HTTP/2.
+     *
+     * <p>This protocol cannot be combined with others, and calls to {@code https} URLs fail when
+     * it is configured.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc7540#section-3.4">Starting HTTP/2 with Prior
+     * Knowledge</a>
+     */
+    H2_PRIOR_KNOWLEDGE("h2_prior_knowledge");
+
+    private final String protocol;
+
+    Protocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Returns the protocol identified by {@code protocol}.
+     *
+     * @throws IOException if {@code protocol} is unknown.
+     */
+    public static Protocol get(String protocol) throws IOException {
+        // Unroll the loop over values() to save an allocation.
+        if (protocol.equals(HTTP_1_1.protocol)) return HTTP_1_1;
+        if (protocol.equals(H2_PRIOR_KNOWLEDGE.protocol)) return H2_PRIOR_KNOWLEDGE;
+        if (protocol.equals(HTTP_2.protocol)) return HTTP_2;
+        throw new IOException("Unexpected protocol: " + protocol);
+    }
+
+    /**
+     * Returns the string used to identify this protocol for ALPN, like "http/1.1" or "h2".
+     */
+    @Override
+    public String toString() {
+        return protocol;
+    }
+}
@@ -16,12 +16,23 @@
 package com.zero.support.net;
 
 
-import com.zero.support.net.internal.CacheInterceptor;
+import com.zero.support.net.internal.BridgeInterceptor;
 import com.zero.support.net.internal.CallServerInterceptor;
+import com.zero.support.net.internal.NamedRunnable;
+import com.zero.support.net.internal.TimerWheel;
+import com.zero.support.net.internal.Util;
+import com.zero.support.net.internal.nio.NioCall;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class RealCall implements Call {
     final HttpClient client;
@@ -30,13 +41,27 @@ final class RealCall implements Call {
      */
     final Request originalRequest;
     private CallServerInterceptor callServerInterceptor;
+    /**
+     * Where in the client's interceptor chain this call starts: 0, or past the hedging interceptor
+     * for a hedged attempt.
+     */
+    private final int chainStart;
     // Guarded by this.
     private boolean executed;
+    private List<RealCall> attempts;
+    private TimerWheel.Timeout timeout;
+    private volatile boolean timedOut;
 
     private RealCall(HttpClient client, Request originalRequest) {
+        this(client, originalRequest, 0);
+    }
+
+    private RealCall(HttpClient client, Request originalRequest, int chainStart) {
         this.client = client;
         this.originalRequest = originalRequest;
-        this.callServerInterceptor = new CallServerInterceptor(client);
+        this.chainStart = chainStart;
+        this.callServerInterceptor = new CallServerInterceptor(
+                client, client.socketEngine, client.nioEngine);
     }
 
     static com.zero.support.net.RealCall newRealCall(HttpClient client, Request originalRequest) {
@@ -54,12 +79,137 @@ final class RealCall implements Call {
             if (executed) throw new IllegalStateException("Already Executed");
             executed = true;
         }
-        return getResponseWithInterceptorChain();
+        try {
+            client.dispatcher().executed(this);
+            return getResponseWithDeadline();
+        } finally {
+            client.dispatcher().finished(this);
+        }
+    }
+
+    @Override
+    public void enqueue(Callback responseCallback) {
+        synchronized (this) {
+            if (executed) throw new IllegalStateException("Already Executed");
+            executed = true;
+        }
+        if (client.engine() == Engine.NIO
+                && client.interceptors().isEmpty()
+                && client.networkInterceptors().isEmpty()
+                && client.retryPolicy() == null
+                && client.hedgingPolicy() == null
+                && client.cache() == null) {
+            enqueueNio(responseCallback);
+            return;
+        }
+        client.dispatcher().enqueue(new AsyncCall(responseCallback));
+    }
+
+    /**
+     * Starts this call on the {@link Engine#NIO} engine without occupying a dispatcher thread while
+     * it waits on the network. Such calls are tracked like synchronous calls: they show up in {@link
+     * Dispatcher#runningCalls()} and can be canceled, but don't count against {@link
+     * Dispatcher#getMaxRequests()}; the engine caps connections per host instead. The client's
+     * bridge still offers and decodes content codings, as it does for calls through the chain.
+     */
+    private void enqueueNio(final Callback responseCallback) {
+        client.dispatcher().executed(this);
+        timeoutEnter();
+        final BridgeInterceptor bridge = client.bridgeInterceptor;
+        final Request networkRequest = bridge.networkRequest(originalRequest);
+        callServerInterceptor.enqueue(networkRequest, new NioCall.Callback() {
+            @Override
+            public void onFailure(NioCall call, IOException e) {
+                timeoutExit();
+                try {
+                    responseCallback.onFailure(RealCall.this, timeoutExit(e));
+                } finally {
+                    client.dispatcher().finished(RealCall.this);
+                }
+            }
+
+            @Override
+            public void onResponse(NioCall call, Response response) {
+                timeoutExit(); // The body is already in memory.
+                try {
+                    if (networkRequest != originalRequest) {
+                        try {
+                            response = bridge.userResponse(response);
+                        } catch (IOException e) {
+                            Util.closeQuietly(response.body());
+                            responseCallback.onFailure(RealCall.this, e);
+                            return;
+                        }
+                    }
+                    responseCallback.onResponse(RealCall.this, response);
+                } catch (IOException ignored) {
+                    // The response was delivered; like AsyncCall, don't also report a failure.
+                } finally {
+                    client.dispatcher().finished(RealCall.this);
+                }
+            }
+        });
     }
 
     @Override
     public void cancel() {
         callServerInterceptor.cancel();
+        List<RealCall> attempts;
+        synchronized (this) {
+            if (this.attempts == null) return;
+            attempts = new ArrayList<>(this.attempts);
+        }
+        for (RealCall attempt : attempts) {
+            attempt.cancel();
+        }
+    }
+
+    /**
+     * Cancels this call from the shared timer thread. Some platforms' {@code HttpURLConnection}
+     * blocks in {@code disconnect()} until a pending read returns, which would stall every other
+     * timeout, so that engine's cancellation is handed to the dispatcher's executor.
+     */
+    private void cancelOffTimerThread() {
+        if (client.engine() != Engine.URL_CONNECTION) {
+            cancel();
+            return;
+        }
+        try {
+            client.dispatcher().executorService().execute(new Runnable() {
+                @Override
+                public void run() {
+                    cancel();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cancel();
+        }
+    }
+
+    /**
+     * Returns a new call that carries {@code request} through the rest of the interceptor chain,
+     * starting at {@code chainStart}, on behalf of this call. Canceling this call cancels it too.
+     */
+    RealCall newAttempt(Request request, int chainStart) {
+        RealCall attempt = new RealCall(client, request, chainStart);
+        synchronized (this) {
+            if (attempts == null) attempts = new ArrayList<>(2);
+            attempts.add(attempt);
+        }
+        if (isCanceled()) attempt.cancel();
+        return attempt;
+    }
+
+    /**
+     * Runs this attempt's part of the interceptor chain on the calling thread.
+     */
+    Response executeAttempt() throws IOException {
+        return getResponseWithInterceptorChain();
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
     }
 
     @Override
@@ -67,6 +217,24 @@ final class RealCall implements Call {
         return callServerInterceptor.isCancel();
     }
 
+    /**
+     * Waits up to {@code millis} for this call to be canceled, returning true if it was.
+     */
+    boolean awaitCanceled(long millis) throws InterruptedIOException {
+        return callServerInterceptor.awaitCancel(millis);
+    }
+
+    /**
+     * Runs {@code listener} when this call is canceled, or now if it already was.
+     */
+    void whenCanceled(Runnable listener) {
+        callServerInterceptor.whenCanceled(listener);
+    }
+
+    void removeCancelListener(Runnable listener) {
+        callServerInterceptor.removeCancelListener(listener);
+    }
+
     @SuppressWarnings("CloneDoesntCallSuperClone")
     // We are a final type & this saves clearing state.
     @Override
@@ -74,13 +242,190 @@ final class RealCall implements Call {
         return com.zero.support.net.RealCall.newRealCall(client, originalRequest);
     }
 
+    /**
+     * Runs the interceptor chain under this call's deadline. The deadline stays armed, and the call
+     * can be canceled through the dispatcher, until the response body is exhausted or closed, or
+     * its connection is released to the pool.
+     */
+    private Response getResponseWithDeadline() throws IOException {
+        timeoutEnter();
+        Response response;
+        try {
+            response = getResponseWithInterceptorChain();
+        } catch (IOException e) {
+            timeoutExit();
+            throw timeoutExit(e);
+        } catch (RuntimeException | Error e) {
+            timeoutExit();
+            throw e;
+        }
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            timeoutExit();
+            return response;
+        }
+        client.dispatcher().streaming(this);
+        callServerInterceptor.whenExchangeReleased(new Runnable() {
+            @Override
+            public void run() {
+                responseConsumed();
+            }
+        });
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(),
+                        new CallSource(body.source())))
+                .build();
+    }
+
+    private void timeoutEnter() {
+        int timeoutMillis = originalRequest.callTimeoutMillis();
+        if (timeoutMillis == -1) {
+            timeoutMillis = client.callTimeoutMillis();
+        }
+        if (timeoutMillis == 0) return;
+        timeout = TimerWheel.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                timedOut = true;
+                cancelOffTimerThread();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void timeoutExit() {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Returns an {@link InterruptedIOException} in place of {@code cause} if it was provoked by
+     * the call deadline tearing the call down.
+     */
+    private IOException timeoutExit(IOException cause) {
+        if (!timedOut) return cause;
+        InterruptedIOException e = new InterruptedIOException("timeout");
+        e.initCause(cause);
+        return e;
+    }
+
     private Response getResponseWithInterceptorChain() throws IOException {
-        // Build a full stack of interceptors.
-        List<Interceptor> interceptors = new ArrayList<>(client.interceptors());
-        interceptors.add(new CacheInterceptor());
-        interceptors.addAll(client.networkInterceptors());
-        interceptors.add(new CallServerInterceptor(client));
-        Interceptor.Chain chain = new RealChain(0, interceptors, originalRequest);
+        Interceptor.Chain chain = new RealChain(this,
+                client.interceptorChain, chainStart, callServerInterceptor, originalRequest);
         return chain.proceed(originalRequest);
     }
+
+    /**
+     * Disarms the deadline and drops the call from the dispatcher's streaming calls. This may run
+     * twice: when the connection is released and again when the body reaches -1 or is closed.
+     */
+    private void responseConsumed() {
+        timeoutExit();
+        client.dispatcher().streamFinished(this);
+    }
+
+    /**
+     * Releases the call once its response body has been read to the end or closed.
+     */
+    private final class CallSource extends FilterInputStream {
+        CallSource(InputStream delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if (b == -1) responseConsumed();
+                return b;
+            } catch (IOException e) {
+                throw timeoutExit(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            try {
+                int read = super.read(buffer, offset, byteCount);
+                if (read == -1) responseConsumed();
+                return read;
+            } catch (IOException e) {
+                throw timeoutExit(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            responseConsumed();
+            super.close();
+        }
+    }
+
+    final class AsyncCall extends NamedRunnable {
+        private final Callback responseCallback;
+        private volatile AtomicInteger callsPerHost = new AtomicInteger(0);
+
+        AsyncCall(Callback responseCallback) {
+            super("Net %s", originalRequest.url());
+            this.responseCallback = responseCallback;
+        }
+
+        AtomicInteger callsPerHost() {
+            return callsPerHost;
+        }
+
+        void reuseCallsPerHostFrom(AsyncCall other) {
+            this.callsPerHost = other.callsPerHost;
+        }
+
+        String host() {
+            return originalRequest.url().getHost();
+        }
+
+        Request request() {
+            return originalRequest;
+        }
+
+        RealCall get() {
+            return RealCall.this;
+        }
+
+        /**
+         * Attempt to enqueue this async call on {@code executorService}. This will attempt to clean up
+         * if the executor has been shut down by reporting the call as failed.
+         */
+        void executeOn(ExecutorService executorService) {
+            assert (!Thread.holdsLock(client.dispatcher()));
+            boolean success = false;
+            try {
+                executorService.execute(this);
+                success = true;
+            } catch (RejectedExecutionException e) {
+                InterruptedIOException ioException = new InterruptedIOException("executor rejected");
+                ioException.initCause(e);
+                responseCallback.onFailure(RealCall.this, ioException);
+            } finally {
+                if (!success) {
+                    client.dispatcher().finished(this); // This call is no longer running!
+                }
+            }
+        }
+
+        @Override
+        protected void execute() {
+            boolean signalledCallback = false;
+            try {
+                Response response = getResponseWithDeadline();
+                signalledCallback = true;
+                responseCallback.onResponse(RealCall.this, response);
+            } catch (IOException e) {
+                if (!signalledCallback) {
+                    responseCallback.onFailure(RealCall.this, e);
+                }
+            } finally {
+                client.dispatcher().finished(this);
+            }
+        }
+    }
 }
@@ -2,16 +2,33 @@ package com.zero.support.net;
 
 
 import java.io.IOException;
-import java.util.List;
 
-public class RealChain implements Interceptor.Chain {
-    Request request;
-    private List<Interceptor> interceptors;
+/**
+ * The interceptor chain of one call. A single instance walks the whole stack: {@link #proceed}
+ * advances an index cursor into the client's precomputed interceptor array and restores it when
+ * the next interceptor returns, so an interceptor may proceed more than once (to retry, say) and
+ * no chain objects are allocated per hop.
+ *
+ * <p>Interceptors must call {@link #proceed} on the thread that invoked them.
+ */
+public final class RealChain implements Interceptor.Chain {
+    private final Call call;
+    private final Interceptor[] interceptors;
+    private final Interceptor terminal;
+    private Request request;
     private int index;
 
-    public RealChain(int index, List<Interceptor> interceptors, Request request) {
+    /**
+     * @param interceptors the interceptors to run in order, ahead of {@code terminal}.
+     * @param index the position in {@code interceptors} to start at.
+     * @param terminal the interceptor that makes the network call and doesn't proceed.
+     */
+    RealChain(Call call, Interceptor[] interceptors, int index, Interceptor terminal,
+              Request request) {
+        this.call = call;
         this.interceptors = interceptors;
         this.index = index;
+        this.terminal = terminal;
         this.request = request;
     }
 
@@ -19,14 +36,27 @@ public class RealChain implements Interceptor.Chain {
         return request;
     }
 
+    @Override
+    public Call call() {
+        return call;
+    }
+
     public com.zero.support.net.Response proceed(Request request) throws IOException {
-        if (index >= interceptors.size()) throw new AssertionError();
+        int index = this.index;
+        if (index > interceptors.length) throw new AssertionError();
         // Call the next interceptor in the chain.
-        Interceptor interceptor = interceptors.get(index);
-        com.zero.support.net.RealChain next = new com.zero.support.net.RealChain(index + 1, interceptors, request);
-        com.zero.support.net.Response response = interceptor.intercept(next);
+        Interceptor interceptor = index < interceptors.length ? interceptors[index] : terminal;
+        Request previous = this.request;
+        this.index = index + 1;
+        this.request = request;
+        com.zero.support.net.Response response;
+        try {
+            response = interceptor.intercept(this);
+        } finally {
+            this.index = index;
+            this.request = previous;
+        }
 
-        // Confirm that the next interceptor made its required call to chain.proceed().
         // Confirm that the intercepted response isn't null.
         if (response == null) {
             throw new NullPointerException("interceptor " + interceptor + " returned null");
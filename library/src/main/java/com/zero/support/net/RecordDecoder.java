@@ -0,0 +1,84 @@
+package com.zero.support.net;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes the records of a {@link JsonLinesReader}, typically with a JSON library. Records are
+ * handed over as a slice of a buffer that is reused for the next record, so decoders must not keep
+ * a reference to it. Decoders used with {@linkplain JsonLinesReader#parallel parallel decoding}
+ * are called from several threads at once.
+ */
+public abstract class RecordDecoder<T> {
+    /**
+     * Decodes each record to a {@link String}.
+     */
+    public static final RecordDecoder<String> STRING = new RecordDecoder<String>() {
+        @Override
+        public String decode(byte[] data, int offset, int byteCount) {
+            return new String(data, offset, byteCount, OfChars.UTF_8);
+        }
+    };
+
+    /**
+     * Decodes the UTF-8 record in {@code data[offset..offset + byteCount)}. The record's line
+     * terminator isn't included. Must not return null.
+     */
+    public abstract T decode(byte[] data, int offset, int byteCount) throws IOException;
+
+    /**
+     * A decoder of records as text. Each record is decoded from UTF-8 into a char buffer that is
+     * reused, per thread, for the records that follow, so decoders should copy what they keep.
+     */
+    public abstract static class OfChars<T> extends RecordDecoder<T> {
+        static final Charset UTF_8 = Charset.forName("UTF-8");
+        private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+        private final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>() {
+            @Override
+            protected CharsetDecoder initialValue() {
+                return UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+        };
+        private final ThreadLocal<CharBuffer> buffers = new ThreadLocal<CharBuffer>() {
+            @Override
+            protected CharBuffer initialValue() {
+                return CharBuffer.allocate(1024);
+            }
+        };
+
+        @Override
+        public final T decode(byte[] data, int offset, int byteCount) throws IOException {
+            CharBuffer chars = buffers.get();
+            if (chars.capacity() < byteCount) {
+                // UTF-8 never decodes to more chars than it has bytes.
+                chars = CharBuffer.allocate(Math.max(byteCount, chars.capacity() * 2));
+                buffers.set(chars);
+            }
+            chars.clear();
+            CharsetDecoder decoder = decoders.get().reset();
+            ByteBuffer bytes = ByteBuffer.wrap(data, offset, byteCount);
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            try {
+                return decode(chars);
+            } finally {
+                // Don't let one huge record pin its buffer.
+                if (chars.capacity() > MAX_RETAINED_CAPACITY) buffers.remove();
+            }
+        }
+
+        /**
+         * Decodes one record. {@code record} is only valid during this call.
+         */
+        public abstract T decode(CharSequence record) throws IOException;
+    }
+}
@@ -0,0 +1,154 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.CharArrayPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the records of a character stream one at a time, so that exports of any size can be
+ * processed in constant memory. Records are separated by a delimiter, which isn't part of the
+ * records; a delimiter at the very end doesn't start another record. Get one from {@link
+ * ResponseBody#lines()} or {@link ResponseBody#records(String)}.
+ *
+ * <pre>   {@code
+ *
+ *   RecordReader lines = response.body().lines();
+ *   try {
+ *     for (String line; (line = lines.readRecord()) != null; ) {
+ *       process(line);
+ *     }
+ *   } finally {
+ *     lines.close();
+ *   }
+ * }</pre>
+ *
+ * <p>This class also implements {@link Iterable}, for use in for-each loops. Iterators can't
+ * throw {@link IOException}, so they wrap it in a {@link RuntimeException}.
+ */
+public final class RecordReader implements Iterable<String>, Closeable {
+    /**
+     * Records longer than this don't keep their builder, so one huge record doesn't pin memory.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final Reader source;
+    private final String delimiter;
+    private final char lastDelimiterChar;
+    /**
+     * True to also drop a {@code '\r'} before the delimiter, for CRLF lines.
+     */
+    private final boolean lines;
+    private StringBuilder record = new StringBuilder();
+    private char[] buffer;
+    private int pos;
+    private int limit;
+    private boolean exhausted;
+
+    RecordReader(Reader source, String delimiter, boolean lines) {
+        this.source = source;
+        this.delimiter = delimiter;
+        this.lastDelimiterChar = delimiter.charAt(delimiter.length() - 1);
+        this.lines = lines;
+    }
+
+    /**
+     * Returns the next record, or null if there are no more.
+     */
+    public String readRecord() throws IOException {
+        if (exhausted) return null;
+        if (buffer == null) buffer = CharArrayPool.take();
+        if (record.capacity() > MAX_RETAINED_CAPACITY) record = new StringBuilder();
+        record.setLength(0);
+        while (true) {
+            if (pos == limit) {
+                int read = source.read(buffer, 0, buffer.length);
+                if (read == -1) {
+                    exhausted = true;
+                    release();
+                    return record.length() > 0 ? finish(record.length()) : null;
+                }
+                pos = 0;
+                limit = read;
+            }
+            int i = pos;
+            while (i < limit && buffer[i] != lastDelimiterChar) {
+                i++;
+            }
+            if (i == limit) {
+                record.append(buffer, pos, limit - pos);
+                pos = limit;
+                continue;
+            }
+            record.append(buffer, pos, i + 1 - pos);
+            pos = i + 1;
+            if (endsWithDelimiter()) return finish(record.length() - delimiter.length());
+        }
+    }
+
+    private boolean endsWithDelimiter() {
+        int start = record.length() - delimiter.length();
+        if (start < 0) return false;
+        for (int i = 0; i < delimiter.length() - 1; i++) {
+            if (record.charAt(start + i) != delimiter.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String finish(int end) {
+        if (lines && end > 0 && record.charAt(end - 1) == '\r') end--;
+        return record.substring(0, end);
+    }
+
+    private void release() {
+        if (buffer != null) {
+            CharArrayPool.recycle(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Returns an iterator over the remaining records. It and this reader share their position.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                try {
+                    next = readRecord();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                String result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        exhausted = true;
+        release();
+        source.close();
+    }
+}
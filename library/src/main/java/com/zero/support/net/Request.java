@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSocketFactory;
@@ -43,6 +44,7 @@ public final class Request {
     final Map<Class<?>, Object> tags;
     final SSLSocketFactory sslSocketFactory;
     final HostnameVerifier hostnameVerifier;
+    final int callTimeout;
 
     private volatile com.zero.support.net.CacheControl cacheControl; // Lazily initialized.
 
@@ -54,6 +56,7 @@ public final class Request {
         this.tags = Util.immutableMap(builder.tags);
         this.sslSocketFactory = builder.sslSocketFactory;
         this.hostnameVerifier = builder.hostnameVerifier;
+        this.callTimeout = builder.callTimeout;
     }
 
     public SSLSocketFactory sslSocketFactory() {
@@ -64,6 +67,14 @@ public final class Request {
         return hostnameVerifier;
     }
 
+    /**
+     * Returns this request's call timeout in milliseconds, 0 for none, or -1 to use the client's
+     * {@linkplain HttpClient#callTimeoutMillis() default}.
+     */
+    public int callTimeoutMillis() {
+        return callTimeout;
+    }
+
     public URL url() {
         return url;
     }
@@ -150,6 +161,7 @@ public final class Request {
         Map<Class<?>, Object> tags = Collections.emptyMap();
         SSLSocketFactory sslSocketFactory;
         HostnameVerifier hostnameVerifier;
+        int callTimeout = -1;
 
         public Builder() {
             this.method = "GET";
@@ -166,6 +178,7 @@ public final class Request {
             this.headers = request.headers.newBuilder();
             this.sslSocketFactory = request.sslSocketFactory;
             this.hostnameVerifier = request.hostnameVerifier;
+            this.callTimeout = request.callTimeout;
         }
 
         public Builder sslSocketFactory(SSLSocketFactory sslSocketFactory) {
@@ -192,6 +205,16 @@ public final class Request {
             return this;
         }
 
+        /**
+         * Overrides the client's call timeout for this request. The timeout spans the entire call:
+         * resolving DNS, connecting, writing the request body, server processing, and reading the
+         * response body, including redirects. A value of 0 means no timeout.
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            this.callTimeout = Util.checkDuration("timeout", timeout, unit);
+            return this;
+        }
+
         public Builder url(URL url) {
             if (url == null) throw new NullPointerException("url == null");
             this.url = url;
@@ -202,7 +225,8 @@ public final class Request {
         public Builder url(String url) {
             if (url == null) throw new NullPointerException("url == null");
 
-            // Silently replace web socket URLs with HTTP URLs.
+            // URL has no handler for web socket schemes. Their handshake is an HTTP request, so
+            // they are replaced with the equivalent HTTP URL, which HttpClient#newWebSocket upgrades.
             if (url.regionMatches(true, 0, "ws:", 0, 3)) {
                 url = "http:" + url.substring(3);
             } else if (url.regionMatches(true, 0, "wss:", 0, 4)) {
@@ -16,16 +16,18 @@
 package com.zero.support.net;
 
 
+import com.zero.support.net.internal.ByteArrayPool;
 import com.zero.support.net.internal.Util;
 
-import org.apache.commons.io.IOUtils;
-
-import java.io.DataOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 
@@ -76,7 +78,7 @@ public abstract class RequestBody {
 
             @Override
             public void writeTo(OutputStream stream) throws IOException {
-                new DataOutputStream(stream).write(content);
+                stream.write(content, offset, byteCount);
             }
 
 
@@ -84,11 +86,16 @@ public abstract class RequestBody {
     }
 
     /**
-     * Returns a new request body that transmits the content of {@code file}.
+     * Returns a new request body that transmits the remaining bytes of {@code content}, which may
+     * be a heap or a direct buffer. The buffer isn't copied: it must not change until the call
+     * completes. Its position is left as is, so one buffer can back several bodies, or retries.
+     *
+     * <p>Heap buffers are written from their backing array. Direct buffers go straight to the
+     * socket on the {@link Engine#NIO} engine; other transports copy them through a pooled array.
      */
-    public static com.zero.support.net.RequestBody create(final com.zero.support.net.MediaType contentType, final File file) {
-        if (file == null) throw new NullPointerException("file == null");
-
+    public static com.zero.support.net.RequestBody create(final com.zero.support.net.MediaType contentType, ByteBuffer content) {
+        if (content == null) throw new NullPointerException("content == null");
+        final ByteBuffer source = content.slice();
         return new com.zero.support.net.RequestBody() {
             @Override
             public com.zero.support.net.MediaType contentType() {
@@ -97,29 +104,68 @@ public abstract class RequestBody {
 
             @Override
             public long contentLength() {
-                return file.length();
+                return source.remaining();
             }
 
             @Override
             public void writeTo(OutputStream stream) throws IOException {
-                //todo 实现文件的上传
-                InputStream inputStream = new FileInputStream(file);
+                if (source.hasArray()) {
+                    stream.write(source.array(), source.arrayOffset(), source.remaining());
+                    return;
+                }
+                ByteBuffer content = source.duplicate();
+                byte[] buffer = ByteArrayPool.take();
                 try {
-                    IOUtils.copy(inputStream, stream);
+                    while (content.hasRemaining()) {
+                        int count = Math.min(buffer.length, content.remaining());
+                        content.get(buffer, 0, count);
+                        stream.write(buffer, 0, count);
+                    }
                 } finally {
-                    if (inputStream!=null){
-                        try {
-                            stream.close();
-                        }catch (Throwable e){
-                            //ignore
+                    ByteArrayPool.recycle(buffer);
+                }
+            }
+
+            @Override
+            public ChannelWriter channelWriter() {
+                final ByteBuffer content = source.duplicate();
+                return new ChannelWriter() {
+                    @Override
+                    public boolean writeTo(WritableByteChannel channel) throws IOException {
+                        while (content.hasRemaining()) {
+                            if (channel.write(content) == 0) return false; // The channel is full.
                         }
+                        return true;
+                    }
 
+                    @Override
+                    public void close() {
                     }
-                }
+                };
             }
         };
     }
 
+    /**
+     * Returns a new request body that transmits the content of {@code file}.
+     */
+    public static com.zero.support.net.RequestBody create(final com.zero.support.net.MediaType contentType, final File file) {
+        if (file == null) throw new NullPointerException("file == null");
+        return new FileBody(contentType, file, 0L, -1L);
+    }
+
+    /**
+     * Returns a new request body that transmits {@code byteCount} bytes of {@code file}, starting
+     * {@code offset} bytes in.
+     */
+    public static com.zero.support.net.RequestBody create(final com.zero.support.net.MediaType contentType, final File file,
+                                                                 long offset, long byteCount) {
+        if (file == null) throw new NullPointerException("file == null");
+        if (offset < 0) throw new IllegalArgumentException("offset < 0: " + offset);
+        if (byteCount < 0) throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+        return new FileBody(contentType, file, offset, byteCount);
+    }
+
     /**
      * Returns the Content-Type header for this body.
      */
@@ -130,4 +176,111 @@ public abstract class RequestBody {
     }
 
     public abstract void writeTo(OutputStream stream) throws IOException;
+
+    /**
+     * Returns a new writer of this body to channels, or null if it can only be written with {@link
+     * #writeTo(OutputStream)}. Transports that write to a socket channel prefer it: file bodies
+     * use {@link FileChannel#transferTo}, which lets the kernel send the file without copying it
+     * through the heap.
+     *
+     * <p>Writers are single use and don't acquire resources until they first write, so a writer
+     * that is closed unused costs nothing. Bodies that return one must still support {@code
+     * writeTo(OutputStream)} for transports without a channel, like TLS connections.
+     */
+    public ChannelWriter channelWriter() throws IOException {
+        return null;
+    }
+
+    /**
+     * Writes a request body to a channel, a piece at a time if the channel is non-blocking.
+     */
+    public interface ChannelWriter extends Closeable {
+        /**
+         * Writes as much of the rest of the body as {@code channel} accepts, returning true once
+         * all of it is written. A blocking channel takes it all in one call.
+         */
+        boolean writeTo(WritableByteChannel channel) throws IOException;
+    }
+
+    private static final class FileBody extends com.zero.support.net.RequestBody {
+        private final com.zero.support.net.MediaType contentType;
+        private final File file;
+        private final long offset;
+        /**
+         * The region's length, or -1 for the rest of the file.
+         */
+        private final long byteCount;
+
+        FileBody(com.zero.support.net.MediaType contentType, File file, long offset, long byteCount) {
+            this.contentType = contentType;
+            this.file = file;
+            this.offset = offset;
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        public com.zero.support.net.MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return byteCount != -1L ? byteCount : Math.max(0L, file.length() - offset);
+        }
+
+        @Override
+        public void writeTo(OutputStream stream) throws IOException {
+            // Copied a buffer at a time, so memory stays flat however large the file is. The
+            // caller owns and closes the stream.
+            FileInputStream input = new FileInputStream(file);
+            try {
+                FileChannel channel = input.getChannel();
+                channel.position(offset);
+                byte[] buffer = new byte[8192];
+                for (long remaining = contentLength(); remaining > 0; ) {
+                    int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) throw new EOFException("file truncated: " + file);
+                    stream.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            } finally {
+                Util.closeQuietly(input);
+            }
+        }
+
+        @Override
+        public ChannelWriter channelWriter() {
+            return new FileChannelWriter();
+        }
+
+        private final class FileChannelWriter implements ChannelWriter {
+            private FileInputStream input;
+            private long position;
+            private long end;
+
+            @Override
+            public boolean writeTo(WritableByteChannel target) throws IOException {
+                if (input == null) {
+                    input = new FileInputStream(file);
+                    position = offset;
+                    end = offset + contentLength();
+                }
+                FileChannel channel = input.getChannel();
+                while (position < end) {
+                    long written = channel.transferTo(position, end - position, target);
+                    if (written == 0) {
+                        if (position >= channel.size()) throw new EOFException("file truncated: " + file);
+                        return false; // The channel is full.
+                    }
+                    position += written;
+                }
+                return true;
+            }
+
+            @Override
+            public void close() {
+                Util.closeQuietly(input);
+            }
+        }
+    }
 }
@@ -0,0 +1,150 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.DeflaterSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compresses request bodies with the {@code gzip} or {@code deflate} content coding and sets
+ * {@code Content-Encoding}. Only use it with servers that accept compressed requests; most don't
+ * unless configured to.
+ *
+ * <p>A body is compressed if its media type is one of the configured types, or if it is at least
+ * {@link Builder#minSize} bytes long. Bodies of unknown length count as large. Bodies that already
+ * have a {@code Content-Encoding} are left alone.
+ *
+ * <p>Compression streams as the body is written, so the body is never held in memory, and the
+ * compressed length isn't known up front: HTTP/1.1 requests are sent chunked.
+ *
+ * <pre>   {@code
+ *
+ *   HttpClient client = new HttpClient.Builder()
+ *       .addInterceptor(new RequestCompressionInterceptor.Builder()
+ *           .minSize(1024)
+ *           .mediaTypes(MediaType.get("application/json"))
+ *           .build())
+ *       .build();
+ * }</pre>
+ */
+public final class RequestCompressionInterceptor implements Interceptor {
+    private final boolean gzip;
+    private final long minSize;
+    private final List<MediaType> mediaTypes;
+
+    RequestCompressionInterceptor(Builder builder) {
+        this.gzip = builder.gzip;
+        this.minSize = builder.minSize;
+        this.mediaTypes = new ArrayList<>(builder.mediaTypes);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (body == null
+                || request.header("Content-Encoding") != null
+                || !shouldCompress(body)) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+                .header("Content-Encoding", gzip ? "gzip" : "deflate")
+                .removeHeader("Content-Length")
+                .method(request.method(), new CompressedBody(body, gzip))
+                .build());
+    }
+
+    private boolean shouldCompress(RequestBody body) throws IOException {
+        MediaType contentType = body.contentType();
+        if (contentType != null) {
+            for (MediaType mediaType : mediaTypes) {
+                if (mediaType.type().equals(contentType.type())
+                        && (mediaType.subtype().equals("*") || mediaType.subtype().equals(contentType.subtype()))) {
+                    return true;
+                }
+            }
+        }
+        long contentLength = body.contentLength();
+        return contentLength == -1L || contentLength >= minSize;
+    }
+
+    private static final class CompressedBody extends RequestBody {
+        private final RequestBody delegate;
+        private final boolean gzip;
+
+        CompressedBody(RequestBody delegate, boolean gzip) {
+            this.delegate = delegate;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public void writeTo(OutputStream stream) throws IOException {
+            DeflaterSink sink = new DeflaterSink(stream, gzip);
+            boolean success = false;
+            try {
+                delegate.writeTo(sink);
+                success = true;
+            } finally {
+                if (!success) sink.abort();
+            }
+            sink.close();
+        }
+    }
+
+    public static final class Builder {
+        boolean gzip = true;
+        long minSize = 1024;
+        final List<MediaType> mediaTypes = new ArrayList<>();
+
+        /**
+         * Use the {@code gzip} coding. This is the default.
+         */
+        public Builder gzip() {
+            this.gzip = true;
+            return this;
+        }
+
+        /**
+         * Use the zlib-wrapped {@code deflate} coding.
+         */
+        public Builder deflate() {
+            this.gzip = false;
+            return this;
+        }
+
+        /**
+         * Sets the smallest body that is compressed. Smaller bodies gain little and cost a
+         * deflater. The default is 1024 bytes; pass {@link Long#MAX_VALUE} to compress only the
+         * configured media types.
+         */
+        public Builder minSize(long minSize) {
+            if (minSize < 0) throw new IllegalArgumentException("minSize < 0: " + minSize);
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * Compresses bodies of these types whatever their size. A subtype of {@code *}, like
+         * {@code text/*}, matches every subtype.
+         */
+        public Builder mediaTypes(MediaType... mediaTypes) {
+            for (MediaType mediaType : mediaTypes) {
+                if (mediaType == null) throw new NullPointerException("mediaType == null");
+                this.mediaTypes.add(mediaType);
+            }
+            return this;
+        }
+
+        public RequestCompressionInterceptor build() {
+            return new RequestCompressionInterceptor(this);
+        }
+    }
+}
@@ -40,6 +40,12 @@ public final class Response implements Closeable {
     final String message;
     final com.zero.support.net.Headers headers;
     final ResponseBody body;
+    final Response networkResponse;
+    final Response cacheResponse;
+    final long sentRequestAtMillis;
+    final long receivedResponseAtMillis;
+
+    private volatile CacheControl cacheControl; // Lazily initialized.
 
     Response(Builder builder) {
         this.request = builder.request;
@@ -47,6 +53,10 @@ public final class Response implements Closeable {
         this.message = builder.message;
         this.headers = builder.headers.build();
         this.body = builder.body;
+        this.networkResponse = builder.networkResponse;
+        this.cacheResponse = builder.cacheResponse;
+        this.sentRequestAtMillis = builder.sentRequestAtMillis;
+        this.receivedResponseAtMillis = builder.receivedResponseAtMillis;
     }
 
     /**
@@ -113,6 +123,51 @@ public final class Response implements Closeable {
         return new Builder(this);
     }
 
+    /**
+     * Returns the raw response received from the network. Will be null if this response didn't use
+     * the network, such as when the response is fully cached. The body of the returned response
+     * should not be read.
+     */
+    public Response networkResponse() {
+        return networkResponse;
+    }
+
+    /**
+     * Returns the raw response received from the cache. Will be null if this response didn't use
+     * the cache. For conditional get requests the cache response and network response may both be
+     * non-null. The body of the returned response should not be read.
+     */
+    public Response cacheResponse() {
+        return cacheResponse;
+    }
+
+    /**
+     * Returns the cache control directives for this response. This is never null, even if this
+     * response contains no {@code Cache-Control} header.
+     */
+    public CacheControl cacheControl() {
+        CacheControl result = cacheControl;
+        return result != null ? result : (cacheControl = CacheControl.parse(headers));
+    }
+
+    /**
+     * Returns a {@linkplain System#currentTimeMillis() timestamp} taken immediately before the
+     * request was handed to the network, or 0 if it wasn't recorded. If this response is being
+     * served from the cache then this is the timestamp of the original request.
+     */
+    public long sentRequestAtMillis() {
+        return sentRequestAtMillis;
+    }
+
+    /**
+     * Returns a {@linkplain System#currentTimeMillis() timestamp} taken immediately after the
+     * response headers were received, or 0 if it wasn't recorded. If this response is being served
+     * from the cache then this is the timestamp of the original response.
+     */
+    public long receivedResponseAtMillis() {
+        return receivedResponseAtMillis;
+    }
+
     /**
      * Returns true if this response redirects to another resource.
      */
@@ -159,6 +214,10 @@ public final class Response implements Closeable {
         String message;
         com.zero.support.net.Headers.Builder headers;
         ResponseBody body;
+        Response networkResponse;
+        Response cacheResponse;
+        long sentRequestAtMillis;
+        long receivedResponseAtMillis;
 
         public Builder() {
             headers = new com.zero.support.net.Headers.Builder();
@@ -170,7 +229,10 @@ public final class Response implements Closeable {
             this.message = response.message;
             this.headers = response.headers.newBuilder();
             this.body = response.body;
-
+            this.networkResponse = response.networkResponse;
+            this.cacheResponse = response.cacheResponse;
+            this.sentRequestAtMillis = response.sentRequestAtMillis;
+            this.receivedResponseAtMillis = response.receivedResponseAtMillis;
         }
 
         public Builder request(Request request) {
@@ -229,6 +291,38 @@ public final class Response implements Closeable {
             return this;
         }
 
+        public Builder networkResponse(Response networkResponse) {
+            if (networkResponse != null) checkSupportResponse("networkResponse", networkResponse);
+            this.networkResponse = networkResponse;
+            return this;
+        }
+
+        public Builder cacheResponse(Response cacheResponse) {
+            if (cacheResponse != null) checkSupportResponse("cacheResponse", cacheResponse);
+            this.cacheResponse = cacheResponse;
+            return this;
+        }
+
+        private void checkSupportResponse(String name, Response response) {
+            if (response.body != null) {
+                throw new IllegalArgumentException(name + ".body != null");
+            } else if (response.networkResponse != null) {
+                throw new IllegalArgumentException(name + ".networkResponse != null");
+            } else if (response.cacheResponse != null) {
+                throw new IllegalArgumentException(name + ".cacheResponse != null");
+            }
+        }
+
+        public Builder sentRequestAtMillis(long sentRequestAtMillis) {
+            this.sentRequestAtMillis = sentRequestAtMillis;
+            return this;
+        }
+
+        public Builder receivedResponseAtMillis(long receivedResponseAtMillis) {
+            this.receivedResponseAtMillis = receivedResponseAtMillis;
+            return this;
+        }
+
         public com.zero.support.net.Response build() {
             if (request == null) throw new IllegalStateException("request == null");
 
@@ -16,20 +16,35 @@
 package com.zero.support.net;
 
 
+import com.zero.support.net.internal.ByteArrayPool;
+import com.zero.support.net.internal.CharArrayPool;
 import com.zero.support.net.internal.Util;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 
 public abstract class ResponseBody implements Closeable {
     public static final Charset UTF_8 = Charset.forName("UTF-8");
 
+    /**
+     * Multiple calls to {@link #charStream()} must return the same instance.
+     */
+    private Reader reader;
+
     /**
      * Returns a new response body that transmits {@code content}. If {@code contentType} is non-null
      * and lacks a charset, this will use UTF-8.
@@ -44,7 +59,7 @@ public abstract class ResponseBody implements Closeable {
             }
         }
 
-        byte[] bytes = content.getBytes();
+        byte[] bytes = content.getBytes(charset);
         return create(contentType, bytes);
     }
 
@@ -55,6 +70,37 @@ public abstract class ResponseBody implements Closeable {
         return create(contentType, content.length, new ByteArrayInputStream(content));
     }
 
+    /**
+     * Returns a new response body that transmits and consumes the content of {@code buffer}.
+     * Closing the body recycles the buffer's segments.
+     */
+    public static com.zero.support.net.ResponseBody create(final com.zero.support.net.MediaType contentType, final Buffer buffer) {
+        final long contentLength = buffer.size();
+        final InputStream source = buffer.inputStream();
+        return new com.zero.support.net.ResponseBody() {
+            @Override
+            public com.zero.support.net.MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public InputStream source() {
+                return source;
+            }
+
+            @Override
+            public int read(ByteBuffer sink) {
+                if (!sink.hasRemaining()) return 0;
+                return buffer.read(sink);
+            }
+        };
+    }
+
     /**
      * Returns a new response body that transmits {@code content}.
      */
@@ -101,35 +147,84 @@ public abstract class ResponseBody implements Closeable {
      * possibility for your response.
      */
     public final byte[] bytes() throws IOException {
-        DataInputStream stream = null;
+        InputStream stream = source();
         try {
-            stream = new DataInputStream(source());
             long contentLength = contentLength();
             if (contentLength > Integer.MAX_VALUE) {
                 throw new IOException("Cannot buffer entire body for content length: " + contentLength);
             }
-            ByteArrayOutputStream output = new ByteArrayOutputStream(contentLength == -1 ? 0 : (int) contentLength);
-            byte[] bytes = new byte[4 * 1024];
-
-            int count;
-            while ((count = stream.read(bytes)) != -1) {
-                output.write(bytes, 0, count);
+            if (contentLength == -1) {
+                Buffer buffer = new Buffer();
+                try {
+                    buffer.readFrom(stream);
+                    return buffer.readByteArray();
+                } finally {
+                    buffer.close();
+                }
+            }
+            // The length is known: read straight into the result, with no intermediate copies.
+            byte[] bytes = new byte[(int) contentLength];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = stream.read(bytes, offset, bytes.length - offset);
+                if (count == -1) break;
+                offset += count;
             }
-            if (contentLength != -1 && contentLength != output.size()) {
+            if (offset != bytes.length || stream.read() != -1) {
                 throw new IOException("Content-Length ("
                         + contentLength
                         + ") and stream length ("
-                        + bytes.length
+                        + (offset != bytes.length ? offset : "more")
                         + ") disagree");
             }
-            return output.toByteArray();
+            return bytes;
         } finally {
-            if (stream != null) {
-                stream.close();
-            }
+            stream.close();
         }
     }
 
+    /**
+     * Reads up to {@code sink.remaining()} bytes of the body into {@code sink}, which may be a heap
+     * or a direct buffer, and returns the number read, or -1 at the end of the body. Like {@link
+     * java.nio.channels.ReadableByteChannel#read} it may read fewer bytes than requested; use
+     * {@link #readInto} to fill the buffer.
+     *
+     * <p>Heap buffers are filled straight from the body's stream. Direct buffers are filled
+     * through a pooled array, except for bodies that are already in memory.
+     */
+    public int read(ByteBuffer sink) throws IOException {
+        if (!sink.hasRemaining()) return 0;
+        InputStream source = source();
+        if (sink.hasArray()) {
+            int read = source.read(sink.array(), sink.arrayOffset() + sink.position(), sink.remaining());
+            if (read > 0) sink.position(sink.position() + read);
+            return read;
+        }
+        byte[] buffer = ByteArrayPool.take();
+        try {
+            int read = source.read(buffer, 0, Math.min(buffer.length, sink.remaining()));
+            if (read > 0) sink.put(buffer, 0, read);
+            return read;
+        } finally {
+            ByteArrayPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * Reads bytes of the body into {@code sink} until it is full or the body ends. Returns the
+     * number read, which is less than {@code sink.remaining()} only at the end of the body, or -1
+     * if the body had already ended. A buffer can be reused across calls and bodies by clearing it.
+     */
+    public final int readInto(ByteBuffer sink) throws IOException {
+        int total = 0;
+        while (sink.hasRemaining()) {
+            int read = read(sink);
+            if (read == -1) return total == 0 ? -1 : total;
+            total += read;
+        }
+        return total;
+    }
+
     /**
      * Returns the response as a string.
      *
@@ -146,8 +241,148 @@ public abstract class ResponseBody implements Closeable {
      * possibility for your response.
      */
     public final String string() throws IOException {
-        byte[] bytes = bytes();
-        return new String(bytes, charset());
+        Reader reader = charStream();
+        char[] buffer = CharArrayPool.take();
+        try {
+            long contentLength = contentLength();
+            StringBuilder result = new StringBuilder(
+                    contentLength > 0 && contentLength < Integer.MAX_VALUE ? (int) contentLength : 16);
+            for (int read; (read = reader.read(buffer, 0, buffer.length)) != -1; ) {
+                result.append(buffer, 0, read);
+            }
+            return result.toString();
+        } finally {
+            CharArrayPool.recycle(buffer);
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the response as a character stream decoded incrementally, so that bodies of any
+     * size can be read in constant memory.
+     *
+     * <p>If the response starts with a <a href="https://en.wikipedia.org/wiki/Byte_order_mark">Byte
+     * Order Mark (BOM)</a>, it is consumed and used to determine the charset of the response bytes.
+     * Otherwise the charset of the Content-Type header is used, or UTF-8 if it has none. Malformed
+     * input is replaced, as by {@link String#String(byte[], Charset)}.
+     */
+    public final Reader charStream() {
+        Reader r = reader;
+        return r != null ? r : (reader = new BomAwareReader(source(), charset()));
+    }
+
+    /**
+     * Returns a reader of the lines of the response. Lines end with {@code "\n"} or {@code
+     * "\r\n"}; the terminator isn't part of the line. Only one line is held in memory at a time.
+     */
+    public final RecordReader lines() {
+        return new RecordReader(charStream(), "\n", true);
+    }
+
+    /**
+     * Returns a reader of the newline-delimited JSON records of the response, which are decoded
+     * with {@code decoder}. Records are split over the response bytes, without decoding them to
+     * text first.
+     */
+    public final <T> JsonLinesReader<T> jsonLines(RecordDecoder<T> decoder) {
+        if (decoder == null) throw new IllegalArgumentException("decoder == null");
+        return new JsonLinesReader<>(source(), decoder);
+    }
+
+    /**
+     * Returns a reader of the records of the response, which are separated by {@code delimiter}.
+     * Only one record is held in memory at a time.
+     */
+    public final RecordReader records(String delimiter) {
+        if (delimiter == null || delimiter.isEmpty()) throw new IllegalArgumentException("delimiter is empty");
+        return new RecordReader(charStream(), delimiter, false);
+    }
+
+    /**
+     * Writes the body to {@code file}, replacing its content, then closes the body. Returns the
+     * number of bytes written.
+     */
+    public final long writeTo(File file) throws IOException {
+        return writeTo(file, 0L, null);
+    }
+
+    /**
+     * Writes the body to the end of {@code file} if {@code append} is true, or in place of its
+     * content otherwise, then closes the body. Returns the number of bytes written.
+     */
+    public final long writeTo(File file, boolean append) throws IOException {
+        return writeTo(file, append ? file.length() : 0L, null);
+    }
+
+    /**
+     * Writes the body into {@code file} starting {@code offset} bytes in, then closes the body. The
+     * bytes before {@code offset} are kept and any after it are discarded, which resumes a download
+     * whose first {@code offset} bytes were saved earlier. Returns the number of bytes written.
+     *
+     * @param listener notified after each buffer is written, or null.
+     */
+    public final long writeTo(File file, long offset, ProgressListener listener) throws IOException {
+        if (offset < 0) throw new IllegalArgumentException("offset < 0: " + offset);
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (offset > randomAccessFile.length()) {
+                throw new IllegalArgumentException("offset > file length: " + offset);
+            }
+            randomAccessFile.setLength(offset);
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.position(offset);
+            return writeTo(channel, listener);
+        } finally {
+            Util.closeQuietly(randomAccessFile);
+            close();
+        }
+    }
+
+    /**
+     * Writes the body to {@code channel}, then closes the body. Returns the number of bytes
+     * written.
+     */
+    public final long writeTo(WritableByteChannel channel) throws IOException {
+        return writeTo(channel, null);
+    }
+
+    /**
+     * Writes the body to {@code channel}, which must be in blocking mode, then closes the body.
+     * The bytes are copied through a pooled buffer, so saving large bodies allocates nothing per
+     * call. Returns the number of bytes written.
+     *
+     * @param listener notified after each buffer is written, or null.
+     */
+    public final long writeTo(WritableByteChannel channel, ProgressListener listener) throws IOException {
+        byte[] buffer = ByteArrayPool.take();
+        try {
+            InputStream source = source();
+            long contentLength = contentLength();
+            long total = 0L;
+            for (int read; (read = source.read(buffer)) != -1; ) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+                total += read;
+                if (listener != null) listener.onProgress(total, contentLength);
+            }
+            return total;
+        } finally {
+            ByteArrayPool.recycle(buffer);
+            close();
+        }
+    }
+
+    /**
+     * Receives the progress of {@link #writeTo(WritableByteChannel, ProgressListener)}.
+     */
+    public interface ProgressListener {
+        /**
+         * @param contentLength the body's length, or -1 if unknown.
+         */
+        void onProgress(long bytesWritten, long contentLength);
     }
 
     private Charset charset() {
@@ -160,4 +395,139 @@ public abstract class ResponseBody implements Closeable {
         Util.closeQuietly(source());
     }
 
+    /**
+     * Decodes a byte stream through one decoder, straight into the caller's array. The charset is
+     * picked on the first read, from a byte order mark if there is one.
+     */
+    static final class BomAwareReader extends Reader {
+        private static final int SURROGATE_PAIR = 2;
+
+        private final InputStream source;
+        private final Charset charset;
+        private CharsetDecoder decoder;
+        private byte[] array;
+        /**
+         * Bytes read but not yet decoded, between position and limit.
+         */
+        private ByteBuffer bytes;
+        /**
+         * Chars decoded for a read too small to take them, for example half of a surrogate pair.
+         */
+        private final CharBuffer pending = CharBuffer.allocate(SURROGATE_PAIR);
+        private boolean endOfInput;
+        private boolean flushed;
+        private boolean closed;
+
+        BomAwareReader(InputStream source, Charset charset) {
+            this.source = source;
+            this.charset = charset;
+            pending.limit(0);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            Util.checkOffsetAndCount(cbuf.length, off, len);
+            if (closed) throw new IOException("Stream closed");
+            if (len == 0) return 0;
+            if (decoder == null) start();
+            if (pending.hasRemaining()) {
+                int count = Math.min(len, pending.remaining());
+                pending.get(cbuf, off, count);
+                return count;
+            }
+            if (len < SURROGATE_PAIR) {
+                pending.clear();
+                int count = decode(pending);
+                pending.flip();
+                if (count == -1) return -1;
+                pending.get(cbuf, off, 1);
+                return 1;
+            }
+            return decode(CharBuffer.wrap(cbuf, off, len));
+        }
+
+        /**
+         * Decodes into {@code sink} until at least one char is produced or the input ends.
+         */
+        private int decode(CharBuffer sink) throws IOException {
+            int start = sink.position();
+            while (sink.position() == start) {
+                if (flushed) return -1;
+                CoderResult result = decoder.decode(bytes, sink, endOfInput);
+                if (result.isOverflow()) break;
+                if (endOfInput) {
+                    decoder.flush(sink);
+                    flushed = true;
+                    recycle();
+                } else {
+                    fill();
+                }
+            }
+            return sink.position() - start;
+        }
+
+        /**
+         * Reads more bytes after those not yet decoded.
+         */
+        private void fill() throws IOException {
+            bytes.compact();
+            int read = source.read(array, bytes.position(), bytes.remaining());
+            if (read == -1) {
+                endOfInput = true;
+            } else {
+                bytes.position(bytes.position() + read);
+            }
+            bytes.flip();
+        }
+
+        private void start() throws IOException {
+            array = ByteArrayPool.take();
+            bytes = ByteBuffer.wrap(array);
+            bytes.limit(0);
+            while (bytes.remaining() < 4 && !endOfInput) {
+                fill();
+            }
+            Charset charset = this.charset;
+            int b0 = peek(0), b1 = peek(1), b2 = peek(2), b3 = peek(3);
+            if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+                charset = UTF_8;
+                bytes.position(3);
+            } else if (b0 == 0x00 && b1 == 0x00 && b2 == 0xfe && b3 == 0xff) {
+                charset = Charset.forName("UTF-32BE");
+                bytes.position(4);
+            } else if (b0 == 0xff && b1 == 0xfe && b2 == 0x00 && b3 == 0x00) {
+                charset = Charset.forName("UTF-32LE");
+                bytes.position(4);
+            } else if (b0 == 0xfe && b1 == 0xff) {
+                charset = Charset.forName("UTF-16BE");
+                bytes.position(2);
+            } else if (b0 == 0xff && b1 == 0xfe) {
+                charset = Charset.forName("UTF-16LE");
+                bytes.position(2);
+            }
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        private int peek(int index) {
+            return index < bytes.limit() ? array[index] & 0xff : -1;
+        }
+
+        private void recycle() {
+            if (array != null) {
+                ByteArrayPool.recycle(array);
+                array = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            recycle();
+            source.close();
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+package com.zero.support.net;
+
+
+import com.zero.support.net.internal.HttpDate;
+import com.zero.support.net.internal.http2.ConnectionShutdownException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.Date;
+
+/**
+ * Retries idempotent requests as configured by the client's {@link RetryPolicy}. It runs after the
+ * application interceptors, so they see one call however many attempts it takes.
+ */
+final class RetryInterceptor implements Interceptor {
+    private final HttpClient client;
+    private final RetryPolicy policy;
+
+    RetryInterceptor(HttpClient client, RetryPolicy policy) {
+        this.client = client;
+        this.policy = policy;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!HttpMethod.isIdempotent(request.method())) {
+            Response response = chain.proceed(request);
+            recordOutcome(response);
+            return response;
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (attempt >= policy.maxAttempts
+                        || !client.retryOnConnectionFailure()
+                        || !isRecoverable(e)
+                        || chain.call().isCanceled()
+                        || !policy.budget.tryAcquire()) {
+                    throw e;
+                }
+                backoff(chain.call(), policy.backoffMillis(attempt));
+                continue;
+            }
+
+            if (!policy.retriesStatus(response.code())) {
+                recordOutcome(response);
+                return response;
+            }
+            if (attempt >= policy.maxAttempts) {
+                return response;
+            }
+            long delayMillis = retryAfterMillis(response);
+            if (delayMillis == -1) {
+                delayMillis = policy.backoffMillis(attempt);
+            } else if (delayMillis > policy.maxRetryAfterMillis) {
+                return response;
+            }
+            if (!policy.budget.tryAcquire()) {
+                return response;
+            }
+            ResponseBody body = response.body();
+            if (body != null) {
+                body.close();
+            }
+            backoff(chain.call(), delayMillis);
+        }
+    }
+
+    private void recordOutcome(Response response) {
+        if (response.code() < 500 && !policy.retriesStatus(response.code())) {
+            policy.budget.deposit();
+        }
+    }
+
+    /**
+     * Returns true if {@code e} means the connection failed or was reset before the server
+     * responded, which a fresh attempt may not run into.
+     */
+    private static boolean isRecoverable(IOException e) {
+        if (e instanceof InterruptedIOException) {
+            return false; // A timeout: the server may still be working on the request.
+        }
+        return e instanceof SocketException
+                || e instanceof EOFException
+                || e instanceof ConnectionShutdownException;
+    }
+
+    private static void backoff(Call call, long delayMillis) throws IOException {
+        if (delayMillis <= 0) return;
+        if (call instanceof RealCall) {
+            if (((RealCall) call).awaitCanceled(delayMillis)) throw new IOException("Canceled");
+            return;
+        }
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+    }
+
+    /**
+     * Returns the delay the response's {@code Retry-After} header asks for, or -1 if it has none
+     * that parses.
+     */
+    static long retryAfterMillis(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) return -1;
+        value = value.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : Math.min(seconds, Long.MAX_VALUE / 1000) * 1000;
+        } catch (NumberFormatException ignored) {
+        }
+        Date date = HttpDate.parse(value);
+        if (date == null) return -1;
+        return Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,164 @@
+package com.zero.support.net;
+
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures how a client retries failed calls. Only idempotent requests (see {@link
+ * HttpMethod#isIdempotent}) are retried, either because connecting or exchanging failed before a
+ * response arrived, or because the server answered with one of the retryable status codes.
+ *
+ * <p>Attempts are spaced by exponential backoff with full jitter: the wait before retry {@code n}
+ * is random between zero and {@code min(maxBackoff, initialBackoff * multiplier^(n - 1))}. A
+ * {@code Retry-After} header on a retryable response replaces the backoff; if it asks for longer
+ * than {@link Builder#maxRetryAfter} the response is returned as is.
+ *
+ * <p>Retries are also limited by a budget so that they can't multiply the load on a server that
+ * is already failing. The budget is a token bucket: every successful response deposits {@code
+ * tokenRatio} tokens, every retry withdraws one, and no retry is made while the bucket holds less
+ * than one. The bucket starts full. Clients built with the same policy share its budget.
+ *
+ * <pre>   {@code
+ *
+ *   HttpClient client = new HttpClient.Builder()
+ *       .retryPolicy(new RetryPolicy.Builder()
+ *           .maxAttempts(4)
+ *           .retryOnStatus(429, 502, 503, 504)
+ *           .build())
+ *       .build();
+ * }</pre>
+ */
+public final class RetryPolicy {
+    private static final Random RANDOM = new Random();
+
+    final int maxAttempts;
+    final long initialBackoffMillis;
+    final long maxBackoffMillis;
+    final double multiplier;
+    final long maxRetryAfterMillis;
+    final int[] retryableCodes;
+    final TokenBucket budget;
+
+    RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.multiplier = builder.multiplier;
+        this.maxRetryAfterMillis = builder.maxRetryAfterMillis;
+        this.retryableCodes = builder.retryableCodes.clone();
+        Arrays.sort(retryableCodes);
+        this.budget = new TokenBucket(builder.maxTokens, builder.tokenRatio);
+    }
+
+    /**
+     * The most times a call is attempted, including the first attempt.
+     */
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns true if responses with {@code code} are retried.
+     */
+    public boolean retriesStatus(int code) {
+        return Arrays.binarySearch(retryableCodes, code) >= 0;
+    }
+
+    /**
+     * Returns how many retries the budget currently allows.
+     */
+    public int availableRetries() {
+        return budget.available();
+    }
+
+    /**
+     * Returns the randomized delay before attempt {@code attempt + 1}, after {@code attempt}
+     * attempts have failed.
+     */
+    long backoffMillis(int attempt) {
+        double ceiling = initialBackoffMillis * Math.pow(multiplier, attempt - 1);
+        return (long) (RANDOM.nextDouble() * Math.min(ceiling, maxBackoffMillis));
+    }
+
+    public static final class Builder {
+        int maxAttempts = 3;
+        long initialBackoffMillis = 100;
+        long maxBackoffMillis = 10_000;
+        double multiplier = 2;
+        long maxRetryAfterMillis = 60_000;
+        int[] retryableCodes = {429, 503};
+        int maxTokens = 10;
+        double tokenRatio = 0.1;
+
+        /**
+         * Sets the most times a call is attempted, including the first attempt. The default is 3.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the backoff ceiling before the first retry and the cap it grows to. The defaults are
+         * 100 milliseconds and 10 seconds.
+         */
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            if (initial < 0) throw new IllegalArgumentException("initial < 0: " + initial);
+            if (max < initial) throw new IllegalArgumentException("max < initial: " + max);
+            this.initialBackoffMillis = unit.toMillis(initial);
+            this.maxBackoffMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Sets the factor the backoff ceiling grows by with each retry. The default is 2.
+         */
+        public Builder backoffMultiplier(double multiplier) {
+            if (!(multiplier >= 1)) throw new IllegalArgumentException("multiplier < 1: " + multiplier);
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Sets the longest {@code Retry-After} delay that is waited out. Responses asking for a
+         * longer wait are returned to the caller. The default is one minute.
+         */
+        public Builder maxRetryAfter(long maxRetryAfter, TimeUnit unit) {
+            if (maxRetryAfter < 0) throw new IllegalArgumentException("maxRetryAfter < 0: " + maxRetryAfter);
+            this.maxRetryAfterMillis = unit.toMillis(maxRetryAfter);
+            return this;
+        }
+
+        /**
+         * Sets the response codes that are retried. The default is 429 and 503, which servers send
+         * to ask clients to come back later. Pass no codes to retry only failed connections.
+         */
+        public Builder retryOnStatus(int... codes) {
+            for (int code : codes) {
+                if (code < 100 || code > 999) throw new IllegalArgumentException("code: " + code);
+            }
+            this.retryableCodes = codes.clone();
+            return this;
+        }
+
+        /**
+         * Configures the retry budget: it holds at most {@code maxTokens} retries and gains {@code
+         * tokenRatio} of a retry for each successful response. The defaults are 10 and 0.1, so
+         * that beyond an initial burst of 10, retries add at most 10% to the traffic.
+         */
+        public Builder retryBudget(int maxTokens, double tokenRatio) {
+            if (maxTokens < 0) throw new IllegalArgumentException("maxTokens < 0: " + maxTokens);
+            if (!(tokenRatio >= 0)) throw new IllegalArgumentException("tokenRatio < 0: " + tokenRatio);
+            this.maxTokens = maxTokens;
+            this.tokenRatio = tokenRatio;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
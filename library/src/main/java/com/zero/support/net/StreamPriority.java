@@ -0,0 +1,57 @@
+package com.zero.support.net;
+
+
+/**
+ * The relative weight of a request among the other streams on its HTTP/2 connection. Attach it as
+ * a {@linkplain Request.Builder#tag(Class, Object) tag}; the {@link Engine#SOCKET} engine sends it
+ * with the request headers so the server can share bandwidth accordingly. HTTP/1.1 exchanges ignore
+ * it.
+ *
+ * <pre>{@code
+ * Request request = new Request.Builder()
+ *     .url("https://example.com/thumbnail.jpg")
+ *     .tag(StreamPriority.class, StreamPriority.of(8))
+ *     .build();
+ * }</pre>
+ */
+public final class StreamPriority {
+    public static final int MIN_WEIGHT = 1;
+    public static final int MAX_WEIGHT = 256;
+
+    /**
+     * The weight HTTP/2 assigns to streams that don't declare one.
+     */
+    public static final int DEFAULT_WEIGHT = 16;
+
+    private final int weight;
+
+    private StreamPriority(int weight) {
+        this.weight = weight;
+    }
+
+    public static StreamPriority of(int weight) {
+        if (weight < MIN_WEIGHT || weight > MAX_WEIGHT) {
+            throw new IllegalArgumentException("weight out of range: " + weight);
+        }
+        return new StreamPriority(weight);
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof StreamPriority && ((StreamPriority) other).weight == weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamPriority{weight=" + weight + '}';
+    }
+}
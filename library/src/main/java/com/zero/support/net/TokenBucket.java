@@ -0,0 +1,49 @@
+package com.zero.support.net;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free budget of extra requests, like retries or hedges, earned as a fraction of ordinary
+ * traffic. Each {@link #deposit} adds {@code ratio} tokens up to {@code maxTokens}; each extra
+ * request spends a whole token. The bucket starts full.
+ */
+final class TokenBucket {
+    private static final long SCALE = 1000;
+
+    private final long maxTokens;
+    private final long ratio;
+    /**
+     * The balance, in thousandths of a token.
+     */
+    private final AtomicLong tokens;
+
+    TokenBucket(int maxTokens, double ratio) {
+        this.maxTokens = maxTokens * SCALE;
+        this.ratio = Math.round(ratio * SCALE);
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    void deposit() {
+        while (true) {
+            long current = tokens.get();
+            if (current >= maxTokens) return;
+            if (tokens.compareAndSet(current, Math.min(maxTokens, current + ratio))) return;
+        }
+    }
+
+    /**
+     * Spends one token, returning false if there isn't one.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) return false;
+            if (tokens.compareAndSet(current, current - SCALE)) return true;
+        }
+    }
+
+    int available() {
+        return (int) (tokens.get() / SCALE);
+    }
+}
@@ -0,0 +1,69 @@
+package com.zero.support.net;
+
+
+import java.nio.ByteBuffer;
+
+/**
+ * A non-blocking interface to a web socket. Use {@link HttpClient#newWebSocket} to create one.
+ *
+ * <p>All web sockets start in the <strong>connecting</strong> state, are <strong>open</strong>
+ * once the server accepts the upgrade, and end up <strong>closed</strong> after both peers sent
+ * a close frame, or <strong>canceled</strong> if the connection failed or {@link #cancel} was
+ * called. Messages can be enqueued in any state before closing starts; they are sent in order
+ * once the web socket is open.
+ *
+ * <p>Messages are queued in memory, so enqueueing never blocks. When the queue would exceed 16
+ * MiB, the message is rejected and the web socket is closed gracefully.
+ */
+public interface WebSocket {
+    /**
+     * Returns the original request that initiated this web socket.
+     */
+    Request request();
+
+    /**
+     * Returns the size in bytes of all messages enqueued to be transmitted to the server. This
+     * doesn't include framing overhead or compression, nor messages already handed to the socket.
+     */
+    long queueSize();
+
+    /**
+     * Enqueues {@code text} to be sent as a text (type {@code 0x1}) message, encoded as UTF-8.
+     * Returns false if the message wasn't enqueued because the web socket is closing, closed, or
+     * failed, or because the queue is full.
+     */
+    boolean send(String text);
+
+    /**
+     * Enqueues {@code bytes} to be sent as a binary (type {@code 0x2}) message. The array is
+     * copied. Returns false if the message wasn't enqueued, as with {@link #send(String)}.
+     */
+    boolean send(byte[] bytes);
+
+    /**
+     * Enqueues the remaining bytes of {@code bytes} to be sent as a binary message and consumes
+     * them. Returns false if the message wasn't enqueued, as with {@link #send(String)}; the
+     * buffer is unchanged then.
+     */
+    boolean send(ByteBuffer bytes);
+
+    /**
+     * Starts a graceful shutdown of this web socket. Messages enqueued before this call are still
+     * sent, followed by a close frame, and the web socket is closed once the server answers with
+     * its own. If the server doesn't within 60 seconds, the web socket is canceled.
+     *
+     * @param code   status code as defined by <a href="http://tools.ietf.org/html/rfc6455#section-7.4">Section
+     *               7.4 of RFC 6455</a>.
+     * @param reason reason for shutting down, no longer than 123 bytes of UTF-8, or null.
+     * @return false if a graceful shutdown was already underway or if the web socket is already
+     * closed or canceled.
+     * @throws IllegalArgumentException if {@code code} is invalid or {@code reason} is too long.
+     */
+    boolean close(int code, String reason);
+
+    /**
+     * Immediately and violently releases the resources held by this web socket, discarding any
+     * enqueued messages. Does nothing if the web socket is already closed or canceled.
+     */
+    void cancel();
+}
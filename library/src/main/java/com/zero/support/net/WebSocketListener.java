@@ -0,0 +1,50 @@
+package com.zero.support.net;
+
+
+/**
+ * Receives the events of a {@link WebSocket}. Methods are called one at a time, on the thread
+ * that reads the web socket, so a slow listener delays the messages that follow.
+ */
+public abstract class WebSocketListener {
+    /**
+     * Called when the server accepted the web socket and it may begin transmitting messages. The
+     * response has no body.
+     */
+    public void onOpen(WebSocket webSocket, Response response) {
+    }
+
+    /**
+     * Called when a text (type {@code 0x1}) message has been received.
+     */
+    public void onMessage(WebSocket webSocket, String text) {
+    }
+
+    /**
+     * Called when a binary (type {@code 0x2}) message has been received.
+     */
+    public void onMessage(WebSocket webSocket, byte[] bytes) {
+    }
+
+    /**
+     * Called when the server sent a close frame: no more messages will be received. Unless the
+     * application already started closing, a close frame with the same code is sent back.
+     */
+    public void onClosing(WebSocket webSocket, int code, String reason) {
+    }
+
+    /**
+     * Called when both peers have sent close frames and the connection has been released.
+     */
+    public void onClosed(WebSocket webSocket, int code, String reason) {
+    }
+
+    /**
+     * Called when the web socket was closed because of an error reading from or writing to the
+     * network, a protocol violation, a missed pong, or a call to {@link WebSocket#cancel}. Both
+     * incoming and outgoing messages may have been lost.
+     *
+     * @param response the server's answer if the handshake failed, or null.
+     */
+    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+    }
+}
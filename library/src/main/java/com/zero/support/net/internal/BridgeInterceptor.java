@@ -0,0 +1,167 @@
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.ContentDecoder;
+import com.zero.support.net.Interceptor;
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asks for compressed responses and decodes them, so that application code sees the same response
+ * whether or not the server compressed it. The codings offered are those of the client's {@link
+ * ContentDecoder}s. Callers that set their own {@code Accept-Encoding} get the response untouched,
+ * as do HEAD requests, whose headers must describe the bytes a plain GET returns, range requests,
+ * whose offsets would otherwise count encoded bytes, and responses with a coding no decoder knows.
+ */
+public final class BridgeInterceptor implements Interceptor {
+    private final List<ContentDecoder> decoders;
+    private final String acceptEncoding;
+
+    public BridgeInterceptor(List<ContentDecoder> decoders) {
+        this.decoders = decoders;
+        StringBuilder acceptEncoding = new StringBuilder();
+        for (ContentDecoder decoder : decoders) {
+            if (acceptEncoding.length() > 0) acceptEncoding.append(", ");
+            acceptEncoding.append(decoder.encoding());
+        }
+        this.acceptEncoding = acceptEncoding.toString();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Request networkRequest = networkRequest(request);
+        Response response = chain.proceed(networkRequest);
+        return networkRequest == request ? response : userResponse(response);
+    }
+
+    /**
+     * Returns {@code request} with the codings this bridge offers, or {@code request} itself if it
+     * should be sent untouched. Transports that bypass the interceptor chain call this and {@link
+     * #userResponse} directly.
+     */
+    public Request networkRequest(Request request) {
+        if (decoders.isEmpty()
+                || request.method().equals("HEAD")
+                || request.header("Accept-Encoding") != null
+                || request.header("Range") != null) {
+            return request;
+        }
+        return request.newBuilder()
+                .header("Accept-Encoding", acceptEncoding)
+                .build();
+    }
+
+    /**
+     * Returns {@code response}, the answer to a request this bridge rewrote, with its content
+     * codings undone.
+     */
+    public Response userResponse(Response response) throws IOException {
+        ResponseBody body = response.body();
+        String encoding = response.header("Content-Encoding");
+        if (body == null || encoding == null || !promisesBody(response)) return response;
+
+        // Codings are listed in the order they were applied, so undo them from the last.
+        List<ContentDecoder> chosen = new ArrayList<>();
+        for (String coding : encoding.split(",")) {
+            coding = coding.trim();
+            if (coding.isEmpty() || "identity".equalsIgnoreCase(coding)) continue;
+            ContentDecoder decoder = decoderFor(coding);
+            if (decoder == null) return response;
+            chosen.add(0, decoder);
+        }
+        if (chosen.isEmpty()) return response;
+
+        InputStream raw = body.source();
+        InputStream source = raw;
+        try {
+            for (ContentDecoder decoder : chosen) {
+                source = decoder.decode(source);
+            }
+        } catch (IOException | RuntimeException e) {
+            Util.closeQuietly(source);
+            throw e;
+        }
+        source = new DecodedInputStream(source, raw);
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(body.contentType(), -1L, source))
+                .build();
+    }
+
+    private ContentDecoder decoderFor(String coding) {
+        if ("x-gzip".equalsIgnoreCase(coding)) coding = "gzip";
+        for (ContentDecoder decoder : decoders) {
+            if (decoder.encoding().equalsIgnoreCase(coding)) return decoder;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the raw body to its end once the decoded data ends. Decoders stop at the end of their
+     * data, which leaves a chunked body's terminator unread; reading it lets the cache see the
+     * whole body and the connection be reused.
+     */
+    private static final class DecodedInputStream extends FilterInputStream {
+        /**
+         * The most trailing bytes read after the decoded data; more than that is left to close().
+         */
+        private static final int TRAILER_LIMIT = 1024;
+
+        private final InputStream raw;
+        private boolean exhausted;
+
+        DecodedInputStream(InputStream decoded, InputStream raw) {
+            super(decoded);
+            this.raw = raw;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) readTrailer();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count == -1) readTrailer();
+            return count;
+        }
+
+        private void readTrailer() {
+            if (exhausted) return;
+            exhausted = true;
+            byte[] trailer = new byte[64];
+            try {
+                for (int total = 0; total < TRAILER_LIMIT; ) {
+                    int count = raw.read(trailer, 0, trailer.length);
+                    if (count == -1) return;
+                    total += count;
+                }
+            } catch (IOException ignored) {
+                // The decoded data is complete; the connection just won't be reused.
+            }
+        }
+    }
+
+    /**
+     * Returns true if {@code response} has body bytes to decode: HEAD responses and some statuses
+     * carry encoding headers with an empty body.
+     */
+    private static boolean promisesBody(Response response) {
+        if ("HEAD".equals(response.request().method())) return false;
+        int code = response.code();
+        if ((code >= 100 && code < 200) || code == 204 || code == 304) return false;
+        return response.body().contentLength() != 0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.zero.support.net.internal;
+
+
+import java.util.ArrayDeque;
+
+/**
+ * A small process-wide pool of I/O buffers, so that bulk copies like saving a response body to a
+ * file don't allocate a fresh array each time. At most {@link #MAX_POOLED} buffers are kept; extra
+ * buffers are left to the garbage collector.
+ */
+public final class ByteArrayPool {
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED = 8;
+
+    private static final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+
+    private ByteArrayPool() {
+    }
+
+    /**
+     * Returns a buffer of {@link #BUFFER_SIZE} bytes. Its content is undefined.
+     */
+    public static byte[] take() {
+        synchronized (pool) {
+            byte[] buffer = pool.pollFirst();
+            if (buffer != null) return buffer;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Returns {@code buffer} to the pool. The caller must not use it afterwards.
+     */
+    public static void recycle(byte[] buffer) {
+        if (buffer.length != BUFFER_SIZE) throw new IllegalArgumentException("not a pooled buffer");
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) pool.addFirst(buffer);
+        }
+    }
+}
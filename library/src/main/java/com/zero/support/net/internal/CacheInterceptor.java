@@ -1,15 +1,351 @@
 package com.zero.support.net.internal;
 
 
+import com.zero.support.net.Headers;
+import com.zero.support.net.HttpMethod;
 import com.zero.support.net.Interceptor;
+import com.zero.support.net.Request;
 import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+import com.zero.support.net.internal.cache.CacheRequest;
+import com.zero.support.net.internal.cache.CacheStrategy;
+import com.zero.support.net.internal.cache.InternalCache;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * Serves requests from the cache and writes responses to the cache. Without a cache it only
+ * answers {@code only-if-cached} requests, with a 504.
+ *
+ * <p>Response bodies are written to the cache as the application reads them, so a large body is
+ * never held in memory; the entry is committed when the body has been read to its end and
+ * discarded if it is closed before that.
+ */
+public final class CacheInterceptor implements Interceptor {
+    private final InternalCache cache;
+
+    public CacheInterceptor(InternalCache cache) {
+        this.cache = cache;
+    }
 
-public class CacheInterceptor implements Interceptor {
     @Override
-    public com.zero.support.net.Response intercept(Chain chain) throws IOException {
-        //todo 实现http 缓存
-        return chain.proceed(chain.request());
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (cache == null && !request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request);
+        }
+
+        Response cacheCandidate = cache != null
+                ? cache.get(request)
+                : null;
+
+        long now = System.currentTimeMillis();
+
+        CacheStrategy strategy = new CacheStrategy.Factory(now, request, cacheCandidate).get();
+        Request networkRequest = strategy.networkRequest;
+        Response cacheResponse = strategy.cacheResponse;
+
+        if (cache != null) {
+            cache.trackResponse(strategy);
+        }
+
+        if (cacheCandidate != null && cacheResponse == null) {
+            Util.closeQuietly(cacheCandidate.body()); // The cache candidate wasn't applicable. Close it.
+        }
+
+        // If we're forbidden from using the network and the cache is insufficient, fail.
+        if (networkRequest == null && cacheResponse == null) {
+            return new Response.Builder()
+                    .request(request)
+                    .code(HttpURLConnection.HTTP_GATEWAY_TIMEOUT)
+                    .message("Unsatisfiable Request (only-if-cached)")
+                    .body(Util.EMPTY_RESPONSE)
+                    .sentRequestAtMillis(-1L)
+                    .receivedResponseAtMillis(System.currentTimeMillis())
+                    .build();
+        }
+
+        // If we don't need the network, we're done.
+        if (networkRequest == null) {
+            return cacheResponse.newBuilder()
+                    .cacheResponse(stripBody(cacheResponse))
+                    .build();
+        }
+
+        Response networkResponse = null;
+        long sentRequestMillis = System.currentTimeMillis();
+        try {
+            networkResponse = chain.proceed(networkRequest);
+        } finally {
+            // If we're crashing on I/O or otherwise, don't leak the cache body.
+            if (networkResponse == null && cacheCandidate != null) {
+                Util.closeQuietly(cacheCandidate.body());
+            }
+        }
+        networkResponse = networkResponse.newBuilder()
+                .sentRequestAtMillis(sentRequestMillis)
+                .receivedResponseAtMillis(System.currentTimeMillis())
+                .build();
+
+        // If we have a cache response too, then we're doing a conditional get.
+        if (cacheResponse != null) {
+            if (networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Response response = cacheResponse.newBuilder()
+                        .headers(combine(cacheResponse.headers(), networkResponse.headers()))
+                        .sentRequestAtMillis(networkResponse.sentRequestAtMillis())
+                        .receivedResponseAtMillis(networkResponse.receivedResponseAtMillis())
+                        .cacheResponse(stripBody(cacheResponse))
+                        .networkResponse(stripBody(networkResponse))
+                        .build();
+                Util.closeQuietly(networkResponse.body());
+
+                // Update the cache after combining headers but before stripping the
+                // Content-Encoding header (as performed by BridgeInterceptor).
+                cache.trackConditionalCacheHit();
+                cache.update(cacheResponse, response);
+                return response;
+            } else {
+                Util.closeQuietly(cacheResponse.body());
+            }
+        }
+
+        Response response = networkResponse.newBuilder()
+                .cacheResponse(stripBody(cacheResponse))
+                .networkResponse(stripBody(networkResponse))
+                .build();
+
+        if (cache != null) {
+            if (response.body() != null
+                    && Http1Codec.hasResponseBody(networkRequest.method(), response.code())
+                    && isSameUrl(response.request(), networkRequest)
+                    && CacheStrategy.isCacheable(response, networkRequest)) {
+                // Offer this request to the cache.
+                CacheRequest cacheRequest = cache.put(response);
+                return cacheWritingResponse(cacheRequest, response);
+            }
+
+            if (HttpMethod.invalidatesCache(networkRequest.method())) {
+                try {
+                    cache.remove(networkRequest);
+                } catch (IOException ignored) {
+                    // The cache cannot be written.
+                }
+            }
+        }
+
+        return response;
+    }
+
+    private static Response stripBody(Response response) {
+        return response != null && response.body() != null
+                ? response.newBuilder().body(null).build()
+                : response;
+    }
+
+    /**
+     * Returns true unless the engine followed a redirect: the body of the final response must not
+     * be stored under the URL that was asked for.
+     */
+    private static boolean isSameUrl(Request responseRequest, Request request) {
+        return responseRequest.url().toExternalForm().equals(request.url().toExternalForm());
+    }
+
+    /**
+     * Returns {@code response} with a body that writes bytes to {@code cacheRequest} as they are
+     * read by the body's consumer.
+     */
+    private Response cacheWritingResponse(final CacheRequest cacheRequest, Response response)
+            throws IOException {
+        // The cache declined the response, or is busy writing another copy of it.
+        if (cacheRequest == null) return response;
+        OutputStream cacheBody;
+        try {
+            cacheBody = cacheRequest.body();
+        } catch (IOException e) {
+            cacheRequest.abort();
+            return response;
+        }
+        if (cacheBody == null) return response;
+
+        ResponseBody body = response.body();
+        InputStream source = new CacheWritingInputStream(
+                body.source(), body.contentLength(), cacheRequest, cacheBody);
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), source))
+                .build();
+    }
+
+    /**
+     * Combines cached headers with a network headers as defined by RFC 7234, 4.3.4.
+     */
+    private static Headers combine(Headers cachedHeaders, Headers networkHeaders) {
+        Headers.Builder result = new Headers.Builder();
+
+        for (int i = 0, size = cachedHeaders.size(); i < size; i++) {
+            String fieldName = cachedHeaders.name(i);
+            String value = cachedHeaders.value(i);
+            if ("Warning".equalsIgnoreCase(fieldName) && value.startsWith("1")) {
+                continue; // Drop 100-level freshness warnings.
+            }
+            if (isContentSpecificHeader(fieldName)
+                    || !isEndToEnd(fieldName)
+                    || networkHeaders.get(fieldName) == null) {
+                result.addUnsafeNonAscii(fieldName, value);
+            }
+        }
+
+        for (int i = 0, size = networkHeaders.size(); i < size; i++) {
+            String fieldName = networkHeaders.name(i);
+            if (!isContentSpecificHeader(fieldName) && isEndToEnd(fieldName)) {
+                result.addUnsafeNonAscii(fieldName, networkHeaders.value(i));
+            }
+        }
+
+        return result.build();
+    }
+
+    /**
+     * Returns true if {@code fieldName} is an end-to-end HTTP header, as defined by RFC 2616,
+     * 13.5.1.
+     */
+    static boolean isEndToEnd(String fieldName) {
+        return !"Connection".equalsIgnoreCase(fieldName)
+                && !"Keep-Alive".equalsIgnoreCase(fieldName)
+                && !"Proxy-Authenticate".equalsIgnoreCase(fieldName)
+                && !"Proxy-Authorization".equalsIgnoreCase(fieldName)
+                && !"TE".equalsIgnoreCase(fieldName)
+                && !"Trailers".equalsIgnoreCase(fieldName)
+                && !"Transfer-Encoding".equalsIgnoreCase(fieldName)
+                && !"Upgrade".equalsIgnoreCase(fieldName);
+    }
+
+    /**
+     * Returns true if {@code fieldName} is content specific and therefore should always be used
+     * from cached headers.
+     */
+    static boolean isContentSpecificHeader(String fieldName) {
+        return "Content-Length".equalsIgnoreCase(fieldName)
+                || "Content-Encoding".equalsIgnoreCase(fieldName)
+                || "Content-Type".equalsIgnoreCase(fieldName);
+    }
+
+    /**
+     * Copies each chunk the caller reads into the cache. Reaching the end of the body commits the
+     * entry; closing the stream before that, or failing to read it, discards the entry. A failure
+     * to write the cache only stops caching: the caller keeps reading the network body.
+     *
+     * <p>Decoders stop reading at the end of their data, before the body's end is seen. So on close
+     * a body whose {@code Content-Length} was read in full is committed, and bytes that already
+     * arrived are read to look for the end.
+     */
+    private static final class CacheWritingInputStream extends InputStream {
+        /**
+         * The most bytes read on close to find the end of the body.
+         */
+        private static final int DISCARD_LIMIT = 8192;
+
+        private final InputStream source;
+        private final long contentLength;
+        private final CacheRequest cacheRequest;
+        private final OutputStream cacheBody;
+        private long bytesReadTotal;
+        private boolean cacheRequestClosed;
+
+        CacheWritingInputStream(InputStream source, long contentLength, CacheRequest cacheRequest,
+                                OutputStream cacheBody) {
+            this.source = source;
+            this.contentLength = contentLength;
+            this.cacheRequest = cacheRequest;
+            this.cacheBody = cacheBody;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead;
+            try {
+                bytesRead = source.read(b, off, len);
+            } catch (IOException e) {
+                abortCacheRequest(); // Failed to read the entire response.
+                throw e;
+            }
+
+            if (bytesRead == -1) {
+                commitCacheRequest();
+                return -1;
+            }
+            bytesReadTotal += bytesRead;
+
+            if (!cacheRequestClosed && bytesRead > 0) {
+                try {
+                    cacheBody.write(b, off, bytesRead);
+                } catch (IOException e) {
+                    abortCacheRequest();
+                }
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return source.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!cacheRequestClosed) {
+                if (bytesReadTotal == contentLength) {
+                    commitCacheRequest();
+                } else {
+                    discardAvailable();
+                }
+            }
+            abortCacheRequest();
+            source.close();
+        }
+
+        /**
+         * Reads the bytes that can be read without blocking, which commits the entry if they reach
+         * the end of the body.
+         */
+        private void discardAvailable() {
+            try {
+                byte[] skip = new byte[DISCARD_LIMIT];
+                for (int remaining = DISCARD_LIMIT; remaining > 0 && !cacheRequestClosed; ) {
+                    int available = source.available();
+                    if (available <= 0) break;
+                    int count = read(skip, 0, Math.min(available, remaining));
+                    if (count == -1) break;
+                    remaining -= count;
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void commitCacheRequest() {
+            if (!cacheRequestClosed) {
+                cacheRequestClosed = true;
+                try {
+                    cacheBody.close(); // The cache response is complete!
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void abortCacheRequest() {
+            if (!cacheRequestClosed) {
+                cacheRequestClosed = true;
+                cacheRequest.abort();
+            }
+        }
     }
 }
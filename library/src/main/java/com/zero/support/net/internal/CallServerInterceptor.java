@@ -1,6 +1,7 @@
 package com.zero.support.net.internal;
 
 
+import com.zero.support.net.Engine;
 import com.zero.support.net.Headers;
 import com.zero.support.net.HttpClient;
 import com.zero.support.net.Interceptor;
@@ -9,16 +10,22 @@ import com.zero.support.net.Request;
 import com.zero.support.net.RequestBody;
 import com.zero.support.net.Response;
 import com.zero.support.net.ResponseBody;
+import com.zero.support.net.internal.nio.NioCall;
+import com.zero.support.net.internal.nio.NioEngine;
 
-import java.io.DataOutputStream;
+import java.io.Closeable;
 import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.ProtocolException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -28,11 +35,21 @@ public class CallServerInterceptor implements Interceptor {
     public static final int HTTP_CONTINUE = 100;
     static final String HEADER_CONTENT_TYPE = "Content-Type";
     HttpClient client;
+    private final SocketEngine socketEngine;
+    private final NioEngine nioEngine;
     private boolean cancel;
-    private Thread workThread;
+    private NioCall nioCall;
+    private HttpURLConnection urlConnection;
+    private RealConnection connecting;
+    private HttpCodec codec;
+    private boolean exchangeReleased;
+    private Runnable releaseListener;
+    private List<Runnable> cancelListeners;
 
-    public CallServerInterceptor(HttpClient client) {
+    public CallServerInterceptor(HttpClient client, SocketEngine socketEngine, NioEngine nioEngine) {
         this.client = client;
+        this.socketEngine = socketEngine;
+        this.nioEngine = nioEngine;
     }
 
     private static List<String> convertHeaders(Map<String, List<String>> responseHeaders) {
@@ -70,39 +87,66 @@ public class CallServerInterceptor implements Interceptor {
     // checked against the existing properties in the connection and not overridden if already set.
     @SuppressWarnings("deprecation")
     /* package */ static void setConnectionParametersForRequest(
-            HttpURLConnection connection, Request request) throws IOException {
+            HttpURLConnection connection, Request request, HttpClient client) throws IOException {
 
         String method = request.method();
         connection.setRequestMethod(method);
-        addBodyIfExists(connection, request);
+        addBodyIfExists(connection, request, client);
     }
 
-    private static void addBodyIfExists(HttpURLConnection connection, Request request)
-            throws IOException {
+    private static void addBodyIfExists(HttpURLConnection connection, Request request,
+                                        HttpClient client) throws IOException {
         RequestBody body = request.body();
         if (body != null) {
-            addBody(connection, body);
+            addBody(connection, body, client);
         }
     }
 
-    private static void addBody(HttpURLConnection connection, RequestBody requestBody)
-            throws IOException {
-        // Prepare output. There is no need to set Content-Length explicitly,
-        // since this is mHandled by HttpURLConnection using the size of the prepared
-        // output stream.
+    private static void addBody(final HttpURLConnection connection, RequestBody requestBody,
+                                final HttpClient client) throws IOException {
+        // Prepare output. Stream the body rather than letting HttpURLConnection buffer all of it to
+        // compute Content-Length: it is sent as it's written, in fixed-length mode if its length is
+        // known and in chunks otherwise.
         connection.setDoOutput(true);
         // Set the content-type unless it was already set (by IntentRequest#getHeaders).
         if (!connection.getRequestProperties().containsKey(HEADER_CONTENT_TYPE)) {
             MediaType mediaType = requestBody.contentType();
             if (mediaType != null) {
-                System.out.println(mediaType.toString());
                 connection.setRequestProperty(HEADER_CONTENT_TYPE, mediaType.toString());
             }
 
         }
-        DataOutputStream out = new DataOutputStream(connection.getOutputStream());
-        requestBody.writeTo(out);
-        out.close();
+        long contentLength = requestBody.contentLength();
+        if (contentLength >= 0) {
+            connection.setFixedLengthStreamingMode(contentLength);
+        } else {
+            connection.setChunkedStreamingMode(client.requestChunkSize());
+        }
+        OutputStream sink = connection.getOutputStream();
+        int writeTimeoutMillis = client.writeTimeoutMillis();
+        if (writeTimeoutMillis > 0) {
+            // HttpURLConnection has no write timeout of its own. Its disconnect() may block until
+            // the pending write returns, so it runs on the dispatcher's executor rather than on
+            // the shared timer thread.
+            final Runnable disconnect = new Runnable() {
+                @Override
+                public void run() {
+                    connection.disconnect();
+                }
+            };
+            sink = new WriteTimeoutStream(sink, writeTimeoutMillis, new Closeable() {
+                @Override
+                public void close() {
+                    try {
+                        client.dispatcher().executorService().execute(disconnect);
+                    } catch (RejectedExecutionException e) {
+                        disconnect.run();
+                    }
+                }
+            });
+        }
+        requestBody.writeTo(sink);
+        sink.close();
     }
 
     /**
@@ -123,20 +167,91 @@ public class CallServerInterceptor implements Interceptor {
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request request = chain.request();
-        return executeRequest(request);
+        if (isCancel()) {
+            throw new IOException("Canceled");
+        }
+        if (client.engine() == Engine.NIO) {
+            return startNioCall(request, null).await();
+        }
+        if (client.engine() == Engine.SOCKET) {
+            return socketEngine.execute(request, this);
+        }
+        return executeWithFollowUps(request);
+    }
+
+    /**
+     * Executes {@code request} on the {@link Engine#URL_CONNECTION} engine. {@code
+     * HttpURLConnection} can't replay a streamed request body, so it doesn't follow redirects for
+     * requests that have one; those are followed here, as the {@link SocketEngine} does.
+     */
+    private Response executeWithFollowUps(Request request) throws IOException {
+        int followUpCount = 0;
+        while (true) {
+            Response response = executeRequest(request);
+            if (request.body() == null) {
+                return response;
+            }
+            Request followUp = SocketEngine.followUpRequest(client, response);
+            if (followUp == null) {
+                return response;
+            }
+            ResponseBody body = response.body();
+            if (body != null) {
+                body.close();
+            }
+            if (++followUpCount > SocketEngine.MAX_FOLLOW_UPS) {
+                throw new ProtocolException("Too many follow-up requests: " + followUpCount);
+            }
+            request = followUp;
+        }
+    }
+
+    /**
+     * Starts {@code request} on the {@link Engine#NIO} engine and returns immediately; {@code
+     * callback} is invoked on the dispatcher's executor when it completes.
+     */
+    public void enqueue(Request request, NioCall.Callback callback) {
+        startNioCall(request, callback);
+    }
+
+    private NioCall startNioCall(Request request, NioCall.Callback callback) {
+        NioCall call = nioEngine.newCall(request);
+        synchronized (this) {
+            nioCall = call;
+            if (cancel) call.cancel();
+        }
+        call.start(callback);
+        return call;
+    }
+
+    /**
+     * Returns the request that {@code connection} ended up making. {@code HttpURLConnection} follows
+     * redirects silently; the response must name the URL it came from, as the {@link SocketEngine}
+     * does, so that the cache doesn't store it under the original URL.
+     */
+    private static Request followedRequest(Request request, HttpURLConnection connection) {
+        URL url = connection.getURL();
+        if (url.toExternalForm().equals(request.url().toExternalForm())) return request;
+        return request.newBuilder().url(url).build();
     }
 
     private Response executeRequest(Request request)
             throws IOException {
         HttpURLConnection connection = openConnection(request);
         Headers headers = request.headers();
-        workThread = Thread.currentThread();
+        synchronized (this) {
+            if (cancel) throw new IOException("Canceled");
+            urlConnection = connection;
+        }
         boolean keepConnectionOpen = false;
         try {
             for (int i = 0, size = headers.size(); i < size; i++) {
                 connection.addRequestProperty(headers.name(i), headers.value(i));
             }
-            setConnectionParametersForRequest(connection, request);
+            if (request.body() != null) {
+                connection.setInstanceFollowRedirects(false);
+            }
+            setConnectionParametersForRequest(connection, request, client);
             // Initialize HttpResponse with data from the HttpURLConnection.
             int responseCode = connection.getResponseCode();
             if (responseCode == -1) {
@@ -144,10 +259,11 @@ public class CallServerInterceptor implements Interceptor {
                 // Signal to the caller that something was wrong with the connection.
                 throw new IOException("Could not retrieve response code from HttpUrlConnection.");
             }
+            String message = connection.getResponseMessage();
             Response response = new Response.Builder()
-                    .request(request)
+                    .request(followedRequest(request, connection))
                     .code(responseCode)
-                    .message(connection.getResponseMessage())
+                    .message(message != null ? message : "") // Status lines may omit the reason.
                     .body(null)
                     .headers(Headers.of(convertHeaders(connection.getHeaderFields())))
                     .build();
@@ -170,17 +286,144 @@ public class CallServerInterceptor implements Interceptor {
         }
     }
 
-    public synchronized void cancel() {
-        cancel = true;
-        if (workThread != null) {
-            workThread.interrupt();
+    /**
+     * Cancels the call by tearing down whatever it is blocked on: the connection being established,
+     * the exchange's connection or HTTP/2 stream, the {@link HttpURLConnection}, or the NIO call.
+     * This unblocks reads and writes in progress, including reads of the response body. The thread
+     * running the call isn't interrupted.
+     */
+    public void cancel() {
+        NioCall nioCall;
+        HttpURLConnection urlConnection;
+        RealConnection connecting;
+        HttpCodec codec;
+        List<Runnable> cancelListeners;
+        synchronized (this) {
+            cancel = true;
+            notifyAll();
+            cancelListeners = this.cancelListeners;
+            this.cancelListeners = null;
+            nioCall = this.nioCall;
+            urlConnection = this.urlConnection;
+            connecting = this.connecting;
+            codec = this.codec;
+        }
+        // Anything registered from now on sees the flag. Tear down outside the lock: closing can
+        // block, and the call's own thread needs the lock to fail.
+        if (nioCall != null) {
+            nioCall.cancel();
+        }
+        if (urlConnection != null) {
+            urlConnection.disconnect();
+        }
+        if (connecting != null) {
+            connecting.close();
+        }
+        if (codec != null) {
+            codec.cancel();
+        }
+        if (cancelListeners != null) {
+            for (Runnable listener : cancelListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Tracks the connection the {@link SocketEngine} is establishing, or null once it's done.
+     */
+    synchronized void connecting(RealConnection connection) throws IOException {
+        if (cancel && connection != null) throw new IOException("Canceled");
+        connecting = connection;
+    }
+
+    /**
+     * Tracks the exchange the {@link SocketEngine} is running. It stays tracked while the response
+     * body is read, since canceling must interrupt that too.
+     */
+    synchronized void exchangeStarted(HttpCodec codec) throws IOException {
+        if (cancel) throw new IOException("Canceled");
+        this.codec = codec;
+        this.exchangeReleased = false;
+    }
+
+    /**
+     * Forgets {@code codec} once it has released its connection, which may then carry other calls'
+     * exchanges; canceling this call must no longer reach it.
+     */
+    void exchangeReleased(HttpCodec codec) {
+        Runnable listener;
+        synchronized (this) {
+            if (this.codec != codec) return;
+            this.codec = null;
+            exchangeReleased = true;
+            listener = releaseListener;
+            releaseListener = null;
+        }
+        if (listener != null) {
+            listener.run();
         }
     }
 
+    /**
+     * Runs {@code listener} once the exchange that produced the response has released its
+     * connection, which for a body of known length is when its last byte is read. It runs now if
+     * that already happened, and never if the call's engine doesn't pool connections this way.
+     */
+    public void whenExchangeReleased(Runnable listener) {
+        synchronized (this) {
+            if (codec != null) {
+                releaseListener = listener;
+                return;
+            }
+            if (!exchangeReleased) return;
+        }
+        listener.run();
+    }
+
+    /**
+     * Runs {@code listener} on the canceling thread when the call is canceled, or now if it already
+     * was. Listeners must not block.
+     */
+    public void whenCanceled(Runnable listener) {
+        synchronized (this) {
+            if (!cancel) {
+                if (cancelListeners == null) cancelListeners = new ArrayList<>(1);
+                cancelListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Forgets {@code listener} if the call hasn't been canceled yet.
+     */
+    public synchronized void removeCancelListener(Runnable listener) {
+        if (cancelListeners != null) cancelListeners.remove(listener);
+    }
+
     public synchronized boolean isCancel() {
         return cancel;
     }
 
+    /**
+     * Waits up to {@code millis} for the call to be canceled, returning true if it was.
+     */
+    public synchronized boolean awaitCancel(long millis) throws InterruptedIOException {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            for (long remaining = millis; !cancel && remaining > 0;
+                 remaining = deadline - System.currentTimeMillis()) {
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+        return cancel;
+    }
+
     private HttpURLConnection openConnection(Request request) throws IOException {
         URL url = request.url();
         HttpURLConnection connection = createConnection(url);
@@ -0,0 +1,39 @@
+package com.zero.support.net.internal;
+
+
+import java.util.ArrayDeque;
+
+/**
+ * The char counterpart of {@link ByteArrayPool}, for buffers that text is decoded into. At most
+ * {@link #MAX_POOLED} buffers are kept.
+ */
+public final class CharArrayPool {
+    public static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED = 8;
+
+    private static final ArrayDeque<char[]> pool = new ArrayDeque<>();
+
+    private CharArrayPool() {
+    }
+
+    /**
+     * Returns a buffer of {@link #BUFFER_SIZE} chars. Its content is undefined.
+     */
+    public static char[] take() {
+        synchronized (pool) {
+            char[] buffer = pool.pollFirst();
+            if (buffer != null) return buffer;
+        }
+        return new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Returns {@code buffer} to the pool. The caller must not use it afterwards.
+     */
+    public static void recycle(char[] buffer) {
+        if (buffer.length != BUFFER_SIZE) throw new IllegalArgumentException("not a pooled buffer");
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) pool.addFirst(buffer);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.zero.support.net.internal;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses what is written to it with the {@code gzip} or {@code deflate} content coding. The
+ * counterpart of {@link InflaterSource}: deflaters and output buffers come from pools and go back
+ * when the stream is closed or aborted. Closing finishes the compressed stream but leaves {@code
+ * sink} open, since request bodies don't own the stream they are written to.
+ */
+public final class DeflaterSink extends OutputStream {
+    private static final int MAX_POOLED_DEFLATERS = 8;
+    private static final ArrayDeque<Deflater> zlibDeflaters = new ArrayDeque<>();
+    private static final ArrayDeque<Deflater> rawDeflaters = new ArrayDeque<>();
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+
+    private final OutputStream sink;
+    private final boolean gzip;
+    private final CRC32 crc = new CRC32();
+    private Deflater deflater;
+    private byte[] buffer;
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * @param gzip true for the {@code gzip} coding, false for {@code deflate}.
+     */
+    public DeflaterSink(OutputStream sink, boolean gzip) {
+        this.sink = sink;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Util.checkOffsetAndCount(b.length, off, len);
+        if (closed) throw new IOException("closed");
+        if (len == 0) return;
+        if (!started) start();
+        if (gzip) crc.update(b, off, len);
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate(Deflater.NO_FLUSH);
+        }
+    }
+
+    /**
+     * Compresses everything written so far and flushes it to the sink. This costs compression, so
+     * only flush when the peer needs to see the data now.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) return;
+        if (started) {
+            // The input may already be consumed while output is still pending: only a buffer that
+            // isn't filled shows the flush is complete.
+            int count;
+            do {
+                count = deflate(Deflater.SYNC_FLUSH);
+            } while (count == buffer.length);
+        }
+        sink.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (!started) start();
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            if (gzip) {
+                writeIntLe((int) crc.getValue());
+                writeIntLe((int) deflater.getBytesRead());
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Releases the deflater and buffer without finishing the compressed stream. Call this instead
+     * of {@link #close} when writing the body failed: a finished stream would pass a truncated
+     * body off as complete.
+     */
+    public void abort() {
+        if (closed) return;
+        closed = true;
+        release();
+    }
+
+    private void start() throws IOException {
+        started = true;
+        buffer = ByteArrayPool.take();
+        deflater = takeDeflater(gzip);
+        if (gzip) sink.write(GZIP_HEADER);
+    }
+
+    /**
+     * Deflates into the buffer once and writes the output to the sink. Returns the byte count.
+     */
+    private int deflate(int flush) throws IOException {
+        int count = deflater.deflate(buffer, 0, buffer.length, flush);
+        if (count > 0) sink.write(buffer, 0, count);
+        return count;
+    }
+
+    private void writeIntLe(int value) throws IOException {
+        sink.write(value);
+        sink.write(value >>> 8);
+        sink.write(value >>> 16);
+        sink.write(value >>> 24);
+    }
+
+    private void release() {
+        if (deflater != null) {
+            recycleDeflater(deflater, gzip);
+            deflater = null;
+        }
+        if (buffer != null) {
+            ByteArrayPool.recycle(buffer);
+            buffer = null;
+        }
+    }
+
+    private static Deflater takeDeflater(boolean nowrap) {
+        ArrayDeque<Deflater> pool = nowrap ? rawDeflaters : zlibDeflaters;
+        synchronized (pool) {
+            Deflater deflater = pool.pollFirst();
+            if (deflater != null) return deflater;
+        }
+        return new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+    }
+
+    private static void recycleDeflater(Deflater deflater, boolean nowrap) {
+        deflater.reset();
+        ArrayDeque<Deflater> pool = nowrap ? rawDeflaters : zlibDeflaters;
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_DEFLATERS) {
+                pool.addFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+}
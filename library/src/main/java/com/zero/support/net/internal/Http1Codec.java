@@ -0,0 +1,684 @@
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.Headers;
+import com.zero.support.net.MediaType;
+import com.zero.support.net.Request;
+import com.zero.support.net.RequestBody;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * Writes one HTTP/1.1 request to a {@link RealConnection} and reads its response. The connection
+ * is released back to the pool once the response body has been fully consumed, or closed if the
+ * body was abandoned or the exchange can't be followed by another one.
+ */
+public final class Http1Codec implements HttpCodec {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final int HEADER_LIMIT = 256 * 1024;
+    private static final long DISCARD_STREAM_TIMEOUT_MILLIS = 100;
+
+    private static final int STATE_IDLE = 0; // Idle connections are ready to write request headers.
+    private static final int STATE_OPEN_REQUEST_BODY = 1;
+    private static final int STATE_READ_RESPONSE_HEADERS = 2;
+    private static final int STATE_OPEN_RESPONSE_BODY = 3;
+    private static final int STATE_READING_RESPONSE_BODY = 4;
+    private static final int STATE_CLOSED = 5;
+
+    private final RealConnectionPool pool;
+    private final RealConnection connection;
+    private final CallServerInterceptor call;
+    private final InputStream source;
+    private final OutputStream sink;
+    /**
+     * The most body bytes sent in one chunk of a chunked request body.
+     */
+    private final int chunkSize;
+    /**
+     * Guarded by this once the exchange is started: {@link #cancel} reads it from another thread.
+     */
+    private int state = STATE_IDLE;
+    private boolean keepAlive = true;
+    private boolean responseStarted;
+
+    Http1Codec(RealConnectionPool pool, RealConnection connection, int chunkSize,
+               CallServerInterceptor call) {
+        this.pool = pool;
+        this.call = call;
+        this.chunkSize = chunkSize;
+        this.connection = connection;
+        this.source = connection.source();
+        this.sink = connection.sink();
+    }
+
+    @Override
+    public boolean responseStarted() {
+        return responseStarted;
+    }
+
+    @Override
+    public void writeRequest(Request request) throws IOException {
+        RequestBody body = request.body();
+        long contentLength = body != null ? body.contentLength() : -1L;
+        Headers headers = request.headers();
+        sink.write(requestHead(request, contentLength));
+
+        if ("close".equalsIgnoreCase(headers.get("Connection"))) {
+            keepAlive = false;
+        }
+
+        if (body != null) {
+            state = STATE_OPEN_REQUEST_BODY;
+            OutputStream bodySink = contentLength != -1L
+                    ? new FixedLengthSink(contentLength)
+                    : new ChunkedSink();
+            body.writeTo(bodySink);
+            bodySink.close();
+        }
+        sink.flush();
+        state = STATE_READ_RESPONSE_HEADERS;
+    }
+
+    /**
+     * Returns the encoded request line and headers of {@code request}. A body is framed with a
+     * {@code Content-Length} of {@code contentLength}, or chunked if that is -1.
+     */
+    public static byte[] requestHead(Request request, long contentLength) throws IOException {
+        RequestBody body = request.body();
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.method()).append(' ').append(requestPath(request.url())).append(" HTTP/1.1\r\n");
+
+        Headers headers = request.headers();
+        if (headers.get("Host") == null) {
+            appendHeader(head, "Host", hostHeader(request.url()));
+        }
+        if (headers.get("Connection") == null) {
+            appendHeader(head, "Connection", "Keep-Alive");
+        }
+        if (body != null) {
+            MediaType contentType = body.contentType();
+            if (contentType != null && headers.get("Content-Type") == null) {
+                appendHeader(head, "Content-Type", contentType.toString());
+            }
+        }
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            String name = headers.name(i);
+            if (body != null && (name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding"))) {
+                continue; // Framing is derived from the body.
+            }
+            appendHeader(head, name, headers.value(i));
+        }
+        if (body != null) {
+            if (contentLength != -1L) {
+                appendHeader(head, "Content-Length", Long.toString(contentLength));
+            } else {
+                appendHeader(head, "Transfer-Encoding", "chunked");
+            }
+        } else if (com.zero.support.net.HttpMethod.requiresRequestBody(request.method())) {
+            appendHeader(head, "Content-Length", "0");
+        }
+        head.append("\r\n");
+        return head.toString().getBytes(UTF_8);
+    }
+
+    @Override
+    public Response.Builder readResponseHeaders() throws IOException {
+        if (state != STATE_READ_RESPONSE_HEADERS) throw new IllegalStateException("state: " + state);
+
+        while (true) {
+            String statusLine = readLine(true);
+            StatusLine status = StatusLine.parse(statusLine);
+            Headers headers = readHeaders();
+            if (status.code >= CallServerInterceptor.HTTP_CONTINUE && status.code < 200
+                    && status.code != 101) {
+                continue; // An interim response, like 100 Continue or 103 Early Hints.
+            }
+            if (status.http10 && !"keep-alive".equalsIgnoreCase(headers.get("Connection"))) {
+                keepAlive = false;
+            }
+            if ("close".equalsIgnoreCase(headers.get("Connection"))) {
+                keepAlive = false;
+            }
+            state = STATE_OPEN_RESPONSE_BODY;
+            return new Response.Builder()
+                    .code(status.code)
+                    .message(status.message)
+                    .headers(headers);
+        }
+    }
+
+    @Override
+    public ResponseBody openResponseBody(Response response) throws IOException {
+        if (state != STATE_OPEN_RESPONSE_BODY) throw new IllegalStateException("state: " + state);
+        state = STATE_READING_RESPONSE_BODY;
+
+        String method = response.request().method();
+        if (!hasResponseBody(method, response.code())) {
+            endOfInput(true);
+            return null;
+        }
+
+        MediaType contentType = MediaType.parse(response.header("Content-Type"));
+        if ("chunked".equalsIgnoreCase(response.header("Transfer-Encoding"))) {
+            return ResponseBody.create(contentType, -1L, new ChunkedSource());
+        }
+
+        long contentLength = contentLength(response.headers());
+        if (contentLength != -1L) {
+            return ResponseBody.create(contentType, contentLength, new FixedLengthSource(contentLength));
+        }
+
+        // The body is delimited by the end of the stream; the connection can't be reused.
+        keepAlive = false;
+        return ResponseBody.create(contentType, -1L, new UnknownLengthSource());
+    }
+
+    /**
+     * Abandons this exchange after a failure, closing the connection.
+     */
+    @Override
+    public void abort() {
+        synchronized (this) {
+            if (state == STATE_CLOSED) return;
+            state = STATE_CLOSED;
+        }
+        pool.release(connection, false);
+        call.exchangeReleased(this);
+    }
+
+    /**
+     * Closes the connection unless this exchange is already over: once the body has been read to
+     * its end the connection is back in the pool, possibly carrying another call's exchange.
+     */
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            if (state == STATE_CLOSED) return;
+            keepAlive = false; // If the body ends while the socket closes, don't pool it.
+            connection.close();
+        }
+    }
+
+    private void endOfInput(boolean reuseConnection) {
+        boolean reusable;
+        synchronized (this) {
+            if (state == STATE_CLOSED) return;
+            state = STATE_CLOSED;
+            reusable = reuseConnection && keepAlive;
+        }
+        if (reusable) {
+            connection.successCount++;
+        }
+        pool.release(connection, reusable);
+        call.exchangeReleased(this);
+    }
+
+    private String readLine(boolean firstOfResponse) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int limit = HEADER_LIMIT;
+        while (true) {
+            int b = source.read();
+            if (b == -1) {
+                throw new EOFException("\\n not found: limit=" + HEADER_LIMIT + " content=" + line);
+            }
+            if (firstOfResponse) {
+                responseStarted = true;
+                firstOfResponse = false;
+            }
+            if (b == '\n') break;
+            if (--limit == 0) throw new ProtocolException("header line too long");
+            line.append((char) b);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    private Headers readHeaders() throws IOException {
+        Headers.Builder headers = new Headers.Builder();
+        // parse the result headers until the first blank line
+        for (String line; (line = readLine(false)).length() != 0; ) {
+            addHeaderLine(headers, line);
+        }
+        return headers.build();
+    }
+
+    /**
+     * Adds a header line read as ISO-8859-1 characters to {@code headers}, decoding its value as
+     * UTF-8. Lines without a colon are ignored.
+     */
+    public static void addHeaderLine(Headers.Builder headers, String line) {
+        int index = line.indexOf(':', 1);
+        if (index == -1) return;
+        String name = new String(line.substring(0, index).trim().getBytes(ISO_8859_1), ISO_8859_1);
+        String value = new String(line.substring(index + 1).getBytes(ISO_8859_1), UTF_8);
+        headers.addUnsafeNonAscii(name, value.trim());
+    }
+
+    private static void appendHeader(StringBuilder head, String name, String value) {
+        head.append(name).append(": ").append(value).append("\r\n");
+    }
+
+    public static String requestPath(URL url) {
+        String path = url.getFile();
+        return path == null || path.isEmpty() ? "/" : path;
+    }
+
+    public static String hostHeader(URL url) {
+        String host = url.getHost();
+        if (host.indexOf(':') != -1) {
+            host = "[" + host + "]";
+        }
+        int port = url.getPort();
+        return port == -1 || port == url.getDefaultPort() ? host : host + ":" + port;
+    }
+
+    public static long contentLength(Headers headers) {
+        String value = headers.get("Content-Length");
+        if (value == null) return -1L;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Returns true if the response must have a (possibly 0-length) body. See RFC 7231.
+     */
+    public static boolean hasResponseBody(String method, int code) {
+        if (method.equals("HEAD")) return false;
+        return !(code >= 100 && code < 200)
+                && code != HttpURLConnection.HTTP_NO_CONTENT
+                && code != HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * An HTTP/1.x response status line like "HTTP/1.1 200 OK".
+     */
+    public static final class StatusLine {
+        public final boolean http10;
+        public final int code;
+        public final String message;
+
+        StatusLine(boolean http10, int code, String message) {
+            this.http10 = http10;
+            this.code = code;
+            this.message = message;
+        }
+
+        public static StatusLine parse(String statusLine) throws IOException {
+            // H T T P / 1 . 1   2 0 0   T e m p o r a r y   R e d i r e c t
+            // 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0
+            boolean http10;
+            int codeStart;
+            if (statusLine.startsWith("HTTP/1.")) {
+                if (statusLine.length() < 12 || statusLine.charAt(8) != ' ') {
+                    throw new ProtocolException("Unexpected status line: " + statusLine);
+                }
+                int httpMinorVersion = statusLine.charAt(7) - '0';
+                codeStart = 9;
+                if (httpMinorVersion == 0) {
+                    http10 = true;
+                } else if (httpMinorVersion == 1) {
+                    http10 = false;
+                } else {
+                    throw new ProtocolException("Unexpected status line: " + statusLine);
+                }
+            } else {
+                throw new ProtocolException("Unexpected status line: " + statusLine);
+            }
+
+            int code;
+            try {
+                code = Integer.parseInt(statusLine.substring(codeStart, codeStart + 3));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Unexpected status line: " + statusLine);
+            }
+
+            // Parse an optional response message like "OK" or "Not Modified". If it
+            // exists, it is separated from the response code by a space.
+            String message = "";
+            if (statusLine.length() > codeStart + 3) {
+                if (statusLine.charAt(codeStart + 3) != ' ') {
+                    throw new ProtocolException("Unexpected status line: " + statusLine);
+                }
+                message = statusLine.substring(codeStart + 4);
+            }
+
+            return new StatusLine(http10, code, message);
+        }
+    }
+
+    /**
+     * An HTTP body with a fixed length known in advance.
+     */
+    private final class FixedLengthSink extends OutputStream {
+        private long bytesRemaining;
+        private boolean closed;
+
+        FixedLengthSink(long bytesRemaining) {
+            this.bytesRemaining = bytesRemaining;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int byteCount) throws IOException {
+            if (closed) throw new IllegalStateException("closed");
+            Util.checkOffsetAndCount(buffer.length, offset, byteCount);
+            if (byteCount > bytesRemaining) {
+                throw new ProtocolException("expected " + bytesRemaining
+                        + " bytes but received " + byteCount);
+            }
+            sink.write(buffer, offset, byteCount);
+            bytesRemaining -= byteCount;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) return; // Don't throw; this stream might have been closed on the caller's behalf.
+            sink.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (bytesRemaining > 0) throw new ProtocolException("unexpected end of stream");
+        }
+    }
+
+    /**
+     * An HTTP body with alternating chunk sizes and chunk bodies. Small writes are gathered into
+     * a buffer so each chunk carries a useful amount of payload.
+     */
+    private final class ChunkedSink extends OutputStream {
+        private final byte[] buffer = new byte[chunkSize];
+        private int size;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (closed) throw new IllegalStateException("closed");
+            if (size == buffer.length) emitChunk();
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] source, int offset, int byteCount) throws IOException {
+            if (closed) throw new IllegalStateException("closed");
+            Util.checkOffsetAndCount(source.length, offset, byteCount);
+            if (byteCount == 0) return;
+            if (size + byteCount <= buffer.length) {
+                System.arraycopy(source, offset, buffer, size, byteCount);
+                size += byteCount;
+                return;
+            }
+            emitChunk();
+            if (byteCount >= buffer.length) {
+                writeChunk(source, offset, byteCount);
+            } else {
+                System.arraycopy(source, offset, buffer, 0, byteCount);
+                size = byteCount;
+            }
+        }
+
+        private void emitChunk() throws IOException {
+            if (size == 0) return;
+            writeChunk(buffer, 0, size);
+            size = 0;
+        }
+
+        private void writeChunk(byte[] source, int offset, int byteCount) throws IOException {
+            sink.write(Integer.toHexString(byteCount).getBytes(ISO_8859_1));
+            sink.write(CRLF);
+            sink.write(source, offset, byteCount);
+            sink.write(CRLF);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (closed) return; // Don't throw; this stream might have been closed on the caller's behalf.
+            emitChunk();
+            sink.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            emitChunk();
+            sink.write('0');
+            sink.write(CRLF);
+            sink.write(CRLF);
+        }
+    }
+
+    private abstract class AbstractSource extends InputStream {
+        protected boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            try {
+                return source.read(buffer, offset, byteCount);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads and discards the rest of this body within a short timeout so the connection can be
+         * reused. Returns false if the body couldn't be exhausted in time.
+         */
+        boolean discard() {
+            try {
+                int readTimeout = connection.socket().getSoTimeout();
+                connection.socket().setSoTimeout((int) DISCARD_STREAM_TIMEOUT_MILLIS);
+                try {
+                    long deadline = System.nanoTime() + DISCARD_STREAM_TIMEOUT_MILLIS * 1000000L;
+                    byte[] skipBuffer = new byte[2048];
+                    while (read(skipBuffer, 0, skipBuffer.length) != -1) {
+                        if (System.nanoTime() > deadline) return false;
+                    }
+                    return true;
+                } finally {
+                    connection.socket().setSoTimeout(readTimeout);
+                }
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * An HTTP body with a fixed length specified in advance.
+     */
+    private final class FixedLengthSource extends AbstractSource {
+        private long bytesRemaining;
+
+        FixedLengthSource(long bytesRemaining) {
+            this.bytesRemaining = bytesRemaining;
+            if (bytesRemaining == 0) {
+                endOfInput(true);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            Util.checkOffsetAndCount(buffer.length, offset, byteCount);
+            if (closed) throw new IOException("closed");
+            if (bytesRemaining == 0) return -1;
+            if (byteCount == 0) return 0;
+
+            int read = super.read(buffer, offset, (int) Math.min(bytesRemaining, byteCount));
+            if (read == -1) {
+                ProtocolException e = new ProtocolException("unexpected end of stream");
+                abort();
+                throw e;
+            }
+
+            bytesRemaining -= read;
+            if (bytesRemaining == 0) {
+                endOfInput(true);
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed || bytesRemaining == 0) return 0;
+            return (int) Math.min(bytesRemaining, source.available());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            if (bytesRemaining != 0 && !discard()) {
+                abort();
+            }
+            closed = true;
+        }
+    }
+
+    /**
+     * An HTTP body with alternating chunk sizes and chunk bodies.
+     */
+    private final class ChunkedSource extends AbstractSource {
+        private static final long NO_CHUNK_YET = -1L;
+        private long bytesRemainingInChunk = NO_CHUNK_YET;
+        private boolean hasMoreChunks = true;
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            Util.checkOffsetAndCount(buffer.length, offset, byteCount);
+            if (closed) throw new IOException("closed");
+            if (!hasMoreChunks) return -1;
+            if (byteCount == 0) return 0;
+
+            if (bytesRemainingInChunk == 0 || bytesRemainingInChunk == NO_CHUNK_YET) {
+                readChunkSize();
+                if (!hasMoreChunks) return -1;
+            }
+
+            int read = super.read(buffer, offset, (int) Math.min(byteCount, bytesRemainingInChunk));
+            if (read == -1) {
+                ProtocolException e = new ProtocolException("unexpected end of stream");
+                abort();
+                throw e;
+            }
+            bytesRemainingInChunk -= read;
+            return read;
+        }
+
+        private void readChunkSize() throws IOException {
+            try {
+                // Read the suffix of the previous chunk.
+                if (bytesRemainingInChunk != NO_CHUNK_YET) {
+                    readLine(false);
+                }
+                String chunkSizeString = readLine(false);
+                int extensions = chunkSizeString.indexOf(';');
+                if (extensions != -1) {
+                    chunkSizeString = chunkSizeString.substring(0, extensions);
+                }
+                bytesRemainingInChunk = Long.parseLong(chunkSizeString.trim(), 16);
+                if (bytesRemainingInChunk < 0) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                abort();
+                throw new ProtocolException("Expected a hex chunk size");
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            if (bytesRemainingInChunk == 0L) {
+                hasMoreChunks = false;
+                readHeaders(); // Trailers are discarded.
+                endOfInput(true);
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed || !hasMoreChunks || bytesRemainingInChunk == NO_CHUNK_YET) return 0;
+            return (int) Math.min(bytesRemainingInChunk, source.available());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            if (hasMoreChunks && !discard()) {
+                abort();
+            }
+            closed = true;
+        }
+    }
+
+    /**
+     * An HTTP message body terminated by the end of the underlying stream.
+     */
+    private final class UnknownLengthSource extends AbstractSource {
+        private boolean inputExhausted;
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            Util.checkOffsetAndCount(buffer.length, offset, byteCount);
+            if (closed) throw new IOException("closed");
+            if (inputExhausted) return -1;
+            if (byteCount == 0) return 0;
+
+            int read = super.read(buffer, offset, byteCount);
+            if (read == -1) {
+                inputExhausted = true;
+                endOfInput(false);
+                return -1;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return closed || inputExhausted ? 0 : source.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            if (!inputExhausted) {
+                abort();
+            }
+            closed = true;
+        }
+    }
+}
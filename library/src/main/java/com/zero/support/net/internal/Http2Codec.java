@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.Headers;
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.MediaType;
+import com.zero.support.net.Request;
+import com.zero.support.net.RequestBody;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+import com.zero.support.net.StreamPriority;
+import com.zero.support.net.internal.http2.ErrorCode;
+import com.zero.support.net.internal.http2.Header;
+import com.zero.support.net.internal.http2.Http2Connection;
+import com.zero.support.net.internal.http2.Http2Stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encode requests and responses using HTTP/2 frames. Each exchange is one stream on the
+ * connection's shared {@link Http2Connection}; the pool allocation it holds is released when the
+ * response body is exhausted or closed.
+ */
+public final class Http2Codec implements HttpCodec {
+    private static final String CONNECTION = "connection";
+    private static final String HOST = "host";
+    private static final String KEEP_ALIVE = "keep-alive";
+    private static final String PROXY_CONNECTION = "proxy-connection";
+    private static final String TRANSFER_ENCODING = "transfer-encoding";
+    private static final String TE = "te";
+    private static final String ENCODING = "encoding";
+    private static final String UPGRADE = "upgrade";
+
+    /**
+     * See http://tools.ietf.org/html/draft-ietf-httpbis-http2-09#section-8.1.3.
+     */
+    private static final List<String> HTTP_2_SKIPPED_REQUEST_HEADERS = Arrays.asList(
+            CONNECTION,
+            HOST,
+            KEEP_ALIVE,
+            PROXY_CONNECTION,
+            TE,
+            TRANSFER_ENCODING,
+            ENCODING,
+            UPGRADE);
+    private static final List<String> HTTP_2_SKIPPED_RESPONSE_HEADERS = Arrays.asList(
+            CONNECTION,
+            HOST,
+            KEEP_ALIVE,
+            PROXY_CONNECTION,
+            TE,
+            TRANSFER_ENCODING,
+            ENCODING,
+            UPGRADE);
+
+    private final HttpClient client;
+    private final RealConnectionPool pool;
+    private final RealConnection connection;
+    private final CallServerInterceptor call;
+    private final Http2Connection http2Connection;
+    private volatile Http2Stream stream;
+    private volatile boolean canceled;
+    private boolean responseStarted;
+    private boolean released;
+
+    Http2Codec(HttpClient client, RealConnectionPool pool, RealConnection connection,
+               CallServerInterceptor call) {
+        this.client = client;
+        this.pool = pool;
+        this.connection = connection;
+        this.call = call;
+        this.http2Connection = connection.http2Connection();
+    }
+
+    @Override
+    public boolean responseStarted() {
+        return responseStarted;
+    }
+
+    @Override
+    public void writeRequest(Request request) throws IOException {
+        if (stream != null) return;
+
+        RequestBody body = request.body();
+        StreamPriority priority = request.tag(StreamPriority.class);
+        int weight = priority != null ? priority.weight() : 0;
+        stream = http2Connection.newStream(http2HeadersList(request), body != null, weight);
+        if (canceled) {
+            stream.closeLater(ErrorCode.CANCEL);
+            throw new IOException("Canceled");
+        }
+        stream.readTimeout(client.readTimeoutMillis());
+        stream.writeTimeout(client.writeTimeoutMillis());
+
+        if (body != null) {
+            OutputStream sink = stream.getSink();
+            body.writeTo(sink);
+            sink.close();
+        }
+    }
+
+    static List<Header> http2HeadersList(Request request) throws IOException {
+        Headers headers = request.headers();
+        RequestBody body = request.body();
+        List<Header> result = new ArrayList<>(headers.size() + 6);
+        result.add(new Header(Header.TARGET_METHOD, request.method()));
+        result.add(new Header(Header.TARGET_PATH, Http1Codec.requestPath(request.url())));
+        String host = request.header("Host");
+        if (host == null) {
+            host = Http1Codec.hostHeader(request.url());
+        }
+        result.add(new Header(Header.TARGET_AUTHORITY, host)); // Optional.
+        result.add(new Header(Header.TARGET_SCHEME, request.url().getProtocol()));
+
+        if (body != null) {
+            MediaType contentType = body.contentType();
+            if (contentType != null && headers.get("Content-Type") == null) {
+                result.add(new Header("content-type", contentType.toString()));
+            }
+            long contentLength = body.contentLength();
+            if (contentLength != -1L && headers.get("Content-Length") == null) {
+                result.add(new Header("content-length", Long.toString(contentLength)));
+            }
+        }
+
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            // header names must be lowercase.
+            String name = headers.name(i).toLowerCase(Locale.US);
+            if (!HTTP_2_SKIPPED_REQUEST_HEADERS.contains(name)
+                    || name.equals(TE) && headers.value(i).equals("trailers")) {
+                result.add(new Header(name, headers.value(i)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Response.Builder readResponseHeaders() throws IOException {
+        while (true) {
+            List<Header> headerBlock = stream.takeHeaders();
+            responseStarted = true;
+            Response.Builder builder = readHttp2HeadersList(headerBlock);
+            if (builder != null) {
+                return builder;
+            }
+        }
+    }
+
+    /**
+     * Returns headers for a name value block containing an HTTP/2 response, or null if the block
+     * holds an interim 1xx response that should be skipped.
+     */
+    static Response.Builder readHttp2HeadersList(List<Header> headerBlock) throws IOException {
+        int code = -1;
+        Headers.Builder headersBuilder = new Headers.Builder();
+        for (int i = 0, size = headerBlock.size(); i < size; i++) {
+            Header header = headerBlock.get(i);
+            String name = header.name;
+            String value = header.value;
+            if (name.equals(Header.RESPONSE_STATUS)) {
+                try {
+                    code = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Unexpected :status " + value);
+                }
+            } else if (!HTTP_2_SKIPPED_RESPONSE_HEADERS.contains(name)
+                    && !name.startsWith(Header.PSEUDO_PREFIX)) {
+                headersBuilder.addUnsafeNonAscii(name, value);
+            }
+        }
+        if (code == -1) throw new ProtocolException("Expected ':status' header not present");
+        if (code >= 100 && code < 200) {
+            return null; // Interim response; the final response follows on the same stream.
+        }
+
+        return new Response.Builder()
+                .code(code)
+                .message("")
+                .headers(headersBuilder.build());
+    }
+
+    @Override
+    public ResponseBody openResponseBody(Response response) throws IOException {
+        InputStream source = new StreamFinishingSource(stream.getSource());
+        if (!Http1Codec.hasResponseBody(response.request().method(), response.code())) {
+            source.close();
+            return null;
+        }
+        MediaType contentType = MediaType.parse(response.header("Content-Type"));
+        long contentLength = Http1Codec.contentLength(response.headers());
+        return ResponseBody.create(contentType, contentLength, source);
+    }
+
+    @Override
+    public void abort() {
+        if (stream != null) {
+            stream.closeLater(ErrorCode.CANCEL);
+        }
+        release(false);
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        Http2Stream stream = this.stream;
+        if (stream != null) {
+            stream.closeLater(ErrorCode.CANCEL);
+        }
+    }
+
+    private void release(boolean success) {
+        synchronized (this) {
+            if (released) return;
+            released = true;
+        }
+        if (success) {
+            connection.successCount++;
+        }
+        // A failed stream doesn't poison the connection; its health check covers a broken socket.
+        pool.release(connection, true);
+        call.exchangeReleased(this);
+    }
+
+    /**
+     * Releases the allocation once the body has been read to the end or abandoned. Abandoning a
+     * body resets its stream, which leaves the connection usable for other exchanges.
+     */
+    private final class StreamFinishingSource extends FilterInputStream {
+        private boolean closed;
+
+        StreamFinishingSource(InputStream delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) release(true);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int byteCount) throws IOException {
+            try {
+                int read = super.read(buffer, offset, byteCount);
+                if (read == -1) release(true);
+                return read;
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                release(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Encodes HTTP requests and decodes HTTP responses on a {@link RealConnection}.
+ */
+interface HttpCodec {
+    /**
+     * Writes the request headers and body to the connection.
+     */
+    void writeRequest(Request request) throws IOException;
+
+    /**
+     * Reads the headers of the final response, skipping any interim 1xx responses.
+     */
+    Response.Builder readResponseHeaders() throws IOException;
+
+    /**
+     * Returns the body of {@code response}, or null if it has none. The connection allocation is
+     * released once the body is exhausted or closed.
+     */
+    ResponseBody openResponseBody(Response response) throws IOException;
+
+    /**
+     * Returns true if any byte of the response was read. Failures before that point on a reused
+     * connection usually mean the peer closed it while it sat in the pool.
+     */
+    boolean responseStarted();
+
+    /**
+     * Abandons this exchange after a failure, releasing its connection allocation.
+     */
+    void abort();
+
+    /**
+     * Tears down this exchange from another thread, failing any read or write in progress. The
+     * thread running the exchange still calls {@link #abort} when it sees the failure.
+     */
+    void cancel();
+}
@@ -0,0 +1,238 @@
+package com.zero.support.net.internal;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a {@code gzip} or {@code deflate} content-coded stream. Unlike {@link
+ * java.util.zip.GZIPInputStream}, which allocates a new {@link Inflater} and its native memory
+ * for every stream, this borrows inflaters and input buffers from pools and returns them when it is
+ * closed or reaches the end of the stream.
+ *
+ * <p>The {@code deflate} coding is meant to be zlib-wrapped, but some servers send raw deflate
+ * data; both are accepted.
+ */
+public final class InflaterSource extends InputStream {
+    private static final int MAX_POOLED_INFLATERS = 8;
+    private static final ArrayDeque<Inflater> zlibInflaters = new ArrayDeque<>();
+    private static final ArrayDeque<Inflater> rawInflaters = new ArrayDeque<>();
+
+    private static final int FHCRC = 1 << 1;
+    private static final int FEXTRA = 1 << 2;
+    private static final int FNAME = 1 << 3;
+    private static final int FCOMMENT = 1 << 4;
+
+    private final InputStream source;
+    private final boolean gzip;
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean raw;
+    private boolean started;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * @param gzip true for the {@code gzip} coding, false for {@code deflate}.
+     */
+    public InflaterSource(InputStream source, boolean gzip) {
+        this.source = source;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Util.checkOffsetAndCount(b.length, off, len);
+        if (closed) throw new IOException("closed");
+        if (finished) return -1;
+        if (len == 0) return 0;
+        if (!started) start();
+
+        try {
+            while (true) {
+                int count = inflater.inflate(b, off, len);
+                if (count > 0) {
+                    if (gzip) crc.update(b, off, count);
+                    return count;
+                }
+                if (inflater.finished()) {
+                    pos = limit - inflater.getRemaining();
+                    if (gzip) readTrailer();
+                    finish();
+                    return -1;
+                }
+                if (inflater.needsDictionary()) throw new ZipException("deflate stream needs a dictionary");
+                if (inflater.needsInput()) {
+                    pos = limit;
+                    if (!fill()) throw new EOFException("unexpected end of " + (gzip ? "gzip" : "deflate") + " stream");
+                    inflater.setInput(buffer, pos, limit - pos);
+                }
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException(e.getMessage());
+            zipException.initCause(e);
+            throw zipException;
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return 0; // Unknown until inflated.
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        release();
+        source.close();
+    }
+
+    private void start() throws IOException {
+        started = true;
+        buffer = ByteArrayPool.take();
+        if (gzip) {
+            readHeader();
+        } else {
+            // A zlib stream starts with a compression method of 8 and a header checksum.
+            require(2);
+            int cmf = buffer[pos] & 0xff;
+            int flg = buffer[pos + 1] & 0xff;
+            raw = (cmf & 0x0f) != 8 || (cmf * 256 + flg) % 31 != 0;
+        }
+        inflater = takeInflater(gzip || raw);
+        inflater.setInput(buffer, pos, limit - pos);
+    }
+
+    private void readHeader() throws IOException {
+        require(10);
+        if ((buffer[pos] & 0xff) != 0x1f || (buffer[pos + 1] & 0xff) != 0x8b) {
+            throw new ZipException("not in gzip format");
+        }
+        if (buffer[pos + 2] != 8) throw new ZipException("unsupported compression method: " + buffer[pos + 2]);
+        int flags = buffer[pos + 3] & 0xff;
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(buffer, pos, 10);
+        pos += 10;
+        if ((flags & FEXTRA) != 0) {
+            require(2);
+            int extraLength = (buffer[pos] & 0xff) | (buffer[pos + 1] & 0xff) << 8;
+            headerCrc.update(buffer, pos, 2);
+            pos += 2;
+            for (int i = 0; i < extraLength; i++) {
+                headerCrc.update(readByte());
+            }
+        }
+        if ((flags & FNAME) != 0) skipZeroTerminated(headerCrc);
+        if ((flags & FCOMMENT) != 0) skipZeroTerminated(headerCrc);
+        if ((flags & FHCRC) != 0) {
+            int expected = readByte() | readByte() << 8;
+            if (expected != (int) (headerCrc.getValue() & 0xffff)) throw new ZipException("corrupt gzip header");
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        long expectedCrc = readIntLe() & 0xffffffffL;
+        long expectedSize = readIntLe() & 0xffffffffL;
+        if (expectedCrc != crc.getValue()) throw new ZipException("corrupt gzip stream: bad CRC");
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("corrupt gzip stream: bad size");
+        }
+    }
+
+    private void skipZeroTerminated(CRC32 headerCrc) throws IOException {
+        for (int b; (b = readByte()) != 0; ) {
+            headerCrc.update(b);
+        }
+        headerCrc.update(0);
+    }
+
+    private int readIntLe() throws IOException {
+        return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+    }
+
+    private int readByte() throws IOException {
+        require(1);
+        return buffer[pos++] & 0xff;
+    }
+
+    /**
+     * Buffers at least {@code count} unread bytes, throwing if the stream ends first.
+     */
+    private void require(int count) throws IOException {
+        while (limit - pos < count) {
+            if (!fill()) throw new EOFException("unexpected end of " + (gzip ? "gzip" : "deflate") + " stream");
+        }
+    }
+
+    /**
+     * Reads more of the source into the buffer, compacting it first if needed. Returns false at
+     * the end of the source.
+     */
+    private boolean fill() throws IOException {
+        if (pos == limit) {
+            pos = 0;
+            limit = 0;
+        } else if (limit == buffer.length) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int read = source.read(buffer, limit, buffer.length - limit);
+        if (read == -1) return false;
+        limit += read;
+        return true;
+    }
+
+    private void finish() {
+        finished = true;
+        release(); // Hand the inflater back now rather than waiting for close().
+    }
+
+    private void release() {
+        if (inflater != null) {
+            recycleInflater(inflater, gzip || raw);
+            inflater = null;
+        }
+        if (buffer != null) {
+            ByteArrayPool.recycle(buffer);
+            buffer = null;
+        }
+    }
+
+    private static Inflater takeInflater(boolean nowrap) {
+        ArrayDeque<Inflater> pool = nowrap ? rawInflaters : zlibInflaters;
+        synchronized (pool) {
+            Inflater inflater = pool.pollFirst();
+            if (inflater != null) return inflater;
+        }
+        return new Inflater(nowrap);
+    }
+
+    private static void recycleInflater(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        ArrayDeque<Inflater> pool = nowrap ? rawInflaters : zlibInflaters;
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_INFLATERS) {
+                pool.addFirst(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+}
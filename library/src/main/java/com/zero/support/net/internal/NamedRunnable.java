@@ -0,0 +1,25 @@
+package com.zero.support.net.internal;
+
+/**
+ * Runnable implementation which always sets its thread name.
+ */
+public abstract class NamedRunnable implements Runnable {
+    protected final String name;
+
+    public NamedRunnable(String format, Object... args) {
+        this.name = Util.format(format, args);
+    }
+
+    @Override
+    public final void run() {
+        String oldName = Thread.currentThread().getName();
+        Thread.currentThread().setName(name);
+        try {
+            execute();
+        } finally {
+            Thread.currentThread().setName(oldName);
+        }
+    }
+
+    protected abstract void execute();
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012 Square, Inc.
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.Protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Access to TLS extensions that are not part of the Java 7 API. ALPN is reached reflectively
+ * through whichever of these the running platform offers:
+ *
+ * <ul>
+ *     <li>{@code SSLParameters.setApplicationProtocols()}, on Java 9+ and Android 10+.
+ *     <li>Conscrypt's {@code setAlpnProtocols(byte[])}, on Android 5 through 9 and wherever the
+ *     configured {@code SSLSocketFactory} produces Conscrypt sockets.
+ * </ul>
+ *
+ * <p>When neither is available no protocol is offered and the connection stays on HTTP/1.1.
+ *
+ * <p>Failures on background threads that can't be handed to a caller are logged here.
+ */
+public final class Platform {
+    private static final Platform PLATFORM = new Platform();
+    private static final Logger logger = Logger.getLogger(HttpClient.class.getName());
+
+    private final Method setApplicationProtocols;
+    private final Method getApplicationProtocol;
+
+    private Platform() {
+        setApplicationProtocols = method(SSLParameters.class, "setApplicationProtocols", String[].class);
+        getApplicationProtocol = method(SSLSocket.class, "getApplicationProtocol");
+    }
+
+    public static Platform get() {
+        return PLATFORM;
+    }
+
+    /**
+     * Configure TLS extensions on {@code sslSocket} for {@code hostname}. Must be called before the
+     * handshake starts.
+     */
+    public void configureTlsExtensions(SSLSocket sslSocket, String hostname, List<Protocol> protocols) {
+        List<String> names = alpnProtocolNames(protocols);
+        if (names.size() < 2) {
+            return; // Nothing to negotiate; HTTP/1.1 is the default.
+        }
+
+        // Conscrypt sockets also need SNI and session tickets enabled explicitly.
+        invokeQuietly(sslSocket, "setUseSessionTickets", new Class<?>[]{boolean.class}, true);
+        invokeQuietly(sslSocket, "setHostname", new Class<?>[]{String.class}, hostname);
+
+        if (setApplicationProtocols != null) {
+            try {
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                setApplicationProtocols.invoke(parameters,
+                        (Object) names.toArray(new String[names.size()]));
+                sslSocket.setSSLParameters(parameters);
+                return;
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                // Fall through to Conscrypt's API.
+            }
+        }
+        invokeQuietly(sslSocket, "setAlpnProtocols", new Class<?>[]{byte[].class},
+                concatLengthPrefixed(names));
+    }
+
+    /**
+     * Returns the negotiated protocol, or null if no protocol was negotiated.
+     */
+    public String getSelectedProtocol(SSLSocket socket) {
+        if (getApplicationProtocol != null) {
+            try {
+                String protocol = (String) getApplicationProtocol.invoke(socket);
+                // SSLSocket.getApplicationProtocol returns "" if application protocols values will not
+                // be used. Observed if you didn't specify SSLParameters.setApplicationProtocols
+                if (protocol != null && !protocol.isEmpty()) {
+                    return protocol;
+                }
+            } catch (IllegalAccessException | InvocationTargetException
+                    | UnsupportedOperationException ignored) {
+            }
+        }
+        Object alpnResult = invokeQuietly(socket, "getAlpnSelectedProtocol", new Class<?>[0]);
+        if (alpnResult instanceof byte[]) {
+            return new String((byte[]) alpnResult, Util.UTF_8);
+        }
+        return null;
+    }
+
+    static List<String> alpnProtocolNames(List<Protocol> protocols) {
+        List<String> names = new ArrayList<>(protocols.size());
+        for (int i = 0, size = protocols.size(); i < size; i++) {
+            Protocol protocol = protocols.get(i);
+            if (protocol == Protocol.H2_PRIOR_KNOWLEDGE) continue; // Cleartext only.
+            names.add(protocol.toString());
+        }
+        return names;
+    }
+
+    /**
+     * Reports a failure that has no caller to be thrown to, such as one on a background thread.
+     */
+    public void log(String message, Throwable t) {
+        logger.log(Level.WARNING, message, t);
+    }
+
+    /**
+     * Returns the concatenation of 8-bit, length prefixed protocol names.
+     * http://tools.ietf.org/html/draft-agl-tls-nextprotoneg-04#page-4
+     */
+    static byte[] concatLengthPrefixed(List<String> protocols) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (int i = 0, size = protocols.size(); i < size; i++) {
+            byte[] name = protocols.get(i).getBytes(Util.UTF_8);
+            result.write(name.length);
+            result.write(name, 0, name.length);
+        }
+        return result.toByteArray();
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Object invokeQuietly(Object target, String name, Class<?>[] parameterTypes,
+                                        Object... args) {
+        Method method = method(target.getClass(), name, parameterTypes);
+        if (method == null) return null;
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+}
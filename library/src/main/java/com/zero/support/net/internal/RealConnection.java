@@ -0,0 +1,237 @@
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.Protocol;
+import com.zero.support.net.internal.http2.Http2Connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownServiceException;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A socket connection to a {@link Route}, owned by a {@link RealConnectionPool}. An HTTP/1.1
+ * connection carries one exchange at a time; an HTTP/2 connection carries as many concurrent
+ * streams as the server permits.
+ */
+public final class RealConnection implements Http2Connection.Listener {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final RealConnectionPool pool;
+    final Route route;
+    private Socket rawSocket;
+    private Socket socket;
+    private InputStream source;
+    private OutputStream sink;
+    private Protocol protocol;
+    private Http2Connection http2Connection;
+
+    /**
+     * If true, no new exchanges can be created on this connection. Once true this is always true.
+     * Guarded by the pool.
+     */
+    boolean noNewExchanges;
+
+    /**
+     * The maximum number of concurrent exchanges this connection can carry.
+     */
+    int allocationLimit = 1;
+
+    /**
+     * Exchanges currently carried by this connection. Guarded by the pool.
+     */
+    int allocations;
+
+    /**
+     * Nanotime timestamp when {@code allocations} reached zero. Guarded by the pool.
+     */
+    long idleAtNanos = Long.MAX_VALUE;
+
+    /**
+     * The number of exchanges that completed on this connection. A connection with a non-zero count
+     * has been reused from the pool at least once.
+     */
+    int successCount;
+
+    RealConnection(RealConnectionPool pool, Route route) {
+        this.pool = pool;
+        this.route = route;
+    }
+
+    /**
+     * Returns a new connection to {@code route} that doesn't belong to a pool, for protocols that
+     * take the connection over, like web sockets. The caller closes it.
+     */
+    public static RealConnection connectUnpooled(HttpClient client, Route route) throws IOException {
+        RealConnection connection = new RealConnection(null, route);
+        connection.connect(client);
+        return connection;
+    }
+
+    void connect(HttpClient client) throws IOException {
+        if (route.isHttps() && route.protocols.contains(Protocol.H2_PRIOR_KNOWLEDGE)) {
+            throw new UnknownServiceException(
+                    "H2_PRIOR_KNOWLEDGE cannot be used with HTTPS");
+        }
+
+        rawSocket = client.socketFactory().createSocket();
+        boolean success = false;
+        try {
+            rawSocket.setTcpNoDelay(client.tcpNoDelay());
+            if (client.socketSendBufferSize() > 0) {
+                rawSocket.setSendBufferSize(client.socketSendBufferSize());
+            }
+            if (client.socketReceiveBufferSize() > 0) {
+                rawSocket.setReceiveBufferSize(client.socketReceiveBufferSize());
+            }
+            rawSocket.connect(new InetSocketAddress(route.host, route.port), client.connectTimeoutMillis());
+            rawSocket.setSoTimeout(client.readTimeoutMillis());
+
+            if (route.isHttps()) {
+                SSLSocket sslSocket = (SSLSocket) route.sslSocketFactory.createSocket(
+                        rawSocket, route.host, route.port, true);
+                socket = sslSocket;
+                Platform.get().configureTlsExtensions(sslSocket, route.host, route.protocols);
+                sslSocket.startHandshake();
+                if (route.hostnameVerifier != null
+                        && !route.hostnameVerifier.verify(route.host, sslSocket.getSession())) {
+                    throw new SSLPeerUnverifiedException("Hostname " + route.host + " not verified");
+                }
+                String maybeProtocol = Platform.get().getSelectedProtocol(sslSocket);
+                protocol = maybeProtocol != null ? Protocol.get(maybeProtocol) : Protocol.HTTP_1_1;
+            } else {
+                socket = rawSocket;
+                protocol = route.protocols.contains(Protocol.H2_PRIOR_KNOWLEDGE)
+                        ? Protocol.H2_PRIOR_KNOWLEDGE
+                        : Protocol.HTTP_1_1;
+            }
+            source = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            OutputStream socketSink = socket.getOutputStream();
+            if (client.writeTimeoutMillis() > 0) {
+                socketSink = new WriteTimeoutStream(socketSink, client.writeTimeoutMillis(), rawSocket);
+            }
+            sink = new BufferedOutputStream(socketSink, BUFFER_SIZE);
+            if (protocol == Protocol.HTTP_2 || protocol == Protocol.H2_PRIOR_KNOWLEDGE) {
+                startHttp2();
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                Util.closeQuietly(socket);
+                Util.closeQuietly(rawSocket);
+            }
+        }
+    }
+
+    private void startHttp2() throws IOException {
+        // Streams enforce their own read timeouts; the shared reader thread waits indefinitely.
+        socket.setSoTimeout(0);
+        http2Connection = new Http2Connection(socket, source, sink, route.host, this);
+        http2Connection.start();
+    }
+
+    /**
+     * When settings are received, adjust the allocation limit.
+     */
+    @Override
+    public void onSettings(Http2Connection connection) {
+        synchronized (pool) {
+            allocationLimit = connection.maxConcurrentStreams();
+        }
+    }
+
+    public Route route() {
+        return route;
+    }
+
+    public Socket socket() {
+        return socket;
+    }
+
+    public InputStream source() {
+        return source;
+    }
+
+    public OutputStream sink() {
+        return sink;
+    }
+
+    public Protocol protocol() {
+        return protocol;
+    }
+
+    Http2Connection http2Connection() {
+        return http2Connection;
+    }
+
+    /**
+     * Returns true if this is an HTTP/2 connection. Such connections can be used in multiple HTTP
+     * requests simultaneously.
+     */
+    public boolean isMultiplexed() {
+        return http2Connection != null;
+    }
+
+    /**
+     * Returns true if this connection is ready to host new exchanges. A connection that sat idle in
+     * the pool may have been closed by the peer; an extensive check detects that by attempting a
+     * 1 millisecond read, which costs a little latency but saves a failed request.
+     */
+    boolean isHealthy(boolean doExtensiveChecks) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+
+        if (http2Connection != null) {
+            return !http2Connection.isShutdown();
+        }
+
+        if (doExtensiveChecks) {
+            try {
+                if (source.available() > 0) {
+                    return false; // Unexpected bytes on an idle HTTP/1.1 connection.
+                }
+                int readTimeout = socket.getSoTimeout();
+                try {
+                    socket.setSoTimeout(1);
+                    source.read();
+                    // Either the stream is exhausted and the socket closed, or an idle HTTP/1.1
+                    // connection sent unexpected bytes.
+                    return false;
+                } finally {
+                    socket.setSoTimeout(readTimeout);
+                }
+            } catch (SocketTimeoutException ignored) {
+                // Read timed out; socket is good.
+            } catch (IOException e) {
+                return false; // Couldn't read; socket is closed.
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Immediately closes the socket connection. Safe to call from any thread.
+     */
+    public void close() {
+        Util.closeQuietly(http2Connection);
+        Util.closeQuietly(socket);
+        Util.closeQuietly(rawSocket);
+    }
+
+    @Override
+    public String toString() {
+        return "Connection{" + route + ", protocol=" + protocol
+                + ", allocations=" + allocations + '}';
+    }
+}
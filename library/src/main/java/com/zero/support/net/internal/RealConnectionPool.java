@@ -0,0 +1,222 @@
+package com.zero.support.net.internal;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connection store behind {@link com.zero.support.net.ConnectionPool}. Idle connections are
+ * kept per route up to {@code maxIdleConnectionsPerRoute}, and a background cleanup task closes
+ * connections that have been idle longer than the keep-alive duration.
+ */
+public final class RealConnectionPool {
+    /**
+     * Background threads are used to cleanup expired connections. There will be at most a single
+     * thread running per connection pool. The thread pool executor permits the pool itself to be
+     * garbage collected.
+     */
+    private static final Executor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            Util.threadFactory("Net ConnectionPool", true));
+
+    private final int maxIdleConnectionsPerRoute;
+    private final long keepAliveDurationNs;
+    private final Deque<RealConnection> connections = new ArrayDeque<>();
+    private boolean cleanupRunning;
+
+    private final Runnable cleanupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                long waitNanos = cleanup(System.nanoTime());
+                if (waitNanos == -1) return;
+                if (waitNanos > 0) {
+                    long waitMillis = waitNanos / 1000000L;
+                    waitNanos -= (waitMillis * 1000000L);
+                    synchronized (RealConnectionPool.this) {
+                        try {
+                            RealConnectionPool.this.wait(waitMillis, (int) waitNanos);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }
+            }
+        }
+    };
+
+    public RealConnectionPool(int maxIdleConnectionsPerRoute, long keepAliveDuration, TimeUnit timeUnit) {
+        this.maxIdleConnectionsPerRoute = maxIdleConnectionsPerRoute;
+        this.keepAliveDurationNs = timeUnit.toNanos(keepAliveDuration);
+
+        // Put a floor on the keep alive duration, otherwise cleanup will spin loop.
+        if (keepAliveDuration <= 0) {
+            throw new IllegalArgumentException("keepAliveDuration <= 0: " + keepAliveDuration);
+        }
+    }
+
+    public synchronized int idleConnectionCount() {
+        int total = 0;
+        for (RealConnection connection : connections) {
+            if (connection.allocations == 0) total++;
+        }
+        return total;
+    }
+
+    public synchronized int connectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Returns a pooled connection to {@code route} with spare capacity, claiming an allocation on
+     * it, or null if there is no such connection. If {@code requireMultiplexed} is true only HTTP/2
+     * connections are considered.
+     */
+    synchronized RealConnection acquire(Route route, boolean requireMultiplexed) {
+        for (RealConnection connection : connections) {
+            if (requireMultiplexed && !connection.isMultiplexed()) continue;
+            if (connection.noNewExchanges) continue;
+            if (connection.allocations >= connection.allocationLimit) continue;
+            if (!connection.route.equals(route)) continue;
+            connection.allocations++;
+            connection.idleAtNanos = Long.MAX_VALUE;
+            return connection;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a freshly connected connection to the pool, with one allocation claimed by the caller.
+     */
+    synchronized void put(RealConnection connection) {
+        connection.allocations = 1;
+        connection.idleAtNanos = Long.MAX_VALUE;
+        connections.add(connection);
+        if (!cleanupRunning) {
+            cleanupRunning = true;
+            executor.execute(cleanupRunnable);
+        }
+    }
+
+    /**
+     * Releases an allocation on {@code connection}. If {@code reusable} is false the connection is
+     * closed once it carries no more exchanges.
+     */
+    void release(RealConnection connection, boolean reusable) {
+        RealConnection evicted = null;
+        synchronized (this) {
+            if (!reusable) connection.noNewExchanges = true;
+            connection.allocations--;
+            if (connection.allocations > 0) return;
+
+            if (connection.noNewExchanges || maxIdleConnectionsPerRoute == 0) {
+                connections.remove(connection);
+                evicted = connection;
+            } else {
+                connection.idleAtNanos = System.nanoTime();
+                evicted = trimIdle(connection.route);
+                notifyAll(); // Awake the cleanup thread: we may have exceeded the idle connection limit.
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+    }
+
+    /**
+     * Removes the longest-idle connection to {@code route} if the route has more idle connections
+     * than permitted, returning it so it can be closed outside of the lock.
+     */
+    private RealConnection trimIdle(Route route) {
+        int idleCount = 0;
+        RealConnection longestIdle = null;
+        for (RealConnection connection : connections) {
+            if (connection.allocations > 0 || !connection.route.equals(route)) continue;
+            idleCount++;
+            if (longestIdle == null || connection.idleAtNanos < longestIdle.idleAtNanos) {
+                longestIdle = connection;
+            }
+        }
+        if (idleCount <= maxIdleConnectionsPerRoute) return null;
+        connections.remove(longestIdle);
+        return longestIdle;
+    }
+
+    public void evictAll() {
+        List<RealConnection> evictedConnections = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<RealConnection> i = connections.iterator(); i.hasNext(); ) {
+                RealConnection connection = i.next();
+                if (connection.allocations == 0) {
+                    connection.noNewExchanges = true;
+                    evictedConnections.add(connection);
+                    i.remove();
+                }
+            }
+        }
+
+        for (RealConnection connection : evictedConnections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Performs maintenance on this pool, evicting the connection that has been idle the longest if
+     * it has exceeded the keep alive limit.
+     *
+     * <p>Returns the duration in nanos to sleep until the next scheduled call to this method. Returns
+     * -1 if no further cleanups are required.
+     */
+    long cleanup(long now) {
+        int inUseConnectionCount = 0;
+        int idleConnectionCount = 0;
+        RealConnection longestIdleConnection = null;
+        long longestIdleDurationNs = Long.MIN_VALUE;
+
+        // Find either a connection to evict, or the time that the next eviction is due.
+        synchronized (this) {
+            for (RealConnection connection : connections) {
+                if (connection.allocations > 0) {
+                    inUseConnectionCount++;
+                    continue;
+                }
+
+                idleConnectionCount++;
+
+                long idleDurationNs = now - connection.idleAtNanos;
+                if (idleDurationNs > longestIdleDurationNs) {
+                    longestIdleDurationNs = idleDurationNs;
+                    longestIdleConnection = connection;
+                }
+            }
+
+            if (longestIdleDurationNs >= this.keepAliveDurationNs) {
+                // We've found a connection to evict. Remove it from the list, then close it below
+                // (outside of the synchronized block).
+                connections.remove(longestIdleConnection);
+            } else if (idleConnectionCount > 0) {
+                // A connection will be ready to evict soon.
+                return keepAliveDurationNs - longestIdleDurationNs;
+            } else if (inUseConnectionCount > 0) {
+                // All connections are in use. It'll be at least the keep alive duration 'til we run
+                // again.
+                return keepAliveDurationNs;
+            } else {
+                // No connections, idle or in use.
+                cleanupRunning = false;
+                return -1;
+            }
+        }
+
+        longestIdleConnection.close();
+
+        // Cleanup again immediately.
+        return 0;
+    }
+}
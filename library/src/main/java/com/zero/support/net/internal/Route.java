@@ -0,0 +1,114 @@
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.Protocol;
+import com.zero.support.net.Request;
+
+import java.net.URL;
+import java.util.List;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The concrete destination a connection is made to. Two requests with equal routes may share a
+ * pooled connection.
+ *
+ * <p>The TLS factories take part in equality by identity: a request that overrides its {@link
+ * SSLSocketFactory} or {@link HostnameVerifier} never reuses a connection that was established
+ * with different ones.
+ */
+public final class Route {
+    final String host;
+    final int port;
+    final SSLSocketFactory sslSocketFactory;
+    final HostnameVerifier hostnameVerifier;
+    final List<Protocol> protocols;
+
+    Route(String host, int port, SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier,
+          List<Protocol> protocols) {
+        this.host = host;
+        this.port = port;
+        this.sslSocketFactory = sslSocketFactory;
+        this.hostnameVerifier = hostnameVerifier;
+        this.protocols = protocols;
+    }
+
+    public static Route of(HttpClient client, Request request) {
+        URL url = request.url();
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        if (!request.isHttps()) {
+            return new Route(url.getHost(), port, null, null, client.protocols());
+        }
+        SSLSocketFactory sslSocketFactory = request.sslSocketFactory();
+        if (sslSocketFactory == null) {
+            sslSocketFactory = client.sslSocketFactory();
+        }
+        if (sslSocketFactory == null) {
+            sslSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        HostnameVerifier hostnameVerifier = request.hostnameVerifier();
+        if (hostnameVerifier == null) {
+            hostnameVerifier = client.hostnameVerifier();
+        }
+        return new Route(url.getHost(), port, sslSocketFactory, hostnameVerifier,
+                client.protocols());
+    }
+
+    /**
+     * Returns this route restricted to {@code protocols}, like HTTP/1.1 for protocols that take
+     * the connection over after an upgrade.
+     */
+    public Route withProtocols(List<Protocol> protocols) {
+        return new Route(host, port, sslSocketFactory, hostnameVerifier, protocols);
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public List<Protocol> protocols() {
+        return protocols;
+    }
+
+    public HostnameVerifier hostnameVerifier() {
+        return hostnameVerifier;
+    }
+
+    public boolean isHttps() {
+        return sslSocketFactory != null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Route)) return false;
+        Route that = (Route) other;
+        return host.equals(that.host)
+                && port == that.port
+                && sslSocketFactory == that.sslSocketFactory
+                && hostnameVerifier == that.hostnameVerifier
+                && protocols.equals(that.protocols);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 17;
+        result = 31 * result + host.hashCode();
+        result = 31 * result + port;
+        result = 31 * result + System.identityHashCode(sslSocketFactory);
+        result = 31 * result + System.identityHashCode(hostnameVerifier);
+        result = 31 * result + protocols.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (isHttps() ? "https://" : "http://") + host + ":" + port;
+    }
+}
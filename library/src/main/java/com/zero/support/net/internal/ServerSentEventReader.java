@@ -0,0 +1,207 @@
+package com.zero.support.net.internal;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Parses a {@code text/event-stream} as its bytes arrive, following the <a
+ * href="https://html.spec.whatwg.org/multipage/server-sent-events.html#event-stream-interpretation">
+ * event stream interpretation</a> of the HTML standard. Lines are scanned in place and field names
+ * are matched as bytes; strings are made only for the values an event delivers.
+ */
+public final class ServerSentEventReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] DATA = {'d', 'a', 't', 'a'};
+    private static final byte[] EVENT = {'e', 'v', 'e', 'n', 't'};
+    private static final byte[] ID = {'i', 'd'};
+    private static final byte[] RETRY = {'r', 'e', 't', 'r', 'y'};
+    /**
+     * Fields that grew past this don't keep their arrays, so one huge event doesn't pin memory.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final InputStream source;
+    private final Callback callback;
+    private final byte[] buffer = new byte[8192];
+    private int pos;
+    private int limit;
+    private boolean started;
+    /**
+     * True if the last line ended with CR, so that a LF that follows belongs to it.
+     */
+    private boolean skipLf;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private byte[] data = new byte[256];
+    private int dataLength;
+    private String type;
+    /**
+     * The ID of the event being read; it carries over to the events that follow.
+     */
+    private String idBuffer;
+    /**
+     * The ID as of the last event boundary, even one that dispatched nothing.
+     */
+    private String lastEventId;
+
+    public ServerSentEventReader(InputStream source, String lastEventId, Callback callback) {
+        this.source = source;
+        this.idBuffer = lastEventId;
+        this.lastEventId = lastEventId;
+        this.callback = callback;
+    }
+
+    /**
+     * Returns the ID to resume the stream from, or null if the server hasn't sent one.
+     */
+    public String lastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Reads until an event is dispatched and returns true, or returns false at the end of the
+     * stream. An event that the end of the stream cuts short is discarded.
+     */
+    public boolean processNextEvent() throws IOException {
+        while (true) {
+            if (!readLine()) return false;
+            if (lineLength == 0) {
+                if (dispatch()) return true;
+            } else {
+                processField();
+            }
+        }
+    }
+
+    /**
+     * Reads the next line into {@link #line}, without its terminator. Returns false at the end of
+     * the stream.
+     */
+    private boolean readLine() throws IOException {
+        if (line.length > MAX_RETAINED_CAPACITY) line = new byte[256];
+        lineLength = 0;
+        while (true) {
+            if (pos == limit) {
+                int read = source.read(buffer, 0, buffer.length);
+                if (read == -1) return false;
+                pos = 0;
+                limit = read;
+                if (!started) {
+                    started = true;
+                    skipBom();
+                }
+            }
+            if (skipLf) {
+                skipLf = false;
+                if (buffer[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            int start = pos;
+            while (pos < limit && buffer[pos] != '\n' && buffer[pos] != '\r') {
+                pos++;
+            }
+            appendToLine(start, pos - start);
+            if (pos < limit) {
+                skipLf = buffer[pos] == '\r';
+                pos++;
+                return true;
+            }
+        }
+    }
+
+    private void skipBom() {
+        if (limit >= 3 && (buffer[0] & 0xff) == 0xef && (buffer[1] & 0xff) == 0xbb
+                && (buffer[2] & 0xff) == 0xbf) {
+            pos = 3;
+        }
+    }
+
+    private void appendToLine(int offset, int count) {
+        if (lineLength + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + count));
+        }
+        System.arraycopy(buffer, offset, line, lineLength, count);
+        lineLength += count;
+    }
+
+    private void processField() {
+        if (line[0] == ':') return; // A comment, often sent to keep the connection alive.
+        int colon = 0;
+        while (colon < lineLength && line[colon] != ':') {
+            colon++;
+        }
+        int valueStart = colon;
+        if (colon < lineLength) {
+            valueStart++;
+            if (valueStart < lineLength && line[valueStart] == ' ') valueStart++;
+        }
+        int valueLength = lineLength - valueStart;
+
+        if (fieldIs(DATA, colon)) {
+            if (dataLength + valueLength + 1 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + valueLength + 1));
+            }
+            System.arraycopy(line, valueStart, data, dataLength, valueLength);
+            dataLength += valueLength;
+            data[dataLength++] = '\n';
+        } else if (fieldIs(EVENT, colon)) {
+            // An empty type means the default type, as if no event field had been sent.
+            type = valueLength > 0 ? new String(line, valueStart, valueLength, UTF_8) : null;
+        } else if (fieldIs(ID, colon)) {
+            for (int i = valueStart; i < lineLength; i++) {
+                if (line[i] == 0) return; // IDs with NUL are ignored.
+            }
+            idBuffer = new String(line, valueStart, valueLength, UTF_8);
+        } else if (fieldIs(RETRY, colon)) {
+            long retryMillis = 0L;
+            if (valueLength == 0 || valueLength > 18) return;
+            for (int i = valueStart; i < lineLength; i++) {
+                byte b = line[i];
+                if (b < '0' || b > '9') return;
+                retryMillis = retryMillis * 10 + (b - '0');
+            }
+            callback.onRetryChange(retryMillis);
+        }
+        // Other fields are ignored.
+    }
+
+    private boolean fieldIs(byte[] name, int length) {
+        if (length != name.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (line[i] != name[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Delivers the buffered event, if it has data, and resets the buffers. Returns true if an event
+     * was delivered.
+     */
+    private boolean dispatch() {
+        lastEventId = idBuffer;
+        String type = this.type;
+        this.type = null;
+        if (dataLength == 0) return false;
+        String data = new String(this.data, 0, dataLength - 1, UTF_8); // Drop the last LF.
+        dataLength = 0;
+        if (this.data.length > MAX_RETAINED_CAPACITY) this.data = new byte[256];
+        callback.onEvent(lastEventId, type, data);
+        return true;
+    }
+
+    public interface Callback {
+        /**
+         * @param id   the last event ID seen on the stream, or null if there wasn't one.
+         * @param type the event's type, or null for the default type, {@code message}.
+         */
+        void onEvent(String id, String type, String data);
+
+        void onRetryChange(long timeMillis);
+    }
+}
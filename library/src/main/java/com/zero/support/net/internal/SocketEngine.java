@@ -0,0 +1,238 @@
+package com.zero.support.net.internal;
+
+
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.HttpMethod;
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+import com.zero.support.net.internal.http2.ConnectionShutdownException;
+import com.zero.support.net.internal.http2.ErrorCode;
+import com.zero.support.net.internal.http2.StreamResetException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.URL;
+
+import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
+import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_MULT_CHOICE;
+import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
+
+/**
+ * The {@link com.zero.support.net.Engine#SOCKET} transport: carries requests over pooled socket
+ * connections and follows redirects the way {@link java.net.HttpURLConnection} does for the
+ * {@link com.zero.support.net.Engine#URL_CONNECTION} engine. Connections speak HTTP/1.1 or, when
+ * negotiated, HTTP/2 with every concurrent call to a host multiplexed onto one socket.
+ */
+public final class SocketEngine {
+    /**
+     * How many redirects should we attempt? Chrome follows 21 redirects; Firefox, curl, and wget
+     * follow 20; Safari follows 16; and HTTP/1.0 recommends 5.
+     */
+    public static final int MAX_FOLLOW_UPS = 20;
+
+    /**
+     * Connections idle for longer than this get a read probe before they are reused.
+     */
+    private static final long EXTENSIVE_HEALTH_CHECK_IDLE_NANOS = 10_000_000_000L;
+
+    /**
+     * How many times a stream refused by an HTTP/2 server is replayed before giving up.
+     */
+    private static final int MAX_REFUSED_STREAM_RETRIES = 3;
+
+    private final HttpClient client;
+    private final RealConnectionPool pool;
+
+    public SocketEngine(HttpClient client, RealConnectionPool pool) {
+        this.client = client;
+        this.pool = pool;
+    }
+
+    /**
+     * Executes {@code request} and its follow-ups. {@code call} is told about each connection and
+     * exchange as it starts so that canceling it can tear them down.
+     */
+    public Response execute(Request request, CallServerInterceptor call) throws IOException {
+        int followUpCount = 0;
+        while (true) {
+            Response response = exchange(request, call);
+
+            Request followUp = followUpRequest(client, response);
+            if (followUp == null) {
+                return response;
+            }
+
+            ResponseBody body = response.body();
+            if (body != null) {
+                body.close();
+            }
+            if (++followUpCount > MAX_FOLLOW_UPS) {
+                throw new ProtocolException("Too many follow-up requests: " + followUpCount);
+            }
+            request = followUp;
+        }
+    }
+
+    /**
+     * Performs a single request/response exchange. A pooled connection that fails before the
+     * response starts was most likely closed by the peer while idle, so the exchange is retried
+     * on another connection unless the client doesn't retry on connection failure. So is a stream
+     * the HTTP/2 server refused or never processed.
+     */
+    private Response exchange(Request request, CallServerInterceptor call) throws IOException {
+        Route route = Route.of(client, request);
+        int refusedStreams = 0;
+        while (true) {
+            RealConnection connection = findHealthyConnection(route, request, call);
+            boolean reused = connection.successCount > 0;
+            HttpCodec codec = connection.isMultiplexed()
+                    ? new Http2Codec(client, pool, connection, call)
+                    : new Http1Codec(pool, connection, client.requestChunkSize(), call);
+            try {
+                call.exchangeStarted(codec);
+                codec.writeRequest(request);
+                Response response = codec.readResponseHeaders()
+                        .request(request)
+                        .build();
+                ResponseBody body = codec.openResponseBody(response);
+                return response.newBuilder()
+                        .body(body)
+                        .build();
+            } catch (IOException e) {
+                codec.abort();
+                if (codec.responseStarted() || call.isCancel()) {
+                    throw e;
+                }
+                if (isRefusedStream(e)) {
+                    if (++refusedStreams > MAX_REFUSED_STREAM_RETRIES) throw e;
+                } else if (!reused || !client.retryOnConnectionFailure()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if an HTTP/2 server declined {@code e}'s stream without processing it, either by
+     * resetting it or by shutting the connection down first. Such streams are safe to replay.
+     */
+    private static boolean isRefusedStream(IOException e) {
+        if (e instanceof ConnectionShutdownException) {
+            return true;
+        }
+        return e instanceof StreamResetException
+                && ((StreamResetException) e).errorCode == ErrorCode.REFUSED_STREAM;
+    }
+
+    private RealConnection findHealthyConnection(Route route, Request request,
+                                                 CallServerInterceptor call) throws IOException {
+        while (true) {
+            RealConnection pooled = pool.acquire(route, false);
+            if (pooled == null) {
+                break;
+            }
+            boolean doExtensiveChecks = !request.method().equals("GET")
+                    || System.nanoTime() - pooled.idleAtNanos > EXTENSIVE_HEALTH_CHECK_IDLE_NANOS;
+            if (pooled.isHealthy(doExtensiveChecks)) {
+                return pooled;
+            }
+            pool.release(pooled, false);
+        }
+
+        RealConnection connection = new RealConnection(pool, route);
+        call.connecting(connection);
+        try {
+            connection.connect(client);
+        } finally {
+            call.connecting(null);
+        }
+
+        if (connection.isMultiplexed()) {
+            // If another call raced us to an HTTP/2 connection for this route, share it and
+            // discard ours.
+            RealConnection multiplexed = pool.acquire(route, true);
+            if (multiplexed != null) {
+                connection.close();
+                return multiplexed;
+            }
+        }
+        pool.put(connection);
+        return connection;
+    }
+
+    /**
+     * Figures out the HTTP request to make in response to receiving {@code response}. If a
+     * follow-up is either unnecessary or not applicable, this returns null.
+     */
+    public static Request followUpRequest(HttpClient client, Response response) {
+        int responseCode = response.code();
+        String method = response.request().method();
+        switch (responseCode) {
+            case Response.HTTP_PERM_REDIRECT:
+            case Response.HTTP_TEMP_REDIRECT:
+                // "If the 307 or 308 status code is received in response to a request other than GET
+                // or HEAD, the user agent MUST NOT automatically redirect the request"
+                if (!method.equals("GET") && !method.equals("HEAD")) {
+                    return null;
+                }
+                return redirectRequest(client, response, method);
+            case HTTP_MULT_CHOICE:
+            case HTTP_MOVED_PERM:
+            case HTTP_MOVED_TEMP:
+            case HTTP_SEE_OTHER:
+                return redirectRequest(client, response, method);
+            default:
+                return null;
+        }
+    }
+
+    private static Request redirectRequest(HttpClient client, Response response, String method) {
+        // Does the client allow redirects?
+        if (!client.followRedirects()) return null;
+
+        String location = response.header("Location");
+        if (location == null) return null;
+        URL url;
+        try {
+            url = new URL(response.request().url(), location);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+
+        // Don't follow redirects to unsupported protocols.
+        String protocol = url.getProtocol();
+        if (!protocol.equals("http") && !protocol.equals("https")) return null;
+
+        // If configured, don't follow redirects between SSL and non-SSL.
+        boolean sameScheme = protocol.equals(response.request().url().getProtocol());
+        if (!sameScheme && !client.followSslRedirects()) return null;
+
+        // Most redirects don't include a request body.
+        Request.Builder requestBuilder = response.request().newBuilder();
+        if (HttpMethod.permitsRequestBody(method)) {
+            final boolean maintainBody = HttpMethod.redirectsWithBody(method);
+            if (HttpMethod.redirectsToGet(method)) {
+                requestBuilder.method("GET", null);
+            } else {
+                requestBuilder.method(method, maintainBody ? response.request().body() : null);
+            }
+            if (!maintainBody) {
+                requestBuilder.removeHeader("Transfer-Encoding");
+                requestBuilder.removeHeader("Content-Length");
+                requestBuilder.removeHeader("Content-Type");
+            }
+        }
+
+        // When redirecting across hosts, drop all authentication headers. This
+        // is potentially annoying to the application layer since they have no
+        // way to retain them.
+        if (!url.getHost().equals(response.request().url().getHost())) {
+            requestBuilder.removeHeader("Authorization");
+        }
+
+        return requestBuilder.url(url).build();
+    }
+}
@@ -0,0 +1,188 @@
+package com.zero.support.net.internal;
+
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timer wheel shared by every call in the process. Deadlines are hashed into a ring of
+ * buckets by the tick they expire on, so scheduling and canceling cost O(1) regardless of how many
+ * timeouts are pending, and one thread serves them all.
+ *
+ * <p>Timeouts fire up to one tick late. Their tasks run on the wheel's thread and must be quick: in
+ * practice they close a socket or cancel a call.
+ */
+public final class TimerWheel {
+    private static final TimerWheel INSTANCE = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(10), 512);
+
+    private final long tickNanos;
+    private final ArrayList<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * Timeouts scheduled and neither expired nor discarded after cancellation.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+    private Thread thread;
+
+    // Accessed only by the wheel's thread.
+    private long tick;
+
+    TimerWheel(long tickNanos, int ticksPerWheel) {
+        if (Integer.bitCount(ticksPerWheel) != 1) throw new IllegalArgumentException("ticksPerWheel");
+        this.tickNanos = tickNanos;
+        this.wheel = newBuckets(ticksPerWheel);
+        this.mask = ticksPerWheel - 1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic arrays can't be created directly.
+    private static <T> ArrayList<T>[] newBuckets(int count) {
+        ArrayList<T>[] buckets = new ArrayList[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        return buckets;
+    }
+
+    public static TimerWheel get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs {@code task} on the wheel's thread after {@code delay}, unless the returned timeout is
+     * canceled first.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+        pending.add(timeout);
+        if (active.getAndIncrement() == 0) {
+            synchronized (this) {
+                if (thread == null) {
+                    thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            loop();
+                        }
+                    }, "Net Timer Wheel");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                notifyAll();
+            }
+        }
+        return timeout;
+    }
+
+    private void loop() {
+        while (true) {
+            awaitWork();
+
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime()) - deadline < 0) {
+                long sleepNanos = deadline - now;
+                try {
+                    Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            transferPending();
+            expire(wheel[(int) (tick & mask)], now);
+            tick++;
+        }
+    }
+
+    /**
+     * Parks the thread while there are no timeouts, then resynchronizes the tick with the clock so
+     * an idle period isn't replayed tick by tick.
+     */
+    private void awaitWork() {
+        if (active.get() > 0) return;
+        synchronized (this) {
+            while (active.get() == 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+        tick = (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    private void transferPending() {
+        for (Timeout timeout; (timeout = pending.poll()) != null; ) {
+            if (timeout.state.get() == Timeout.STATE_CANCELED) {
+                active.decrementAndGet();
+                continue;
+            }
+            long expiryTick = (timeout.deadlineNanos - startNanos) / tickNanos;
+            long ticks = Math.max(expiryTick, tick); // Already due: expire on this tick.
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayList<Timeout> bucket, long now) {
+        int kept = 0;
+        for (int i = 0, size = bucket.size(); i < size; i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.state.get() == Timeout.STATE_CANCELED) {
+                active.decrementAndGet();
+            } else if (timeout.remainingRounds > 0 || timeout.deadlineNanos - now > 0) {
+                if (timeout.remainingRounds > 0) timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+            } else {
+                active.decrementAndGet();
+                timeout.expire();
+            }
+        }
+        for (int i = bucket.size() - 1; i >= kept; i--) {
+            bucket.remove(i);
+        }
+    }
+
+    /**
+     * A pending task on the wheel.
+     */
+    public static final class Timeout {
+        static final int STATE_PENDING = 0;
+        static final int STATE_CANCELED = 1;
+        static final int STATE_EXPIRED = 2;
+
+        final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+        final Runnable task;
+        final long deadlineNanos;
+        long remainingRounds;
+
+        Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Prevents the task from running. Returns false if it already ran or is running.
+         */
+        public boolean cancel() {
+            return state.compareAndSet(STATE_PENDING, STATE_CANCELED);
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) return;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Keep the wheel running for everyone else's timeouts.
+                Platform.get().log("Timeout task failed", e);
+            }
+        }
+    }
+}
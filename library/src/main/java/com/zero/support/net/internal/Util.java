@@ -21,6 +21,7 @@ import com.zero.support.net.RequestBody;
 import com.zero.support.net.ResponseBody;
 
 import java.io.Closeable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -28,6 +29,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
@@ -37,6 +39,7 @@ import java.util.regex.Pattern;
 public final class Util {
     public static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
     public static final String[] EMPTY_STRING_ARRAY = new String[0];
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
     public static final Headers EMPTY_HEADERS = Headers.of(Collections.<String>emptyList());
 
     public static final ResponseBody EMPTY_RESPONSE = ResponseBody.create(null, EMPTY_BYTE_ARRAY);
@@ -126,5 +129,15 @@ public final class Util {
         return (int) millis;
     }
 
+    public static ThreadFactory threadFactory(final String name, final boolean daemon) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread result = new Thread(runnable, name);
+                result.setDaemon(daemon);
+                return result;
+            }
+        };
+    }
 
 }
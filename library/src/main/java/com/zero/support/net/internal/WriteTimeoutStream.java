@@ -0,0 +1,93 @@
+package com.zero.support.net.internal;
+
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces a write timeout on a blocking stream, which sockets can't do themselves. Each write or
+ * flush arms a {@link TimerWheel} timeout that closes {@code victim} if the operation hasn't
+ * returned in time; the resulting failure is reported as a {@link SocketTimeoutException}.
+ */
+public final class WriteTimeoutStream extends FilterOutputStream {
+    private final long timeoutMillis;
+    private final Closeable victim;
+    private final Runnable closeVictim = new Runnable() {
+        @Override
+        public void run() {
+            Util.closeQuietly(victim);
+        }
+    };
+
+    /**
+     * @param victim the socket or connection to close on timeout. {@code close()} must be safe to
+     *     call from another thread.
+     */
+    public WriteTimeoutStream(OutputStream out, long timeoutMillis, Closeable victim) {
+        super(out);
+        this.timeoutMillis = timeoutMillis;
+        this.victim = victim;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        TimerWheel.Timeout timeout = enter();
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            throw exit(timeout, e);
+        } finally {
+            timeout.cancel();
+        }
+        checkExpired(timeout);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        TimerWheel.Timeout timeout = enter();
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            throw exit(timeout, e);
+        } finally {
+            timeout.cancel();
+        }
+        checkExpired(timeout);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        TimerWheel.Timeout timeout = enter();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw exit(timeout, e);
+        } finally {
+            timeout.cancel();
+        }
+        checkExpired(timeout);
+    }
+
+    private TimerWheel.Timeout enter() {
+        return TimerWheel.get().schedule(closeVictim, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Throws if the timeout closed the victim while an operation that swallows failures, like a
+     * {@link java.io.PrintStream} inside {@code HttpURLConnection}, was in progress.
+     */
+    private static void checkExpired(TimerWheel.Timeout timeout) throws IOException {
+        if (timeout.isExpired()) throw new SocketTimeoutException("write timed out");
+    }
+
+    private static IOException exit(TimerWheel.Timeout timeout, IOException cause) {
+        if (!timeout.isExpired()) return cause;
+        SocketTimeoutException e = new SocketTimeoutException("write timed out");
+        e.initCause(cause);
+        return e;
+    }
+}
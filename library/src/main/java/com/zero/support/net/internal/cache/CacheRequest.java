@@ -0,0 +1,15 @@
+package com.zero.support.net.internal.cache;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body being written to the cache. Closing {@link #body()} commits the entry;
+ * {@link #abort()} discards it.
+ */
+public interface CacheRequest {
+    OutputStream body() throws IOException;
+
+    void abort();
+}
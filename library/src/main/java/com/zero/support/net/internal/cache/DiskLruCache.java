@@ -0,0 +1,929 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.cache;
+
+
+import com.zero.support.net.internal.Util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A cache that uses a bounded amount of space on a filesystem. Each cache entry has a string key
+ * and a fixed number of values, each a file on disk. When the cache grows past its maximum size,
+ * the least recently used entries are removed.
+ *
+ * <p>Entries are written with an {@link Editor}: new values are written to dirty files, which
+ * replace the clean ones atomically when the edit is committed. Readers hold a {@link Snapshot}
+ * whose streams keep reading the values they opened even if the entry is edited or removed
+ * meanwhile. An entry has at most one editor at a time; {@link #edit} returns null when it is
+ * being edited.
+ *
+ * <p>The cache's state is kept in a journal, one operation per line, so that it survives
+ * restarts:
+ *
+ * <pre>
+ *     com.zero.support.net.DiskLruCache
+ *     1
+ *     201105
+ *     2
+ *
+ *     CLEAN 3400330d1dfc7f3f7f4b8d4d803dfcf6 832 21054
+ *     DIRTY 335c4c6028171cfddfbaae1a9c313c52
+ *     CLEAN 335c4c6028171cfddfbaae1a9c313c52 3934 2342
+ *     REMOVE 335c4c6028171cfddfbaae1a9c313c52
+ *     DIRTY 1ab96a171faeeee38496d8b330771a7a
+ *     CLEAN 1ab96a171faeeee38496d8b330771a7a 1600 234
+ *     READ 3400330d1dfc7f3f7f4b8d4d803dfcf6
+ * </pre>
+ *
+ * <p>The header holds a magic string, the journal's version, the application's version and the
+ * number of values per entry. A {@code DIRTY} line records an edit that started; it is followed by
+ * {@code CLEAN} with the lengths of the values if the edit was committed, or by {@code REMOVE} if
+ * it wasn't. A {@code DIRTY} line without either is an edit interrupted by a crash, whose files
+ * are deleted when the cache is opened. {@code READ} lines record accesses, for the LRU order.
+ * The journal is compacted once it is mostly redundant operations.
+ *
+ * <p>The cache reads its journal lazily, on first use, so that creating it doesn't touch the
+ * disk. If the journal is corrupt the cache starts over empty.
+ */
+public final class DiskLruCache implements Closeable, Flushable {
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+    static final String MAGIC = "com.zero.support.net.DiskLruCache";
+    static final String VERSION_1 = "1";
+    static final Pattern LEGAL_KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,120}");
+
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+
+    /**
+     * The journal is rebuilt once it has this many redundant lines, and at least as many as there
+     * are entries.
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File directory;
+    private final File journalFile;
+    private final File journalFileTmp;
+    private final File journalFileBackup;
+    private final int appVersion;
+    private final int valueCount;
+    private long maxSize;
+
+    // Guarded by this.
+    private long size;
+    private Writer journalWriter;
+    private final LinkedHashMap<String, Entry> lruEntries = new LinkedHashMap<>(0, 0.75f, true);
+    private int redundantOpCount;
+    private boolean initialized;
+    private boolean closed;
+
+    /**
+     * To differentiate between old and current snapshots, each entry is given a sequence number
+     * each time an edit is committed. A snapshot is stale if its sequence number is not equal to
+     * its entry's sequence number.
+     */
+    private long nextSequenceNumber;
+
+    DiskLruCache(File directory, int appVersion, int valueCount, long maxSize) {
+        this.directory = directory;
+        this.appVersion = appVersion;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.journalFileTmp = new File(directory, JOURNAL_FILE_TEMP);
+        this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+        this.valueCount = valueCount;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates a cache that resides in {@code directory}. The directory is read and created on
+     * first use.
+     *
+     * @param appVersion entries written with another version are discarded.
+     * @param valueCount the number of values per cache entry. Must be positive.
+     * @param maxSize    the maximum number of bytes this cache should use to store.
+     */
+    public static DiskLruCache create(File directory, int appVersion, int valueCount, long maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        if (valueCount <= 0) throw new IllegalArgumentException("valueCount <= 0");
+        return new DiskLruCache(directory, appVersion, valueCount, maxSize);
+    }
+
+    public synchronized void initialize() throws IOException {
+        if (initialized) return;
+
+        // If a backup file exists, use it instead.
+        if (journalFileBackup.exists()) {
+            if (journalFile.exists()) {
+                // If the journal file also exists just delete the backup file.
+                delete(journalFileBackup);
+            } else {
+                rename(journalFileBackup, journalFile);
+            }
+        }
+
+        if (journalFile.exists()) {
+            try {
+                readJournal();
+                processJournal();
+                initialized = true;
+                return;
+            } catch (IOException journalIsCorrupt) {
+                // The cache is corrupted; start over.
+                closeJournalWriter();
+                lruEntries.clear();
+                size = 0;
+                deleteContents(directory);
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("failed to create directory " + directory);
+        }
+        rebuildJournal();
+        initialized = true;
+    }
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journalFile), Util.UTF_8));
+        try {
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            String appVersionString = reader.readLine();
+            String valueCountString = reader.readLine();
+            String blank = reader.readLine();
+            if (!MAGIC.equals(magic)
+                    || !VERSION_1.equals(version)
+                    || !Integer.toString(appVersion).equals(appVersionString)
+                    || !Integer.toString(valueCount).equals(valueCountString)
+                    || !"".equals(blank)) {
+                throw new IOException("unexpected journal header: [" + magic + ", " + version + ", "
+                        + valueCountString + ", " + blank + "]");
+            }
+
+            int lineCount = 0;
+            for (String line; (line = reader.readLine()) != null; ) {
+                readJournalLine(line);
+                lineCount++;
+            }
+            redundantOpCount = lineCount - lruEntries.size();
+        } finally {
+            reader.close();
+        }
+        journalWriter = newJournalWriter(true);
+    }
+
+    private void readJournalLine(String line) throws IOException {
+        int firstSpace = line.indexOf(' ');
+        if (firstSpace == -1) throw new IOException("unexpected journal line: " + line);
+
+        int keyBegin = firstSpace + 1;
+        int secondSpace = line.indexOf(' ', keyBegin);
+        String key;
+        if (secondSpace == -1) {
+            key = line.substring(keyBegin);
+            if (firstSpace == REMOVE.length() && line.startsWith(REMOVE)) {
+                lruEntries.remove(key);
+                return;
+            }
+        } else {
+            key = line.substring(keyBegin, secondSpace);
+        }
+
+        Entry entry = lruEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            lruEntries.put(key, entry);
+        }
+
+        if (secondSpace != -1 && firstSpace == CLEAN.length() && line.startsWith(CLEAN)) {
+            entry.readable = true;
+            entry.currentEditor = null;
+            entry.setLengths(line.substring(secondSpace + 1).split(" "));
+        } else if (secondSpace == -1 && firstSpace == DIRTY.length() && line.startsWith(DIRTY)) {
+            entry.currentEditor = new Editor(entry);
+        } else if (secondSpace == -1 && firstSpace == READ.length() && line.startsWith(READ)) {
+            // This work was already done by calling lruEntries.get().
+        } else {
+            throw new IOException("unexpected journal line: " + line);
+        }
+    }
+
+    /**
+     * Computes the initial size and collects garbage as a part of opening the cache. Dirty entries
+     * are assumed to be inconsistent and will be deleted.
+     */
+    private void processJournal() throws IOException {
+        delete(journalFileTmp);
+        for (Iterator<Entry> i = lruEntries.values().iterator(); i.hasNext(); ) {
+            Entry entry = i.next();
+            if (entry.currentEditor == null) {
+                for (int t = 0; t < valueCount; t++) {
+                    size += entry.lengths[t];
+                }
+            } else {
+                entry.currentEditor = null;
+                for (int t = 0; t < valueCount; t++) {
+                    delete(entry.cleanFiles[t]);
+                    delete(entry.dirtyFiles[t]);
+                }
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Creates a new journal that omits redundant information. This replaces the current journal if
+     * it exists.
+     */
+    private void rebuildJournal() throws IOException {
+        closeJournalWriter();
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFileTmp), Util.UTF_8));
+        try {
+            writer.write(MAGIC + "\n");
+            writer.write(VERSION_1 + "\n");
+            writer.write(appVersion + "\n");
+            writer.write(valueCount + "\n");
+            writer.write("\n");
+            for (Entry entry : lruEntries.values()) {
+                if (entry.currentEditor != null) {
+                    writer.write(DIRTY + ' ' + entry.key + '\n');
+                } else {
+                    writer.write(CLEAN + ' ' + entry.key + entry.lengthsString() + '\n');
+                }
+            }
+        } finally {
+            writer.close();
+        }
+
+        if (journalFile.exists()) {
+            rename(journalFile, journalFileBackup);
+        }
+        rename(journalFileTmp, journalFile);
+        delete(journalFileBackup);
+
+        journalWriter = newJournalWriter(true);
+        redundantOpCount = 0;
+    }
+
+    private Writer newJournalWriter(boolean append) throws FileNotFoundException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile, append), Util.UTF_8));
+    }
+
+    private void closeJournalWriter() {
+        if (journalWriter != null) {
+            Util.closeQuietly(journalWriter);
+            journalWriter = null;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the entry named {@code key}, or null if it doesn't exist or is not
+     * currently readable. If a value is returned, it is moved to the head of the LRU queue.
+     */
+    public synchronized Snapshot get(String key) throws IOException {
+        initialize();
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        if (entry == null || !entry.readable) return null;
+
+        Snapshot snapshot = entry.snapshot();
+        if (snapshot == null) return null;
+
+        redundantOpCount++;
+        journalWriter.write(READ + ' ' + key + '\n');
+        if (journalRebuildRequired()) rebuildJournal();
+        return snapshot;
+    }
+
+    /**
+     * Returns an editor for the entry named {@code key}, or null if another edit is in progress.
+     */
+    public Editor edit(String key) throws IOException {
+        return edit(key, -1L);
+    }
+
+    synchronized Editor edit(String key, long expectedSequenceNumber) throws IOException {
+        initialize();
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        if (expectedSequenceNumber != -1L
+                && (entry == null || entry.sequenceNumber != expectedSequenceNumber)) {
+            return null; // Snapshot is stale.
+        }
+        if (entry != null && entry.currentEditor != null) {
+            return null; // Another edit is in progress.
+        }
+
+        // Flush the journal before creating files to prevent file leaks.
+        journalWriter.write(DIRTY + ' ' + key + '\n');
+        journalWriter.flush();
+
+        if (entry == null) {
+            entry = new Entry(key);
+            lruEntries.put(key, entry);
+        }
+        Editor editor = new Editor(entry);
+        entry.currentEditor = editor;
+        return editor;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Changes the maximum number of bytes the cache can store and trims it if necessary.
+     */
+    public synchronized void setMaxSize(long maxSize) throws IOException {
+        this.maxSize = maxSize;
+        if (initialized) trimToSize();
+    }
+
+    /**
+     * Returns the number of bytes currently being used to store the values in this cache. This may
+     * be greater than the max size if a background deletion is pending.
+     */
+    public synchronized long size() throws IOException {
+        initialize();
+        return size;
+    }
+
+    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+        Entry entry = editor.entry;
+        if (entry.currentEditor != editor) {
+            throw new IllegalStateException();
+        }
+
+        // If this edit is creating the entry for the first time, every index must have a value.
+        if (success && !entry.readable) {
+            for (int i = 0; i < valueCount; i++) {
+                if (!editor.written[i]) {
+                    editor.abort();
+                    throw new IllegalStateException("Newly created entry didn't create value for index " + i);
+                }
+                if (!entry.dirtyFiles[i].exists()) {
+                    editor.abort();
+                    return;
+                }
+            }
+        }
+
+        for (int i = 0; i < valueCount; i++) {
+            File dirty = entry.dirtyFiles[i];
+            if (success && editor.written[i]) {
+                File clean = entry.cleanFiles[i];
+                rename(dirty, clean);
+                long oldLength = entry.lengths[i];
+                long newLength = clean.length();
+                entry.lengths[i] = newLength;
+                size = size - oldLength + newLength;
+            } else {
+                delete(dirty);
+            }
+        }
+
+        redundantOpCount++;
+        entry.currentEditor = null;
+        if (entry.readable || success) {
+            entry.readable = true;
+            journalWriter.write(CLEAN + ' ' + entry.key + entry.lengthsString() + '\n');
+            if (success) {
+                entry.sequenceNumber = nextSequenceNumber++;
+            }
+        } else {
+            lruEntries.remove(entry.key);
+            journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+        }
+        journalWriter.flush();
+
+        if (size > maxSize || journalRebuildRequired()) {
+            cleanUp();
+        }
+    }
+
+    /**
+     * We only rebuild the journal when it will halve the size of the journal and eliminate at
+     * least 2000 ops.
+     */
+    private boolean journalRebuildRequired() {
+        return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && redundantOpCount >= lruEntries.size();
+    }
+
+    /**
+     * Drops the entry for {@code key} if it exists and can be removed. If the entry for {@code key}
+     * is currently being edited, that edit will complete normally but its value will not be stored.
+     *
+     * @return true if an entry was removed.
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        initialize();
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = lruEntries.get(key);
+        if (entry == null) return false;
+        return removeEntry(entry);
+    }
+
+    private boolean removeEntry(Entry entry) throws IOException {
+        if (entry.currentEditor != null) {
+            entry.currentEditor.detach(); // Prevent the edit from completing normally.
+        }
+
+        for (int i = 0; i < valueCount; i++) {
+            delete(entry.cleanFiles[i]);
+            size -= entry.lengths[i];
+            entry.lengths[i] = 0;
+        }
+
+        redundantOpCount++;
+        journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+        lruEntries.remove(entry.key);
+
+        if (journalRebuildRequired()) rebuildJournal();
+        return true;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void checkNotClosed() {
+        if (closed) throw new IllegalStateException("cache is closed");
+    }
+
+    /**
+     * Force buffered operations to the filesystem.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!initialized) return;
+        checkNotClosed();
+        trimToSize();
+        journalWriter.flush();
+    }
+
+    /**
+     * Closes this cache. Stored values will remain on the filesystem.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!initialized || closed) {
+            closed = true;
+            return;
+        }
+        // Copying for safe iteration.
+        for (Entry entry : lruEntries.values().toArray(new Entry[lruEntries.size()])) {
+            if (entry.currentEditor != null) entry.currentEditor.abort();
+        }
+        trimToSize();
+        closeJournalWriter();
+        closed = true;
+    }
+
+    private void cleanUp() throws IOException {
+        trimToSize();
+        if (journalRebuildRequired()) rebuildJournal();
+    }
+
+    private void trimToSize() throws IOException {
+        while (size > maxSize) {
+            Entry toEvict = lruEntries.values().iterator().next();
+            removeEntry(toEvict);
+        }
+    }
+
+    /**
+     * Closes the cache and deletes all of its stored values. This will delete all files in the
+     * cache directory including files that weren't created by the cache.
+     */
+    public void delete() throws IOException {
+        close();
+        deleteContents(directory);
+    }
+
+    /**
+     * Deletes all stored values from the cache. In-flight edits will complete normally but their
+     * values will not be stored.
+     */
+    public synchronized void evictAll() throws IOException {
+        initialize();
+        // Copying for safe iteration.
+        for (Entry entry : lruEntries.values().toArray(new Entry[lruEntries.size()])) {
+            removeEntry(entry);
+        }
+    }
+
+    private void validateKey(String key) {
+        if (!LEGAL_KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("keys must match regex [a-z0-9_-]{1,120}: \"" + key + "\"");
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("failed to delete " + file);
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        delete(to);
+        if (!from.renameTo(to)) {
+            throw new IOException("failed to rename " + from + " to " + to);
+        }
+    }
+
+    private static void deleteContents(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) return; // Not a directory, or it doesn't exist.
+        for (File file : files) {
+            if (file.isDirectory()) deleteContents(file);
+            delete(file);
+        }
+    }
+
+    /**
+     * A snapshot of the values for an entry.
+     */
+    public final class Snapshot implements Closeable {
+        private final String key;
+        private final long sequenceNumber;
+        private final InputStream[] sources;
+        private final long[] lengths;
+
+        Snapshot(String key, long sequenceNumber, InputStream[] sources, long[] lengths) {
+            this.key = key;
+            this.sequenceNumber = sequenceNumber;
+            this.sources = sources;
+            this.lengths = lengths;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        /**
+         * Returns an editor for this snapshot's entry, or null if either the entry has changed since
+         * this snapshot was created or if another edit is in progress.
+         */
+        public Editor edit() throws IOException {
+            return DiskLruCache.this.edit(key, sequenceNumber);
+        }
+
+        /**
+         * Returns the unbuffered stream with the value for {@code index}.
+         */
+        public InputStream getSource(int index) {
+            return sources[index];
+        }
+
+        /**
+         * Returns the byte length of the value for {@code index}.
+         */
+        public long getLength(int index) {
+            return lengths[index];
+        }
+
+        @Override
+        public void close() {
+            for (InputStream in : sources) {
+                Util.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Edits the values for an entry.
+     */
+    public final class Editor {
+        final Entry entry;
+        final boolean[] written;
+        private boolean done;
+
+        Editor(Entry entry) {
+            this.entry = entry;
+            this.written = new boolean[valueCount];
+        }
+
+        /**
+         * Prevents this editor from completing normally. This is necessary either when the edit
+         * causes an I/O error, or if the target entry is evicted while this editor is active. In
+         * either case we delete the editor's created files and prevent new files from being
+         * created. Note that once an editor has been detached it is possible for another editor to
+         * edit the entry.
+         */
+        void detach() {
+            if (entry.currentEditor == this) {
+                for (int i = 0; i < valueCount; i++) {
+                    try {
+                        delete(entry.dirtyFiles[i]);
+                    } catch (IOException e) {
+                        // This file is potentially leaked. Not much we can do about that.
+                    }
+                }
+                entry.currentEditor = null;
+            }
+        }
+
+        /**
+         * Returns an unbuffered input stream to read the last committed value, or null if no value
+         * has been committed.
+         */
+        public InputStream newSource(int index) {
+            synchronized (DiskLruCache.this) {
+                if (done) throw new IllegalStateException();
+                if (!entry.readable || entry.currentEditor != this) return null;
+                try {
+                    return new FileInputStream(entry.cleanFiles[index]);
+                } catch (FileNotFoundException e) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Returns a new unbuffered output stream to write the value at {@code index}. If the
+         * underlying output stream encounters errors when writing to the filesystem, this edit
+         * will be aborted when {@link #commit} is called.
+         */
+        public OutputStream newSink(int index) throws IOException {
+            synchronized (DiskLruCache.this) {
+                if (done) throw new IllegalStateException();
+                if (entry.currentEditor != this) return new NullOutputStream();
+                written[index] = true;
+                File dirtyFile = entry.dirtyFiles[index];
+                FileOutputStream sink;
+                try {
+                    sink = new FileOutputStream(dirtyFile);
+                } catch (FileNotFoundException e) {
+                    // The directory may have been deleted from under us.
+                    if (!directory.isDirectory() && !directory.mkdirs()) return new NullOutputStream();
+                    sink = new FileOutputStream(dirtyFile);
+                }
+                return new FaultHidingSink(sink);
+            }
+        }
+
+        /**
+         * Commits this edit so it is visible to readers. This releases the edit lock so another edit
+         * may be started on the same key.
+         */
+        public void commit() throws IOException {
+            synchronized (DiskLruCache.this) {
+                if (done) throw new IllegalStateException();
+                done = true;
+                if (entry.currentEditor != this) return; // Detached.
+                if (entry.failed) {
+                    completeEdit(this, false);
+                    removeEntry(entry);
+                    entry.failed = false;
+                } else {
+                    completeEdit(this, true);
+                }
+            }
+        }
+
+        /**
+         * Aborts this edit. This releases the edit lock so another edit may be started on the same
+         * key.
+         */
+        public void abort() throws IOException {
+            synchronized (DiskLruCache.this) {
+                if (done) throw new IllegalStateException();
+                done = true;
+                if (entry.currentEditor == this) completeEdit(this, false);
+            }
+        }
+
+        /**
+         * Aborts this edit unless it was already committed or aborted.
+         */
+        public void abortUnlessCommitted() {
+            synchronized (DiskLruCache.this) {
+                if (!done && entry.currentEditor == this) {
+                    try {
+                        done = true;
+                        completeEdit(this, false);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records a write error, so that the edit is discarded instead of committed.
+         */
+        private final class FaultHidingSink extends FilterOutputStream {
+            FaultHidingSink(OutputStream out) {
+                super(out);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    onException();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    onException();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    onException();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    onException();
+                    throw e;
+                }
+            }
+
+            private void onException() {
+                synchronized (DiskLruCache.this) {
+                    entry.failed = true;
+                }
+            }
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    private final class Entry {
+        final String key;
+
+        /**
+         * Lengths of this entry's files.
+         */
+        final long[] lengths;
+        final File[] cleanFiles;
+        final File[] dirtyFiles;
+
+        /**
+         * True if this entry has ever been published.
+         */
+        boolean readable;
+
+        /**
+         * True if a write to one of the editor's files failed.
+         */
+        boolean failed;
+
+        /**
+         * The ongoing edit or null if this entry is not being edited.
+         */
+        Editor currentEditor;
+
+        /**
+         * The sequence number of the most recently committed edit to this entry.
+         */
+        long sequenceNumber;
+
+        Entry(String key) {
+            this.key = key;
+            this.lengths = new long[valueCount];
+            this.cleanFiles = new File[valueCount];
+            this.dirtyFiles = new File[valueCount];
+
+            // The names are repetitive so re-use the same builder to avoid allocations.
+            StringBuilder fileBuilder = new StringBuilder(key).append('.');
+            int truncateTo = fileBuilder.length();
+            for (int i = 0; i < valueCount; i++) {
+                fileBuilder.append(i);
+                cleanFiles[i] = new File(directory, fileBuilder.toString());
+                fileBuilder.append(".tmp");
+                dirtyFiles[i] = new File(directory, fileBuilder.toString());
+                fileBuilder.setLength(truncateTo);
+            }
+        }
+
+        /**
+         * Set lengths using decimal numbers like "10123".
+         */
+        void setLengths(String[] strings) throws IOException {
+            if (strings.length != valueCount) {
+                throw invalidLengths(strings);
+            }
+            try {
+                for (int i = 0; i < strings.length; i++) {
+                    lengths[i] = Long.parseLong(strings[i]);
+                }
+            } catch (NumberFormatException e) {
+                throw invalidLengths(strings);
+            }
+        }
+
+        String lengthsString() {
+            StringBuilder result = new StringBuilder();
+            for (long length : lengths) {
+                result.append(' ').append(length);
+            }
+            return result.toString();
+        }
+
+        private IOException invalidLengths(String[] strings) {
+            return new IOException("unexpected journal line: " + Arrays.toString(strings));
+        }
+
+        /**
+         * Returns a snapshot of this entry. This opens all streams eagerly to guarantee that we see
+         * a single published snapshot. If we opened streams lazily then the streams could come from
+         * different edits. Returns null if a file is missing, after removing the entry.
+         */
+        Snapshot snapshot() throws IOException {
+            InputStream[] sources = new InputStream[valueCount];
+            long[] lengths = this.lengths.clone(); // Defensive copy since these can be zeroed out.
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    sources[i] = new FileInputStream(cleanFiles[i]);
+                }
+                return new Snapshot(key, sequenceNumber, sources, lengths);
+            } catch (FileNotFoundException e) {
+                // A file must have been deleted manually!
+                for (int i = 0; i < valueCount; i++) {
+                    if (sources[i] != null) {
+                        Util.closeQuietly(sources[i]);
+                    } else {
+                        break;
+                    }
+                }
+                removeEntry(this);
+                return null;
+            }
+        }
+    }
+}
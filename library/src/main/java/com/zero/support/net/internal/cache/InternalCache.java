@@ -0,0 +1,44 @@
+package com.zero.support.net.internal.cache;
+
+
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+
+import java.io.IOException;
+
+/**
+ * The cache as seen by {@link com.zero.support.net.internal.CacheInterceptor}. Implemented by
+ * {@link com.zero.support.net.Cache}; not meant to be implemented by applications.
+ */
+public interface InternalCache {
+    Response get(Request request) throws IOException;
+
+    /**
+     * Starts storing {@code response}, whose body the caller then writes to the returned request.
+     * Returns null if the response can't be cached.
+     */
+    CacheRequest put(Response response) throws IOException;
+
+    /**
+     * Remove any cache entries for the supplied {@code request}. This is invoked when the client
+     * invalidates the cache, such as when making POST requests.
+     */
+    void remove(Request request) throws IOException;
+
+    /**
+     * Handles a conditional request hit by updating the stored cache response with the headers from
+     * {@code network}. The cached response body is not updated. If the stored response has changed
+     * since {@code cached} was returned, this does nothing.
+     */
+    void update(Response cached, Response network);
+
+    /**
+     * Track an conditional GET that was satisfied by this cache.
+     */
+    void trackConditionalCacheHit();
+
+    /**
+     * Track an HTTP response being satisfied with {@code cacheStrategy}.
+     */
+    void trackResponse(CacheStrategy cacheStrategy);
+}
@@ -0,0 +1,154 @@
+package com.zero.support.net.internal.compress;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The static dictionary and word transforms of RFC 7932, appendices A and B. The 122,784 byte
+ * dictionary ships as a resource and is loaded the first time a Brotli stream refers to it; most
+ * responses never do.
+ */
+final class BrotliDictionary {
+    static final int MIN_WORD_LENGTH = 4;
+    static final int MAX_WORD_LENGTH = 24;
+    static final int NUM_TRANSFORMS = 121;
+    /** The longest transformed word: the longest prefix, word and suffix. */
+    static final int MAX_TRANSFORMED_LENGTH = 5 + MAX_WORD_LENGTH + 8;
+
+    private static final int SIZE = 122784;
+
+    static final int[] SIZE_BITS_BY_LENGTH = {
+            0, 0, 0, 0, 10, 10, 11, 11, 10, 10, 10, 10, 10, 9, 9, 8,
+            7, 7, 8, 7, 7, 6, 6, 5, 5};
+    static final int[] OFFSETS_BY_LENGTH = {
+            0, 0, 0, 0, 0, 4096, 9216, 21504, 35840, 44032, 53248, 63488, 74752, 87040, 93696, 100864,
+            104704, 106752, 108928, 113536, 115968, 118528, 119872, 121280, 122016};
+
+    private static final int OMIT_LAST_9 = 9;
+    private static final int UPPERCASE_FIRST = 10;
+    private static final int UPPERCASE_ALL = 11;
+    private static final int OMIT_FIRST_1 = 12;
+
+    private static final String[] PREFIXES = {
+            "", "", " ", "", "", "", " ", "s ",
+            "", "", "", "", "", ", ", "", " ",
+            "", "", "e ", "", "", "", "", "",
+            "", "", "", "", "", "", " ", "",
+            ".", " ", "", "", "", "", "", "",
+            "", " the ", "", "", "", "", "", "",
+            "", "", "", "", " ", "", "", "",
+            "", "", "", "", "", "", " the ", "",
+            "", " ", "", ".", "", "", "", " ",
+            ".com/", " the ", "", "", "", ".", "", "",
+            "", " ", "", " ", "", " ", "", "",
+            "", " ", "", " ", "", "", "", "",
+            " ", "", " ", "", "", "", "\u00c2\u00a0", " ",
+            "", "", "", "", "", " ", " ", " ",
+            "", "", "", " ", "", " ", " ", " ",
+            " "};
+    private static final byte[] TYPES = {
+            0, 0, 0, 12, 10, 0, 0, 0, 0, 10, 0, 13, 1, 0, 0, 10, 0, 0, 0, 0,
+            0, 0, 0, 3, 0, 0, 14, 2, 0, 0, 10, 0, 0, 0, 15, 0, 0, 0, 0, 16,
+            17, 0, 4, 0, 11, 0, 0, 0, 7, 1, 0, 0, 0, 0, 20, 18, 6, 0, 10, 8,
+            0, 0, 0, 5, 9, 10, 10, 0, 11, 10, 0, 0, 0, 0, 10, 0, 0, 0, 10, 10,
+            0, 0, 0, 11, 0, 11, 0, 11, 10, 0, 0, 10, 0, 0, 11, 0, 10, 11, 0, 10,
+            0, 11, 0, 0, 10, 11, 0, 11, 10, 10, 11, 11, 11, 11, 11, 11, 11, 11, 10, 11,
+            10};
+    private static final String[] SUFFIXES = {
+            "", " ", " ", "", " ", " the ", "", " ",
+            " of ", "", " and ", "", "", " ", ", ", " ",
+            " in ", " to ", " ", "\"", ".", "\">", "\n", "",
+            "]", " for ", "", "", " a ", " that ", "", ". ",
+            "", ", ", "", " with ", "'", " from ", " by ", "",
+            "", "", "", ". The ", "", " on ", " as ", " is ",
+            "", "ing ", "\n\t", ":", ". ", "ed ", "", "",
+            "", "(", ", ", "", " at ", "ly ", " of ", "",
+            "", ", ", "\"", "(", " ", "\">", "=\"", ".",
+            "", " of the ", "'", ". This ", ",", " ", "(", ".",
+            " not ", "=\"", "er ", " ", "al ", "", "='", "\"",
+            ". ", "(", "ful ", ". ", "ive ", "less ", "'", "est ",
+            ".", "\">", "='", ",", "ize ", ".", "", ",",
+            "=\"", "=\"", "ous ", ", ", "='", ",", "=\"", ", ",
+            ",", "(", ". ", ".", "='", ". ", "=\"", "='",
+            "='"};
+
+    private static byte[] data;
+
+    private BrotliDictionary() {
+    }
+
+    static synchronized byte[] data() throws IOException {
+        if (data != null) return data;
+        InputStream in = BrotliDictionary.class.getResourceAsStream("brotli-dictionary.bin");
+        if (in == null) throw new IOException("brotli dictionary is missing");
+        try {
+            byte[] result = new byte[SIZE];
+            int count = 0;
+            while (count < SIZE) {
+                int read = in.read(result, count, SIZE - count);
+                if (read == -1) break;
+                count += read;
+            }
+            if (count != SIZE || in.read() != -1) throw new IOException("brotli dictionary is corrupt");
+            data = result;
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the {@code length} byte word at {@code offset} of the dictionary, transformed by
+     * {@code transform}, to {@code dst} and returns the number of bytes written.
+     */
+    static int transform(byte[] dictionary, int offset, int length, int transform, byte[] dst) {
+        int pos = append(dst, 0, PREFIXES[transform]);
+        int type = TYPES[transform];
+        if (type <= OMIT_LAST_9) {
+            length -= type;
+        } else if (type >= OMIT_FIRST_1) {
+            int skip = type - OMIT_FIRST_1 + 1;
+            offset += skip;
+            length -= skip;
+        }
+        int start = pos;
+        for (int i = 0; i < length; i++) {
+            dst[pos++] = dictionary[offset + i];
+        }
+        if (type == UPPERCASE_FIRST) {
+            ferment(dst, start, pos);
+        } else if (type == UPPERCASE_ALL) {
+            for (int i = start; i < pos; ) {
+                i += ferment(dst, i, pos);
+            }
+        }
+        return append(dst, pos, SUFFIXES[transform]);
+    }
+
+    /**
+     * Upper-cases the UTF-8 character at {@code pos} the way RFC 7932 does, and returns its
+     * length.
+     */
+    private static int ferment(byte[] word, int pos, int end) {
+        if (pos >= end) return 1;
+        int b = word[pos] & 0xff;
+        if (b < 192) {
+            if (b >= 'a' && b <= 'z') word[pos] ^= 32;
+            return 1;
+        }
+        if (b < 224) {
+            if (pos + 1 < end) word[pos + 1] ^= 32;
+            return 2;
+        }
+        if (pos + 2 < end) word[pos + 2] ^= 5;
+        return 3;
+    }
+
+    private static int append(byte[] dst, int pos, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            dst[pos++] = (byte) s.charAt(i);
+        }
+        return pos;
+    }
+}
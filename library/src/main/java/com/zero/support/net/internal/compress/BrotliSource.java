@@ -0,0 +1,880 @@
+package com.zero.support.net.internal.compress;
+
+
+import com.zero.support.net.internal.ByteArrayPool;
+import com.zero.support.net.internal.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes the {@code br} content coding of RFC 7932 in pure Java. Output is decoded into a ring
+ * buffer the size of the stream's window and handed out from there, so memory is bounded by the
+ * window, not the content size. The window comes from {@link WindowPool}; a stream whose only
+ * meta-block is small gets a window sized to it.
+ *
+ * <p>Decoding stops as soon as readable output exists and more input would block, so streamed
+ * responses flushed by the server reach the reader without waiting for the next flush.
+ */
+public final class BrotliSource extends InputStream {
+    private static final int STATE_STREAM_HEADER = 0;
+    private static final int STATE_METABLOCK_HEADER = 1;
+    private static final int STATE_UNCOMPRESSED = 2;
+    private static final int STATE_COMMAND = 3;
+    private static final int STATE_INSERT = 4;
+    private static final int STATE_COPY = 5;
+    private static final int STATE_DONE = 6;
+
+    private static final int NUM_LITERAL_CODES = 256;
+    private static final int NUM_COMMAND_CODES = 704;
+    private static final int NUM_BLOCK_COUNT_CODES = 26;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int ROOT_BITS = 8;
+    private static final int MIN_RING_SIZE = 1024;
+
+    /** Free ring space needed to start a copy, so that a dictionary word always fits. */
+    private static final int MARGIN = 64;
+
+    private static final int LITERAL = 0;
+    private static final int COMMAND = 1;
+    private static final int DISTANCE = 2;
+
+    private static final int CONTEXT_LSB6 = 0;
+    private static final int CONTEXT_MSB6 = 1;
+    private static final int CONTEXT_UTF8 = 2;
+
+    private static final int[] CODE_LENGTH_ORDER = {1, 2, 3, 4, 0, 5, 17, 6, 16, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+    private static final int[] CODE_LENGTH_PREFIX_LENGTH = {2, 2, 2, 3, 2, 2, 2, 4, 2, 2, 2, 3, 2, 2, 2, 4};
+    private static final int[] CODE_LENGTH_PREFIX_VALUE = {0, 4, 3, 2, 0, 4, 3, 1, 0, 4, 3, 2, 0, 4, 3, 5};
+
+    private static final int[] BLOCK_LENGTH_BASE = {
+            1, 5, 9, 13, 17, 25, 33, 41, 49, 65, 81, 97, 113, 145, 177, 209,
+            241, 305, 369, 497, 753, 1265, 2289, 4337, 8433, 16625};
+    private static final int[] BLOCK_LENGTH_EXTRA = {
+            2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5,
+            6, 6, 7, 8, 9, 10, 11, 12, 13, 24};
+    private static final int[] INSERT_LENGTH_BASE = {
+            0, 1, 2, 3, 4, 5, 6, 8, 10, 14, 18, 26, 34, 50, 66, 98,
+            130, 194, 322, 578, 1090, 2114, 6210, 22594};
+    private static final int[] INSERT_LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5,
+            6, 7, 8, 9, 10, 12, 14, 24};
+    private static final int[] COPY_LENGTH_BASE = {
+            2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 18, 22, 30, 38, 54,
+            70, 102, 134, 198, 326, 582, 1094, 2118};
+    private static final int[] COPY_LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4,
+            5, 5, 6, 7, 8, 9, 10, 24};
+    /** The insert and copy length code ranges of each cell of the command alphabet. */
+    private static final int[] CELL_INSERT_BASE = {0, 0, 0, 0, 8, 8, 0, 16, 8, 16, 16};
+    private static final int[] CELL_COPY_BASE = {0, 8, 0, 8, 0, 8, 16, 0, 16, 8, 16};
+    private static final int[] DISTANCE_DELTA = {-1, 1, -2, 2, -3, 3};
+
+    private static final byte[] UTF8_LAST = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 4, 4, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            8, 12, 16, 12, 12, 20, 12, 16, 24, 28, 12, 12, 32, 12, 36, 12, 44, 44, 44, 44, 44, 44, 44, 44, 44, 44, 32, 32, 24, 40, 28, 12,
+            12, 48, 52, 52, 52, 48, 52, 52, 52, 48, 52, 52, 52, 52, 52, 48, 52, 52, 52, 52, 52, 48, 52, 52, 52, 52, 52, 24, 12, 28, 12, 12,
+            12, 56, 60, 60, 60, 56, 60, 60, 60, 56, 60, 60, 60, 60, 60, 56, 60, 60, 60, 60, 60, 56, 60, 60, 60, 60, 60, 24, 12, 28, 12, 0,
+            0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1,
+            0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1,
+            2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3,
+            2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3, 2, 3};
+    private static final byte[] UTF8_SECOND_LAST = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1,
+            1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1,
+            1, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 1, 1, 1, 1, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2};
+    private static final byte[] SIGNED = {
+            0, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2,
+            2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2,
+            3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+            3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+            4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4,
+            4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4,
+            5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5,
+            5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 7};
+
+    private final InputStream source;
+    private boolean closed;
+    private int state = STATE_STREAM_HEADER;
+
+    // Input, read least significant bit first.
+    private byte[] in;
+    private int inPos;
+    private int inLimit;
+    private boolean sourceExhausted;
+    private long bits;
+    private int bitCount;
+    /** Zero bits appended to {@link #bits} past the end of the source. Consuming one is an error. */
+    private int paddingBits;
+
+    // Output.
+    private byte[] ring;
+    private int ringSize;
+    private int ringMask;
+    private long written;
+    private long read;
+    private int maxBackwardDistance;
+    private final int[] distances = {4, 11, 15, 16};
+
+    // The current meta-block.
+    private boolean lastMetablock;
+    private int metablockRemaining;
+    private final int[] numTypes = new int[3];
+    private final int[][] typeTrees = new int[3][];
+    private final int[][] countTrees = new int[3][];
+    private final int[] blockLengths = new int[3];
+    private final int[] types = new int[3];
+    private final int[] previousTypes = new int[3];
+    private int postfixBits;
+    private int directDistances;
+    private byte[] contextModes;
+    private byte[] literalContextMap;
+    private byte[] distanceContextMap;
+    private int[][] literalTrees;
+    private int[][] commandTrees;
+    private int[][] distanceTrees;
+    private final int[] codeLengths = new int[NUM_COMMAND_CODES];
+
+    // The current command.
+    private int insertRemaining;
+    private int copyLength;
+    private boolean implicitDistance;
+    private int copyRemaining;
+    private int copyDistance;
+    private byte[] word;
+
+    public BrotliSource(InputStream source) {
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Util.checkOffsetAndCount(b.length, off, len);
+        if (closed) throw new IOException("closed");
+        if (len == 0) return 0;
+        if (read == written) {
+            if (state == STATE_DONE) return -1;
+            decode(len);
+            if (read == written) return -1;
+        }
+        int index = (int) (read & ringMask);
+        int count = (int) Math.min(Math.min(len, written - read), ringSize - index);
+        System.arraycopy(ring, index, b, off, count);
+        read += count;
+        if (read == written && state == STATE_DONE) release();
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(written - read, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        release();
+        source.close();
+    }
+
+    private void release() {
+        if (ring != null) {
+            WindowPool.recycle(ring);
+            ring = null;
+        }
+        if (in != null) {
+            ByteArrayPool.recycle(in);
+            in = null;
+        }
+    }
+
+    /**
+     * Decodes until {@code want} bytes are readable, the ring is nearly full, or some output is
+     * readable and decoding further would block on the source.
+     */
+    private void decode(int want) throws IOException {
+        if (in == null) in = ByteArrayPool.take();
+        while (state != STATE_DONE) {
+            long unread = written - read;
+            if (unread > 0
+                    && (unread >= want || ringSize - unread < MARGIN || (inLimit - inPos < 16 && !sourceExhausted))) {
+                return;
+            }
+            switch (state) {
+                case STATE_STREAM_HEADER:
+                    readStreamHeader();
+                    state = STATE_METABLOCK_HEADER;
+                    break;
+                case STATE_METABLOCK_HEADER:
+                    readMetablockHeader();
+                    break;
+                case STATE_UNCOMPRESSED:
+                    copyUncompressed();
+                    break;
+                case STATE_COMMAND:
+                    readCommand();
+                    break;
+                case STATE_INSERT:
+                    insertLiterals();
+                    break;
+                case STATE_COPY:
+                    copy();
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+        }
+    }
+
+    private void readStreamHeader() throws IOException {
+        int windowBits;
+        if (readBits(1) == 0) {
+            windowBits = 16;
+        } else {
+            int n = readBits(3);
+            if (n != 0) {
+                windowBits = 17 + n;
+            } else {
+                n = readBits(3);
+                if (n == 1) throw corrupt("invalid window size");
+                windowBits = n != 0 ? 8 + n : 17;
+            }
+        }
+        maxBackwardDistance = (1 << windowBits) - 16;
+        ringSize = 1 << windowBits;
+    }
+
+    private void readMetablockHeader() throws IOException {
+        lastMetablock = readBits(1) == 1;
+        if (lastMetablock && readBits(1) == 1) {
+            finishStream();
+            return;
+        }
+        int nibbles = readBits(2);
+        if (nibbles == 3) {
+            if (readBits(1) != 0) throw corrupt("reserved bit set");
+            int skipBytes = readBits(2);
+            int skipLength = 0;
+            for (int i = 0; i < skipBytes; i++) {
+                int b = readBits(8);
+                if (i == skipBytes - 1 && skipBytes > 1 && b == 0) throw corrupt("bad metadata length");
+                skipLength |= b << (8 * i);
+            }
+            if (skipBytes > 0) skipLength++;
+            alignToByte();
+            byte[] skipped = new byte[Math.min(skipLength, 4096)];
+            while (skipLength > 0) {
+                skipLength -= readAlignedBytes(skipped, 0, Math.min(skipLength, skipped.length));
+            }
+            if (lastMetablock) finishStream();
+            return;
+        }
+
+        nibbles += 4;
+        int length = 0;
+        for (int i = 0; i < nibbles; i++) {
+            int nibble = readBits(4);
+            if (i == nibbles - 1 && i > 3 && nibble == 0) throw corrupt("bad meta-block length");
+            length |= nibble << (4 * i);
+        }
+        metablockRemaining = length + 1;
+        allocateRing();
+
+        if (!lastMetablock && readBits(1) == 1) {
+            alignToByte();
+            state = STATE_UNCOMPRESSED;
+            return;
+        }
+
+        for (int category = 0; category < 3; category++) {
+            int count = readVarLength();
+            numTypes[category] = count;
+            types[category] = 0;
+            previousTypes[category] = 1;
+            if (count >= 2) {
+                typeTrees[category] = readPrefixCode(count + 2);
+                countTrees[category] = readPrefixCode(NUM_BLOCK_COUNT_CODES);
+                blockLengths[category] = readBlockLength(countTrees[category]);
+            } else {
+                blockLengths[category] = Integer.MAX_VALUE;
+            }
+        }
+
+        postfixBits = readBits(2);
+        directDistances = readBits(4) << postfixBits;
+        contextModes = new byte[numTypes[LITERAL]];
+        for (int i = 0; i < contextModes.length; i++) {
+            contextModes[i] = (byte) readBits(2);
+        }
+        int literalTreeCount = readVarLength();
+        literalContextMap = readContextMap(numTypes[LITERAL] << 6, literalTreeCount);
+        int distanceTreeCount = readVarLength();
+        distanceContextMap = readContextMap(numTypes[DISTANCE] << 2, distanceTreeCount);
+
+        literalTrees = readPrefixCodes(literalTreeCount, NUM_LITERAL_CODES);
+        commandTrees = readPrefixCodes(numTypes[COMMAND], NUM_COMMAND_CODES);
+        distanceTrees = readPrefixCodes(distanceTreeCount, 16 + directDistances + (48 << postfixBits));
+        state = STATE_COMMAND;
+    }
+
+    /**
+     * Allocates the ring buffer before the first output. A stream made of a single meta-block
+     * needs no more room than that meta-block, however large its window.
+     */
+    private void allocateRing() {
+        if (ring != null) return;
+        if (lastMetablock) {
+            int needed = Math.max(MIN_RING_SIZE, metablockRemaining);
+            ringSize = Math.min(ringSize, Integer.highestOneBit(needed - 1) << 1);
+        }
+        ringMask = ringSize - 1;
+        ring = WindowPool.take(ringSize);
+    }
+
+    private void finishMetablock() throws IOException {
+        if (lastMetablock) {
+            finishStream();
+        } else {
+            state = STATE_METABLOCK_HEADER;
+        }
+    }
+
+    private void finishStream() throws IOException {
+        alignToByte();
+        state = STATE_DONE;
+        if (in != null) {
+            ByteArrayPool.recycle(in);
+            in = null;
+        }
+    }
+
+    private void copyUncompressed() throws IOException {
+        int index = (int) (written & ringMask);
+        int free = ringSize - (int) (written - read);
+        int count = Math.min(Math.min(metablockRemaining, free), ringSize - index);
+        count = readAlignedBytes(ring, index, count);
+        written += count;
+        metablockRemaining -= count;
+        if (metablockRemaining == 0) finishMetablock();
+    }
+
+    private void readCommand() throws IOException {
+        if (metablockRemaining == 0) {
+            finishMetablock();
+            return;
+        }
+        if (blockLengths[COMMAND] == 0) switchBlock(COMMAND);
+        blockLengths[COMMAND]--;
+        int symbol = readSymbol(commandTrees[types[COMMAND]]);
+        int cell = symbol >>> 6;
+        int insertCode = CELL_INSERT_BASE[cell] + ((symbol >>> 3) & 7);
+        int copyCode = CELL_COPY_BASE[cell] + (symbol & 7);
+        insertRemaining = INSERT_LENGTH_BASE[insertCode] + readBits(INSERT_LENGTH_EXTRA[insertCode]);
+        copyLength = COPY_LENGTH_BASE[copyCode] + readBits(COPY_LENGTH_EXTRA[copyCode]);
+        implicitDistance = cell < 2;
+        if (insertRemaining > metablockRemaining) throw corrupt("insert overflows the meta-block");
+        state = STATE_INSERT;
+    }
+
+    private void insertLiterals() throws IOException {
+        byte[] ring = this.ring;
+        int mask = ringMask;
+        int p1 = written > 0 ? ring[(int) ((written - 1) & mask)] & 0xff : 0;
+        int p2 = written > 1 ? ring[(int) ((written - 2) & mask)] & 0xff : 0;
+        int free = ringSize - (int) (written - read);
+        while (insertRemaining > 0 && free > 0) {
+            if (blockLengths[LITERAL] == 0) switchBlock(LITERAL);
+            blockLengths[LITERAL]--;
+            int type = types[LITERAL];
+            int context;
+            switch (contextModes[type]) {
+                case CONTEXT_LSB6:
+                    context = p1 & 0x3f;
+                    break;
+                case CONTEXT_MSB6:
+                    context = p1 >>> 2;
+                    break;
+                case CONTEXT_UTF8:
+                    context = UTF8_LAST[p1] | UTF8_SECOND_LAST[p2];
+                    break;
+                default:
+                    context = (SIGNED[p1] << 3) | SIGNED[p2];
+                    break;
+            }
+            int literal = readSymbol(literalTrees[literalContextMap[(type << 6) + context] & 0xff]);
+            ring[(int) (written & mask)] = (byte) literal;
+            written++;
+            p2 = p1;
+            p1 = literal;
+            insertRemaining--;
+            metablockRemaining--;
+            free--;
+        }
+        if (insertRemaining > 0) return;
+        if (metablockRemaining == 0) {
+            finishMetablock();
+            return;
+        }
+        if (ringSize - (written - read) < MARGIN) {
+            state = STATE_COPY;
+            copyRemaining = -1;
+            return;
+        }
+        readDistance();
+    }
+
+    /**
+     * Decodes the distance of the current command, and either copies a dictionary word or
+     * prepares a backward copy.
+     */
+    private void readDistance() throws IOException {
+        int code = 0;
+        int distance;
+        if (implicitDistance) {
+            distance = distances[0];
+        } else {
+            if (blockLengths[DISTANCE] == 0) switchBlock(DISTANCE);
+            blockLengths[DISTANCE]--;
+            int context = copyLength > 4 ? 3 : copyLength - 2;
+            code = readSymbol(distanceTrees[distanceContextMap[(types[DISTANCE] << 2) + context] & 0xff]);
+            distance = distance(code);
+        }
+
+        long maxDistance = Math.min(maxBackwardDistance, written);
+        if (distance > maxDistance) {
+            copyDictionaryWord(distance - (int) maxDistance - 1);
+            state = STATE_COMMAND;
+            return;
+        }
+        if (copyLength > metablockRemaining) throw corrupt("copy overflows the meta-block");
+        if (code != 0) {
+            distances[3] = distances[2];
+            distances[2] = distances[1];
+            distances[1] = distances[0];
+            distances[0] = distance;
+        }
+        copyDistance = distance;
+        copyRemaining = copyLength;
+        state = STATE_COPY;
+    }
+
+    private int distance(int code) throws IOException {
+        if (code < 16) {
+            int distance;
+            if (code < 4) {
+                distance = distances[code];
+            } else {
+                distance = distances[code < 10 ? 0 : 1] + DISTANCE_DELTA[(code - 4) % 6];
+            }
+            if (distance <= 0) throw corrupt("bad distance");
+            return distance;
+        }
+        if (code < 16 + directDistances) return code - 15;
+        code -= 16 + directDistances;
+        int extraBits = 1 + (code >>> (postfixBits + 1));
+        int high = code >>> postfixBits;
+        int low = code & ((1 << postfixBits) - 1);
+        int offset = ((2 + (high & 1)) << extraBits) - 4;
+        return ((offset + readBits(extraBits)) << postfixBits) + low + directDistances + 1;
+    }
+
+    private void copyDictionaryWord(int wordId) throws IOException {
+        if (copyLength < BrotliDictionary.MIN_WORD_LENGTH || copyLength > BrotliDictionary.MAX_WORD_LENGTH) {
+            throw corrupt("bad dictionary word length");
+        }
+        int sizeBits = BrotliDictionary.SIZE_BITS_BY_LENGTH[copyLength];
+        int index = wordId & ((1 << sizeBits) - 1);
+        int transform = wordId >>> sizeBits;
+        if (transform >= BrotliDictionary.NUM_TRANSFORMS) throw corrupt("bad dictionary reference");
+        if (word == null) word = new byte[BrotliDictionary.MAX_TRANSFORMED_LENGTH];
+        int offset = BrotliDictionary.OFFSETS_BY_LENGTH[copyLength] + index * copyLength;
+        int length = BrotliDictionary.transform(BrotliDictionary.data(), offset, copyLength, transform, word);
+        if (length > metablockRemaining) throw corrupt("dictionary word overflows the meta-block");
+        for (int i = 0; i < length; i++) {
+            ring[(int) (written++ & ringMask)] = word[i];
+        }
+        metablockRemaining -= length;
+    }
+
+    private void copy() throws IOException {
+        if (copyRemaining == -1) {
+            // The distance is still to be read: the ring was too full to fit a dictionary word.
+            readDistance();
+            return;
+        }
+        int free = ringSize - (int) (written - read);
+        int count = Math.min(copyRemaining, free);
+        int dst = (int) (written & ringMask);
+        int src = (dst - copyDistance) & ringMask;
+        if (copyDistance >= count && dst + count <= ringSize && src + count <= ringSize) {
+            System.arraycopy(ring, src, ring, dst, count);
+        } else {
+            byte[] ring = this.ring;
+            int mask = ringMask;
+            for (int i = 0; i < count; i++) {
+                ring[dst] = ring[src];
+                dst = (dst + 1) & mask;
+                src = (src + 1) & mask;
+            }
+        }
+        written += count;
+        copyRemaining -= count;
+        metablockRemaining -= count;
+        if (copyRemaining == 0) state = STATE_COMMAND;
+    }
+
+    private void switchBlock(int category) throws IOException {
+        int symbol = readSymbol(typeTrees[category]);
+        int type;
+        if (symbol == 0) {
+            type = previousTypes[category];
+        } else if (symbol == 1) {
+            type = types[category] + 1;
+        } else {
+            type = symbol - 2;
+        }
+        if (type >= numTypes[category]) type -= numTypes[category];
+        previousTypes[category] = types[category];
+        types[category] = type;
+        blockLengths[category] = readBlockLength(countTrees[category]);
+    }
+
+    private int readBlockLength(int[] tree) throws IOException {
+        int code = readSymbol(tree);
+        return BLOCK_LENGTH_BASE[code] + readBits(BLOCK_LENGTH_EXTRA[code]);
+    }
+
+    /**
+     * Reads a count from 1 to 256 in the variable length format of block type and tree counts.
+     */
+    private int readVarLength() throws IOException {
+        if (readBits(1) == 0) return 1;
+        int n = readBits(3);
+        if (n == 0) return 2;
+        return (1 << n) + readBits(n) + 1;
+    }
+
+    private byte[] readContextMap(int size, int treeCount) throws IOException {
+        byte[] map = new byte[size];
+        if (treeCount < 2) return map;
+        int maxRunLengthPrefix = readBits(1) == 1 ? readBits(4) + 1 : 0;
+        int[] tree = readPrefixCode(treeCount + maxRunLengthPrefix);
+        for (int i = 0; i < size; ) {
+            int symbol = readSymbol(tree);
+            if (symbol == 0) {
+                map[i++] = 0;
+            } else if (symbol <= maxRunLengthPrefix) {
+                int run = (1 << symbol) + readBits(symbol);
+                if (run > size - i) throw corrupt("context map overflow");
+                i += run;
+            } else {
+                map[i++] = (byte) (symbol - maxRunLengthPrefix);
+            }
+        }
+        if (readBits(1) == 1) inverseMoveToFront(map);
+        return map;
+    }
+
+    private static void inverseMoveToFront(byte[] map) {
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            mtf[i] = (byte) i;
+        }
+        for (int i = 0; i < map.length; i++) {
+            int index = map[i] & 0xff;
+            byte value = mtf[index];
+            map[i] = value;
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = value;
+        }
+    }
+
+    private int[][] readPrefixCodes(int count, int alphabetSize) throws IOException {
+        int[][] result = new int[count][];
+        for (int i = 0; i < count; i++) {
+            result[i] = readPrefixCode(alphabetSize);
+        }
+        return result;
+    }
+
+    private int[] readPrefixCode(int alphabetSize) throws IOException {
+        int[] lengths = codeLengths;
+        Arrays.fill(lengths, 0, alphabetSize, 0);
+        int skip = readBits(2);
+        if (skip == 1) {
+            // A simple prefix code: up to four symbols with implied lengths.
+            int symbolCount = readBits(2) + 1;
+            int symbolBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+            int[] symbols = new int[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                symbols[i] = readBits(symbolBits);
+                if (symbols[i] >= alphabetSize) throw corrupt("bad symbol");
+                for (int j = 0; j < i; j++) {
+                    if (symbols[j] == symbols[i]) throw corrupt("duplicate symbol");
+                }
+            }
+            switch (symbolCount) {
+                case 1:
+                case 2:
+                    for (int symbol : symbols) lengths[symbol] = 1;
+                    break;
+                case 3:
+                    lengths[symbols[0]] = 1;
+                    lengths[symbols[1]] = 2;
+                    lengths[symbols[2]] = 2;
+                    break;
+                default:
+                    if (readBits(1) == 0) {
+                        for (int symbol : symbols) lengths[symbol] = 2;
+                    } else {
+                        lengths[symbols[0]] = 1;
+                        lengths[symbols[1]] = 2;
+                        lengths[symbols[2]] = 3;
+                        lengths[symbols[3]] = 3;
+                    }
+                    break;
+            }
+            return buildTable(lengths, alphabetSize);
+        }
+
+        // A complex prefix code, whose code lengths are themselves prefix coded.
+        int[] codeLengthLengths = new int[18];
+        int space = 32;
+        int codes = 0;
+        for (int i = skip; i < 18; i++) {
+            require(4);
+            int peek = (int) (bits & 15);
+            int value = CODE_LENGTH_PREFIX_VALUE[peek];
+            skipBits(CODE_LENGTH_PREFIX_LENGTH[peek]);
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = value;
+            if (value != 0) {
+                space -= 32 >> value;
+                codes++;
+                if (space <= 0) break;
+            }
+        }
+        if (codes != 1 && space != 0) throw corrupt("bad code length code");
+        int[] codeLengthTree = buildTable(codeLengthLengths, 18);
+
+        int symbol = 0;
+        int previousLength = 8;
+        int repeat = 0;
+        int repeatLength = 0;
+        space = 1 << MAX_CODE_LENGTH;
+        while (symbol < alphabetSize && space > 0) {
+            int length = readSymbol(codeLengthTree);
+            if (length < 16) {
+                repeat = 0;
+                lengths[symbol++] = length;
+                if (length != 0) {
+                    previousLength = length;
+                    space -= (1 << MAX_CODE_LENGTH) >> length;
+                }
+            } else {
+                int extraBits = length == 16 ? 2 : 3;
+                int newLength = length == 16 ? previousLength : 0;
+                if (repeatLength != newLength) {
+                    repeat = 0;
+                    repeatLength = newLength;
+                }
+                int oldRepeat = repeat;
+                if (repeat > 0) repeat = (repeat - 2) << extraBits;
+                repeat += readBits(extraBits) + 3;
+                int delta = repeat - oldRepeat;
+                if (delta > alphabetSize - symbol) throw corrupt("code lengths overflow the alphabet");
+                for (int i = 0; i < delta; i++) {
+                    lengths[symbol++] = repeatLength;
+                }
+                if (repeatLength != 0) space -= delta << (MAX_CODE_LENGTH - repeatLength);
+            }
+        }
+        if (space != 0) throw corrupt("incomplete prefix code");
+        return buildTable(lengths, alphabetSize);
+    }
+
+    /**
+     * Builds a decoding table for the canonical prefix code with {@code lengths}. Entries hold the
+     * code length in their high 16 bits and the symbol in their low 16 bits. Codes longer than
+     * {@link #ROOT_BITS} continue in a second-level table, whose root entry holds its maximum code
+     * length and its offset instead.
+     */
+    private static int[] buildTable(int[] lengths, int alphabetSize) throws ZipException {
+        int[] counts = new int[MAX_CODE_LENGTH + 1];
+        int nonZero = 0;
+        int onlySymbol = 0;
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            if (lengths[symbol] != 0) {
+                counts[lengths[symbol]]++;
+                nonZero++;
+                onlySymbol = symbol;
+            }
+        }
+        if (nonZero == 0) throw corrupt("empty prefix code");
+        if (nonZero == 1) {
+            // A lone symbol takes no bits at all.
+            int[] table = new int[1 << ROOT_BITS];
+            Arrays.fill(table, onlySymbol);
+            return table;
+        }
+
+        int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+        int code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + counts[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+        counts[0] = 0;
+
+        // Size the second-level tables by the longest code under each root entry.
+        int[] subLengths = new int[1 << ROOT_BITS];
+        int[] codes = new int[alphabetSize];
+        int[] startCodes = nextCode.clone();
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            codes[symbol] = Integer.reverse(startCodes[length]++) >>> (32 - length);
+            if (length > ROOT_BITS) {
+                int root = codes[symbol] & ((1 << ROOT_BITS) - 1);
+                subLengths[root] = Math.max(subLengths[root], length);
+            }
+        }
+        int size = 1 << ROOT_BITS;
+        int[] offsets = new int[1 << ROOT_BITS];
+        for (int root = 0; root < subLengths.length; root++) {
+            if (subLengths[root] == 0) continue;
+            offsets[root] = size;
+            size += 1 << (subLengths[root] - ROOT_BITS);
+        }
+
+        int[] table = new int[size];
+        for (int root = 0; root < subLengths.length; root++) {
+            if (subLengths[root] != 0) table[root] = subLengths[root] << 16 | offsets[root];
+        }
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            int reversed = codes[symbol];
+            if (length <= ROOT_BITS) {
+                for (int i = reversed; i < 1 << ROOT_BITS; i += 1 << length) {
+                    table[i] = length << 16 | symbol;
+                }
+            } else {
+                int root = reversed & ((1 << ROOT_BITS) - 1);
+                int subBits = subLengths[root] - ROOT_BITS;
+                int entry = (length - ROOT_BITS) << 16 | symbol;
+                for (int i = reversed >>> ROOT_BITS; i < 1 << subBits; i += 1 << (length - ROOT_BITS)) {
+                    table[offsets[root] + i] = entry;
+                }
+            }
+        }
+        return table;
+    }
+
+    private int readSymbol(int[] table) throws IOException {
+        if (bitCount < MAX_CODE_LENGTH) fillFromBuffer();
+        while (true) {
+            int entry = table[(int) (bits & ((1 << ROOT_BITS) - 1))];
+            int length = entry >>> 16;
+            if (length > ROOT_BITS) {
+                int sub = (int) (bits >>> ROOT_BITS) & ((1 << (length - ROOT_BITS)) - 1);
+                entry = table[(entry & 0xffff) + sub];
+                length = ROOT_BITS + (entry >>> 16);
+            }
+            if (length <= bitCount) {
+                skipBits(length);
+                return entry & 0xffff;
+            }
+            // Looked up with missing bits; fetch them and look again.
+            require(length);
+        }
+    }
+
+    private int readBits(int count) throws IOException {
+        if (count == 0) return 0;
+        if (bitCount < count) require(count);
+        int result = (int) (bits & ((1L << count) - 1));
+        skipBits(count);
+        return result;
+    }
+
+    private void skipBits(int count) throws EOFException {
+        bits >>>= count;
+        bitCount -= count;
+        if (bitCount < paddingBits) throw new EOFException("unexpected end of brotli stream");
+    }
+
+    private void alignToByte() throws IOException {
+        if (readBits(bitCount & 7) != 0) throw corrupt("non-zero padding");
+    }
+
+    /** Moves buffered input into the bit accumulator without blocking. */
+    private void fillFromBuffer() {
+        while (bitCount <= 56 && inPos < inLimit) {
+            bits |= (in[inPos++] & 0xffL) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * Makes {@code count} bits available, blocking on the source if needed. Past its end, zeros
+     * are appended so that lookups can proceed; {@link #skipBits} fails if they are consumed.
+     */
+    private void require(int count) throws IOException {
+        fillFromBuffer();
+        while (bitCount < count) {
+            if (!sourceExhausted) {
+                int n = source.read(in, 0, in.length);
+                if (n != -1) {
+                    inPos = 0;
+                    inLimit = n;
+                    fillFromBuffer();
+                    continue;
+                }
+                sourceExhausted = true;
+            }
+            bitCount += 8;
+            paddingBits += 8;
+        }
+    }
+
+    /**
+     * Reads up to {@code count} whole bytes at a byte boundary, returning at least one.
+     */
+    private int readAlignedBytes(byte[] dst, int off, int count) throws IOException {
+        int n = 0;
+        while (n < count && bitCount >= 8) {
+            dst[off + n++] = (byte) bits;
+            skipBits(8);
+        }
+        if (n < count && inPos == inLimit && n == 0) {
+            if (sourceExhausted) throw new EOFException("unexpected end of brotli stream");
+            int read = source.read(in, 0, in.length);
+            if (read == -1) throw new EOFException("unexpected end of brotli stream");
+            inPos = 0;
+            inLimit = read;
+        }
+        int buffered = Math.min(count - n, inLimit - inPos);
+        System.arraycopy(in, inPos, dst, off + n, buffered);
+        inPos += buffered;
+        return n + buffered;
+    }
+
+    private static ZipException corrupt(String detail) {
+        return new ZipException("corrupt brotli stream: " + detail);
+    }
+}
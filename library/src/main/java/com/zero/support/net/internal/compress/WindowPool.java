@@ -0,0 +1,51 @@
+package com.zero.support.net.internal.compress;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the large history buffers of the Brotli and zstd decoders between responses, since a
+ * fresh multi-megabyte array per response costs more to allocate and collect than the decoding
+ * itself. At most {@link #MAX_RETAINED_BYTES} are kept.
+ */
+final class WindowPool {
+    private static final int MAX_RETAINED_BYTES = 16 * 1024 * 1024;
+
+    private static final List<byte[]> pool = new ArrayList<>();
+    private static int retainedBytes;
+
+    private WindowPool() {
+    }
+
+    /**
+     * Returns an array of at least {@code size} bytes. Its content is undefined.
+     */
+    static byte[] take(int size) {
+        synchronized (pool) {
+            int best = -1;
+            for (int i = 0; i < pool.size(); i++) {
+                int length = pool.get(i).length;
+                // Don't hand a large window to a small response; it would stay pinned needlessly.
+                if (length >= size && length / 2 <= size
+                        && (best == -1 || length < pool.get(best).length)) {
+                    best = i;
+                }
+            }
+            if (best != -1) {
+                byte[] result = pool.remove(best);
+                retainedBytes -= result.length;
+                return result;
+            }
+        }
+        return new byte[size];
+    }
+
+    static void recycle(byte[] window) {
+        synchronized (pool) {
+            if (retainedBytes + window.length > MAX_RETAINED_BYTES) return;
+            pool.add(window);
+            retainedBytes += window.length;
+        }
+    }
+}
@@ -0,0 +1,967 @@
+package com.zero.support.net.internal.compress;
+
+
+import com.zero.support.net.internal.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes the {@code zstd} content coding of RFC 8878 in pure Java. Frames are decoded a block at
+ * a time into a history window, so memory is bounded by the window size, not the content size;
+ * windows come from {@link WindowPool} and go back when the stream is closed.
+ *
+ * <p>Following RFC 9659, windows larger than 8 MiB are refused, as are frames that need a
+ * dictionary. Skippable frames are skipped and content checksums are verified.
+ */
+public final class ZstdSource extends InputStream {
+    private static final int MAGIC = 0xFD2FB528;
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    private static final int MAX_WINDOW_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+    private static final int MAX_LL_SYMBOL = 35;
+    private static final int MAX_ML_SYMBOL = 52;
+    private static final int MAX_OF_SYMBOL = 31;
+    private static final int MAX_HUFFMAN_BITS = 11;
+
+    private static final int[] LL_BASE = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096,
+            8192, 16384, 32768, 65536};
+    private static final int[] LL_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+            13, 14, 15, 16};
+    private static final int[] ML_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+            19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34,
+            35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+            4099, 8195, 16387, 32771, 65539};
+    private static final int[] ML_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+            12, 13, 14, 15, 16};
+
+    private static final FseTable LL_PREDEFINED = FseTable.predefined(new short[]{
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+            2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+            -1, -1, -1, -1}, 6);
+    private static final FseTable ML_PREDEFINED = FseTable.predefined(new short[]{
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+            -1, -1, -1, -1, -1}, 6);
+    private static final FseTable OF_PREDEFINED = FseTable.predefined(new short[]{
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1}, 5);
+
+    private final InputStream source;
+    private final byte[] scratch = new byte[8];
+    private final short[] normalized = new short[256];
+    private final int[] weights = new int[256];
+
+    private byte[] input;
+    private byte[] literals;
+    private byte[] window;
+    private int pos;
+    private int readPos;
+    private boolean closed;
+    private boolean exhausted;
+
+    // The current frame.
+    private boolean inFrame;
+    private boolean singleSegment;
+    private int windowSize;
+    private int blockMaxSize;
+    private int limit;
+    private long contentSize;
+    private long produced;
+    private Xxh64 checksum;
+    private final int[] repeatOffsets = new int[3];
+
+    // Entropy tables, which later blocks of a frame may repeat.
+    private final byte[] huffmanSymbols = new byte[1 << MAX_HUFFMAN_BITS];
+    private final byte[] huffmanBits = new byte[1 << MAX_HUFFMAN_BITS];
+    private int huffmanMaxBits = -1;
+    private final FseTable weightTable = new FseTable(6);
+    private final FseTable llOwn = new FseTable(9);
+    private final FseTable ofOwn = new FseTable(8);
+    private final FseTable mlOwn = new FseTable(9);
+    private FseTable llTable;
+    private FseTable ofTable;
+    private FseTable mlTable;
+
+    // The literals of the current block.
+    private byte[] literalsBuffer;
+    private int literalsStart;
+    private int literalsSize;
+
+    public ZstdSource(InputStream source) {
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Util.checkOffsetAndCount(b.length, off, len);
+        if (closed) throw new IOException("closed");
+        if (len == 0) return 0;
+        while (readPos == pos) {
+            if (exhausted || !decodeBlock()) {
+                exhausted = true;
+                release();
+                return -1;
+            }
+        }
+        int count = Math.min(len, pos - readPos);
+        System.arraycopy(window, readPos, b, off, count);
+        readPos += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return pos - readPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        release();
+        source.close();
+    }
+
+    private void release() {
+        if (window != null) WindowPool.recycle(window);
+        if (input != null) WindowPool.recycle(input);
+        if (literals != null) WindowPool.recycle(literals);
+        window = input = literals = null;
+    }
+
+    /**
+     * Decodes the next block, starting a new frame if needed. Returns false at the end of the
+     * stream.
+     */
+    private boolean decodeBlock() throws IOException {
+        if (!inFrame && !readFrameHeader()) return false;
+
+        readFully(scratch, 3);
+        int header = (scratch[0] & 0xff) | (scratch[1] & 0xff) << 8 | (scratch[2] & 0xff) << 16;
+        boolean last = (header & 1) != 0;
+        int type = (header >>> 1) & 3;
+        int size = header >>> 3;
+
+        if (!singleSegment && window.length - pos < blockMaxSize) {
+            // Slide the window: keep only the history that matches may still refer to.
+            System.arraycopy(window, pos - windowSize, window, 0, windowSize);
+            pos = readPos = windowSize;
+        }
+        int blockStart = pos;
+        switch (type) {
+            case 0: // Raw.
+                if (size > blockMaxSize || size > limit - pos) throw corrupt("block too large");
+                readFully(window, pos, size);
+                pos += size;
+                break;
+            case 1: // RLE.
+                if (size > blockMaxSize || size > limit - pos) throw corrupt("block too large");
+                readFully(scratch, 1);
+                java.util.Arrays.fill(window, pos, pos + size, scratch[0]);
+                pos += size;
+                break;
+            case 2:
+                if (size > blockMaxSize) throw corrupt("block too large");
+                readFully(input, 0, size);
+                decodeCompressedBlock(size);
+                if (pos - blockStart > blockMaxSize) throw corrupt("block too large");
+                break;
+            default:
+                throw corrupt("reserved block type");
+        }
+        produced += pos - blockStart;
+        if (checksum != null) checksum.update(window, blockStart, pos - blockStart);
+
+        if (last) {
+            if (contentSize != -1L && produced != contentSize) throw corrupt("content size mismatch");
+            if (checksum != null) {
+                readFully(scratch, 4);
+                if (readIntLe(scratch, 0) != (int) checksum.digest()) throw corrupt("checksum mismatch");
+            }
+            inFrame = false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the header of the next frame, skipping skippable frames. Returns false if the stream
+     * ends cleanly before another frame.
+     */
+    private boolean readFrameHeader() throws IOException {
+        while (true) {
+            int first = source.read();
+            if (first == -1) return false;
+            scratch[0] = (byte) first;
+            readFully(scratch, 1, 3);
+            int magic = readIntLe(scratch, 0);
+            if (magic == MAGIC) break;
+            if ((magic & SKIPPABLE_MAGIC_MASK) != SKIPPABLE_MAGIC) throw corrupt("not in zstd format");
+            readFully(scratch, 4);
+            skipFully(readIntLe(scratch, 0) & 0xffffffffL);
+        }
+
+        readFully(scratch, 1);
+        int descriptor = scratch[0] & 0xff;
+        int contentSizeFlag = descriptor >>> 6;
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        if ((descriptor & 0x08) != 0) throw corrupt("reserved bit set");
+        boolean hasChecksum = (descriptor & 0x04) != 0;
+        int dictionaryIdFlag = descriptor & 3;
+
+        long window = 0L;
+        if (!singleSegment) {
+            readFully(scratch, 1);
+            int exponent = (scratch[0] & 0xff) >>> 3;
+            int mantissa = scratch[0] & 7;
+            long base = 1L << (10 + exponent);
+            window = base + (base / 8) * mantissa;
+        }
+        int dictionaryIdSize = dictionaryIdFlag == 3 ? 4 : dictionaryIdFlag;
+        if (dictionaryIdSize > 0) {
+            readFully(scratch, dictionaryIdSize);
+            for (int i = 0; i < dictionaryIdSize; i++) {
+                if (scratch[i] != 0) throw new ZipException("zstd dictionaries are not supported");
+            }
+        }
+        int contentSizeSize = contentSizeFlag == 0 ? (singleSegment ? 1 : 0) : 1 << contentSizeFlag;
+        contentSize = -1L;
+        if (contentSizeSize > 0) {
+            readFully(scratch, contentSizeSize);
+            contentSize = 0L;
+            for (int i = contentSizeSize - 1; i >= 0; i--) {
+                contentSize = contentSize << 8 | (scratch[i] & 0xff);
+            }
+            if (contentSizeSize == 2) contentSize += 256;
+            if (contentSize < 0) throw corrupt("content size too large");
+        }
+        if (singleSegment) window = contentSize;
+        if (window > MAX_WINDOW_SIZE) throw new ZipException("zstd window too large: " + window);
+
+        windowSize = (int) window;
+        blockMaxSize = Math.min(windowSize, MAX_BLOCK_SIZE);
+        int capacity = singleSegment
+                ? Math.max(windowSize, 1)
+                : windowSize + Math.max(windowSize / 2, 2 * MAX_BLOCK_SIZE);
+        if (this.window == null || this.window.length < capacity) {
+            if (this.window != null) WindowPool.recycle(this.window);
+            this.window = WindowPool.take(capacity);
+        }
+        if (input == null) {
+            input = WindowPool.take(MAX_BLOCK_SIZE);
+            literals = WindowPool.take(MAX_BLOCK_SIZE);
+        }
+        this.singleSegment = singleSegment;
+        limit = singleSegment ? windowSize : this.window.length;
+        pos = readPos = 0;
+        produced = 0L;
+        checksum = hasChecksum ? new Xxh64() : null;
+        repeatOffsets[0] = 1;
+        repeatOffsets[1] = 4;
+        repeatOffsets[2] = 8;
+        huffmanMaxBits = -1;
+        llTable = ofTable = mlTable = null;
+        inFrame = true;
+        return true;
+    }
+
+    private void decodeCompressedBlock(int size) throws IOException {
+        int in = decodeLiterals(0, size);
+        decodeSequences(in, size);
+    }
+
+    private int decodeLiterals(int in, int end) throws IOException {
+        if (in >= end) throw corrupt("truncated literals");
+        int b0 = input[in] & 0xff;
+        int type = b0 & 3;
+        int sizeFormat = (b0 >>> 2) & 3;
+
+        if (type == 0 || type == 1) {
+            int regenerated;
+            if ((sizeFormat & 1) == 0) {
+                regenerated = b0 >>> 3;
+                in += 1;
+            } else if (sizeFormat == 1) {
+                require(in, 2, end);
+                regenerated = (b0 >>> 4) + ((input[in + 1] & 0xff) << 4);
+                in += 2;
+            } else {
+                require(in, 3, end);
+                regenerated = (b0 >>> 4) + ((input[in + 1] & 0xff) << 4) + ((input[in + 2] & 0xff) << 12);
+                in += 3;
+            }
+            if (regenerated > blockMaxSize) throw corrupt("literals too large");
+            if (type == 0) {
+                require(in, regenerated, end);
+                literalsBuffer = input;
+                literalsStart = in;
+                in += regenerated;
+            } else {
+                require(in, 1, end);
+                java.util.Arrays.fill(literals, 0, regenerated, input[in]);
+                literalsBuffer = literals;
+                literalsStart = 0;
+                in += 1;
+            }
+            literalsSize = regenerated;
+            return in;
+        }
+
+        int regenerated;
+        int compressed;
+        int headerSize;
+        switch (sizeFormat) {
+            case 0:
+            case 1: {
+                require(in, 3, end);
+                int h = b0 | (input[in + 1] & 0xff) << 8 | (input[in + 2] & 0xff) << 16;
+                regenerated = (h >>> 4) & 0x3ff;
+                compressed = (h >>> 14) & 0x3ff;
+                headerSize = 3;
+                break;
+            }
+            case 2: {
+                require(in, 4, end);
+                int h = readIntLe(input, in);
+                regenerated = (h >>> 4) & 0x3fff;
+                compressed = (h >>> 18) & 0x3fff;
+                headerSize = 4;
+                break;
+            }
+            default: {
+                require(in, 5, end);
+                long h = (readIntLe(input, in) & 0xffffffffL) | (long) (input[in + 4] & 0xff) << 32;
+                regenerated = (int) ((h >>> 4) & 0x3ffff);
+                compressed = (int) ((h >>> 22) & 0x3ffff);
+                headerSize = 5;
+                break;
+            }
+        }
+        if (regenerated > blockMaxSize) throw corrupt("literals too large");
+        in += headerSize;
+        require(in, compressed, end);
+        int streamsEnd = in + compressed;
+        int streams = in;
+        if (type == 2) {
+            streams = readHuffmanTable(in, streamsEnd);
+        } else if (huffmanMaxBits == -1) {
+            throw corrupt("missing Huffman table");
+        }
+
+        if (sizeFormat == 0) {
+            decodeHuffmanStream(streams, streamsEnd, 0, regenerated);
+        } else {
+            require(streams, 6, streamsEnd);
+            int start1 = streams + 6;
+            int start2 = start1 + readShortLe(input, streams);
+            int start3 = start2 + readShortLe(input, streams + 2);
+            int start4 = start3 + readShortLe(input, streams + 4);
+            if (start4 > streamsEnd) throw corrupt("bad jump table");
+            int segment = (regenerated + 3) / 4;
+            if (3 * segment > regenerated) throw corrupt("literals too short for four streams");
+            decodeHuffmanStream(start1, start2, 0, segment);
+            decodeHuffmanStream(start2, start3, segment, segment);
+            decodeHuffmanStream(start3, start4, 2 * segment, segment);
+            decodeHuffmanStream(start4, streamsEnd, 3 * segment, regenerated - 3 * segment);
+        }
+        literalsBuffer = literals;
+        literalsStart = 0;
+        literalsSize = regenerated;
+        return streamsEnd;
+    }
+
+    /**
+     * Reads a Huffman tree description and builds its decoding table, returning the offset of
+     * what follows.
+     */
+    private int readHuffmanTable(int in, int end) throws IOException {
+        require(in, 1, end);
+        int header = input[in++] & 0xff;
+        int count;
+        if (header >= 128) {
+            count = header - 127;
+            int bytes = (count + 1) / 2;
+            require(in, bytes, end);
+            for (int i = 0; i < count; i++) {
+                int b = input[in + i / 2] & 0xff;
+                weights[i] = (i & 1) == 0 ? b >>> 4 : b & 0xf;
+            }
+            in += bytes;
+        } else {
+            require(in, header, end);
+            count = decodeWeights(in, in + header);
+            in += header;
+        }
+
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            if (weights[i] > MAX_HUFFMAN_BITS) throw corrupt("bad Huffman weight");
+            if (weights[i] > 0) total += 1 << (weights[i] - 1);
+        }
+        if (total == 0) throw corrupt("empty Huffman table");
+        int maxBits = 32 - Integer.numberOfLeadingZeros(total);
+        if (maxBits > MAX_HUFFMAN_BITS) throw corrupt("Huffman table too deep");
+        int rest = (1 << maxBits) - total;
+        if ((rest & (rest - 1)) != 0) throw corrupt("bad Huffman weights");
+        weights[count++] = 32 - Integer.numberOfLeadingZeros(rest);
+
+        int[] rankStart = new int[maxBits + 2];
+        for (int i = 0; i < count; i++) {
+            rankStart[weights[i]] += 1 << Math.max(weights[i] - 1, 0);
+        }
+        int next = 0;
+        for (int w = 1; w <= maxBits; w++) {
+            int current = next;
+            next += rankStart[w];
+            rankStart[w] = current;
+        }
+        for (int symbol = 0; symbol < count; symbol++) {
+            int w = weights[symbol];
+            if (w == 0) continue;
+            int length = 1 << (w - 1);
+            byte bits = (byte) (maxBits + 1 - w);
+            for (int i = rankStart[w], e = i + length; i < e; i++) {
+                huffmanSymbols[i] = (byte) symbol;
+                huffmanBits[i] = bits;
+            }
+            rankStart[w] += length;
+        }
+        huffmanMaxBits = maxBits;
+        return in;
+    }
+
+    /**
+     * Decodes FSE-compressed Huffman weights into {@link #weights}, returning how many there are.
+     */
+    private int decodeWeights(int in, int end) throws IOException {
+        in += readFseTable(weightTable, in, end, 255, 6);
+        BackwardBits bits = new BackwardBits(input, in, end);
+        FseTable table = weightTable;
+        int state1 = bits.read(table.log);
+        int state2 = bits.read(table.log);
+        int count = 0;
+        while (true) {
+            if (count > 253) throw corrupt("too many Huffman weights");
+            weights[count++] = table.symbol[state1] & 0xff;
+            state1 = table.newState[state1] + bits.read(table.bits[state1]);
+            if (bits.overflowed()) {
+                weights[count++] = table.symbol[state2] & 0xff;
+                break;
+            }
+            weights[count++] = table.symbol[state2] & 0xff;
+            state2 = table.newState[state2] + bits.read(table.bits[state2]);
+            if (bits.overflowed()) {
+                weights[count++] = table.symbol[state1] & 0xff;
+                break;
+            }
+        }
+        return count;
+    }
+
+    private void decodeHuffmanStream(int start, int end, int out, int count) throws IOException {
+        BackwardBits bits = new BackwardBits(input, start, end);
+        int maxBits = huffmanMaxBits;
+        byte[] symbols = huffmanSymbols;
+        byte[] lengths = huffmanBits;
+        byte[] literals = this.literals;
+        for (int i = out, e = out + count; i < e; i++) {
+            int index = bits.peek(maxBits);
+            literals[i] = symbols[index];
+            bits.skip(lengths[index]);
+        }
+        if (!bits.finished()) throw corrupt("bad Huffman stream");
+    }
+
+    private void decodeSequences(int in, int end) throws IOException {
+        require(in, 1, end);
+        int b0 = input[in++] & 0xff;
+        int count;
+        if (b0 < 128) {
+            count = b0;
+        } else if (b0 < 255) {
+            require(in, 1, end);
+            count = ((b0 - 128) << 8) + (input[in++] & 0xff);
+        } else {
+            require(in, 2, end);
+            count = readShortLe(input, in) + 0x7f00;
+            in += 2;
+        }
+
+        int literalsPos = 0;
+        if (count > 0) {
+            require(in, 1, end);
+            int modes = input[in++] & 0xff;
+            if ((modes & 3) != 0) throw corrupt("reserved sequence mode bits");
+            in = selectTable(0, (modes >>> 6) & 3, in, end);
+            in = selectTable(1, (modes >>> 4) & 3, in, end);
+            in = selectTable(2, (modes >>> 2) & 3, in, end);
+
+            FseTable ll = llTable;
+            FseTable of = ofTable;
+            FseTable ml = mlTable;
+            BackwardBits bits = new BackwardBits(input, in, end);
+            int llState = bits.read(ll.log);
+            int ofState = bits.read(of.log);
+            int mlState = bits.read(ml.log);
+            int[] repeat = repeatOffsets;
+            byte[] window = this.window;
+
+            for (int i = 0; i < count; i++) {
+                int ofCode = of.symbol[ofState];
+                int mlCode = ml.symbol[mlState];
+                int llCode = ll.symbol[llState];
+                long offsetValue = (1L << ofCode) + bits.read(ofCode);
+                int matchLength = ML_BASE[mlCode] + bits.read(ML_BITS[mlCode]);
+                int literalLength = LL_BASE[llCode] + bits.read(LL_BITS[llCode]);
+
+                int offset;
+                if (offsetValue > 3) {
+                    if (offsetValue - 3 > Integer.MAX_VALUE) throw corrupt("offset too large");
+                    offset = (int) (offsetValue - 3);
+                    repeat[2] = repeat[1];
+                    repeat[1] = repeat[0];
+                    repeat[0] = offset;
+                } else {
+                    int index = (int) offsetValue - 1;
+                    if (literalLength == 0) index++;
+                    if (index == 0) {
+                        offset = repeat[0];
+                    } else {
+                        offset = index == 3 ? repeat[0] - 1 : repeat[index];
+                        if (index > 1) repeat[2] = repeat[1];
+                        repeat[1] = repeat[0];
+                        repeat[0] = offset;
+                    }
+                }
+
+                if (i != count - 1) {
+                    llState = ll.newState[llState] + bits.read(ll.bits[llState]);
+                    mlState = ml.newState[mlState] + bits.read(ml.bits[mlState]);
+                    ofState = of.newState[ofState] + bits.read(of.bits[ofState]);
+                }
+
+                if (literalLength > literalsSize - literalsPos
+                        || literalLength + matchLength > limit - pos) {
+                    throw corrupt("sequence overflows the block");
+                }
+                System.arraycopy(literalsBuffer, literalsStart + literalsPos, window, pos, literalLength);
+                pos += literalLength;
+                literalsPos += literalLength;
+
+                if (offset <= 0 || offset > pos) throw corrupt("offset out of range");
+                int from = pos - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(window, from, window, pos, matchLength);
+                    pos += matchLength;
+                } else {
+                    for (int e = pos + matchLength; pos < e; ) {
+                        window[pos++] = window[from++];
+                    }
+                }
+            }
+            if (!bits.finished()) throw corrupt("bad sequence stream");
+        } else if (in != end) {
+            throw corrupt("trailing bytes after literals");
+        }
+
+        int remaining = literalsSize - literalsPos;
+        if (remaining > limit - pos) throw corrupt("literals overflow the block");
+        System.arraycopy(literalsBuffer, literalsStart + literalsPos, window, pos, remaining);
+        pos += remaining;
+    }
+
+    /**
+     * Reads the table for literal lengths (0), offsets (1) or match lengths (2) in {@code mode},
+     * returning the offset of what follows.
+     */
+    private int selectTable(int kind, int mode, int in, int end) throws IOException {
+        FseTable own = kind == 0 ? llOwn : kind == 1 ? ofOwn : mlOwn;
+        int maxSymbol = kind == 0 ? MAX_LL_SYMBOL : kind == 1 ? MAX_OF_SYMBOL : MAX_ML_SYMBOL;
+        FseTable selected;
+        switch (mode) {
+            case 0:
+                selected = kind == 0 ? LL_PREDEFINED : kind == 1 ? OF_PREDEFINED : ML_PREDEFINED;
+                break;
+            case 1:
+                require(in, 1, end);
+                int symbol = input[in++] & 0xff;
+                if (symbol > maxSymbol) throw corrupt("bad RLE symbol");
+                own.rle(symbol);
+                selected = own;
+                break;
+            case 2:
+                in += readFseTable(own, in, end, maxSymbol, kind == 1 ? 8 : 9);
+                selected = own;
+                break;
+            default:
+                selected = kind == 0 ? llTable : kind == 1 ? ofTable : mlTable;
+                if (selected == null) throw corrupt("repeated table is missing");
+                break;
+        }
+        if (kind == 0) {
+            llTable = selected;
+        } else if (kind == 1) {
+            ofTable = selected;
+        } else {
+            mlTable = selected;
+        }
+        return in;
+    }
+
+    /**
+     * Reads an FSE table description into {@code table}, returning its length in bytes.
+     */
+    private int readFseTable(FseTable table, int start, int end, int maxSymbol, int maxLog) throws IOException {
+        long bitPos = 0;
+        int accuracyLog = peekBits(start, end, bitPos, 4) + 5;
+        bitPos += 4;
+        if (accuracyLog > maxLog) throw corrupt("FSE table too large");
+
+        int remaining = (1 << accuracyLog) + 1;
+        int threshold = 1 << accuracyLog;
+        int nbBits = accuracyLog + 1;
+        int symbol = 0;
+        boolean previous0 = false;
+        while (remaining > 1 && symbol <= maxSymbol) {
+            if (previous0) {
+                int n0 = symbol;
+                while (true) {
+                    int repeat = peekBits(start, end, bitPos, 2);
+                    bitPos += 2;
+                    n0 += repeat;
+                    if (repeat != 3) break;
+                }
+                if (n0 > maxSymbol) throw corrupt("bad FSE table");
+                while (symbol < n0) {
+                    normalized[symbol++] = 0;
+                }
+            }
+            int max = (2 * threshold - 1) - remaining;
+            int bits = peekBits(start, end, bitPos, nbBits);
+            int count;
+            if ((bits & (threshold - 1)) < max) {
+                count = bits & (threshold - 1);
+                bitPos += nbBits - 1;
+            } else {
+                count = bits & (2 * threshold - 1);
+                if (count >= threshold) count -= max;
+                bitPos += nbBits;
+            }
+            count--;
+            remaining -= count < 0 ? -count : count;
+            normalized[symbol++] = (short) count;
+            previous0 = count == 0;
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+        }
+        int bytes = (int) ((bitPos + 7) >>> 3);
+        if (remaining != 1 || bytes > end - start) throw corrupt("bad FSE table");
+        table.build(normalized, symbol - 1, accuracyLog);
+        return bytes;
+    }
+
+    /**
+     * Returns {@code count} bits of a forward bit stream at {@code start}, reading zeros past
+     * {@code end}.
+     */
+    private int peekBits(int start, int end, long bitPos, int count) {
+        int index = start + (int) (bitPos >>> 3);
+        long word = 0L;
+        for (int i = 0; i < 4 && index + i < end; i++) {
+            word |= (long) (input[index + i] & 0xff) << (8 * i);
+        }
+        return (int) ((word >>> (bitPos & 7)) & ((1L << count) - 1));
+    }
+
+    private void require(int in, int count, int end) throws IOException {
+        if (count < 0 || count > end - in) throw corrupt("truncated block");
+    }
+
+    private void readFully(byte[] buffer, int count) throws IOException {
+        readFully(buffer, 0, count);
+    }
+
+    private void readFully(byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0) {
+            int read = source.read(buffer, offset, count);
+            if (read == -1) throw new EOFException("unexpected end of zstd stream");
+            offset += read;
+            count -= read;
+        }
+    }
+
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            long skipped = source.skip(count);
+            if (skipped <= 0) {
+                if (source.read() == -1) throw new EOFException("unexpected end of zstd stream");
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static int readShortLe(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8;
+    }
+
+    private static int readIntLe(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static ZipException corrupt(String detail) {
+        return new ZipException("corrupt zstd stream: " + detail);
+    }
+
+    /**
+     * A finite state entropy decoding table.
+     */
+    private static final class FseTable {
+        int log;
+        final byte[] symbol;
+        final byte[] bits;
+        final int[] newState;
+
+        FseTable(int maxLog) {
+            symbol = new byte[1 << maxLog];
+            bits = new byte[1 << maxLog];
+            newState = new int[1 << maxLog];
+        }
+
+        static FseTable predefined(short[] normalized, int log) {
+            FseTable table = new FseTable(log);
+            try {
+                table.build(normalized, normalized.length - 1, log);
+            } catch (ZipException e) {
+                throw new AssertionError(e);
+            }
+            return table;
+        }
+
+        void rle(int value) {
+            log = 0;
+            symbol[0] = (byte) value;
+            bits[0] = 0;
+            newState[0] = 0;
+        }
+
+        void build(short[] normalized, int maxSymbol, int log) throws ZipException {
+            int size = 1 << log;
+            int highThreshold = size - 1;
+            int[] next = new int[maxSymbol + 1];
+            for (int s = 0; s <= maxSymbol; s++) {
+                if (normalized[s] == -1) {
+                    symbol[highThreshold--] = (byte) s;
+                    next[s] = 1;
+                } else {
+                    next[s] = normalized[s];
+                }
+            }
+            int mask = size - 1;
+            int step = (size >>> 1) + (size >>> 3) + 3;
+            int position = 0;
+            for (int s = 0; s <= maxSymbol; s++) {
+                for (int i = 0; i < normalized[s]; i++) {
+                    symbol[position] = (byte) s;
+                    do {
+                        position = (position + step) & mask;
+                    } while (position > highThreshold);
+                }
+            }
+            if (position != 0) throw corrupt("bad FSE distribution");
+            for (int u = 0; u < size; u++) {
+                int s = symbol[u] & 0xff;
+                int nextState = next[s]++;
+                int nbBits = log - (31 - Integer.numberOfLeadingZeros(nextState));
+                bits[u] = (byte) nbBits;
+                newState[u] = (nextState << nbBits) - size;
+            }
+            this.log = log;
+        }
+    }
+
+    /**
+     * A bit stream that is read from its end towards its start, as zstd's entropy coders write
+     * them. Reading past the start yields zeros and marks the stream overflowed.
+     */
+    private static final class BackwardBits {
+        private final byte[] buffer;
+        private final int start;
+        private final int end;
+        private long position;
+
+        BackwardBits(byte[] buffer, int start, int end) throws ZipException {
+            if (end <= start) throw corrupt("empty bit stream");
+            int last = buffer[end - 1] & 0xff;
+            if (last == 0) throw corrupt("bit stream missing its end mark");
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.position = (long) (end - start - 1) * 8 + (31 - Integer.numberOfLeadingZeros(last));
+        }
+
+        int peek(int count) {
+            long low = position - count;
+            if (low >= 0) {
+                long word = readLongLe(start + (int) (low >>> 3));
+                return (int) ((word >>> (low & 7)) & ((1L << count) - 1));
+            }
+            if (position <= 0) return 0;
+            long word = readLongLe(start);
+            return (int) ((word & ((1L << position) - 1)) << -low);
+        }
+
+        int read(int count) {
+            if (count == 0) return 0;
+            int result = peek(count);
+            position -= count;
+            return result;
+        }
+
+        void skip(int count) {
+            position -= count;
+        }
+
+        boolean overflowed() {
+            return position < 0;
+        }
+
+        boolean finished() {
+            return position == 0;
+        }
+
+        private long readLongLe(int index) {
+            byte[] b = buffer;
+            if (index + 8 <= end) {
+                return (b[index] & 0xffL)
+                        | (b[index + 1] & 0xffL) << 8
+                        | (b[index + 2] & 0xffL) << 16
+                        | (b[index + 3] & 0xffL) << 24
+                        | (b[index + 4] & 0xffL) << 32
+                        | (b[index + 5] & 0xffL) << 40
+                        | (b[index + 6] & 0xffL) << 48
+                        | (b[index + 7] & 0xffL) << 56;
+            }
+            long result = 0L;
+            for (int i = 0; index + i < end; i++) {
+                result |= (b[index + i] & 0xffL) << (8 * i);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The 64-bit xxHash that zstd uses for content checksums.
+     */
+    private static final class Xxh64 {
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+
+        private long v1 = P1 + P2;
+        private long v2 = P2;
+        private long v3 = 0;
+        private long v4 = -P1;
+        private final byte[] buffer = new byte[32];
+        private int buffered;
+        private long total;
+
+        void update(byte[] b, int off, int len) {
+            total += len;
+            if (buffered > 0) {
+                int count = Math.min(32 - buffered, len);
+                System.arraycopy(b, off, buffer, buffered, count);
+                buffered += count;
+                off += count;
+                len -= count;
+                if (buffered < 32) return;
+                stripe(buffer, 0);
+                buffered = 0;
+            }
+            for (; len >= 32; off += 32, len -= 32) {
+                stripe(b, off);
+            }
+            System.arraycopy(b, off, buffer, 0, len);
+            buffered = len;
+        }
+
+        private void stripe(byte[] b, int off) {
+            v1 = round(v1, readLongLe(b, off));
+            v2 = round(v2, readLongLe(b, off + 8));
+            v3 = round(v3, readLongLe(b, off + 16));
+            v4 = round(v4, readLongLe(b, off + 24));
+        }
+
+        long digest() {
+            long h;
+            if (total >= 32) {
+                h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                h = merge(h, v1);
+                h = merge(h, v2);
+                h = merge(h, v3);
+                h = merge(h, v4);
+            } else {
+                h = P5;
+            }
+            h += total;
+            int i = 0;
+            for (; i + 8 <= buffered; i += 8) {
+                h ^= round(0, readLongLe(buffer, i));
+                h = Long.rotateLeft(h, 27) * P1 + P4;
+            }
+            if (i + 4 <= buffered) {
+                h ^= (readIntLe(buffer, i) & 0xffffffffL) * P1;
+                h = Long.rotateLeft(h, 23) * P2 + P3;
+                i += 4;
+            }
+            for (; i < buffered; i++) {
+                h ^= (buffer[i] & 0xff) * P5;
+                h = Long.rotateLeft(h, 11) * P1;
+            }
+            h ^= h >>> 33;
+            h *= P2;
+            h ^= h >>> 29;
+            h *= P3;
+            h ^= h >>> 32;
+            return h;
+        }
+
+        private static long round(long acc, long input) {
+            acc += input * P2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * P1;
+        }
+
+        private static long merge(long h, long v) {
+            h ^= round(0, v);
+            return h * P1 + P4;
+        }
+
+        private static long readLongLe(byte[] b, int i) {
+            return (readIntLe(b, i) & 0xffffffffL) | (long) readIntLe(b, i + 4) << 32;
+        }
+    }
+}
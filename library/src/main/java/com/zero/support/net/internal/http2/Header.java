@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import java.nio.charset.Charset;
+
+/**
+ * HTTP header: the name is an ASCII string, but the value can be UTF-8.
+ */
+public final class Header {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Special header names defined in HTTP/2 spec.
+    public static final String PSEUDO_PREFIX = ":";
+
+    public static final String RESPONSE_STATUS = ":status";
+    public static final String TARGET_METHOD = ":method";
+    public static final String TARGET_PATH = ":path";
+    public static final String TARGET_SCHEME = ":scheme";
+    public static final String TARGET_AUTHORITY = ":authority";
+
+    /**
+     * Name in case-insensitive ASCII encoding.
+     */
+    public final String name;
+    /**
+     * Value in UTF-8 encoding.
+     */
+    public final String value;
+    final byte[] nameBytes;
+    final byte[] valueBytes;
+    final int hpackSize;
+
+    public Header(String name, String value) {
+        this(name.getBytes(UTF_8), value.getBytes(UTF_8));
+    }
+
+    Header(byte[] nameBytes, byte[] valueBytes) {
+        this.nameBytes = nameBytes;
+        this.valueBytes = valueBytes;
+        this.name = new String(nameBytes, UTF_8);
+        this.value = new String(valueBytes, UTF_8);
+        this.hpackSize = 32 + nameBytes.length + valueBytes.length;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof Header) {
+            Header that = (Header) other;
+            return this.name.equals(that.name)
+                    && this.value.equals(that.value);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 17;
+        result = 31 * result + name.hashCode();
+        result = 31 * result + value.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + value;
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read and write HPACK v10.
+ *
+ * <p>http://tools.ietf.org/html/draft-ietf-httpbis-header-compression-12
+ *
+ * <p>This implementation uses an array for the dynamic table and a list for indexed entries.
+ * Dynamic entries are added to the array, starting in the last position moving forward. When the
+ * array fills, it is doubled.
+ */
+final class Hpack {
+    private static final int PREFIX_4_BITS = 0x0f;
+    private static final int PREFIX_5_BITS = 0x1f;
+    private static final int PREFIX_6_BITS = 0x3f;
+    private static final int PREFIX_7_BITS = 0x7f;
+
+    static final Header[] STATIC_HEADER_TABLE = new Header[]{
+            new Header(Header.TARGET_AUTHORITY, ""),
+            new Header(Header.TARGET_METHOD, "GET"),
+            new Header(Header.TARGET_METHOD, "POST"),
+            new Header(Header.TARGET_PATH, "/"),
+            new Header(Header.TARGET_PATH, "/index.html"),
+            new Header(Header.TARGET_SCHEME, "http"),
+            new Header(Header.TARGET_SCHEME, "https"),
+            new Header(Header.RESPONSE_STATUS, "200"),
+            new Header(Header.RESPONSE_STATUS, "204"),
+            new Header(Header.RESPONSE_STATUS, "206"),
+            new Header(Header.RESPONSE_STATUS, "304"),
+            new Header(Header.RESPONSE_STATUS, "400"),
+            new Header(Header.RESPONSE_STATUS, "404"),
+            new Header(Header.RESPONSE_STATUS, "500"),
+            new Header("accept-charset", ""),
+            new Header("accept-encoding", "gzip, deflate"),
+            new Header("accept-language", ""),
+            new Header("accept-ranges", ""),
+            new Header("accept", ""),
+            new Header("access-control-allow-origin", ""),
+            new Header("age", ""),
+            new Header("allow", ""),
+            new Header("authorization", ""),
+            new Header("cache-control", ""),
+            new Header("content-disposition", ""),
+            new Header("content-encoding", ""),
+            new Header("content-language", ""),
+            new Header("content-length", ""),
+            new Header("content-location", ""),
+            new Header("content-range", ""),
+            new Header("content-type", ""),
+            new Header("cookie", ""),
+            new Header("date", ""),
+            new Header("etag", ""),
+            new Header("expect", ""),
+            new Header("expires", ""),
+            new Header("from", ""),
+            new Header("host", ""),
+            new Header("if-match", ""),
+            new Header("if-modified-since", ""),
+            new Header("if-none-match", ""),
+            new Header("if-range", ""),
+            new Header("if-unmodified-since", ""),
+            new Header("last-modified", ""),
+            new Header("link", ""),
+            new Header("location", ""),
+            new Header("max-forwards", ""),
+            new Header("proxy-authenticate", ""),
+            new Header("proxy-authorization", ""),
+            new Header("range", ""),
+            new Header("referer", ""),
+            new Header("refresh", ""),
+            new Header("retry-after", ""),
+            new Header("server", ""),
+            new Header("set-cookie", ""),
+            new Header("strict-transport-security", ""),
+            new Header("transfer-encoding", ""),
+            new Header("user-agent", ""),
+            new Header("vary", ""),
+            new Header("via", ""),
+            new Header("www-authenticate", "")
+    };
+
+    static final Map<String, Integer> NAME_TO_FIRST_INDEX = nameToFirstIndex();
+
+    static final int SETTINGS_HEADER_TABLE_SIZE = 4096;
+
+    /**
+     * The decoder has ultimate control of the maximum size of the dynamic table but we can choose
+     * to use less. We'll put a cap at 16K. This is arbitrary but should be enough for most purposes.
+     */
+    static final int SETTINGS_HEADER_TABLE_SIZE_LIMIT = 16384;
+
+    private Hpack() {
+    }
+
+    private static Map<String, Integer> nameToFirstIndex() {
+        Map<String, Integer> result = new LinkedHashMap<>(STATIC_HEADER_TABLE.length);
+        for (int i = 0; i < STATIC_HEADER_TABLE.length; i++) {
+            if (!result.containsKey(STATIC_HEADER_TABLE[i].name)) {
+                result.put(STATIC_HEADER_TABLE[i].name, i);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * An HTTP/2 response cannot contain uppercase header characters and must be treated as
+     * malformed.
+     */
+    static String checkLowercase(String name) throws IOException {
+        for (int i = 0, length = name.length(); i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                throw new IOException("PROTOCOL_ERROR response malformed: mixed case name: " + name);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * A FIFO of header entries, newest first, bounded by the HPACK size of its entries. Shared by
+     * the reader and writer, which each keep one mirroring the peer's.
+     */
+    static final class DynamicTable {
+        // Visible for testing.
+        final List<Header> entries = new ArrayList<>();
+        int dynamicTableByteCount = 0;
+        int maxDynamicTableByteCount;
+
+        DynamicTable(int maxDynamicTableByteCount) {
+            this.maxDynamicTableByteCount = maxDynamicTableByteCount;
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        /**
+         * Returns the entry at {@code index}, where 0 is the newest entry.
+         */
+        Header get(int index) {
+            return entries.get(index);
+        }
+
+        void setMaxByteCount(int maxByteCount) {
+            this.maxDynamicTableByteCount = maxByteCount;
+            evictToFit(0);
+        }
+
+        void add(Header entry) {
+            // if the new or replacement header is too big, drop all entries.
+            if (entry.hpackSize > maxDynamicTableByteCount) {
+                clear();
+                return;
+            }
+            evictToFit(entry.hpackSize);
+            entries.add(0, entry);
+            dynamicTableByteCount += entry.hpackSize;
+        }
+
+        void clear() {
+            entries.clear();
+            dynamicTableByteCount = 0;
+        }
+
+        private void evictToFit(int bytesToAdd) {
+            while (!entries.isEmpty() && dynamicTableByteCount + bytesToAdd > maxDynamicTableByteCount) {
+                Header evicted = entries.remove(entries.size() - 1);
+                dynamicTableByteCount -= evicted.hpackSize;
+            }
+        }
+    }
+
+    /**
+     * Reads HPACK v10 header blocks.
+     */
+    static final class Reader {
+        // Visible for testing.
+        final DynamicTable dynamicTable;
+        private final int headerTableSizeSetting;
+
+        private byte[] block;
+        private int pos;
+        private int limit;
+
+        Reader(int headerTableSizeSetting) {
+            this.headerTableSizeSetting = headerTableSizeSetting;
+            this.dynamicTable = new DynamicTable(headerTableSizeSetting);
+        }
+
+        /**
+         * Decodes a complete header block.
+         */
+        List<Header> readHeaders(byte[] block, int offset, int length) throws IOException {
+            this.block = block;
+            this.pos = offset;
+            this.limit = offset + length;
+            List<Header> headerList = new ArrayList<>();
+            try {
+                while (pos < limit) {
+                    int b = readByte();
+                    if (b == 0x80) { // 10000000
+                        throw new IOException("index == 0");
+                    } else if ((b & 0x80) == 0x80) { // 1NNNNNNN
+                        int index = readInt(b, PREFIX_7_BITS);
+                        headerList.add(indexedHeader(index - 1));
+                    } else if (b == 0x40) { // 01000000
+                        headerList.add(addToDynamicTable(new Header(readByteString(), readByteString())));
+                    } else if ((b & 0x40) == 0x40) {  // 01NNNNNN
+                        int nameIndex = readInt(b, PREFIX_6_BITS);
+                        byte[] name = indexedName(nameIndex - 1);
+                        headerList.add(addToDynamicTable(new Header(name, readByteString())));
+                    } else if ((b & 0x20) == 0x20) {  // 001NNNNN
+                        int maxByteCount = readInt(b, PREFIX_5_BITS);
+                        if (maxByteCount < 0 || maxByteCount > headerTableSizeSetting) {
+                            throw new IOException("Invalid dynamic table size update " + maxByteCount);
+                        }
+                        dynamicTable.setMaxByteCount(maxByteCount);
+                    } else if (b == 0x10 || b == 0) { // 000?0000 - Ignore never indexed bit.
+                        byte[] name = readByteString();
+                        checkLowercase(new String(name, Header.UTF_8));
+                        headerList.add(new Header(name, readByteString()));
+                    } else { // 000?NNNN - Ignore never indexed bit.
+                        int index = readInt(b, PREFIX_4_BITS);
+                        byte[] name = indexedName(index - 1);
+                        headerList.add(new Header(name, readByteString()));
+                    }
+                }
+            } finally {
+                this.block = null;
+            }
+            return headerList;
+        }
+
+        private Header indexedHeader(int index) throws IOException {
+            if (isStaticHeader(index)) {
+                return STATIC_HEADER_TABLE[index];
+            }
+            int dynamicIndex = index - STATIC_HEADER_TABLE.length;
+            if (dynamicIndex < 0 || dynamicIndex >= dynamicTable.size()) {
+                throw new IOException("Header index too large " + (index + 1));
+            }
+            return dynamicTable.get(dynamicIndex);
+        }
+
+        private byte[] indexedName(int index) throws IOException {
+            return indexedHeader(index).nameBytes;
+        }
+
+        private boolean isStaticHeader(int index) {
+            return index >= 0 && index <= STATIC_HEADER_TABLE.length - 1;
+        }
+
+        private Header addToDynamicTable(Header entry) {
+            dynamicTable.add(entry);
+            return entry;
+        }
+
+        private int readByte() throws IOException {
+            if (pos >= limit) throw new IOException("truncated header block");
+            return block[pos++] & 0xff;
+        }
+
+        int readInt(int firstByte, int prefixMask) throws IOException {
+            int prefix = firstByte & prefixMask;
+            if (prefix < prefixMask) {
+                return prefix; // This was a single byte value.
+            }
+
+            // This is a multibyte value. Read 7 bits at a time.
+            int result = prefixMask;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) throw new IOException("HPACK integer overflow");
+                int b = readByte();
+                if ((b & 0x80) != 0) { // Equivalent to (b >= 128) since b is in [0..255].
+                    result += (b & 0x7f) << shift;
+                } else {
+                    result += b << shift; // Last byte.
+                    break;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Reads a potentially Huffman encoded byte string.
+         */
+        byte[] readByteString() throws IOException {
+            int firstByte = readByte();
+            boolean huffmanDecode = (firstByte & 0x80) == 0x80; // 1NNNNNNN
+            int length = readInt(firstByte, PREFIX_7_BITS);
+            if (length < 0 || length > limit - pos) {
+                throw new IOException("truncated header block");
+            }
+
+            byte[] result;
+            if (huffmanDecode) {
+                result = Huffman.get().decode(block, pos, length);
+            } else {
+                result = new byte[length];
+                System.arraycopy(block, pos, result, 0, length);
+            }
+            pos += length;
+            return result;
+        }
+    }
+
+    /**
+     * Writes HPACK v10 header blocks. Headers are entered into the dynamic table so that repeated
+     * requests on a connection only send the index of each header they share with earlier ones.
+     */
+    static final class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        private final DynamicTable dynamicTable;
+
+        /**
+         * In the scenario where the dynamic table size changes multiple times between transmission
+         * of header blocks, we need to keep track of the smallest value in that interval.
+         */
+        private int smallestHeaderTableSizeSetting = Integer.MAX_VALUE;
+        private boolean emitDynamicTableSizeUpdate;
+
+        int headerTableSizeSetting;
+
+        Writer() {
+            this(SETTINGS_HEADER_TABLE_SIZE);
+        }
+
+        Writer(int headerTableSizeSetting) {
+            this.headerTableSizeSetting = headerTableSizeSetting;
+            this.dynamicTable = new DynamicTable(headerTableSizeSetting);
+        }
+
+        /**
+         * Returns the encoded header block for {@code headerBlock}.
+         */
+        byte[] writeHeaders(List<Header> headerBlock) {
+            out.reset();
+            if (emitDynamicTableSizeUpdate) {
+                if (smallestHeaderTableSizeSetting < dynamicTable.maxDynamicTableByteCount) {
+                    // Multiple dynamic table size updates!
+                    writeInt(smallestHeaderTableSizeSetting, PREFIX_5_BITS, 0x20);
+                }
+                emitDynamicTableSizeUpdate = false;
+                smallestHeaderTableSizeSetting = Integer.MAX_VALUE;
+                writeInt(dynamicTable.maxDynamicTableByteCount, PREFIX_5_BITS, 0x20);
+            }
+
+            for (int i = 0, size = headerBlock.size(); i < size; i++) {
+                Header header = headerBlock.get(i);
+                String name = header.name;
+                int headerIndex = -1;
+                int headerNameIndex = -1;
+
+                Integer staticIndex = NAME_TO_FIRST_INDEX.get(name);
+                if (staticIndex != null) {
+                    headerNameIndex = staticIndex + 1;
+                    if (headerNameIndex > 1 && headerNameIndex < 8) {
+                        // Only search a subset of the static header table. Most entries have an empty value, so
+                        // it's unnecessary to waste cycles looking at them. This check is built on the
+                        // observation that the header entries we care about are in adjacent pairs, and we
+                        // always know the first index of the pair.
+                        if (STATIC_HEADER_TABLE[headerNameIndex - 1].value.equals(header.value)) {
+                            headerIndex = headerNameIndex;
+                        } else if (STATIC_HEADER_TABLE[headerNameIndex].value.equals(header.value)) {
+                            headerIndex = headerNameIndex + 1;
+                        }
+                    }
+                }
+
+                if (headerIndex == -1) {
+                    for (int j = 0, count = dynamicTable.size(); j < count; j++) {
+                        Header entry = dynamicTable.get(j);
+                        if (entry.name.equals(name)) {
+                            if (entry.value.equals(header.value)) {
+                                headerIndex = j + 1 + STATIC_HEADER_TABLE.length;
+                                break;
+                            } else if (headerNameIndex == -1) {
+                                headerNameIndex = j + 1 + STATIC_HEADER_TABLE.length;
+                            }
+                        }
+                    }
+                }
+
+                if (headerIndex != -1) {
+                    // Indexed Header Field.
+                    writeInt(headerIndex, PREFIX_7_BITS, 0x80);
+                } else if (isSensitive(name)) {
+                    // Literal Header Field Never Indexed. Credentials must not land in a table that
+                    // an intermediary could probe.
+                    if (headerNameIndex == -1) {
+                        out.write(0x10);
+                        writeByteString(header.nameBytes);
+                    } else {
+                        writeInt(headerNameIndex, PREFIX_4_BITS, 0x10);
+                    }
+                    writeByteString(header.valueBytes);
+                } else if (headerNameIndex == -1) {
+                    // Literal Header Field with Incremental Indexing - New Name.
+                    out.write(0x40);
+                    writeByteString(header.nameBytes);
+                    writeByteString(header.valueBytes);
+                    dynamicTable.add(header);
+                } else {
+                    // Literal Header Field with Incremental Indexing - Indexed Name.
+                    writeInt(headerNameIndex, PREFIX_6_BITS, 0x40);
+                    writeByteString(header.valueBytes);
+                    dynamicTable.add(header);
+                }
+            }
+            return out.toByteArray();
+        }
+
+        private static boolean isSensitive(String name) {
+            return name.equals("authorization")
+                    || name.equals("proxy-authorization")
+                    || name.equals("cookie")
+                    || name.equals("set-cookie");
+        }
+
+        // http://tools.ietf.org/html/draft-ietf-httpbis-header-compression-12#section-4.1.1
+        void writeInt(int value, int prefixMask, int bits) {
+            // Write the raw value for a single byte value.
+            if (value < prefixMask) {
+                out.write(bits | value);
+                return;
+            }
+
+            // Write the mask to start a multibyte value.
+            out.write(bits | prefixMask);
+            value -= prefixMask;
+
+            // Write 7 bits at a time 'til we're done.
+            while (value >= 0x80) {
+                int b = value & 0x7f;
+                out.write(b | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        void writeByteString(byte[] data) {
+            if (Huffman.get().encodedLength(data) < data.length) {
+                ByteArrayOutputStream huffman = new ByteArrayOutputStream(data.length);
+                Huffman.get().encode(data, huffman);
+                writeInt(huffman.size(), PREFIX_7_BITS, 0x80);
+                out.write(huffman.toByteArray(), 0, huffman.size());
+            } else {
+                writeInt(data.length, PREFIX_7_BITS, 0);
+                out.write(data, 0, data.length);
+            }
+        }
+
+        void setHeaderTableSizeSetting(int headerTableSizeSetting) {
+            this.headerTableSizeSetting = headerTableSizeSetting;
+            int effectiveHeaderTableSize = Math.min(headerTableSizeSetting,
+                    SETTINGS_HEADER_TABLE_SIZE_LIMIT);
+
+            if (dynamicTable.maxDynamicTableByteCount == effectiveHeaderTableSize) return; // No change.
+
+            if (effectiveHeaderTableSize < dynamicTable.maxDynamicTableByteCount) {
+                smallestHeaderTableSizeSetting = Math.min(smallestHeaderTableSizeSetting,
+                        effectiveHeaderTableSize);
+            }
+            emitDynamicTableSizeUpdate = true;
+            dynamicTable.setMaxByteCount(effectiveHeaderTableSize);
+        }
+    }
+}
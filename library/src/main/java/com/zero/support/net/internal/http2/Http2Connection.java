@@ -0,0 +1,604 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import com.zero.support.net.internal.NamedRunnable;
+import com.zero.support.net.internal.Util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A socket connection to a remote peer. A connection hosts streams which can send and receive
+ * data.
+ *
+ * <p>Many methods in this API are <strong>synchronous:</strong> the call is completed before the
+ * method returns. This is typical for Java but atypical for HTTP/2. This is motivated by exception
+ * transparency: an IOException that was triggered by a certain caller can be caught and handled by
+ * that caller.
+ */
+public final class Http2Connection implements Closeable {
+
+    // Internal state of this connection is guarded by 'this'. No blocking
+    // operations may be performed while holding this lock!
+    //
+    // Socket writes are guarded by writer.
+    //
+    // Socket reads are unguarded but are only made by the reader thread.
+    //
+    // Certain operations (like SYN_STREAM) need to synchronize on both the
+    // writer (to do blocking I/O) and this (to create streams). Such
+    // operations must synchronize on 'this' last. This ensures that we never
+    // wait for a blocking operation while holding 'this'.
+    //
+    // A stream's lock may be held while taking 'this', never the other way around.
+
+    /**
+     * The receive window we advertise for each stream and for the connection as a whole. Large
+     * windows keep a fast sender from stalling on round trips for WINDOW_UPDATE frames.
+     */
+    static final int CLIENT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * True if this peer initiated the connection.
+     */
+    final boolean client;
+
+    /**
+     * User code to run in response to connection-level events. This is invoked on the reader
+     * thread.
+     */
+    final Listener listener;
+    final Map<Integer, Http2Stream> streams = new LinkedHashMap<>();
+    final String hostname;
+    int lastGoodStreamId;
+    int nextStreamId;
+    boolean shutdown;
+
+    /**
+     * Asynchronously writes frames to the outgoing socket.
+     */
+    private final ExecutorService writerExecutor;
+
+    /**
+     * Total number of bytes consumed by the application, but not yet acknowledged by sending a
+     * {@code WINDOW_UPDATE} frame on this connection.
+     */
+    // Visible for testing
+    long unacknowledgedBytesRead = 0;
+
+    /**
+     * Count of bytes that can be written on the connection before receiving a window update.
+     */
+    // Visible for testing
+    long bytesLeftInWriteWindow;
+
+    /**
+     * Settings we communicate to the peer.
+     */
+    final Settings localSettings = new Settings();
+
+    /**
+     * Settings we receive from the peer.
+     */
+    final Settings peerSettings = new Settings();
+
+    boolean receivedInitialPeerSettings = false;
+    final Socket socket;
+    final Http2Writer writer;
+
+    // Visible for testing
+    final ReaderRunnable readerRunnable;
+
+    public Http2Connection(Socket socket, InputStream source, OutputStream sink, String hostname,
+                           Listener listener) {
+        this.client = true;
+        this.socket = socket;
+        this.hostname = hostname;
+        this.listener = listener;
+        // http://tools.ietf.org/html/draft-ietf-httpbis-http2-17#section-5.1.1
+        this.nextStreamId = 1;
+
+        // Flow control was designed more for servers, or proxies than edge clients. If we are a
+        // client, set the flow control window to 16MiB. This avoids thrashing window updates every
+        // 64KiB, yet small enough to avoid blowing up the heap.
+        localSettings.set(Settings.ENABLE_PUSH, 0);
+        localSettings.set(Settings.INITIAL_WINDOW_SIZE, CLIENT_WINDOW_SIZE);
+
+        // Like newSingleThreadExecutor, except lazy creates the thread.
+        writerExecutor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                Util.threadFactory(Util.format("Net %s Writer", hostname), true));
+
+        bytesLeftInWriteWindow = peerSettings.getInitialWindowSize();
+        writer = new Http2Writer(sink);
+        readerRunnable = new ReaderRunnable(new Http2Reader(source));
+    }
+
+    /**
+     * Returns the number of {@link Http2Stream#isOpen() open streams} on this connection.
+     */
+    public synchronized int openStreamCount() {
+        return streams.size();
+    }
+
+    synchronized Http2Stream getStream(int id) {
+        return streams.get(id);
+    }
+
+    synchronized Http2Stream removeStream(int streamId) {
+        Http2Stream stream = streams.remove(streamId);
+        notifyAll(); // The removed stream may be blocked on a connection-wide window update.
+        return stream;
+    }
+
+    /**
+     * Returns the maximum number of concurrent streams the peer allows this connection to open.
+     */
+    public synchronized int maxConcurrentStreams() {
+        return peerSettings.getMaxConcurrentStreams(Integer.MAX_VALUE);
+    }
+
+    synchronized void updateConnectionFlowControl(long read) {
+        unacknowledgedBytesRead += read;
+        if (unacknowledgedBytesRead >= localSettings.getInitialWindowSize() / 2) {
+            writeWindowUpdateLater(0, unacknowledgedBytesRead);
+            unacknowledgedBytesRead = 0;
+        }
+    }
+
+    /**
+     * Returns a new locally-initiated stream.
+     *
+     * @param out true to create an output stream that we can use to send data to the remote peer.
+     * Corresponds to {@code FLAG_FIN}.
+     * @param weight the stream's priority weight between 1 and 256, or 0 to send no priority.
+     */
+    public Http2Stream newStream(List<Header> requestHeaders, boolean out, int weight)
+            throws IOException {
+        boolean outFinished = !out;
+        boolean inFinished = false;
+        boolean flushHeaders;
+        Http2Stream stream;
+        int streamId;
+
+        synchronized (writer) {
+            synchronized (this) {
+                if (nextStreamId > Integer.MAX_VALUE / 2) {
+                    shutdown(ErrorCode.REFUSED_STREAM);
+                }
+                if (shutdown) {
+                    throw new ConnectionShutdownException();
+                }
+                streamId = nextStreamId;
+                nextStreamId += 2;
+                stream = new Http2Stream(streamId, this, outFinished, inFinished, null);
+                flushHeaders = !out || bytesLeftInWriteWindow == 0L
+                        || stream.bytesLeftInWriteWindow == 0L;
+                if (stream.isOpen()) {
+                    streams.put(streamId, stream);
+                }
+            }
+            writer.headers(outFinished, streamId, weight, requestHeaders);
+        }
+
+        if (flushHeaders) {
+            writer.flush();
+        }
+
+        return stream;
+    }
+
+    /**
+     * Callers of this method are not thread safe, and sometimes on application threads. Most often,
+     * this method will be called to send a buffer worth of data to the peer.
+     *
+     * <p>Writes are subject to the write window of the stream and the connection. Until there is a
+     * window sufficient to send {@code byteCount}, the caller will block. For example, a user of
+     * {@code HttpURLConnection} who flushes more bytes to the output stream than the connection's
+     * write window will block.
+     *
+     * <p>Zero {@code byteCount} writes are not subject to flow control and will not block. The only
+     * use case for zero {@code byteCount} is closing a flushed output stream.
+     */
+    void writeData(int streamId, boolean outFinished, byte[] buffer, int offset, int byteCount)
+            throws IOException {
+        if (byteCount == 0) { // Empty data frames are not flow-controlled.
+            writer.data(outFinished, streamId, buffer, offset, 0);
+            return;
+        }
+
+        while (byteCount > 0) {
+            int toWrite;
+            synchronized (Http2Connection.this) {
+                try {
+                    while (bytesLeftInWriteWindow <= 0) {
+                        // Before blocking, confirm that the stream we're writing is still open. It's possible
+                        // that the stream has since been closed (such as if this write timed out.)
+                        if (!streams.containsKey(streamId)) {
+                            throw new IOException("stream closed");
+                        }
+                        Http2Connection.this.wait(); // Wait until we receive a WINDOW_UPDATE.
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // Retain interrupted status.
+                    throw new InterruptedIOException();
+                }
+
+                toWrite = (int) Math.min(byteCount, bytesLeftInWriteWindow);
+                toWrite = Math.min(toWrite, writer.maxDataLength());
+                bytesLeftInWriteWindow -= toWrite;
+            }
+
+            byteCount -= toWrite;
+            writer.data(outFinished && byteCount == 0, streamId, buffer, offset, toWrite);
+            offset += toWrite;
+        }
+    }
+
+    void writeSynResetLater(final int streamId, final ErrorCode errorCode) {
+        try {
+            writerExecutor.execute(new NamedRunnable("Net %s stream %d", hostname, streamId) {
+                @Override
+                protected void execute() {
+                    try {
+                        writeSynReset(streamId, errorCode);
+                    } catch (IOException e) {
+                        failConnection();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // This connection has been closed.
+        }
+    }
+
+    void writeSynReset(int streamId, ErrorCode statusCode) throws IOException {
+        writer.rstStream(streamId, statusCode);
+    }
+
+    void writeWindowUpdateLater(final int streamId, final long unacknowledgedBytesRead) {
+        try {
+            writerExecutor.execute(
+                    new NamedRunnable("Net Window Update %s stream %d", hostname, streamId) {
+                        @Override
+                        protected void execute() {
+                            try {
+                                writer.windowUpdate(streamId, unacknowledgedBytesRead);
+                            } catch (IOException e) {
+                                failConnection();
+                            }
+                        }
+                    });
+        } catch (RejectedExecutionException ignored) {
+            // This connection has been closed.
+        }
+    }
+
+    void writePingLater(final boolean reply, final int payload1, final int payload2) {
+        try {
+            writerExecutor.execute(new NamedRunnable("Net %s ping %08x%08x", hostname, payload1, payload2) {
+                @Override
+                protected void execute() {
+                    try {
+                        writer.ping(reply, payload1, payload2);
+                    } catch (IOException e) {
+                        failConnection();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // This connection has been closed.
+        }
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Degrades this connection such that new streams can neither be created locally, nor accepted
+     * from the remote peer. Existing streams are not impacted. This is intended to permit an
+     * endpoint to gracefully stop accepting new requests without harming previously established
+     * streams.
+     */
+    public void shutdown(ErrorCode statusCode) throws IOException {
+        synchronized (writer) {
+            int lastGoodStreamId;
+            synchronized (this) {
+                if (shutdown) {
+                    return;
+                }
+                shutdown = true;
+                lastGoodStreamId = this.lastGoodStreamId;
+            }
+            // The error code says all the peer needs; no debug data is sent.
+            writer.goAway(lastGoodStreamId, statusCode);
+        }
+    }
+
+    /**
+     * Closes this connection. This cancels all open streams and unanswered pings. It closes the
+     * underlying input and output streams and shuts down internal executor services.
+     */
+    @Override
+    public void close() throws IOException {
+        close(ErrorCode.NO_ERROR, ErrorCode.CANCEL);
+    }
+
+    void close(ErrorCode connectionCode, ErrorCode streamCode) throws IOException {
+        IOException thrown = null;
+        try {
+            shutdown(connectionCode);
+        } catch (IOException e) {
+            thrown = e;
+        }
+
+        Http2Stream[] streamsToClose = null;
+        synchronized (this) {
+            shutdown = true; // Even if the GOAWAY couldn't be written.
+            notifyAll(); // Wake writers blocked on the connection window.
+            if (!streams.isEmpty()) {
+                streamsToClose = streams.values().toArray(new Http2Stream[streams.size()]);
+                streams.clear();
+            }
+        }
+
+        if (streamsToClose != null) {
+            for (Http2Stream stream : streamsToClose) {
+                stream.receiveRstStream(streamCode);
+            }
+        }
+
+        // Close the writer so late frames fail fast rather than landing on a dead socket.
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (thrown == null) thrown = e;
+        }
+
+        // Close the socket to break out the reader thread, which will clean up after itself.
+        try {
+            socket.close();
+        } catch (IOException e) {
+            thrown = e;
+        }
+
+        // Release the threads.
+        writerExecutor.shutdown();
+
+        if (thrown != null) throw thrown;
+    }
+
+    private void failConnection() {
+        try {
+            close(ErrorCode.PROTOCOL_ERROR, ErrorCode.PROTOCOL_ERROR);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Sends any initial frames and starts reading frames from the remote peer. This should be
+     * called after {@link #Http2Connection} is constructed and before any streams are created.
+     */
+    public void start() throws IOException {
+        writer.connectionPreface();
+        writer.settings(localSettings);
+        int windowSize = localSettings.getInitialWindowSize();
+        if (windowSize != Settings.DEFAULT_INITIAL_WINDOW_SIZE) {
+            writer.windowUpdate(0, windowSize - Settings.DEFAULT_INITIAL_WINDOW_SIZE);
+        }
+        Thread thread = new Thread(readerRunnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Methods in this class must not lock FrameWriter. If a method needs to write a frame, create an
+     * async task to do so.
+     */
+    class ReaderRunnable extends NamedRunnable implements Http2Reader.Handler {
+        final Http2Reader reader;
+
+        ReaderRunnable(Http2Reader reader) {
+            super("Net %s", hostname);
+            this.reader = reader;
+        }
+
+        @Override
+        protected void execute() {
+            ErrorCode connectionErrorCode = ErrorCode.INTERNAL_ERROR;
+            ErrorCode streamErrorCode = ErrorCode.INTERNAL_ERROR;
+            try {
+                reader.readConnectionPreface(this);
+                while (reader.nextFrame(false, this)) {
+                }
+                connectionErrorCode = ErrorCode.NO_ERROR;
+                streamErrorCode = ErrorCode.CANCEL;
+            } catch (IOException e) {
+                connectionErrorCode = ErrorCode.PROTOCOL_ERROR;
+                streamErrorCode = ErrorCode.PROTOCOL_ERROR;
+            } finally {
+                try {
+                    close(connectionErrorCode, streamErrorCode);
+                } catch (IOException ignored) {
+                }
+                Util.closeQuietly(reader);
+            }
+        }
+
+        @Override
+        public void data(boolean inFinished, int streamId, byte[] data, int offset, int length,
+                         int frameLength) throws IOException {
+            Http2Stream dataStream = getStream(streamId);
+            if (dataStream == null) {
+                writeSynResetLater(streamId, ErrorCode.PROTOCOL_ERROR);
+                updateConnectionFlowControl(frameLength);
+                return;
+            }
+            // Padding is never handed to the stream, so it is acknowledged right away.
+            if (frameLength > length) {
+                updateConnectionFlowControl(frameLength - length);
+            }
+            dataStream.receiveData(data, offset, length, frameLength - length, inFinished);
+        }
+
+        @Override
+        public void headers(boolean inFinished, int streamId, List<Header> headerBlock) {
+            Http2Stream stream;
+            synchronized (Http2Connection.this) {
+                stream = getStream(streamId);
+
+                if (stream == null) {
+                    // If we're shutdown, don't bother with this stream.
+                    if (shutdown) return;
+
+                    // If the stream ID is less than the last created ID, assume it's already closed.
+                    if (streamId <= lastGoodStreamId) return;
+
+                    // If the stream ID is in the client's namespace, assume it's already closed.
+                    if (streamId % 2 == nextStreamId % 2) return;
+
+                    // We don't accept server-initiated streams.
+                    writeSynResetLater(streamId, ErrorCode.PROTOCOL_ERROR);
+                    return;
+                }
+            }
+
+            // Update an existing stream.
+            stream.receiveHeaders(headerBlock, inFinished);
+        }
+
+        @Override
+        public void rstStream(int streamId, ErrorCode errorCode) {
+            Http2Stream rstStream = removeStream(streamId);
+            if (rstStream != null) {
+                rstStream.receiveRstStream(errorCode);
+            }
+        }
+
+        @Override
+        public void settings(boolean clearPrevious, Settings newSettings) {
+            long delta = 0;
+            Http2Stream[] streamsToNotify = null;
+            synchronized (writer) {
+                synchronized (Http2Connection.this) {
+                    receivedInitialPeerSettings = true;
+                    int priorWriteWindowSize = peerSettings.getInitialWindowSize();
+                    if (clearPrevious) peerSettings.clear();
+                    peerSettings.merge(newSettings);
+                    int peerInitialWindowSize = peerSettings.getInitialWindowSize();
+                    if (peerInitialWindowSize != priorWriteWindowSize) {
+                        delta = peerInitialWindowSize - priorWriteWindowSize;
+                        if (!streams.isEmpty()) {
+                            streamsToNotify = streams.values().toArray(new Http2Stream[streams.size()]);
+                        }
+                    }
+                }
+                try {
+                    writer.applyAndAckSettings(peerSettings);
+                } catch (IOException e) {
+                    failConnection();
+                }
+            }
+            if (streamsToNotify != null) {
+                for (Http2Stream stream : streamsToNotify) {
+                    stream.addBytesToWriteWindow(delta);
+                }
+            }
+            listener.onSettings(Http2Connection.this);
+        }
+
+        @Override
+        public void ackSettings() {
+            // Nothing to do: no SETTINGS_TIMEOUT is enforced. A peer that never acknowledges our
+            // settings is left to the streams' read timeouts.
+        }
+
+        @Override
+        public void ping(boolean reply, int payload1, int payload2) {
+            if (!reply) {
+                // Send a reply to a client ping if this is a server and vice versa.
+                writePingLater(true, payload1, payload2);
+            }
+        }
+
+        @Override
+        public void goAway(int lastGoodStreamId, ErrorCode errorCode) {
+            // Copy the streams first. We don't want to hold a lock when we call receiveRstStream().
+            Http2Stream[] streamsCopy;
+            synchronized (Http2Connection.this) {
+                streamsCopy = streams.values().toArray(new Http2Stream[streams.size()]);
+                shutdown = true;
+            }
+
+            // Fail all streams created after the last good stream ID.
+            for (Http2Stream http2Stream : streamsCopy) {
+                if (http2Stream.getId() > lastGoodStreamId && http2Stream.isLocallyInitiated()) {
+                    http2Stream.receiveRstStream(ErrorCode.REFUSED_STREAM);
+                    removeStream(http2Stream.getId());
+                }
+            }
+        }
+
+        @Override
+        public void windowUpdate(int streamId, long windowSizeIncrement) {
+            if (streamId == 0) {
+                synchronized (Http2Connection.this) {
+                    bytesLeftInWriteWindow += windowSizeIncrement;
+                    Http2Connection.this.notifyAll();
+                }
+            } else {
+                Http2Stream stream = getStream(streamId);
+                if (stream != null) {
+                    stream.addBytesToWriteWindow(windowSizeIncrement);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listener of connection-level events. Invoked on the reader thread.
+     */
+    public interface Listener {
+        /**
+         * Notification that the connection's peer's settings may have changed. Implementations should
+         * take appropriate action to handle the updated settings.
+         *
+         * <p>It is the implementation's responsibility to handle concurrent calls to this method. A
+         * remote peer that sends multiple settings frames will trigger multiple calls to this method,
+         * and those calls are not necessarily serialized.
+         */
+        void onSettings(Http2Connection connection);
+    }
+}
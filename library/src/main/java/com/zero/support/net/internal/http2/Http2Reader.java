@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.zero.support.net.internal.http2.Http2.CONNECTION_PREFACE;
+import static com.zero.support.net.internal.http2.Http2.FLAG_ACK;
+import static com.zero.support.net.internal.http2.Http2.FLAG_END_HEADERS;
+import static com.zero.support.net.internal.http2.Http2.FLAG_END_STREAM;
+import static com.zero.support.net.internal.http2.Http2.FLAG_PADDED;
+import static com.zero.support.net.internal.http2.Http2.FLAG_PRIORITY;
+import static com.zero.support.net.internal.http2.Http2.INITIAL_MAX_FRAME_SIZE;
+import static com.zero.support.net.internal.http2.Http2.TYPE_CONTINUATION;
+import static com.zero.support.net.internal.http2.Http2.TYPE_DATA;
+import static com.zero.support.net.internal.http2.Http2.TYPE_GOAWAY;
+import static com.zero.support.net.internal.http2.Http2.TYPE_HEADERS;
+import static com.zero.support.net.internal.http2.Http2.TYPE_PING;
+import static com.zero.support.net.internal.http2.Http2.TYPE_PRIORITY;
+import static com.zero.support.net.internal.http2.Http2.TYPE_PUSH_PROMISE;
+import static com.zero.support.net.internal.http2.Http2.TYPE_RST_STREAM;
+import static com.zero.support.net.internal.http2.Http2.TYPE_SETTINGS;
+import static com.zero.support.net.internal.http2.Http2.TYPE_WINDOW_UPDATE;
+import static com.zero.support.net.internal.http2.Http2.ioException;
+
+/**
+ * Reads HTTP/2 transport frames.
+ *
+ * <p>This implementation assumes we do not send an increased {@link Settings#getMaxFrameSize frame
+ * size setting} to the peer. Hence, we expect all frames to have a max length of {@link
+ * Http2#INITIAL_MAX_FRAME_SIZE}.
+ */
+final class Http2Reader implements Closeable {
+    private final InputStream source;
+    private final byte[] frameHeader = new byte[9];
+    private byte[] payload = new byte[INITIAL_MAX_FRAME_SIZE];
+    final Hpack.Reader hpackReader;
+
+    Http2Reader(InputStream source) {
+        this.source = source;
+        this.hpackReader = new Hpack.Reader(Hpack.SETTINGS_HEADER_TABLE_SIZE);
+    }
+
+    /**
+     * Reads and verifies the server connection preface, which must begin with a SETTINGS frame.
+     */
+    void readConnectionPreface(Handler handler) throws IOException {
+        if (!nextFrame(true, handler)) {
+            throw ioException("Required SETTINGS preface not received");
+        }
+    }
+
+    /**
+     * Reads the client connection preface. Only used by peers acting as a server.
+     */
+    void readClientPreface() throws IOException {
+        byte[] preface = new byte[CONNECTION_PREFACE.length];
+        readFully(preface, 0, preface.length);
+        if (!Arrays.equals(preface, CONNECTION_PREFACE)) {
+            throw ioException("Expected a connection header but was %s", new String(preface, Header.UTF_8));
+        }
+    }
+
+    boolean nextFrame(boolean requireSettings, Handler handler) throws IOException {
+        try {
+            readFully(frameHeader, 0, 9); // Frame header size.
+        } catch (EOFException e) {
+            return false; // This might be a normal socket close.
+        }
+
+        //  0                   1                   2                   3
+        //  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+        // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+        // |                 Length (24)                   |
+        // +---------------+---------------+---------------+
+        // |   Type (8)    |   Flags (8)   |
+        // +-+-+-----------+---------------+-------------------------------+
+        // |R|                 Stream Identifier (31)                      |
+        // +=+=============================================================+
+        // |                   Frame Payload (0...)                      ...
+        // +---------------------------------------------------------------+
+        int length = (frameHeader[0] & 0xff) << 16 | (frameHeader[1] & 0xff) << 8 | (frameHeader[2] & 0xff);
+        if (length < 0 || length > INITIAL_MAX_FRAME_SIZE) {
+            throw ioException("FRAME_SIZE_ERROR: %s", length);
+        }
+        byte type = frameHeader[3];
+        if (requireSettings && type != TYPE_SETTINGS) {
+            throw ioException("Expected a SETTINGS frame but was %s", type);
+        }
+        byte flags = frameHeader[4];
+        int streamId = readInt(frameHeader, 5) & 0x7fffffff; // Ignore reserved bit.
+        readFully(payload, 0, length);
+
+        switch (type) {
+            case TYPE_DATA:
+                readData(handler, length, flags, streamId);
+                break;
+
+            case TYPE_HEADERS:
+                readHeaders(handler, length, flags, streamId);
+                break;
+
+            case TYPE_PRIORITY:
+                readPriority(length, streamId);
+                break;
+
+            case TYPE_RST_STREAM:
+                readRstStream(handler, length, streamId);
+                break;
+
+            case TYPE_SETTINGS:
+                readSettings(handler, length, flags, streamId);
+                break;
+
+            case TYPE_PUSH_PROMISE:
+                // We advertise ENABLE_PUSH=0, so a compliant peer never sends this.
+                throw ioException("PROTOCOL_ERROR: unexpected PUSH_PROMISE");
+
+            case TYPE_PING:
+                readPing(handler, length, flags, streamId);
+                break;
+
+            case TYPE_GOAWAY:
+                readGoAway(handler, length, streamId);
+                break;
+
+            case TYPE_WINDOW_UPDATE:
+                readWindowUpdate(handler, length, streamId);
+                break;
+
+            default:
+                // Implementations MUST discard frames that have unknown or unsupported types.
+                break;
+        }
+        return true;
+    }
+
+    private void readHeaders(Handler handler, int length, byte flags, int streamId)
+            throws IOException {
+        if (streamId == 0) throw ioException("PROTOCOL_ERROR: TYPE_HEADERS streamId == 0");
+
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+
+        int offset = 0;
+        int padding = (flags & FLAG_PADDED) != 0 ? payload[offset++] & 0xff : 0;
+
+        if ((flags & FLAG_PRIORITY) != 0) {
+            offset += 5; // Stream dependency and weight. We don't prioritize the peer's streams.
+            length -= 5;
+        }
+        length = lengthWithoutPadding(length, flags, padding);
+
+        List<Header> headerBlock = readHeaderBlock(offset, length, flags, streamId);
+
+        handler.headers(endStream, streamId, headerBlock);
+    }
+
+    /**
+     * Reads a header block, following CONTINUATION frames until END_HEADERS. The block must be
+     * decoded as a whole because HPACK state spans frame boundaries.
+     */
+    private List<Header> readHeaderBlock(int offset, int length, byte flags, int streamId)
+            throws IOException {
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            return hpackReader.readHeaders(payload, offset, length);
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(length * 2);
+        block.write(payload, offset, length);
+        while (true) {
+            readFully(frameHeader, 0, 9);
+            int continuationLength = (frameHeader[0] & 0xff) << 16
+                    | (frameHeader[1] & 0xff) << 8 | (frameHeader[2] & 0xff);
+            byte type = frameHeader[3];
+            byte continuationFlags = frameHeader[4];
+            int continuationStreamId = readInt(frameHeader, 5) & 0x7fffffff;
+            if (type != TYPE_CONTINUATION) throw ioException("%s != TYPE_CONTINUATION", type);
+            if (continuationStreamId != streamId) throw ioException("TYPE_CONTINUATION streamId changed");
+            if (continuationLength > INITIAL_MAX_FRAME_SIZE) {
+                throw ioException("FRAME_SIZE_ERROR: %s", continuationLength);
+            }
+            readFully(payload, 0, continuationLength);
+            block.write(payload, 0, continuationLength);
+            if ((continuationFlags & FLAG_END_HEADERS) != 0) break;
+        }
+        byte[] bytes = block.toByteArray();
+        return hpackReader.readHeaders(bytes, 0, bytes.length);
+    }
+
+    private void readData(Handler handler, int length, byte flags, int streamId)
+            throws IOException {
+        if (streamId == 0) throw ioException("PROTOCOL_ERROR: TYPE_DATA streamId == 0");
+
+        boolean inFinished = (flags & FLAG_END_STREAM) != 0;
+
+        int offset = 0;
+        int padding = (flags & FLAG_PADDED) != 0 ? payload[offset++] & 0xff : 0;
+        int dataLength = lengthWithoutPadding(length, flags, padding);
+
+        // Padding counts against flow control, so the handler is told the full frame length.
+        handler.data(inFinished, streamId, payload, offset, dataLength, length);
+    }
+
+    private void readPriority(int length, int streamId) throws IOException {
+        if (length != 5) throw ioException("TYPE_PRIORITY length: %d != 5", length);
+        if (streamId == 0) throw ioException("TYPE_PRIORITY streamId == 0");
+    }
+
+    private void readRstStream(Handler handler, int length, int streamId) throws IOException {
+        if (length != 4) throw ioException("TYPE_RST_STREAM length: %d != 4", length);
+        if (streamId == 0) throw ioException("TYPE_RST_STREAM streamId == 0");
+        int errorCodeInt = readInt(payload, 0);
+        ErrorCode errorCode = ErrorCode.fromHttp2(errorCodeInt);
+        if (errorCode == null) {
+            throw ioException("TYPE_RST_STREAM unexpected error code: %d", errorCodeInt);
+        }
+        handler.rstStream(streamId, errorCode);
+    }
+
+    private void readSettings(Handler handler, int length, byte flags, int streamId)
+            throws IOException {
+        if (streamId != 0) throw ioException("TYPE_SETTINGS streamId != 0");
+        if ((flags & FLAG_ACK) != 0) {
+            if (length != 0) throw ioException("FRAME_SIZE_ERROR ack frame should be empty!");
+            handler.ackSettings();
+            return;
+        }
+
+        if (length % 6 != 0) throw ioException("TYPE_SETTINGS length %% 6 != 0: %s", length);
+        Settings settings = new Settings();
+        for (int i = 0; i < length; i += 6) {
+            int id = ((payload[i] & 0xff) << 8) | (payload[i + 1] & 0xff);
+            int value = readInt(payload, i + 2);
+
+            switch (id) {
+                case 1: // SETTINGS_HEADER_TABLE_SIZE
+                    break;
+                case 2: // SETTINGS_ENABLE_PUSH
+                    if (value != 0 && value != 1) {
+                        throw ioException("PROTOCOL_ERROR SETTINGS_ENABLE_PUSH != 0 or 1");
+                    }
+                    break;
+                case 3: // SETTINGS_MAX_CONCURRENT_STREAMS
+                    break;
+                case 4: // SETTINGS_INITIAL_WINDOW_SIZE
+                    if (value < 0) {
+                        throw ioException("PROTOCOL_ERROR SETTINGS_INITIAL_WINDOW_SIZE > 2^31 - 1");
+                    }
+                    break;
+                case 5: // SETTINGS_MAX_FRAME_SIZE
+                    if (value < INITIAL_MAX_FRAME_SIZE || value > 16777215) {
+                        throw ioException("PROTOCOL_ERROR SETTINGS_MAX_FRAME_SIZE: %s", value);
+                    }
+                    break;
+                case 6: // SETTINGS_MAX_HEADER_LIST_SIZE
+                    break; // Advisory only, so ignored.
+                default:
+                    break; // Must ignore setting with unknown id.
+            }
+            settings.set(id, value);
+        }
+        handler.settings(false, settings);
+    }
+
+    private void readPing(Handler handler, int length, byte flags, int streamId)
+            throws IOException {
+        if (length != 8) throw ioException("TYPE_PING length != 8: %s", length);
+        if (streamId != 0) throw ioException("TYPE_PING streamId != 0");
+        int payload1 = readInt(payload, 0);
+        int payload2 = readInt(payload, 4);
+        boolean ack = (flags & FLAG_ACK) != 0;
+        handler.ping(ack, payload1, payload2);
+    }
+
+    private void readGoAway(Handler handler, int length, int streamId) throws IOException {
+        if (length < 8) throw ioException("TYPE_GOAWAY length < 8: %s", length);
+        if (streamId != 0) throw ioException("TYPE_GOAWAY streamId != 0");
+        int lastStreamId = readInt(payload, 0) & 0x7fffffff;
+        int errorCodeInt = readInt(payload, 4);
+        ErrorCode errorCode = ErrorCode.fromHttp2(errorCodeInt);
+        if (errorCode == null) {
+            throw ioException("TYPE_GOAWAY unexpected error code: %d", errorCodeInt);
+        }
+        handler.goAway(lastStreamId, errorCode);
+    }
+
+    private void readWindowUpdate(Handler handler, int length, int streamId)
+            throws IOException {
+        if (length != 4) throw ioException("TYPE_WINDOW_UPDATE length !=4: %s", length);
+        long increment = readInt(payload, 0) & 0x7fffffffL;
+        if (increment == 0) throw ioException("windowSizeIncrement was 0", increment);
+        handler.windowUpdate(streamId, increment);
+    }
+
+    private void readFully(byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0) {
+            int read = source.read(buffer, offset, count);
+            if (read == -1) throw new EOFException();
+            offset += read;
+            count -= read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24
+                | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8
+                | (data[offset + 3] & 0xff);
+    }
+
+    static int lengthWithoutPadding(int length, byte flags, int padding)
+            throws IOException {
+        if ((flags & FLAG_PADDED) != 0) length--; // Account for reading the padding length.
+        if (length < 0 || padding > length) {
+            throw ioException("PROTOCOL_ERROR padding %s > remaining length %s", padding, length);
+        }
+        return length - padding;
+    }
+
+    interface Handler {
+        /**
+         * Called for each DATA frame. The bytes are only valid until this method returns.
+         * {@code frameLength} includes padding, which counts against flow control.
+         */
+        void data(boolean inFinished, int streamId, byte[] data, int offset, int length,
+                  int frameLength) throws IOException;
+
+        /**
+         * Create or update incoming headers, creating the corresponding streams if necessary.
+         */
+        void headers(boolean inFinished, int streamId, List<Header> headerBlock);
+
+        void rstStream(int streamId, ErrorCode errorCode);
+
+        void settings(boolean clearPrevious, Settings settings);
+
+        /**
+         * HTTP/2 only.
+         */
+        void ackSettings();
+
+        /**
+         * Read a connection-level ping from the peer. {@code ack} indicates this is a reply.
+         */
+        void ping(boolean ack, int payload1, int payload2);
+
+        /**
+         * The peer tells us to stop creating streams. It is safe to replay streams with {@code ID >
+         * lastGoodStreamId} on a new connection. In- flight streams with {@code ID <=
+         * lastGoodStreamId} can only be replayed on a new connection if they are idempotent.
+         */
+        void goAway(int lastGoodStreamId, ErrorCode errorCode);
+
+        /**
+         * Notifies that an additional {@code windowSizeIncrement} bytes can be sent on {@code
+         * streamId}, or the connection if {@code streamId} is zero.
+         */
+        void windowUpdate(int streamId, long windowSizeIncrement);
+    }
+}
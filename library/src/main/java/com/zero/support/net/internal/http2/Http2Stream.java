@@ -0,0 +1,581 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A logical bidirectional stream.
+ */
+public final class Http2Stream {
+    // Internal state is guarded by this. No long-running or potentially
+    // blocking operations are performed while the lock is held.
+
+    /**
+     * The total number of bytes consumed by the application (with {@link FramingSource#read}), but
+     * not yet acknowledged by sending a {@code WINDOW_UPDATE} frame on this stream.
+     */
+    // Visible for testing
+    long unacknowledgedBytesRead = 0;
+
+    /**
+     * Count of bytes that can be written on the stream before receiving a window update. Even if
+     * this is positive, writes will block until there available bytes in {@code
+     * connection.bytesLeftInWriteWindow}.
+     */
+    // guarded by this
+    long bytesLeftInWriteWindow;
+
+    final int id;
+    final Http2Connection connection;
+
+    /**
+     * Received headers yet to be {@linkplain #takeHeaders taken}.
+     */
+    private final Deque<List<Header>> headersQueue = new ArrayDeque<>();
+
+    private final FramingSource source;
+    final FramingSink sink;
+
+    private long readTimeoutMillis;
+    private long writeTimeoutMillis;
+
+    /**
+     * The reason why this stream was abnormally closed. If there are multiple reasons to abnormally
+     * close this stream (such as both peers closing it near-simultaneously) then this is the first
+     * reason known to this peer.
+     */
+    ErrorCode errorCode = null;
+
+    Http2Stream(int id, Http2Connection connection, boolean outFinished, boolean inFinished,
+                List<Header> headers) {
+        if (connection == null) throw new NullPointerException("connection == null");
+
+        this.id = id;
+        this.connection = connection;
+        this.bytesLeftInWriteWindow =
+                connection.peerSettings.getInitialWindowSize();
+        this.source = new FramingSource(connection.localSettings.getInitialWindowSize());
+        this.sink = new FramingSink();
+        this.source.finished = inFinished;
+        this.sink.finished = outFinished;
+
+        if (headers != null && !isLocallyInitiated()) {
+            headersQueue.add(headers);
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns true if this stream is open. A stream is open until either:
+     *
+     * <ul>
+     *     <li>A {@code SYN_RESET} frame abnormally terminates the stream.
+     *     <li>Both input and output streams have transmitted all data and headers.
+     * </ul>
+     *
+     * <p>Note that the input stream may continue to yield data even after a stream reports itself
+     * as not open. This is because input data is buffered.
+     */
+    public synchronized boolean isOpen() {
+        if (errorCode != null) {
+            return false;
+        }
+        if ((source.finished || source.closed)
+                && (sink.finished || sink.closed)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if this stream was created by this peer.
+     */
+    public boolean isLocallyInitiated() {
+        boolean streamIsClient = ((id & 1) == 1);
+        return connection.client == streamIsClient;
+    }
+
+    public Http2Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Sets how long {@link #takeHeaders} and reads of the response body wait for the peer. Zero
+     * waits indefinitely.
+     */
+    public void readTimeout(long timeoutMillis) {
+        this.readTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets how long writes of the request body wait for flow-control credit from the peer. Zero
+     * waits indefinitely.
+     */
+    public void writeTimeout(long timeoutMillis) {
+        this.writeTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Removes and returns the next block of headers received on this stream, blocking if necessary
+     * until headers have been received.
+     */
+    public synchronized List<Header> takeHeaders() throws IOException {
+        long deadlineNanos = deadlineNanos(readTimeoutMillis);
+        while (headersQueue.isEmpty() && errorCode == null) {
+            waitForIo(deadlineNanos);
+        }
+        if (!headersQueue.isEmpty()) {
+            return headersQueue.removeFirst();
+        }
+        throw new StreamResetException(errorCode);
+    }
+
+    /**
+     * Returns the reason why this stream was closed, or null if it closed normally or has not yet
+     * been closed.
+     */
+    public synchronized ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public InputStream getSource() {
+        return source;
+    }
+
+    /**
+     * Returns an output stream that can be used to write data to the peer.
+     */
+    public OutputStream getSink() {
+        return sink;
+    }
+
+    /**
+     * Abnormally terminate this stream. This blocks until the {@code RST_STREAM} frame has been
+     * transmitted.
+     */
+    public void close(ErrorCode rstStatusCode) throws IOException {
+        if (!closeInternal(rstStatusCode)) {
+            return; // Already closed.
+        }
+        connection.writeSynReset(id, rstStatusCode);
+    }
+
+    /**
+     * Abnormally terminate this stream. This enqueues a {@code RST_STREAM} frame and returns
+     * immediately.
+     */
+    public void closeLater(ErrorCode errorCode) {
+        if (!closeInternal(errorCode)) {
+            return; // Already closed.
+        }
+        connection.writeSynResetLater(id, errorCode);
+    }
+
+    /**
+     * Returns true if this stream was closed.
+     */
+    private boolean closeInternal(ErrorCode errorCode) {
+        synchronized (this) {
+            if (this.errorCode != null) {
+                return false;
+            }
+            if (source.finished && sink.finished) {
+                return false;
+            }
+            this.errorCode = errorCode;
+            notifyAll();
+        }
+        connection.removeStream(id);
+        return true;
+    }
+
+    /**
+     * Accept headers from the network and store them until the client calls {@link #takeHeaders}.
+     */
+    void receiveHeaders(List<Header> headers, boolean inFinished) {
+        boolean open;
+        synchronized (this) {
+            headersQueue.add(headers);
+            if (inFinished) {
+                this.source.finished = true;
+            }
+            open = isOpen();
+            notifyAll();
+        }
+        if (!open) {
+            connection.removeStream(id);
+        }
+    }
+
+    /**
+     * Accepts a DATA frame's payload. {@code padding} bytes of the frame were discarded by the
+     * reader; they still count against flow control, so they are acknowledged with the next read.
+     */
+    void receiveData(byte[] data, int offset, int length, int padding, boolean inFinished)
+            throws IOException {
+        if (padding > 0) {
+            synchronized (this) {
+                unacknowledgedBytesRead += padding;
+            }
+        }
+        source.receive(data, offset, length);
+        if (inFinished) {
+            receiveFin();
+        }
+    }
+
+    private void receiveFin() {
+        boolean open;
+        synchronized (this) {
+            this.source.finished = true;
+            open = isOpen();
+            notifyAll();
+        }
+        if (!open) {
+            connection.removeStream(id);
+        }
+    }
+
+    synchronized void receiveRstStream(ErrorCode errorCode) {
+        if (this.errorCode == null) {
+            this.errorCode = errorCode;
+            notifyAll();
+        }
+    }
+
+    /**
+     * {@code delta} will be negative if a settings frame initial window is smaller than the last.
+     */
+    synchronized void addBytesToWriteWindow(long delta) {
+        bytesLeftInWriteWindow += delta;
+        if (delta > 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Like {@link #wait}, but throws an {@code InterruptedIOException} when interrupted instead of
+     * the more awkward {@link InterruptedException}, and a {@code SocketTimeoutException} once
+     * {@code deadlineNanos} has passed.
+     */
+    void waitForIo(long deadlineNanos) throws InterruptedIOException {
+        try {
+            if (deadlineNanos == 0) {
+                wait();
+                return;
+            }
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                closeLater(ErrorCode.CANCEL);
+                throw new SocketTimeoutException("timeout");
+            }
+            long waitMillis = remainingNanos / 1000000L;
+            wait(waitMillis, (int) (remainingNanos - waitMillis * 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Retain interrupted status.
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static long deadlineNanos(long timeoutMillis) {
+        return timeoutMillis == 0 ? 0 : System.nanoTime() + timeoutMillis * 1000000L;
+    }
+
+    void checkOutNotClosed() throws IOException {
+        if (sink.closed) {
+            throw new IOException("stream closed");
+        } else if (sink.finished) {
+            throw new IOException("stream finished");
+        } else if (errorCode != null) {
+            throw new StreamResetException(errorCode);
+        }
+    }
+
+    void cancelStreamIfNecessary() throws IOException {
+        boolean open;
+        boolean cancel;
+        synchronized (this) {
+            cancel = !source.finished && source.closed && (sink.finished || sink.closed);
+            open = isOpen();
+        }
+        if (cancel) {
+            // RST this stream to prevent additional data from being sent. This
+            // is safe because the input stream is closed (we won't use any
+            // further bytes) and the output stream is either finished or closed
+            // (so RSTing both streams doesn't cause harm).
+            Http2Stream.this.close(ErrorCode.CANCEL);
+        } else if (!open) {
+            connection.removeStream(id);
+        }
+    }
+
+    /**
+     * A source that reads the incoming data frames of a stream. Although this class uses
+     * synchronization to safely receive incoming data frames, it is not intended for use by multiple
+     * readers.
+     */
+    private final class FramingSource extends InputStream {
+        /**
+         * Chunks received from the network, oldest first.
+         */
+        private final Deque<byte[]> chunks = new ArrayDeque<>();
+
+        /**
+         * Read position in the first chunk.
+         */
+        private int pos;
+
+        /**
+         * Bytes buffered in {@code chunks} and not yet read.
+         */
+        private long size;
+
+        /**
+         * Maximum number of bytes to buffer before reporting a flow control error.
+         */
+        private final long maxByteCount;
+
+        /**
+         * True if the caller has closed this stream.
+         */
+        boolean closed;
+
+        /**
+         * True if either side has cleanly shut down this stream. We will receive no more bytes beyond
+         * those already in the buffer.
+         */
+        boolean finished;
+
+        FramingSource(long maxByteCount) {
+            this.maxByteCount = maxByteCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] sink, int offset, int byteCount) throws IOException {
+            if (byteCount < 0) throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+            if (byteCount == 0) return 0;
+
+            int read;
+            synchronized (Http2Stream.this) {
+                long deadlineNanos = deadlineNanos(readTimeoutMillis);
+                while (size == 0 && !closed && !finished && errorCode == null) {
+                    waitForIo(deadlineNanos);
+                }
+                if (closed) {
+                    throw new IOException("stream closed");
+                }
+                if (size == 0) {
+                    if (errorCode != null) throw new StreamResetException(errorCode);
+                    return -1; // This source is exhausted.
+                }
+
+                byte[] chunk = chunks.peekFirst();
+                read = Math.min(byteCount, chunk.length - pos);
+                System.arraycopy(chunk, pos, sink, offset, read);
+                pos += read;
+                size -= read;
+                if (pos == chunk.length) {
+                    chunks.removeFirst();
+                    pos = 0;
+                }
+
+                // Flow control: notify the peer that we're ready for more data! Only send a
+                // WINDOW_UPDATE if the stream isn't in error.
+                unacknowledgedBytesRead += read;
+                if (errorCode == null
+                        && unacknowledgedBytesRead >= connection.localSettings.getInitialWindowSize() / 2) {
+                    connection.writeWindowUpdateLater(id, unacknowledgedBytesRead);
+                    unacknowledgedBytesRead = 0;
+                }
+            }
+
+            // Update connection.unacknowledgedBytesRead outside the stream sync block.
+            connection.updateConnectionFlowControl(read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            synchronized (Http2Stream.this) {
+                return (int) Math.min(size, Integer.MAX_VALUE);
+            }
+        }
+
+        void receive(byte[] data, int offset, int byteCount) throws IOException {
+            boolean finished;
+            boolean flowControlError;
+            synchronized (Http2Stream.this) {
+                finished = this.finished;
+                flowControlError = byteCount + size > maxByteCount;
+            }
+
+            // If the peer sends more data than we can handle, discard it and close the connection.
+            if (flowControlError) {
+                closeLater(ErrorCode.FLOW_CONTROL_ERROR);
+                return;
+            }
+
+            // Discard data received after the stream is finished. It's probably a benign race.
+            if (finished || byteCount == 0) {
+                return;
+            }
+
+            byte[] chunk = new byte[byteCount];
+            System.arraycopy(data, offset, chunk, 0, byteCount);
+            synchronized (Http2Stream.this) {
+                if (closed) {
+                    return; // The application isn't reading; these bytes are dropped.
+                }
+                chunks.addLast(chunk);
+                size += byteCount;
+                Http2Stream.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            long bytesDiscarded;
+            synchronized (Http2Stream.this) {
+                closed = true;
+                bytesDiscarded = size;
+                chunks.clear();
+                pos = 0;
+                size = 0;
+                Http2Stream.this.notifyAll();
+            }
+            if (bytesDiscarded > 0) {
+                // Discarded bytes were never acknowledged, so give their window back.
+                connection.updateConnectionFlowControl(bytesDiscarded);
+            }
+            cancelStreamIfNecessary();
+        }
+    }
+
+    /**
+     * An output stream that writes outgoing data frames of a stream. This class is not thread safe.
+     */
+    final class FramingSink extends OutputStream {
+        /**
+         * Buffer of outgoing data. This batches writes of small writes into this sink as larges frames
+         * written to the outgoing connection. Batching saves the (small) framing overhead.
+         */
+        private final byte[] buffer = new byte[Http2.INITIAL_MAX_FRAME_SIZE];
+        private int bufferSize;
+
+        boolean closed;
+
+        /**
+         * True if either side has cleanly shut down this stream. We shall send no more bytes.
+         */
+        boolean finished;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] source, int offset, int byteCount) throws IOException {
+            while (byteCount > 0) {
+                int toCopy = Math.min(byteCount, buffer.length - bufferSize);
+                System.arraycopy(source, offset, buffer, bufferSize, toCopy);
+                bufferSize += toCopy;
+                offset += toCopy;
+                byteCount -= toCopy;
+                if (bufferSize == buffer.length) {
+                    emitFrame(false);
+                }
+            }
+        }
+
+        /**
+         * Emit a single data frame to the connection. The frame's size be limited by this stream's
+         * write window. This method will block until the write window is nonempty.
+         */
+        private void emitFrame(boolean outFinished) throws IOException {
+            int toWrite;
+            synchronized (Http2Stream.this) {
+                long deadlineNanos = deadlineNanos(writeTimeoutMillis);
+                while (bytesLeftInWriteWindow <= 0 && !finished && !closed && errorCode == null) {
+                    waitForIo(deadlineNanos); // Wait until we receive a WINDOW_UPDATE for this stream.
+                }
+
+                checkOutNotClosed(); // Kick out if the stream was reset or closed while waiting.
+                toWrite = (int) Math.min(bytesLeftInWriteWindow, bufferSize);
+                bytesLeftInWriteWindow -= toWrite;
+            }
+
+            boolean finish = outFinished && toWrite == bufferSize;
+            connection.writeData(id, finish, buffer, 0, toWrite);
+            System.arraycopy(buffer, toWrite, buffer, 0, bufferSize - toWrite);
+            bufferSize -= toWrite;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (Http2Stream.this) {
+                checkOutNotClosed();
+            }
+            while (bufferSize > 0) {
+                emitFrame(false);
+                connection.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (Http2Stream.this) {
+                if (closed) return;
+            }
+            if (!finished) {
+                // We have 0 or more frames of data, and 0 or more frames of trailers. We need to send at
+                // least one frame with the END_STREAM flag set. That must be the last frame, and the
+                // trailers must be sent after all of the data.
+                if (bufferSize > 0) {
+                    while (bufferSize > 0) {
+                        emitFrame(true);
+                    }
+                } else {
+                    connection.writeData(id, true, null, 0, 0);
+                }
+            }
+            synchronized (Http2Stream.this) {
+                closed = true;
+            }
+            connection.flush();
+            cancelStreamIfNecessary();
+        }
+    }
+}
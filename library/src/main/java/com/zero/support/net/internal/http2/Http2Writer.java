@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static com.zero.support.net.internal.http2.Http2.CONNECTION_PREFACE;
+import static com.zero.support.net.internal.http2.Http2.FLAG_ACK;
+import static com.zero.support.net.internal.http2.Http2.FLAG_END_HEADERS;
+import static com.zero.support.net.internal.http2.Http2.FLAG_END_STREAM;
+import static com.zero.support.net.internal.http2.Http2.FLAG_NONE;
+import static com.zero.support.net.internal.http2.Http2.FLAG_PRIORITY;
+import static com.zero.support.net.internal.http2.Http2.INITIAL_MAX_FRAME_SIZE;
+import static com.zero.support.net.internal.http2.Http2.TYPE_CONTINUATION;
+import static com.zero.support.net.internal.http2.Http2.TYPE_DATA;
+import static com.zero.support.net.internal.http2.Http2.TYPE_GOAWAY;
+import static com.zero.support.net.internal.http2.Http2.TYPE_HEADERS;
+import static com.zero.support.net.internal.http2.Http2.TYPE_PING;
+import static com.zero.support.net.internal.http2.Http2.TYPE_RST_STREAM;
+import static com.zero.support.net.internal.http2.Http2.TYPE_SETTINGS;
+import static com.zero.support.net.internal.http2.Http2.TYPE_WINDOW_UPDATE;
+import static com.zero.support.net.internal.http2.Http2.illegalArgument;
+
+/**
+ * Writes HTTP/2 transport frames.
+ */
+final class Http2Writer implements Closeable {
+    private final OutputStream sink;
+    private final byte[] frameHeader = new byte[9];
+    private final byte[] scratch = new byte[4];
+    private int maxFrameSize;
+    private boolean closed;
+    final Hpack.Writer hpackWriter;
+
+    Http2Writer(OutputStream sink) {
+        this.sink = sink;
+        this.hpackWriter = new Hpack.Writer();
+        this.maxFrameSize = INITIAL_MAX_FRAME_SIZE;
+    }
+
+    synchronized void connectionPreface() throws IOException {
+        if (closed) throw new IOException("closed");
+        sink.write(CONNECTION_PREFACE);
+        sink.flush();
+    }
+
+    /**
+     * Applies {@code peerSettings} and then sends a settings ACK.
+     */
+    synchronized void applyAndAckSettings(Settings peerSettings) throws IOException {
+        if (closed) throw new IOException("closed");
+        this.maxFrameSize = peerSettings.getMaxFrameSize(maxFrameSize);
+        if (peerSettings.getHeaderTableSize() != -1) {
+            hpackWriter.setHeaderTableSizeSetting(peerSettings.getHeaderTableSize());
+        }
+        int length = 0;
+        byte type = TYPE_SETTINGS;
+        byte flags = FLAG_ACK;
+        int streamId = 0;
+        frameHeader(streamId, length, type, flags);
+        sink.flush();
+    }
+
+    public synchronized void flush() throws IOException {
+        if (closed) throw new IOException("closed");
+        sink.flush();
+    }
+
+    /**
+     * Writes a HEADERS frame, followed by CONTINUATION frames if the encoded block is larger than
+     * the peer's frame size. A {@code weight} between 1 and 256 is sent as a PRIORITY section
+     * depending on the root stream; 0 sends no priority.
+     */
+    synchronized void headers(boolean outFinished, int streamId, int weight,
+                              List<Header> headerBlock) throws IOException {
+        if (closed) throw new IOException("closed");
+        byte[] block = hpackWriter.writeHeaders(headerBlock);
+
+        int priorityLength = weight > 0 ? 5 : 0;
+        int length = Math.min(maxFrameSize - priorityLength, block.length);
+        byte type = TYPE_HEADERS;
+        byte flags = length == block.length ? FLAG_END_HEADERS : 0;
+        if (outFinished) flags |= FLAG_END_STREAM;
+        if (priorityLength > 0) flags |= FLAG_PRIORITY;
+        frameHeader(streamId, length + priorityLength, type, flags);
+        if (priorityLength > 0) {
+            writeInt(0); // Non-exclusive dependency on stream 0.
+            sink.write(weight - 1);
+        }
+        sink.write(block, 0, length);
+
+        for (int offset = length; offset < block.length; ) {
+            length = Math.min(maxFrameSize, block.length - offset);
+            frameHeader(streamId, length, TYPE_CONTINUATION,
+                    offset + length == block.length ? FLAG_END_HEADERS : 0);
+            sink.write(block, offset, length);
+            offset += length;
+        }
+    }
+
+    synchronized void rstStream(int streamId, ErrorCode errorCode) throws IOException {
+        if (closed) throw new IOException("closed");
+        if (errorCode.httpCode == -1) throw new IllegalArgumentException();
+
+        int length = 4;
+        byte type = TYPE_RST_STREAM;
+        byte flags = FLAG_NONE;
+        frameHeader(streamId, length, type, flags);
+        writeInt(errorCode.httpCode);
+        sink.flush();
+    }
+
+    /**
+     * The maximum size of bytes that may be sent in a single call to {@link #data}.
+     */
+    int maxDataLength() {
+        return maxFrameSize;
+    }
+
+    /**
+     * {@code data.length} may be longer than the max length of the variant's data frame.
+     * Implementations must send multiple frames as necessary.
+     *
+     * @param source the buffer to draw bytes from. May be null if byteCount is 0.
+     * @param byteCount must be between 0 and the minimum of {@code source.length} and {@link
+     * #maxDataLength}.
+     */
+    synchronized void data(boolean outFinished, int streamId, byte[] source, int offset,
+                           int byteCount) throws IOException {
+        if (closed) throw new IOException("closed");
+        byte flags = FLAG_NONE;
+        if (outFinished) flags |= FLAG_END_STREAM;
+        frameHeader(streamId, byteCount, TYPE_DATA, flags);
+        if (byteCount > 0) {
+            sink.write(source, offset, byteCount);
+        }
+    }
+
+    /**
+     * Writes our settings to the peer.
+     */
+    synchronized void settings(Settings settings) throws IOException {
+        if (closed) throw new IOException("closed");
+        int length = settings.size() * 6;
+        byte type = TYPE_SETTINGS;
+        byte flags = FLAG_NONE;
+        int streamId = 0;
+        frameHeader(streamId, length, type, flags);
+        for (int i = 0; i < Settings.COUNT; i++) {
+            if (!settings.isSet(i)) continue;
+            sink.write(i >>> 8);
+            sink.write(i);
+            writeInt(settings.get(i));
+        }
+        sink.flush();
+    }
+
+    /**
+     * Send a connection-level ping to the peer. {@code ack} indicates this is a reply. The data in
+     * {@code payload1} and {@code payload2} opaque binary, and there are no rules on the content.
+     */
+    synchronized void ping(boolean ack, int payload1, int payload2) throws IOException {
+        if (closed) throw new IOException("closed");
+        int length = 8;
+        byte type = TYPE_PING;
+        byte flags = ack ? FLAG_ACK : FLAG_NONE;
+        int streamId = 0;
+        frameHeader(streamId, length, type, flags);
+        writeInt(payload1);
+        writeInt(payload2);
+        sink.flush();
+    }
+
+    /**
+     * Tell the peer to stop creating streams and that we last processed {@code lastGoodStreamId}.
+     */
+    synchronized void goAway(int lastGoodStreamId, ErrorCode errorCode) throws IOException {
+        if (closed) throw new IOException("closed");
+        if (errorCode.httpCode == -1) throw illegalArgument("errorCode.httpCode == -1");
+        int length = 8;
+        byte type = TYPE_GOAWAY;
+        byte flags = FLAG_NONE;
+        int streamId = 0;
+        frameHeader(streamId, length, type, flags);
+        writeInt(lastGoodStreamId);
+        writeInt(errorCode.httpCode);
+        sink.flush();
+    }
+
+    /**
+     * Inform peer that an additional {@code windowSizeIncrement} bytes can be sent on {@code
+     * streamId}, or the connection if {@code streamId} is zero.
+     */
+    synchronized void windowUpdate(int streamId, long windowSizeIncrement) throws IOException {
+        if (closed) throw new IOException("closed");
+        if (windowSizeIncrement == 0 || windowSizeIncrement > 0x7fffffffL) {
+            throw illegalArgument("windowSizeIncrement == 0 || windowSizeIncrement > 0x7fffffffL: %s",
+                    windowSizeIncrement);
+        }
+        int length = 4;
+        byte type = TYPE_WINDOW_UPDATE;
+        byte flags = FLAG_NONE;
+        frameHeader(streamId, length, type, flags);
+        writeInt((int) windowSizeIncrement);
+        sink.flush();
+    }
+
+    private void frameHeader(int streamId, int length, byte type, byte flags) throws IOException {
+        if (length > maxFrameSize) {
+            throw illegalArgument("FRAME_SIZE_ERROR length > %d: %d", maxFrameSize, length);
+        }
+        if ((streamId & 0x80000000) != 0) throw illegalArgument("reserved bit set: %s", streamId);
+        frameHeader[0] = (byte) ((length >>> 16) & 0xff);
+        frameHeader[1] = (byte) ((length >>> 8) & 0xff);
+        frameHeader[2] = (byte) (length & 0xff);
+        frameHeader[3] = type;
+        frameHeader[4] = flags;
+        frameHeader[5] = (byte) ((streamId >>> 24) & 0x7f);
+        frameHeader[6] = (byte) ((streamId >>> 16) & 0xff);
+        frameHeader[7] = (byte) ((streamId >>> 8) & 0xff);
+        frameHeader[8] = (byte) (streamId & 0xff);
+        sink.write(frameHeader, 0, 9);
+    }
+
+    private void writeInt(int value) throws IOException {
+        scratch[0] = (byte) ((value >>> 24) & 0xff);
+        scratch[1] = (byte) ((value >>> 16) & 0xff);
+        scratch[2] = (byte) ((value >>> 8) & 0xff);
+        scratch[3] = (byte) (value & 0xff);
+        sink.write(scratch, 0, 4);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        sink.close();
+    }
+}
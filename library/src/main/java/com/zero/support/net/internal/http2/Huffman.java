@@ -0,0 +1,232 @@
+/*
+ * Copyright 2013 Twitter, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zero.support.net.internal.http2;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * This class was originally composed from the following classes in <a
+ * href="https://github.com/twitter/hpack">Twitter Hpack</a>.
+ *
+ * <ul>
+ * <li>{@code com.twitter.hpack.HuffmanEncoder}
+ * <li>{@code com.twitter.hpack.HuffmanDecoder}
+ * <li>{@code com.twitter.hpack.HpackUtil}
+ * </ul>
+ *
+ * <p>The HPACK Huffman code is canonical: codes are assigned in order of (length, symbol). Only the
+ * code lengths from <a href="https://tools.ietf.org/html/rfc7541#appendix-B">RFC 7541 Appendix
+ * B</a> are stored here and the codes are derived from them.
+ */
+final class Huffman {
+    private static final byte[] CODE_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26
+    };
+
+    /**
+     * The end-of-string symbol is the single 30 bit code of all ones.
+     */
+    private static final int EOS = 256;
+    private static final int EOS_LENGTH = 30;
+    private static final int EOS_CODE = 0x3fffffff;
+
+    private static final int[] CODES = new int[CODE_LENGTHS.length];
+
+    static {
+        // Assign canonical codes: shortest codes first, ties broken by symbol value.
+        int code = 0;
+        int previousLength = 0;
+        for (int length = 1; length <= EOS_LENGTH; length++) {
+            for (int symbol = 0; symbol < CODE_LENGTHS.length; symbol++) {
+                if (CODE_LENGTHS[symbol] != length) continue;
+                code <<= (length - previousLength);
+                previousLength = length;
+                CODES[symbol] = code++;
+            }
+        }
+    }
+
+    private static final Huffman INSTANCE = new Huffman();
+
+    public static Huffman get() {
+        return INSTANCE;
+    }
+
+    private final Node root = new Node();
+
+    private Huffman() {
+        buildTree();
+    }
+
+    void encode(byte[] data, ByteArrayOutputStream sink) {
+        long current = 0;
+        int n = 0;
+
+        for (int i = 0; i < data.length; i++) {
+            int b = data[i] & 0xFF;
+            int code = CODES[b];
+            int nbits = CODE_LENGTHS[b];
+
+            current <<= nbits;
+            current |= code;
+            n += nbits;
+
+            while (n >= 8) {
+                n -= 8;
+                sink.write((int) (current >> n));
+            }
+        }
+
+        if (n > 0) {
+            current <<= (8 - n);
+            current |= (0xFF >>> n);
+            sink.write((int) current);
+        }
+    }
+
+    int encodedLength(byte[] bytes) {
+        long len = 0;
+
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            len += CODE_LENGTHS[b];
+        }
+
+        return (int) ((len + 7) >> 3);
+    }
+
+    byte[] decode(byte[] buf, int offset, int length) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(length * 2);
+        Node node = root;
+        int current = 0;
+        int nbits = 0;
+        for (int i = offset, limit = offset + length; i < limit; i++) {
+            int b = buf[i] & 0xFF;
+            current = (current << 8) | b;
+            nbits += 8;
+            while (nbits >= 8) {
+                int c = (current >>> (nbits - 8)) & 0xFF;
+                node = node.children[c];
+                if (node.children == null) {
+                    // terminal node
+                    if (node.symbol == EOS) throw new IOException("Huffman string contains EOS");
+                    baos.write(node.symbol);
+                    nbits -= node.terminalBits;
+                    node = root;
+                } else {
+                    // non-terminal node
+                    nbits -= 8;
+                }
+            }
+        }
+
+        while (nbits > 0) {
+            int c = (current << (8 - nbits)) & 0xFF;
+            node = node.children[c];
+            if (node.children != null || node.terminalBits > nbits) {
+                break;
+            }
+            if (node.symbol == EOS) throw new IOException("Huffman string contains EOS");
+            baos.write(node.symbol);
+            nbits -= node.terminalBits;
+            node = root;
+        }
+
+        return baos.toByteArray();
+    }
+
+    private void buildTree() {
+        for (int i = 0; i < CODE_LENGTHS.length; i++) {
+            addCode(i, CODES[i], CODE_LENGTHS[i]);
+        }
+        addCode(EOS, EOS_CODE, (byte) EOS_LENGTH);
+    }
+
+    private void addCode(int sym, int code, byte len) {
+        Node terminal = new Node(sym, len);
+
+        Node current = root;
+        while (len > 8) {
+            len -= 8;
+            int i = ((code >>> len) & 0xFF);
+            if (current.children == null) {
+                throw new IllegalStateException("invalid dictionary: prefix not unique");
+            }
+            if (current.children[i] == null) {
+                current.children[i] = new Node();
+            }
+            current = current.children[i];
+        }
+
+        int shift = 8 - len;
+        int start = (code << shift) & 0xFF;
+        int end = 1 << shift;
+        for (int i = start; i < start + end; i++) {
+            current.children[i] = terminal;
+        }
+    }
+
+    private static final class Node {
+
+        // Null if terminal.
+        private final Node[] children;
+
+        // Terminal nodes have a symbol.
+        private final int symbol;
+
+        // Number of bits represented in the terminal node.
+        private final int terminalBits;
+
+        /**
+         * Construct an internal node.
+         */
+        Node() {
+            this.children = new Node[256];
+            this.symbol = 0; // Not read.
+            this.terminalBits = 0; // Not read.
+        }
+
+        /**
+         * Construct a terminal node.
+         *
+         * @param symbol symbol the node represents
+         * @param bits   length of Huffman code in bits
+         */
+        Node(int symbol, int bits) {
+            this.children = null;
+            this.symbol = symbol;
+            int b = bits & 0x07;
+            this.terminalBits = b == 0 ? 8 : b;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.internal.Platform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single selector thread. Every channel registered here is only ever read, written and closed by
+ * this thread; other threads hand work over with {@link #execute}.
+ *
+ * <p>Timeouts are enforced by sweeping the registered connections a few times per second rather
+ * than with a timer per exchange, so the cost of a deadline is one field write.
+ */
+final class EventLoop implements Runnable {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Scratch space for socket reads. Exchanges copy out what they need before yielding the loop.
+     */
+    final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private long lastSweepNanos;
+
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs {@code task} on this loop's thread, after any tasks already submitted.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Registers {@code connection}'s channel with this loop's selector. Must be called on the loop.
+     */
+    SelectionKey register(NioConnection connection, int interestOps) throws IOException {
+        return connection.channel.register(selector, interestOps, connection);
+    }
+
+    @Override
+    public void run() {
+        lastSweepNanos = System.nanoTime();
+        while (true) {
+            try {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(SWEEP_INTERVAL_NANOS));
+                processSelectedKeys();
+                runTasks();
+
+                long now = System.nanoTime();
+                if (now - lastSweepNanos >= SWEEP_INTERVAL_NANOS) {
+                    lastSweepNanos = now;
+                    sweep(now);
+                }
+            } catch (IOException | RuntimeException e) {
+                // The selector itself failed. Keep the loop alive; exchanges time out if it stays
+                // broken.
+                Platform.get().log("Selector failed on " + thread.getName(), e);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Set<SelectionKey> selectedKeys = selector.selectedKeys();
+        for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext(); ) {
+            SelectionKey key = i.next();
+            i.remove();
+            if (!key.isValid()) continue;
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                connection.onReady(key.readyOps());
+            } catch (RuntimeException e) {
+                connection.onFailure(new IOException("Unexpected failure", e));
+            }
+        }
+    }
+
+    private void runTasks() {
+        for (Runnable task; (task = tasks.poll()) != null; ) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Exchange tasks fail their own exchange; anything else has no one to report to.
+                Platform.get().log("Task failed on " + thread.getName(), e);
+            }
+        }
+    }
+
+    private void sweep(long now) {
+        Set<SelectionKey> keys = selector.keys();
+        if (keys.isEmpty()) return;
+        SelectionKey[] snapshot = keys.toArray(new SelectionKey[keys.size()]);
+        for (SelectionKey key : snapshot) {
+            if (!key.isValid()) continue;
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                connection.checkTimeout(now);
+            } catch (RuntimeException e) {
+                connection.onFailure(new IOException("Unexpected failure", e));
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.zero.support.net.internal.nio;
+
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The selector threads shared by every {@link NioEngine} in the process. A handful of loops is
+ * enough to keep tens of thousands of sockets busy; new connections are spread over them
+ * round-robin and stay on the loop they were assigned to.
+ */
+final class EventLoopGroup {
+    private static EventLoopGroup instance;
+
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private EventLoopGroup(int size) throws IOException {
+        loops = new EventLoop[size];
+        for (int i = 0; i < size; i++) {
+            loops[i] = new EventLoop("Net NIO Loop " + (i + 1));
+        }
+    }
+
+    static synchronized EventLoopGroup get() throws IOException {
+        if (instance == null) {
+            int size = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            instance = new EventLoopGroup(size);
+        }
+        return instance;
+    }
+
+    EventLoop next() {
+        return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+}
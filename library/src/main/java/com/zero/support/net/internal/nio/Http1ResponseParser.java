@@ -0,0 +1,249 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.Buffer;
+import com.zero.support.net.Headers;
+import com.zero.support.net.Response;
+import com.zero.support.net.internal.CallServerInterceptor;
+import com.zero.support.net.internal.Http1Codec;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes an HTTP/1.1 response from bytes as they arrive. The body is buffered in memory, up to a
+ * limit; its framing (fixed length, chunked, or until the connection closes) follows {@link
+ * Http1Codec}.
+ */
+final class Http1ResponseParser {
+    private static final int HEADER_LIMIT = 256 * 1024;
+
+    private static final int STATE_STATUS_LINE = 0;
+    private static final int STATE_HEADERS = 1;
+    private static final int STATE_FIXED_LENGTH_BODY = 2;
+    private static final int STATE_CHUNK_SIZE = 3;
+    private static final int STATE_CHUNK_DATA = 4;
+    private static final int STATE_CHUNK_END = 5;
+    private static final int STATE_TRAILERS = 6;
+    private static final int STATE_UNKNOWN_LENGTH_BODY = 7;
+    private static final int STATE_DONE = 8;
+
+    private final String method;
+    private final long maxBodySize;
+    private final StringBuilder line = new StringBuilder(64);
+    private int headerBytes;
+    private int state = STATE_STATUS_LINE;
+    private Http1Codec.StatusLine statusLine;
+    private Headers.Builder headers;
+    private Headers finalHeaders;
+    private Buffer body;
+    private long bytesRemaining;
+    private long bodySize;
+    private boolean keepAlive = true;
+
+    /**
+     * @param maxBodySize the most body bytes to buffer. A larger body fails with a {@link
+     * ProtocolException}.
+     */
+    Http1ResponseParser(String method, long maxBodySize) {
+        this.method = method;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Consumes bytes from {@code source} until it is exhausted or the response is complete.
+     */
+    void consume(ByteBuffer source) throws IOException {
+        while (source.hasRemaining() && state != STATE_DONE) {
+            switch (state) {
+                case STATE_STATUS_LINE:
+                    if (readLine(source)) {
+                        statusLine = Http1Codec.StatusLine.parse(takeLine());
+                        headers = new Headers.Builder();
+                        state = STATE_HEADERS;
+                    }
+                    break;
+
+                case STATE_HEADERS:
+                    if (readLine(source)) {
+                        String header = takeLine();
+                        if (header.isEmpty()) {
+                            headersComplete();
+                        } else {
+                            Http1Codec.addHeaderLine(headers, header);
+                        }
+                    }
+                    break;
+
+                case STATE_FIXED_LENGTH_BODY:
+                case STATE_CHUNK_DATA:
+                case STATE_UNKNOWN_LENGTH_BODY:
+                    readBody(source);
+                    break;
+
+                case STATE_CHUNK_SIZE:
+                    if (readLine(source)) {
+                        readChunkSize(takeLine());
+                    }
+                    break;
+
+                case STATE_CHUNK_END:
+                    if (readLine(source)) {
+                        if (!takeLine().isEmpty()) throw new ProtocolException("Expected CRLF after chunk");
+                        state = STATE_CHUNK_SIZE;
+                    }
+                    break;
+
+                case STATE_TRAILERS:
+                    if (readLine(source) && takeLine().isEmpty()) {
+                        state = STATE_DONE;
+                    }
+                    break;
+
+                default:
+                    throw new IllegalStateException("state: " + state);
+            }
+        }
+    }
+
+    /**
+     * Signals that the peer closed the connection. That completes a body that runs until the end of
+     * the stream; anywhere else it's a truncated response.
+     */
+    void endOfInput() throws IOException {
+        if (state == STATE_UNKNOWN_LENGTH_BODY) {
+            state = STATE_DONE;
+        } else if (state != STATE_DONE) {
+            throw new ProtocolException("unexpected end of stream");
+        }
+    }
+
+    boolean isDone() {
+        return state == STATE_DONE;
+    }
+
+    /**
+     * Returns true if another exchange may follow this one on the same connection.
+     */
+    boolean keepAlive() {
+        return keepAlive;
+    }
+
+    Response.Builder response() {
+        return new Response.Builder()
+                .code(statusLine.code)
+                .message(statusLine.message)
+                .headers(finalHeaders);
+    }
+
+    /**
+     * Returns the decoded body, or null if the response has none.
+     */
+    Buffer body() {
+        return body;
+    }
+
+    private void headersComplete() throws ProtocolException {
+        Headers headers = this.headers.build();
+        int code = statusLine.code;
+        if (code == CallServerInterceptor.HTTP_CONTINUE || (code > 101 && code < 200)) {
+            state = STATE_STATUS_LINE; // Interim response; the final response follows.
+            return;
+        }
+        finalHeaders = headers;
+        if (statusLine.http10 && !"keep-alive".equalsIgnoreCase(headers.get("Connection"))) {
+            keepAlive = false;
+        }
+        if ("close".equalsIgnoreCase(headers.get("Connection"))) {
+            keepAlive = false;
+        }
+
+        if (!Http1Codec.hasResponseBody(method, code)) {
+            state = STATE_DONE;
+            return;
+        }
+        if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            body = new Buffer();
+            state = STATE_CHUNK_SIZE;
+            return;
+        }
+        long contentLength = Http1Codec.contentLength(headers);
+        if (contentLength > maxBodySize || contentLength > Integer.MAX_VALUE) {
+            throw new ProtocolException("Response body too large to buffer: " + contentLength);
+        }
+        if (contentLength != -1L) {
+            body = new Buffer();
+            bytesRemaining = contentLength;
+            state = contentLength == 0 ? STATE_DONE : STATE_FIXED_LENGTH_BODY;
+            return;
+        }
+        // The body is delimited by the end of the stream; the connection can't be reused.
+        body = new Buffer();
+        keepAlive = false;
+        state = STATE_UNKNOWN_LENGTH_BODY;
+    }
+
+    private void readChunkSize(String chunkSizeLine) throws ProtocolException {
+        int extension = chunkSizeLine.indexOf(';');
+        String size = (extension != -1 ? chunkSizeLine.substring(0, extension) : chunkSizeLine).trim();
+        try {
+            bytesRemaining = Long.parseLong(size, 16);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Expected a hex chunk size but was \"" + chunkSizeLine + "\"");
+        }
+        if (bytesRemaining < 0) {
+            throw new ProtocolException("Expected a hex chunk size but was \"" + chunkSizeLine + "\"");
+        }
+        state = bytesRemaining == 0 ? STATE_TRAILERS : STATE_CHUNK_DATA;
+    }
+
+    private void readBody(ByteBuffer source) throws ProtocolException {
+        int count = source.remaining();
+        if (state != STATE_UNKNOWN_LENGTH_BODY) {
+            count = (int) Math.min(count, bytesRemaining);
+        }
+        bodySize += count;
+        if (bodySize > maxBodySize) {
+            throw new ProtocolException("Response body too large to buffer: more than "
+                    + maxBodySize + " bytes");
+        }
+        int limit = source.limit();
+        source.limit(source.position() + count);
+        body.write(source);
+        source.limit(limit);
+        if (state == STATE_UNKNOWN_LENGTH_BODY) return;
+
+        bytesRemaining -= count;
+        if (bytesRemaining == 0) {
+            state = state == STATE_CHUNK_DATA ? STATE_CHUNK_END : STATE_DONE;
+        }
+    }
+
+    /**
+     * Accumulates bytes up to and including the next LF. Returns true once a full line is buffered.
+     */
+    private boolean readLine(ByteBuffer source) throws ProtocolException {
+        while (source.hasRemaining()) {
+            byte b = source.get();
+            if (++headerBytes > HEADER_LIMIT) throw new ProtocolException("header line too long");
+            if (b == '\n') return true;
+            line.append((char) (b & 0xff));
+        }
+        return false;
+    }
+
+    private String takeLine() {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        String result = line.toString();
+        line.setLength(0);
+        if (state == STATE_STATUS_LINE || state == STATE_HEADERS) {
+            return result;
+        }
+        headerBytes = 0; // Only the response head is bounded as a whole.
+        return result;
+    }
+}
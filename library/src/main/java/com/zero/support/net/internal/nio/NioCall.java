@@ -0,0 +1,200 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+import com.zero.support.net.internal.SocketEngine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A request in flight on the {@link NioEngine}, including the redirects it follows. No thread is
+ * held while the call waits on the network: completion is reported to a {@link Callback} on the
+ * dispatcher's executor, or to a thread blocked in {@link #await}.
+ */
+public final class NioCall {
+    private final NioEngine engine;
+    private final Request originalRequest;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean canceled;
+
+    // Guarded by this.
+    private boolean started;
+    private boolean completed;
+    private Callback callback;
+    private NioExchange exchange;
+    private Response response;
+    private IOException failure;
+
+    /**
+     * Accessed only by the exchange that currently runs this call.
+     */
+    private int followUpCount;
+
+    NioCall(NioEngine engine, Request originalRequest) {
+        this.engine = engine;
+        this.originalRequest = originalRequest;
+    }
+
+    public Request request() {
+        return originalRequest;
+    }
+
+    /**
+     * Starts this call. {@code callback}, if non-null, is invoked on the dispatcher's executor once
+     * the response has been read in full or the call has failed.
+     *
+     * <p>The request body is buffered on the calling thread before this returns.
+     */
+    public void start(Callback callback) {
+        synchronized (this) {
+            if (started) throw new IllegalStateException("Already Executed");
+            started = true;
+            this.callback = callback;
+        }
+        startExchange(originalRequest);
+    }
+
+    /**
+     * Blocks until this call completes and returns its response. If the waiting thread is
+     * interrupted the call is canceled.
+     */
+    public Response await() throws IOException {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+        synchronized (this) {
+            if (failure != null) throw failure;
+            return response;
+        }
+    }
+
+    public void cancel() {
+        canceled = true;
+        NioExchange exchange;
+        synchronized (this) {
+            exchange = this.exchange;
+        }
+        if (exchange != null) {
+            exchange.cancel();
+        }
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    private void startExchange(Request request) {
+        NioExchange exchange;
+        try {
+            boolean bodyFromChannel = NioExchange.writesBodyToChannel(request);
+            exchange = new NioExchange(engine, this, request,
+                    NioExchange.encode(request, bodyFromChannel), bodyFromChannel);
+        } catch (IOException e) {
+            complete(null, e);
+            return;
+        }
+        start(exchange);
+    }
+
+    private void start(NioExchange exchange) {
+        synchronized (this) {
+            this.exchange = exchange;
+        }
+        if (canceled) {
+            complete(null, new IOException("Canceled"));
+            return;
+        }
+        exchange.start();
+    }
+
+    void exchangeSucceeded(Response response) {
+        final Request followUp = SocketEngine.followUpRequest(engine.client, response);
+        if (followUp == null) {
+            complete(response, null);
+            return;
+        }
+        ResponseBody body = response.body();
+        if (body != null) {
+            body.close(); // Returns the buffered body's segments to the pool.
+        }
+        if (++followUpCount > SocketEngine.MAX_FOLLOW_UPS) {
+            complete(null, new ProtocolException("Too many follow-up requests: " + followUpCount));
+            return;
+        }
+        // Encoding the follow-up may run application code in its request body; keep it off the loop.
+        try {
+            engine.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    startExchange(followUp);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            complete(null, new InterruptedIOException("executor rejected"));
+        }
+    }
+
+    void exchangeFailed(NioExchange exchange, IOException e, boolean retry) {
+        if (retry && !canceled) {
+            start(exchange.retry());
+        } else {
+            complete(null, e);
+        }
+    }
+
+    private void complete(Response response, IOException failure) {
+        final Callback callback;
+        synchronized (this) {
+            if (completed) return;
+            completed = true;
+            this.response = response;
+            this.failure = failure;
+            this.exchange = null;
+            callback = this.callback;
+        }
+        done.countDown();
+        if (callback == null) return;
+
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback);
+            }
+        };
+        try {
+            engine.executor().execute(delivery);
+        } catch (RejectedExecutionException e) {
+            delivery.run();
+        }
+    }
+
+    private void deliver(Callback callback) {
+        Response response;
+        IOException failure;
+        synchronized (this) {
+            response = this.response;
+            failure = this.failure;
+        }
+        if (failure != null) {
+            callback.onFailure(this, failure);
+        } else {
+            callback.onResponse(this, response);
+        }
+    }
+
+    public interface Callback {
+        void onFailure(NioCall call, IOException e);
+
+        void onResponse(NioCall call, Response response);
+    }
+}
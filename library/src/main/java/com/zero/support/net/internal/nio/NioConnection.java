@@ -0,0 +1,131 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.internal.Route;
+import com.zero.support.net.internal.Util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking socket, optionally wrapped in TLS, bound for life to one {@link EventLoop}. While
+ * an exchange is attached, readiness events are forwarded to it; while the connection sits idle in
+ * the pool the loop keeps watching it for the peer closing it.
+ */
+final class NioConnection {
+    final NioConnectionPool pool;
+    final Route route;
+    final SocketChannel channel;
+    final EventLoop loop;
+    TlsSession tls;
+    SelectionKey key;
+
+    /**
+     * The exchange using this connection, or null if it is idle. Accessed on the loop only.
+     */
+    NioExchange exchange;
+
+    /**
+     * Count of exchanges completed on this connection. Guarded by the loop.
+     */
+    int successCount;
+
+    /**
+     * Nanotime when this connection became idle. Guarded by the pool.
+     */
+    long idleAtNanos = Long.MAX_VALUE;
+
+    NioConnection(NioConnectionPool pool, Route route, SocketChannel channel, EventLoop loop) {
+        this.pool = pool;
+        this.route = route;
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    /**
+     * Reads application bytes into {@code sink}, returning the count read, 0 if none are available
+     * yet, or -1 at the end of the stream.
+     */
+    int read(ByteBuffer sink) throws IOException {
+        return tls != null ? tls.read(channel, sink) : channel.read(sink);
+    }
+
+    /**
+     * Writes as much of {@code source} as the socket accepts. Returns true once it is all written.
+     */
+    boolean write(ByteBuffer source) throws IOException {
+        if (tls != null) return tls.write(channel, source);
+        channel.write(source);
+        return !source.hasRemaining();
+    }
+
+    void interestOps(int ops) {
+        if (key != null && key.isValid()) {
+            key.interestOps(ops);
+        }
+    }
+
+    void onReady(int readyOps) {
+        NioExchange exchange = this.exchange;
+        if (exchange != null) {
+            exchange.onReady(readyOps);
+            return;
+        }
+
+        // An idle connection became readable: the peer closed it or sent something unsolicited.
+        // Either way it can't carry another exchange. If it was already handed out, the new
+        // exchange will discover the failure and retry.
+        interestOps(0);
+        if (pool.removeIdle(this)) {
+            close();
+        }
+    }
+
+    void onFailure(IOException e) {
+        NioExchange exchange = this.exchange;
+        if (exchange != null) {
+            exchange.fail(e);
+        } else {
+            pool.removeIdle(this);
+            close();
+        }
+    }
+
+    void checkTimeout(long now) {
+        NioExchange exchange = this.exchange;
+        if (exchange != null) {
+            exchange.checkTimeout(now);
+        }
+    }
+
+    /**
+     * Closes this connection on its loop, which owns the channel and its key. Safe to call from
+     * any thread.
+     */
+    void close() {
+        if (loop.inEventLoop()) {
+            closeNow();
+            return;
+        }
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeNow();
+            }
+        });
+    }
+
+    private void closeNow() {
+        if (key != null) {
+            key.cancel();
+        }
+        Util.closeQuietly(channel);
+    }
+
+    @Override
+    public String toString() {
+        return "NioConnection{" + route + (tls != null ? " " + tls.engine.getSession().getProtocol() : "") + "}";
+    }
+}
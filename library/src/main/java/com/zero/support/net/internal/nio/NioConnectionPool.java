@@ -0,0 +1,228 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.internal.Route;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections of the {@link com.zero.support.net.Engine#NIO} engine. Unlike the blocking pool this
+ * one also caps how many connections a route may have open: exchanges beyond the cap wait in line
+ * and are handed the next connection another exchange releases, instead of each opening a socket.
+ *
+ * <p>Callbacks into exchanges are always made without holding the pool's lock.
+ */
+public final class NioConnectionPool {
+    private final int maxIdleConnectionsPerRoute;
+    private final long keepAliveDurationNs;
+    private final Map<Route, RouteConnections> routes = new HashMap<>();
+
+    public NioConnectionPool(int maxIdleConnectionsPerRoute, long keepAliveDuration, TimeUnit timeUnit) {
+        this.maxIdleConnectionsPerRoute = maxIdleConnectionsPerRoute;
+        this.keepAliveDurationNs = timeUnit.toNanos(keepAliveDuration);
+    }
+
+    public synchronized int idleConnectionCount() {
+        int total = 0;
+        for (RouteConnections connections : routes.values()) {
+            total += connections.idle.size();
+        }
+        return total;
+    }
+
+    public synchronized int connectionCount() {
+        int total = 0;
+        for (RouteConnections connections : routes.values()) {
+            total += connections.open;
+        }
+        return total;
+    }
+
+    /**
+     * Gives {@code exchange} a connection to its route: an idle one if there is one, otherwise
+     * permission to connect a new one if the route has fewer than {@code maxConnections}. If it has
+     * not, the exchange waits for one to be released.
+     */
+    void acquire(NioExchange exchange, int maxConnections) {
+        NioConnection idle = null;
+        boolean connect = false;
+        List<NioConnection> evicted;
+        synchronized (this) {
+            evicted = evictExpired(System.nanoTime());
+            RouteConnections connections = routes.get(exchange.route);
+            if (connections == null) {
+                connections = new RouteConnections();
+                routes.put(exchange.route, connections);
+            }
+            if (!connections.idle.isEmpty()) {
+                idle = connections.idle.removeLast(); // Most recently used is least likely stale.
+                idle.idleAtNanos = Long.MAX_VALUE;
+            } else if (connections.open < Math.max(1, maxConnections)) {
+                connections.open++;
+                connect = true;
+            } else {
+                connections.waiting.add(exchange);
+            }
+        }
+
+        closeAll(evicted);
+        if (idle != null) {
+            exchange.onAcquired(idle);
+        } else if (connect) {
+            exchange.onConnectPermitted();
+        }
+    }
+
+    /**
+     * Removes {@code exchange} from its route's line. Returns false if it isn't waiting, because it
+     * was already given a connection.
+     */
+    synchronized boolean cancelWaiting(NioExchange exchange) {
+        RouteConnections connections = routes.get(exchange.route);
+        return connections != null && connections.waiting.remove(exchange);
+    }
+
+    /**
+     * Returns {@code connection} after an exchange. A reusable connection goes to the next waiting
+     * exchange or into the idle set; otherwise it is closed and its slot offered to the next waiter.
+     */
+    void release(NioConnection connection, boolean reusable) {
+        NioExchange next;
+        boolean connect = false;
+        NioConnection overflow = null;
+        synchronized (this) {
+            RouteConnections connections = routes.get(connection.route);
+            next = connections.waiting.poll();
+            if (reusable) {
+                if (next == null) {
+                    connection.idleAtNanos = System.nanoTime();
+                    connections.idle.addLast(connection);
+                    if (connections.idle.size() > maxIdleConnectionsPerRoute) {
+                        overflow = connections.idle.removeFirst();
+                        connections.open--;
+                    }
+                }
+            } else {
+                connections.open--;
+                if (next != null) {
+                    connections.open++;
+                    connect = true;
+                } else if (connections.open == 0) {
+                    routes.remove(connection.route);
+                }
+            }
+        }
+
+        if (!reusable) {
+            connection.close();
+        }
+        if (overflow != null) {
+            overflow.close();
+        }
+        if (next != null) {
+            if (connect) {
+                next.onConnectPermitted();
+            } else {
+                next.onAcquired(connection);
+            }
+        }
+    }
+
+    /**
+     * Gives back a slot granted by {@link #acquire} whose connection could not be established.
+     */
+    void connectFailed(Route route) {
+        NioExchange next;
+        synchronized (this) {
+            RouteConnections connections = routes.get(route);
+            next = connections.waiting.poll();
+            if (next == null) {
+                connections.open--;
+                if (connections.open == 0) {
+                    routes.remove(route);
+                }
+            }
+        }
+        if (next != null) {
+            next.onConnectPermitted();
+        }
+    }
+
+    /**
+     * Removes {@code connection} if it is idle. Returns false if it was taken by an exchange.
+     */
+    boolean removeIdle(NioConnection connection) {
+        synchronized (this) {
+            RouteConnections connections = routes.get(connection.route);
+            if (connections == null || !connections.idle.remove(connection)) return false;
+            connections.open--;
+            if (connections.open == 0 && connections.waiting.isEmpty()) {
+                routes.remove(connection.route);
+            }
+        }
+        return true;
+    }
+
+    public void evictAll() {
+        List<NioConnection> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<RouteConnections> i = routes.values().iterator(); i.hasNext(); ) {
+                RouteConnections connections = i.next();
+                evicted.addAll(connections.idle);
+                connections.open -= connections.idle.size();
+                connections.idle.clear();
+                if (connections.open == 0 && connections.waiting.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * Removes connections that have been idle longer than the keep-alive duration.
+     */
+    private List<NioConnection> evictExpired(long now) {
+        assert (Thread.holdsLock(this));
+        List<NioConnection> evicted = null;
+        for (Iterator<RouteConnections> i = routes.values().iterator(); i.hasNext(); ) {
+            RouteConnections connections = i.next();
+            while (!connections.idle.isEmpty()
+                    && now - connections.idle.peekFirst().idleAtNanos >= keepAliveDurationNs) {
+                if (evicted == null) evicted = new ArrayList<>();
+                evicted.add(connections.idle.removeFirst());
+                connections.open--;
+            }
+            if (connections.open == 0 && connections.waiting.isEmpty()) {
+                i.remove();
+            }
+        }
+        return evicted;
+    }
+
+    private static void closeAll(List<NioConnection> connections) {
+        if (connections == null) return;
+        for (int i = 0, size = connections.size(); i < size; i++) {
+            connections.get(i).close();
+        }
+    }
+
+    private static final class RouteConnections {
+        /**
+         * Idle connections, least recently used first.
+         */
+        final Deque<NioConnection> idle = new ArrayDeque<>();
+        final Deque<NioExchange> waiting = new ArrayDeque<>();
+        /**
+         * Connections open or being opened, idle ones included.
+         */
+        int open;
+    }
+}
@@ -0,0 +1,59 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.Request;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * The {@link com.zero.support.net.Engine#NIO} transport: HTTP/1.1 over non-blocking socket
+ * channels multiplexed on a few shared selector threads, with {@link javax.net.ssl.SSLEngine} for
+ * TLS. A call holds no thread while it waits on the network, so the number of calls in flight is
+ * bounded by sockets and memory rather than threads.
+ *
+ * <p>Plaintext request bodies of known length that provide a {@link
+ * com.zero.support.net.RequestBody#channelWriter() channel writer}, like file bodies, are streamed
+ * to the socket as it becomes writable. Other request bodies, including every body sent over TLS
+ * and bodies of unknown length, are buffered in full before they are sent. Response bodies are
+ * read in full before the call completes; bodies larger than {@link
+ * HttpClient#maxResponseBufferSize()} fail the call.
+ */
+public final class NioEngine {
+    final HttpClient client;
+    final NioConnectionPool pool;
+    private SSLContext sslContext;
+
+    public NioEngine(HttpClient client, NioConnectionPool pool) {
+        this.client = client;
+        this.pool = pool;
+        this.sslContext = client.sslContext();
+    }
+
+    public NioCall newCall(Request request) {
+        return new NioCall(this, request);
+    }
+
+    synchronized SSLContext sslContext() throws IOException {
+        if (sslContext == null) {
+            try {
+                sslContext = SSLContext.getDefault();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("No TLS provider", e);
+            }
+        }
+        return sslContext;
+    }
+
+    EventLoop nextLoop() throws IOException {
+        return EventLoopGroup.get().next();
+    }
+
+    Executor executor() {
+        return client.dispatcher().executorService();
+    }
+}
@@ -0,0 +1,470 @@
+package com.zero.support.net.internal.nio;
+
+
+import com.zero.support.net.Buffer;
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.MediaType;
+import com.zero.support.net.Request;
+import com.zero.support.net.RequestBody;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+import com.zero.support.net.internal.Http1Codec;
+import com.zero.support.net.internal.Route;
+import com.zero.support.net.internal.Util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * One request/response exchange of a {@link NioCall}: waits for a pooled connection or connects a
+ * new one, then writes the request and parses the response as the socket becomes ready.
+ *
+ * <p>Until a connection is attached the exchange moves between the caller, the pool and the
+ * dispatcher's executor (for DNS). From then on all of its state belongs to the connection's loop.
+ */
+final class NioExchange {
+    private static final int STATE_WAITING = 0;
+    private static final int STATE_CONNECTING = 1;
+    private static final int STATE_HANDSHAKING = 2;
+    private static final int STATE_WRITING = 3;
+    private static final int STATE_READING = 4;
+    private static final int STATE_DONE = 5;
+
+    /**
+     * Reads performed per readiness event before yielding the loop to other connections.
+     */
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    final NioCall call;
+    final Request request;
+    final Route route;
+    private final NioEngine engine;
+    private final byte[] encodedRequest;
+    /**
+     * True if the request body isn't in {@link #encodedRequest} but is sent from the body's
+     * channel writer.
+     */
+    private final boolean bodyFromChannel;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * The attached connection. Set before the exchange is handed to the connection's loop.
+     */
+    private volatile NioConnection connection;
+    /**
+     * True if the pool let this exchange open a connection that it then owes back on failure.
+     */
+    private volatile boolean permitted;
+
+    private int state = STATE_WAITING;
+    private ByteBuffer sink;
+    private RequestBody.ChannelWriter bodyWriter;
+    private Http1ResponseParser parser;
+    private boolean reused;
+    private boolean responseStarted;
+    private boolean hasDeadline;
+    private long deadlineNanos;
+
+    NioExchange(NioEngine engine, NioCall call, Request request, byte[] encodedRequest,
+                boolean bodyFromChannel) {
+        this.engine = engine;
+        this.call = call;
+        this.request = request;
+        this.route = Route.of(engine.client, request);
+        this.encodedRequest = encodedRequest;
+        this.bodyFromChannel = bodyFromChannel;
+    }
+
+    /**
+     * Returns true if the body of {@code request} can be written straight to the socket channel,
+     * which lets file bodies go out with {@code sendfile} instead of being buffered. TLS needs the
+     * bytes in hand to encrypt them, and the framing needs the length up front.
+     */
+    static boolean writesBodyToChannel(Request request) throws IOException {
+        RequestBody body = request.body();
+        if (body == null || request.isHttps() || body.contentLength() == -1L) return false;
+        RequestBody.ChannelWriter writer = body.channelWriter();
+        if (writer == null) return false;
+        writer.close(); // Unused writers hold nothing; a fresh one is made for each attempt.
+        return true;
+    }
+
+    /**
+     * Returns the request head framed with a {@code Content-Length}, followed by the fully
+     * buffered body unless {@code bodyFromChannel} is true.
+     */
+    static byte[] encode(Request request, boolean bodyFromChannel) throws IOException {
+        RequestBody body = request.body();
+        if (bodyFromChannel) return Http1Codec.requestHead(request, body.contentLength());
+        if (body == null) return Http1Codec.requestHead(request, -1L);
+
+        Buffer content = new Buffer();
+        try {
+            body.writeTo(content.outputStream());
+            long contentLength = content.size();
+            byte[] head = Http1Codec.requestHead(request, contentLength);
+            if (head.length + contentLength > Integer.MAX_VALUE) {
+                throw new IOException("Request body too large to buffer: " + contentLength);
+            }
+            byte[] result = new byte[head.length + (int) contentLength];
+            System.arraycopy(head, 0, result, 0, head.length);
+            content.read(result, head.length, (int) contentLength);
+            return result;
+        } finally {
+            content.close();
+        }
+    }
+
+    NioExchange retry() {
+        return new NioExchange(engine, call, request, encodedRequest, bodyFromChannel);
+    }
+
+    void start() {
+        engine.pool.acquire(this, engine.client.dispatcher().getMaxRequestsPerHost());
+    }
+
+    /**
+     * Abandons this exchange. The failure is reported on the connection's loop if one is attached;
+     * otherwise whichever step runs next notices that the call was canceled.
+     */
+    void cancel() {
+        NioConnection connection = this.connection;
+        if (connection != null) {
+            connection.loop.execute(new LoopTask() {
+                @Override
+                void execute() {
+                    fail(new IOException("Canceled"));
+                }
+            });
+        } else if (engine.pool.cancelWaiting(this)) {
+            fail(new IOException("Canceled"));
+        }
+    }
+
+    /**
+     * Called by the pool with an idle connection for this exchange.
+     */
+    void onAcquired(final NioConnection connection) {
+        this.connection = connection;
+        connection.loop.execute(new LoopTask() {
+            @Override
+            void execute() {
+                if (finished.get()) return;
+                connection.exchange = NioExchange.this;
+                reused = true;
+                if (call.isCanceled()) {
+                    fail(new IOException("Canceled"));
+                    return;
+                }
+                startWriting();
+            }
+        });
+    }
+
+    /**
+     * Called by the pool when this exchange may open a new connection to its route.
+     */
+    void onConnectPermitted() {
+        permitted = true;
+        if (call.isCanceled()) {
+            fail(new IOException("Canceled"));
+            return;
+        }
+
+        if (Util.verifyAsIpAddress(route.host())) {
+            connect(new InetSocketAddress(route.host(), route.port()));
+            return;
+        }
+        try {
+            engine.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (call.isCanceled()) {
+                        fail(new IOException("Canceled"));
+                        return;
+                    }
+                    InetSocketAddress address = new InetSocketAddress(route.host(), route.port());
+                    if (address.isUnresolved()) {
+                        fail(new UnknownHostException(route.host()));
+                        return;
+                    }
+                    connect(address);
+                }
+            });
+        } catch (RuntimeException e) {
+            fail(new IOException("executor rejected", e));
+        }
+    }
+
+    private void connect(final InetSocketAddress address) {
+        final EventLoop loop;
+        try {
+            loop = engine.nextLoop();
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        loop.execute(new LoopTask() {
+            @Override
+            void execute() {
+                openChannel(loop, address);
+            }
+        });
+    }
+
+    private void openChannel(EventLoop loop, InetSocketAddress address) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            HttpClient client = engine.client;
+            Socket socket = channel.socket();
+            socket.setTcpNoDelay(client.tcpNoDelay());
+            if (client.socketSendBufferSize() > 0) {
+                socket.setSendBufferSize(client.socketSendBufferSize());
+            }
+            if (client.socketReceiveBufferSize() > 0) {
+                socket.setReceiveBufferSize(client.socketReceiveBufferSize());
+            }
+
+            NioConnection connection = new NioConnection(engine.pool, route, channel, loop);
+            connection.key = loop.register(connection, 0);
+            connection.exchange = this;
+            this.connection = connection;
+        } catch (IOException e) {
+            Util.closeQuietly(channel);
+            fail(e);
+            return;
+        }
+
+        try {
+            if (call.isCanceled()) throw new IOException("Canceled");
+            state = STATE_CONNECTING;
+            deadline(engine.client.connectTimeoutMillis());
+            if (channel.connect(address)) {
+                connected();
+            } else {
+                connection.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void onReady(int readyOps) {
+        try {
+            switch (state) {
+                case STATE_CONNECTING:
+                    if (connection.channel.finishConnect()) {
+                        connected();
+                    }
+                    break;
+                case STATE_HANDSHAKING:
+                    handshake();
+                    break;
+                case STATE_WRITING:
+                    deadline(engine.client.writeTimeoutMillis());
+                    writeRequest();
+                    break;
+                case STATE_READING:
+                    readResponse();
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void checkTimeout(long now) {
+        if (!hasDeadline || state == STATE_DONE || now - deadlineNanos < 0) return;
+        fail(new SocketTimeoutException(state == STATE_CONNECTING ? "connect timed out" : "timeout"));
+    }
+
+    /**
+     * Starts TLS if the route needs it. The handshake shares the connect timeout.
+     */
+    private void connected() throws IOException {
+        if (!route.isHttps()) {
+            startWriting();
+            return;
+        }
+        SSLEngine sslEngine = engine.sslContext().createSSLEngine(route.host(), route.port());
+        sslEngine.setUseClientMode(true);
+        connection.tls = new TlsSession(sslEngine);
+        sslEngine.beginHandshake();
+        state = STATE_HANDSHAKING;
+        handshake();
+    }
+
+    private void handshake() throws IOException {
+        switch (connection.tls.handshake(connection.channel)) {
+            case TlsSession.HANDSHAKE_NEED_READ:
+                connection.interestOps(SelectionKey.OP_READ);
+                break;
+            case TlsSession.HANDSHAKE_NEED_WRITE:
+                connection.interestOps(SelectionKey.OP_WRITE);
+                break;
+            default:
+                HostnameVerifier hostnameVerifier = route.hostnameVerifier();
+                if (hostnameVerifier != null
+                        && !hostnameVerifier.verify(route.host(), connection.tls.engine.getSession())) {
+                    throw new SSLPeerUnverifiedException("Hostname " + route.host() + " not verified");
+                }
+                startWriting();
+                break;
+        }
+    }
+
+    private void startWriting() {
+        state = STATE_WRITING;
+        sink = ByteBuffer.wrap(encodedRequest);
+        deadline(engine.client.writeTimeoutMillis());
+        try {
+            writeRequest();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeRequest() throws IOException {
+        if (!connection.write(sink)) {
+            connection.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (bodyFromChannel) {
+            if (bodyWriter == null) bodyWriter = request.body().channelWriter();
+            if (!bodyWriter.writeTo(connection.channel)) {
+                connection.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            closeBodyWriter();
+        }
+        sink = null;
+        state = STATE_READING;
+        parser = new Http1ResponseParser(request.method(),
+                engine.client.maxResponseBufferSize());
+        deadline(engine.client.readTimeoutMillis());
+        connection.interestOps(SelectionKey.OP_READ);
+        // TLS may already hold decrypted bytes the selector can't see.
+        readResponse();
+    }
+
+    private void readResponse() throws IOException {
+        ByteBuffer buffer = connection.loop.readBuffer;
+        for (int reads = 0; reads < MAX_READS_PER_EVENT; reads++) {
+            buffer.clear();
+            int read = connection.read(buffer);
+            if (read == -1) {
+                parser.endOfInput();
+                succeed(false);
+                return;
+            }
+            if (read == 0) return;
+
+            responseStarted = true;
+            deadline(engine.client.readTimeoutMillis());
+            buffer.flip();
+            parser.consume(buffer);
+            if (parser.isDone()) {
+                // Leftover bytes mean the peer is out of step with us; don't reuse the connection.
+                succeed(!buffer.hasRemaining());
+                return;
+            }
+        }
+
+        // Let other connections on this loop have a turn before continuing with this one.
+        connection.loop.execute(new LoopTask() {
+            @Override
+            void execute() {
+                if (state != STATE_READING) return;
+                onReady(SelectionKey.OP_READ);
+            }
+        });
+    }
+
+    private void closeBodyWriter() {
+        Util.closeQuietly(bodyWriter);
+        bodyWriter = null;
+    }
+
+    private void succeed(boolean reusable) {
+        if (!finished.compareAndSet(false, true)) return;
+        state = STATE_DONE;
+        NioConnection connection = this.connection;
+        connection.exchange = null;
+        connection.successCount++;
+        reusable &= parser.keepAlive() && !call.isCanceled();
+        if (reusable) {
+            connection.interestOps(SelectionKey.OP_READ); // Watch for the peer closing it while idle.
+        }
+        engine.pool.release(connection, reusable);
+
+        Response response = parser.response()
+                .request(request)
+                .build();
+        Buffer body = parser.body();
+        if (body != null) {
+            MediaType contentType = MediaType.parse(response.header("Content-Type"));
+            response = response.newBuilder()
+                    .body(ResponseBody.create(contentType, body))
+                    .build();
+        }
+        call.exchangeSucceeded(response);
+    }
+
+    void fail(IOException e) {
+        if (!finished.compareAndSet(false, true)) return;
+        state = STATE_DONE;
+        closeBodyWriter();
+        NioConnection connection = this.connection;
+        if (connection != null) {
+            connection.exchange = null;
+            engine.pool.release(connection, false);
+        } else if (permitted) {
+            engine.pool.connectFailed(route);
+        }
+        // A pooled connection that fails before the response starts was most likely closed by the
+        // peer while idle, so the exchange is retried on another connection.
+        boolean retry = reused && !responseStarted && !call.isCanceled()
+                && engine.client.retryOnConnectionFailure();
+        call.exchangeFailed(this, e, retry);
+    }
+
+    private void deadline(int timeoutMillis) {
+        hasDeadline = timeoutMillis > 0;
+        if (hasDeadline) {
+            deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+    }
+
+    /**
+     * A step of this exchange run on its connection's loop. A runtime failure fails the exchange
+     * instead of escaping to the loop.
+     */
+    private abstract class LoopTask implements Runnable {
+        @Override
+        public final void run() {
+            try {
+                execute();
+            } catch (RuntimeException e) {
+                fail(new IOException("Unexpected failure", e));
+            }
+        }
+
+        abstract void execute();
+    }
+}
@@ -0,0 +1,209 @@
+package com.zero.support.net.internal.nio;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Drives an {@link SSLEngine} over a non-blocking channel. Nothing here blocks: each method does as
+ * much work as the socket allows and reports whether it is waiting to read or to write.
+ *
+ * <p>Buffers are kept in fill mode between calls: {@code netIn} holds ciphertext read but not yet
+ * unwrapped, {@code netOut} ciphertext wrapped but not yet written, and {@code appIn} plaintext
+ * unwrapped but not yet returned.
+ */
+final class TlsSession {
+    static final int HANDSHAKE_DONE = 0;
+    static final int HANDSHAKE_NEED_READ = 1;
+    static final int HANDSHAKE_NEED_WRITE = 2;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    final SSLEngine engine;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+
+    TlsSession(SSLEngine engine) {
+        this.engine = engine;
+        SSLSession session = engine.getSession();
+        this.netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+    }
+
+    /**
+     * Advances the handshake, returning {@link #HANDSHAKE_DONE} once it completes, or which readiness
+     * to wait for before calling again.
+     */
+    int handshake(SocketChannel channel) throws IOException {
+        while (true) {
+            if (!flush(channel)) return HANDSHAKE_NEED_WRITE;
+
+            switch (engine.getHandshakeStatus()) {
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    return HANDSHAKE_DONE;
+
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    break;
+
+                case NEED_UNWRAP:
+                default:
+                    netIn.flip();
+                    SSLEngineResult result = engine.unwrap(netIn, appIn);
+                    netIn.compact();
+                    switch (result.getStatus()) {
+                        case BUFFER_UNDERFLOW:
+                            int read = readNet(channel);
+                            if (read == -1) throw new EOFException("Connection closed during TLS handshake");
+                            if (read == 0) return HANDSHAKE_NEED_READ;
+                            break;
+                        case BUFFER_OVERFLOW:
+                            appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                            break;
+                        case CLOSED:
+                            throw new SSLException("Connection closed during TLS handshake");
+                        default:
+                            break;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads decrypted bytes into {@code sink}. Returns the number of bytes read, 0 if the socket has
+     * nothing more to offer right now, or -1 at the end of the stream.
+     */
+    int read(SocketChannel channel, ByteBuffer sink) throws IOException {
+        while (true) {
+            if (appIn.position() > 0) {
+                appIn.flip();
+                int count = Math.min(appIn.remaining(), sink.remaining());
+                int limit = appIn.limit();
+                appIn.limit(appIn.position() + count);
+                sink.put(appIn);
+                appIn.limit(limit);
+                appIn.compact();
+                return count;
+            }
+
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            afterUnwrap(channel);
+
+            switch (result.getStatus()) {
+                case CLOSED:
+                    return -1;
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case BUFFER_UNDERFLOW:
+                case OK:
+                default:
+                    if (result.getStatus() == SSLEngineResult.Status.OK
+                            && (result.bytesConsumed() > 0 || result.bytesProduced() > 0)) {
+                        break; // Progress; loop to return it or unwrap the next record.
+                    }
+                    int read = readNet(channel);
+                    if (read <= 0) return read;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Encrypts and writes as much of {@code source} as the socket accepts. Returns true once all of
+     * it has been written.
+     */
+    boolean write(SocketChannel channel, ByteBuffer source) throws IOException {
+        while (true) {
+            if (!flush(channel)) return false;
+            if (!source.hasRemaining()) return true;
+            wrap(source);
+        }
+    }
+
+    /**
+     * Handles post-handshake messages such as TLS 1.3 session tickets and key updates that need a
+     * delegated task or a reply while reading application data.
+     */
+    private void afterUnwrap(SocketChannel channel) throws IOException {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+            status = engine.getHandshakeStatus();
+        }
+        if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            wrap(EMPTY);
+            flush(channel);
+        }
+    }
+
+    private void wrap(ByteBuffer source) throws IOException {
+        SSLEngineResult result = engine.wrap(source, netOut);
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                break;
+            case CLOSED:
+                throw new SSLException("TLS session closed");
+            default:
+                break;
+        }
+    }
+
+    private int readNet(SocketChannel channel) throws IOException {
+        if (!netIn.hasRemaining()) {
+            netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+        }
+        return channel.read(netIn);
+    }
+
+    /**
+     * Writes pending ciphertext. Returns true if nothing remains to be written.
+     */
+    private boolean flush(SocketChannel channel) throws IOException {
+        if (netOut.position() == 0) return true;
+        netOut.flip();
+        channel.write(netOut);
+        boolean flushed = !netOut.hasRemaining();
+        netOut.compact();
+        return flushed;
+    }
+
+    /**
+     * Runs the engine's certificate and key computations inline. They take milliseconds at most,
+     * and running them here keeps the handshake on the connection's loop.
+     */
+    private void runDelegatedTasks() {
+        for (Runnable task; (task = engine.getDelegatedTask()) != null; ) {
+            task.run();
+        }
+    }
+
+    /**
+     * Returns a buffer with room for at least {@code size} more bytes, holding {@code buffer}'s
+     * contents.
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        ByteBuffer result = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        result.put(buffer);
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.zero.support.net.internal.ws;
+
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses outgoing messages for permessage-deflate. Each message is a sync-flushed run of raw
+ * DEFLATE blocks without the trailing {@code 00 00 ff ff} of the flush. Unless the server asked
+ * for {@code client_no_context_takeover}, the compression window carries over between messages.
+ */
+final class MessageDeflater implements Closeable {
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final boolean noContextTakeover;
+    private byte[] output = new byte[1024];
+
+    MessageDeflater(boolean noContextTakeover) {
+        this.noContextTakeover = noContextTakeover;
+    }
+
+    /**
+     * Compresses {@code data} into {@link #output()} and returns the compressed length. The output
+     * is valid until the next call.
+     */
+    int deflate(byte[] data, int offset, int byteCount) {
+        if (output.length > MAX_RETAINED_CAPACITY) output = new byte[1024];
+        if (noContextTakeover) deflater.reset();
+        deflater.setInput(data, offset, byteCount);
+        int size = 0;
+        while (true) {
+            if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+            size += deflater.deflate(output, size, output.length - size, Deflater.SYNC_FLUSH);
+            // The flush is complete once the deflater stops short of filling the output.
+            if (size < output.length) break;
+        }
+
+        if (size >= 4 && output[size - 4] == 0 && output[size - 3] == 0
+                && output[size - 2] == (byte) 0xff && output[size - 1] == (byte) 0xff) {
+            return size - 4;
+        }
+        // No empty block to strip; end with one so the message still ends on a block boundary.
+        if (size == output.length) output = Arrays.copyOf(output, output.length + 1);
+        output[size] = 0;
+        return size + 1;
+    }
+
+    byte[] output() {
+        return output;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+}
@@ -0,0 +1,63 @@
+package com.zero.support.net.internal.ws;
+
+
+import java.io.Closeable;
+import java.net.ProtocolException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses incoming messages for permessage-deflate. The window carries over between
+ * messages, which is harmless when the server resets its own with {@code
+ * server_no_context_takeover}.
+ */
+final class MessageInflater implements Closeable {
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final byte[] EMPTY_DEFLATE_BLOCK = {0, 0, (byte) 0xff, (byte) 0xff};
+
+    private final Inflater inflater = new Inflater(true);
+    private byte[] output = new byte[1024];
+
+    /**
+     * Decompresses the message in {@code data[offset..offset + byteCount)} into {@link #output()}
+     * and returns its length. The output is valid until the next call.
+     */
+    int inflate(byte[] data, int offset, int byteCount) throws ProtocolException {
+        if (output.length > MAX_RETAINED_CAPACITY) output = new byte[1024];
+        int size = inflate(data, offset, byteCount, 0);
+        // The sender stripped the empty block that ends the message's flush.
+        return inflate(EMPTY_DEFLATE_BLOCK, 0, EMPTY_DEFLATE_BLOCK.length, size);
+    }
+
+    private int inflate(byte[] input, int offset, int byteCount, int size) throws ProtocolException {
+        inflater.setInput(input, offset, byteCount);
+        try {
+            while (true) {
+                if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+                int inflated = inflater.inflate(output, size, output.length - size);
+                size += inflated;
+                if (inflater.finished()) {
+                    // A final block ends the stream; the next message starts a new one.
+                    inflater.reset();
+                    return size;
+                }
+                // Stopping short of filling the output means the input is used up.
+                if (inflated == 0 && size < output.length) return size;
+            }
+        } catch (DataFormatException e) {
+            ProtocolException protocolException = new ProtocolException("Malformed compressed message");
+            protocolException.initCause(e);
+            throw protocolException;
+        }
+    }
+
+    byte[] output() {
+        return output;
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+}
@@ -0,0 +1,605 @@
+package com.zero.support.net.internal.ws;
+
+
+import com.zero.support.net.Headers;
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.Protocol;
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+import com.zero.support.net.WebSocket;
+import com.zero.support.net.WebSocketListener;
+import com.zero.support.net.internal.Http1Codec;
+import com.zero.support.net.internal.NamedRunnable;
+import com.zero.support.net.internal.RealConnection;
+import com.zero.support.net.internal.Route;
+import com.zero.support.net.internal.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.zero.support.net.internal.ws.WebSocketProtocol.CLOSE_CLIENT_GOING_AWAY;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.CLOSE_MESSAGE_MAX;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_BINARY;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_TEXT;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.UTF_8;
+
+/**
+ * A web socket over a dedicated HTTP/1.1 connection. The upgrade handshake and the frames that
+ * follow are read on a dispatcher thread, which delivers them to the listener; frames are written
+ * by a single writer thread per web socket, which also sends the pings.
+ *
+ * <p>The handshake is made directly on a connection of its own, outside the pool and the
+ * interceptor chain, whatever the client's engine: the connection is taken over by the web socket
+ * and never goes back to HTTP.
+ */
+public final class RealWebSocket implements WebSocket, WebSocketReader.FrameCallback {
+    /**
+     * The maximum number of bytes to enqueue. Rather than enqueueing beyond this limit we tear down
+     * the web socket! It's possible that we're writing faster than the peer can read.
+     */
+    private static final long MAX_QUEUE_SIZE = 16 * 1024 * 1024; // 16 MiB.
+
+    /**
+     * The maximum amount of time after the client calls {@link #close} to wait for a graceful
+     * shutdown. If the server doesn't respond the web socket will be canceled.
+     */
+    private static final long CANCEL_AFTER_CLOSE_MILLIS = 60 * 1000;
+
+    /**
+     * Messages smaller than this are sent uncompressed, since deflating them saves too little to
+     * be worth the time.
+     */
+    private static final long MINIMUM_DEFLATE_SIZE = 1024;
+
+    private static final int HEADER_LIMIT = 256 * 1024;
+
+    private final Request originalRequest;
+    final WebSocketListener listener;
+    private final Random random;
+    private final long pingIntervalMillis;
+    private final String key;
+
+    /**
+     * Writes the next frame; runs on the writer thread.
+     */
+    private final Runnable writerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (writeOneFrame()) {
+                }
+            } catch (IOException e) {
+                failWebSocket(e, null);
+            }
+        }
+    };
+
+    // Guarded by this.
+    private RealConnection connection;
+    private WebSocketWriter writer;
+    private ScheduledThreadPoolExecutor executor;
+    private final ArrayDeque<byte[]> pongQueue = new ArrayDeque<>();
+    private final ArrayDeque<Object> messageAndCloseQueue = new ArrayDeque<>();
+    private long queueSize;
+    private boolean enqueuedClose;
+    private ScheduledFuture<?> cancelFuture;
+    private int receivedCloseCode = -1;
+    private String receivedCloseReason;
+    private boolean canceled;
+    private boolean failed;
+    private int sentPingCount;
+    private int receivedPingCount;
+    private int receivedPongCount;
+    private boolean awaitingPong;
+
+    // Confined to the reader thread.
+    private WebSocketReader reader;
+
+    public RealWebSocket(Request request, WebSocketListener listener, Random random, long pingIntervalMillis) {
+        if (!"GET".equals(request.method())) {
+            throw new IllegalArgumentException("Request must be GET: " + request.method());
+        }
+        this.originalRequest = request;
+        this.listener = listener;
+        this.random = random;
+        this.pingIntervalMillis = pingIntervalMillis;
+
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        this.key = WebSocketProtocol.base64(nonce);
+    }
+
+    @Override
+    public Request request() {
+        return originalRequest;
+    }
+
+    /**
+     * Connects and runs the web socket on a dispatcher thread, until it is closed or fails.
+     */
+    public void connect(final HttpClient client) {
+        final Request request = originalRequest.newBuilder()
+                .header("Upgrade", "websocket")
+                .header("Connection", "Upgrade")
+                .header("Sec-WebSocket-Key", key)
+                .header("Sec-WebSocket-Version", "13")
+                .header("Sec-WebSocket-Extensions", "permessage-deflate")
+                .build();
+        client.dispatcher().executorService().execute(new NamedRunnable("Net WebSocket %s", request.url()) {
+            @Override
+            protected void execute() {
+                connectAndRead(client, request, name);
+            }
+        });
+    }
+
+    private void connectAndRead(HttpClient client, Request request, String name) {
+        Route route = Route.of(client, request).withProtocols(Util.immutableList(Protocol.HTTP_1_1));
+        RealConnection connection;
+        try {
+            connection = RealConnection.connectUnpooled(client, route);
+        } catch (IOException e) {
+            failWebSocket(e, null);
+            return;
+        }
+        synchronized (this) {
+            if (canceled) {
+                connection.close();
+                failWebSocket(new IOException("Canceled"), null);
+                return;
+            }
+            this.connection = connection;
+        }
+
+        Response response = null;
+        WebSocketExtensions extensions;
+        try {
+            OutputStream sink = connection.sink();
+            sink.write(Http1Codec.requestHead(request, -1L));
+            sink.flush();
+            response = readResponseHeaders(connection.source(), request);
+            checkUpgradeSuccess(response);
+            extensions = WebSocketExtensions.parse(response.headers());
+            if (extensions.unexpectedValues) {
+                throw new ProtocolException("Unexpected Sec-WebSocket-Extensions in response header: "
+                        + response.headers("Sec-WebSocket-Extensions"));
+            }
+            // The read timeout bounded the handshake. From now on the web socket may be idle for
+            // as long as it likes, and pings detect dead connections instead.
+            connection.socket().setSoTimeout(0);
+        } catch (IOException e) {
+            failWebSocket(e, response);
+            return;
+        }
+
+        try {
+            initReaderAndWriter(name, connection, extensions);
+            listener.onOpen(this, response);
+            loopReader();
+        } catch (Exception e) {
+            failWebSocket(e, null);
+        } finally {
+            if (reader != null) reader.close();
+        }
+    }
+
+    private Response readResponseHeaders(InputStream source, Request request) throws IOException {
+        Http1Codec.StatusLine statusLine = Http1Codec.StatusLine.parse(readLine(source));
+        Headers.Builder headers = new Headers.Builder();
+        for (String line; (line = readLine(source)).length() != 0; ) {
+            Http1Codec.addHeaderLine(headers, line);
+        }
+        return new Response.Builder()
+                .request(request)
+                .code(statusLine.code)
+                .message(statusLine.message)
+                .headers(headers.build())
+                .build();
+    }
+
+    /**
+     * Reads a line of the response head, as ISO-8859-1 characters and without its terminator.
+     * Reads byte by byte so that frames sent right after the head stay in the stream.
+     */
+    private String readLine(InputStream source) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            int b = source.read();
+            if (b == -1) throw new EOFException("\\n not found: content=" + line);
+            if (b == '\n') break;
+            if (line.length() == HEADER_LIMIT) throw new ProtocolException("header line too long");
+            line.append((char) b);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+        return line.toString();
+    }
+
+    private void checkUpgradeSuccess(Response response) throws ProtocolException {
+        if (response.code() != 101) {
+            throw new ProtocolException("Expected HTTP 101 response but was '"
+                    + response.code() + " " + response.message() + "'");
+        }
+
+        String headerConnection = response.header("Connection");
+        if (!"Upgrade".equalsIgnoreCase(headerConnection)) {
+            throw new ProtocolException("Expected 'Connection' header value 'Upgrade' but was '"
+                    + headerConnection + "'");
+        }
+
+        String headerUpgrade = response.header("Upgrade");
+        if (!"websocket".equalsIgnoreCase(headerUpgrade)) {
+            throw new ProtocolException("Expected 'Upgrade' header value 'websocket' but was '"
+                    + headerUpgrade + "'");
+        }
+
+        String headerAccept = response.header("Sec-WebSocket-Accept");
+        String acceptExpected = WebSocketProtocol.acceptHeader(key);
+        if (!acceptExpected.equals(headerAccept)) {
+            throw new ProtocolException("Expected 'Sec-WebSocket-Accept' header value '"
+                    + acceptExpected + "' but was '" + headerAccept + "'");
+        }
+    }
+
+    private void initReaderAndWriter(String name, RealConnection connection, WebSocketExtensions extensions) {
+        synchronized (this) {
+            MessageDeflater deflater = extensions.perMessageDeflate
+                    ? new MessageDeflater(extensions.clientNoContextTakeover)
+                    : null;
+            this.writer = new WebSocketWriter(connection.sink(), random, deflater, MINIMUM_DEFLATE_SIZE);
+            this.executor = new ScheduledThreadPoolExecutor(1, Util.threadFactory(name, false));
+            // Once shut down, only the task that releases the writer still runs.
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            if (pingIntervalMillis != 0) {
+                executor.scheduleAtFixedRate(new PingRunnable(), pingIntervalMillis,
+                        pingIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            if (!messageAndCloseQueue.isEmpty()) {
+                runWriter(); // Send messages that were enqueued before we were connected.
+            }
+        }
+
+        MessageInflater inflater = extensions.perMessageDeflate ? new MessageInflater() : null;
+        reader = new WebSocketReader(connection.source(), this, inflater);
+    }
+
+    /**
+     * Receive frames until there are no more. Invoked only by the reader thread.
+     */
+    private void loopReader() throws IOException {
+        while (receivedCloseCode == -1) {
+            // This method call results in one or more onRead* methods being called on this thread.
+            reader.processNextFrame();
+        }
+    }
+
+    @Override
+    public synchronized long queueSize() {
+        return queueSize;
+    }
+
+    @Override
+    public void cancel() {
+        RealConnection connection;
+        synchronized (this) {
+            if (canceled) return;
+            canceled = true;
+            connection = this.connection;
+        }
+        // Closing the socket fails the reader, which reports the failure.
+        if (connection != null) connection.close();
+    }
+
+    @Override
+    public void onReadMessage(String text) throws IOException {
+        listener.onMessage(this, text);
+    }
+
+    @Override
+    public void onReadMessage(byte[] bytes) throws IOException {
+        listener.onMessage(this, bytes);
+    }
+
+    @Override
+    public synchronized void onReadPing(byte[] payload) {
+        // Don't respond to pings after we've failed or sent the close frame.
+        if (failed || (enqueuedClose && messageAndCloseQueue.isEmpty())) return;
+
+        pongQueue.add(payload);
+        runWriter();
+        receivedPingCount++;
+    }
+
+    @Override
+    public synchronized void onReadPong(byte[] payload) {
+        // This API doesn't expose pings.
+        receivedPongCount++;
+        awaitingPong = false;
+    }
+
+    @Override
+    public void onReadClose(int code, String reason) {
+        RealConnection toClose = null;
+        synchronized (this) {
+            if (receivedCloseCode != -1) throw new IllegalStateException("already closed");
+            receivedCloseCode = code;
+            receivedCloseReason = reason;
+            if (enqueuedClose && messageAndCloseQueue.isEmpty()) {
+                // Our close frame has been sent already.
+                toClose = this.connection;
+                this.connection = null;
+                if (cancelFuture != null) cancelFuture.cancel(false);
+                shutdownWriter();
+            }
+        }
+
+        try {
+            listener.onClosing(this, code, reason);
+            if (toClose != null) {
+                listener.onClosed(this, code, reason);
+            } else {
+                // Echo the close unless the listener answered it; the writer then completes it.
+                close(WebSocketProtocol.closeCodeExceptionMessage(code) == null ? code : 1000, null);
+            }
+        } finally {
+            if (toClose != null) toClose.close();
+        }
+    }
+
+    // Writer methods to enqueue frames. They'll be sent asynchronously by the writer thread.
+
+    @Override
+    public boolean send(String text) {
+        if (text == null) throw new NullPointerException("text == null");
+        return send(text.getBytes(UTF_8), OPCODE_TEXT);
+    }
+
+    @Override
+    public boolean send(byte[] bytes) {
+        if (bytes == null) throw new NullPointerException("bytes == null");
+        return send(bytes.clone(), OPCODE_BINARY);
+    }
+
+    @Override
+    public boolean send(ByteBuffer bytes) {
+        if (bytes == null) throw new NullPointerException("bytes == null");
+        byte[] data = new byte[bytes.remaining()];
+        bytes.duplicate().get(data);
+        if (!send(data, OPCODE_BINARY)) return false;
+        bytes.position(bytes.limit());
+        return true;
+    }
+
+    private synchronized boolean send(byte[] data, int formatOpcode) {
+        // Don't send new frames after we've failed or enqueued a close frame.
+        if (failed || enqueuedClose) return false;
+
+        // If this frame overflows the buffer, reject it and close the web socket.
+        if (queueSize + data.length > MAX_QUEUE_SIZE) {
+            close(CLOSE_CLIENT_GOING_AWAY, null);
+            return false;
+        }
+
+        // Enqueue the message frame.
+        queueSize += data.length;
+        messageAndCloseQueue.add(new Message(formatOpcode, data));
+        runWriter();
+        return true;
+    }
+
+    @Override
+    public boolean close(int code, String reason) {
+        return close(code, reason, CANCEL_AFTER_CLOSE_MILLIS);
+    }
+
+    synchronized boolean close(int code, String reason, long cancelAfterCloseMillis) {
+        WebSocketProtocol.validateCloseCode(code);
+
+        byte[] reasonBytes = null;
+        if (reason != null) {
+            reasonBytes = reason.getBytes(UTF_8);
+            if (reasonBytes.length > CLOSE_MESSAGE_MAX) {
+                throw new IllegalArgumentException("reason.size() > " + CLOSE_MESSAGE_MAX + ": " + reason);
+            }
+        }
+
+        if (failed || enqueuedClose) return false;
+
+        // Immediately prevent further frames from being enqueued.
+        enqueuedClose = true;
+
+        // Enqueue the close frame.
+        messageAndCloseQueue.add(new Close(code, reasonBytes, cancelAfterCloseMillis));
+        runWriter();
+        return true;
+    }
+
+    private void runWriter() {
+        assert (Thread.holdsLock(this));
+
+        if (executor != null && !executor.isShutdown()) {
+            executor.execute(writerRunnable);
+        }
+    }
+
+    /**
+     * Attempts to remove a single frame from a queue and send it. This prefers to write urgent
+     * pongs before less urgent messages and close frames. For example it's possible that a caller
+     * will enqueue messages followed by pongs, but this sends pongs followed by messages. Pongs
+     * are always written in the order they were enqueued.
+     *
+     * <p>If a frame cannot be sent - because there are none enqueued or because the web socket is
+     * not connected - this does nothing and returns false. Otherwise this returns true and the
+     * caller should immediately invoke this method again until it returns false.
+     *
+     * <p>This method may only be invoked by the writer thread. There may be only thread invoking
+     * this method at a time.
+     */
+    boolean writeOneFrame() throws IOException {
+        WebSocketWriter writer;
+        byte[] pong;
+        Object messageOrClose = null;
+        int receivedCloseCode = -1;
+        String receivedCloseReason = null;
+        RealConnection connectionToClose = null;
+
+        synchronized (this) {
+            if (failed) {
+                return false; // Failed web socket.
+            }
+
+            writer = this.writer;
+            pong = pongQueue.poll();
+            if (pong == null) {
+                messageOrClose = messageAndCloseQueue.poll();
+                if (messageOrClose instanceof Close) {
+                    receivedCloseCode = this.receivedCloseCode;
+                    receivedCloseReason = this.receivedCloseReason;
+                    if (receivedCloseCode != -1) {
+                        connectionToClose = this.connection;
+                        this.connection = null;
+                        shutdownWriter();
+                    } else {
+                        // When we request a graceful close also schedule a cancel of the web socket.
+                        cancelFuture = executor.schedule(new CancelRunnable(),
+                                ((Close) messageOrClose).cancelAfterCloseMillis, TimeUnit.MILLISECONDS);
+                    }
+                } else if (messageOrClose == null) {
+                    return false; // The queue is exhausted.
+                }
+            }
+        }
+
+        try {
+            if (pong != null) {
+                writer.writePong(pong);
+
+            } else if (messageOrClose instanceof Message) {
+                Message message = (Message) messageOrClose;
+                writer.writeMessageFrame(message.formatOpcode, message.data);
+                synchronized (this) {
+                    queueSize -= message.data.length;
+                }
+
+            } else {
+                Close close = (Close) messageOrClose;
+                writer.writeClose(close.code, close.reason);
+
+                // We closed the writer: now both reader and writer are closed.
+                if (connectionToClose != null) {
+                    listener.onClosed(this, receivedCloseCode, receivedCloseReason);
+                }
+            }
+
+            return true;
+        } finally {
+            if (connectionToClose != null) connectionToClose.close();
+        }
+    }
+
+    void writePingFrame() {
+        WebSocketWriter writer;
+        int failedPing;
+        synchronized (this) {
+            if (failed) return;
+            writer = this.writer;
+            failedPing = awaitingPong ? sentPingCount : -1;
+            sentPingCount++;
+            awaitingPong = true;
+        }
+
+        if (failedPing != -1) {
+            failWebSocket(new SocketTimeoutException("sent ping but didn't receive pong within "
+                    + pingIntervalMillis + "ms (after " + (failedPing - 1) + " successful ping/pongs)"), null);
+            return;
+        }
+
+        try {
+            writer.writePing(Util.EMPTY_BYTE_ARRAY);
+        } catch (IOException e) {
+            failWebSocket(e, null);
+        }
+    }
+
+    void failWebSocket(Exception e, Response response) {
+        RealConnection toClose;
+        synchronized (this) {
+            if (failed) return; // Already failed.
+            failed = true;
+            toClose = this.connection;
+            this.connection = null;
+            if (cancelFuture != null) cancelFuture.cancel(false);
+            shutdownWriter();
+        }
+
+        try {
+            listener.onFailure(this, e, response);
+        } finally {
+            if (toClose != null) toClose.close();
+        }
+    }
+
+    /**
+     * Stops the writer thread once it is done with the frame it is writing, if any, and releases
+     * the writer's compressor on that thread.
+     */
+    private void shutdownWriter() {
+        assert (Thread.holdsLock(this));
+
+        if (executor == null || executor.isShutdown()) return;
+        final WebSocketWriter writer = this.writer;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writer.close();
+            }
+        });
+        executor.shutdown();
+    }
+
+    static final class Message {
+        final int formatOpcode;
+        final byte[] data;
+
+        Message(int formatOpcode, byte[] data) {
+            this.formatOpcode = formatOpcode;
+            this.data = data;
+        }
+    }
+
+    static final class Close {
+        final int code;
+        final byte[] reason;
+        final long cancelAfterCloseMillis;
+
+        Close(int code, byte[] reason, long cancelAfterCloseMillis) {
+            this.code = code;
+            this.reason = reason;
+            this.cancelAfterCloseMillis = cancelAfterCloseMillis;
+        }
+    }
+
+    private final class PingRunnable implements Runnable {
+        @Override
+        public void run() {
+            writePingFrame();
+        }
+    }
+
+    final class CancelRunnable implements Runnable {
+        @Override
+        public void run() {
+            cancel();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.zero.support.net.internal.ws;
+
+
+import com.zero.support.net.Headers;
+
+/**
+ * The extensions a server accepted in its {@code Sec-WebSocket-Extensions} headers. The client
+ * offers only <a href="https://tools.ietf.org/html/rfc7692">permessage-deflate</a>, without
+ * parameters, so anything else the server answers with is unexpected.
+ */
+final class WebSocketExtensions {
+    final boolean perMessageDeflate;
+    final boolean clientNoContextTakeover;
+    final boolean serverNoContextTakeover;
+    /**
+     * True if the server answered with an extension or parameter that wasn't offered, is repeated,
+     * or has an invalid value.
+     */
+    final boolean unexpectedValues;
+
+    private WebSocketExtensions(boolean perMessageDeflate, boolean clientNoContextTakeover,
+                                boolean serverNoContextTakeover, boolean unexpectedValues) {
+        this.perMessageDeflate = perMessageDeflate;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.unexpectedValues = unexpectedValues;
+    }
+
+    static WebSocketExtensions parse(Headers responseHeaders) {
+        boolean perMessageDeflate = false;
+        boolean clientNoContextTakeover = false;
+        boolean serverNoContextTakeover = false;
+        boolean serverMaxWindowBits = false;
+        boolean unexpectedValues = false;
+
+        for (String header : responseHeaders.values("Sec-WebSocket-Extensions")) {
+            for (String extension : header.split(",")) {
+                String[] parameters = extension.split(";");
+                String name = parameters[0].trim();
+                if (name.isEmpty()) continue;
+                if (!name.equalsIgnoreCase("permessage-deflate") || perMessageDeflate) {
+                    unexpectedValues = true;
+                    continue;
+                }
+                perMessageDeflate = true;
+
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    int equals = parameter.indexOf('=');
+                    String key = (equals != -1 ? parameter.substring(0, equals) : parameter).trim();
+                    String value = equals != -1 ? unquote(parameter.substring(equals + 1).trim()) : null;
+                    if (key.equalsIgnoreCase("client_no_context_takeover")) {
+                        if (clientNoContextTakeover || value != null) unexpectedValues = true;
+                        clientNoContextTakeover = true;
+                    } else if (key.equalsIgnoreCase("server_no_context_takeover")) {
+                        if (serverNoContextTakeover || value != null) unexpectedValues = true;
+                        serverNoContextTakeover = true;
+                    } else if (key.equalsIgnoreCase("server_max_window_bits")) {
+                        // The inflater accepts every window size, so only the value is checked.
+                        if (serverMaxWindowBits || !isWindowBits(value)) unexpectedValues = true;
+                        serverMaxWindowBits = true;
+                    } else {
+                        // Including client_max_window_bits: the deflater can't shrink its window,
+                        // so it isn't offered and a server must not ask for it.
+                        unexpectedValues = true;
+                    }
+                }
+            }
+        }
+        return new WebSocketExtensions(perMessageDeflate, clientNoContextTakeover,
+                serverNoContextTakeover, unexpectedValues);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static boolean isWindowBits(String value) {
+        if (value == null || value.length() == 0 || value.length() > 2) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') return false;
+        }
+        int bits = Integer.parseInt(value);
+        return bits >= 8 && bits <= 15;
+    }
+}
@@ -0,0 +1,179 @@
+package com.zero.support.net.internal.ws;
+
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Constants and helpers of the web socket protocol, <a href="https://tools.ietf.org/html/rfc6455">RFC
+ * 6455</a>.
+ */
+final class WebSocketProtocol {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Magic value which must be appended to the key in a response header.
+     */
+    static final String ACCEPT_MAGIC = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /*
+    Each frame starts with two bytes of data.
+
+     0 1 2 3 4 5 6 7    0 1 2 3 4 5 6 7
+    +-+-+-+-+-------+  +-+-------------+
+    |F|R|R|R| OP    |  |M| LENGTH      |
+    |I|S|S|S| CODE  |  |A|             |
+    |N|V|V|V|       |  |S|             |
+    | |1|2|3|       |  |K|             |
+    +-+-+-+-+-------+  +-+-------------+
+    */
+
+    /**
+     * Byte 0 flag for whether this is the final fragment in a message.
+     */
+    static final int B0_FLAG_FIN = 0x80;
+    /**
+     * Byte 0 reserved flag 1, set on the first frame of a message compressed by
+     * permessage-deflate.
+     */
+    static final int B0_FLAG_RSV1 = 0x40;
+    /**
+     * Byte 0 reserved flag 2. Must be 0 unless an extension negotiated otherwise.
+     */
+    static final int B0_FLAG_RSV2 = 0x20;
+    /**
+     * Byte 0 reserved flag 3. Must be 0 unless an extension negotiated otherwise.
+     */
+    static final int B0_FLAG_RSV3 = 0x10;
+    /**
+     * Byte 0 mask for the frame opcode.
+     */
+    static final int B0_MASK_OPCODE = 0x0f;
+    /**
+     * Flag in the opcode which indicates a control frame.
+     */
+    static final int OPCODE_FLAG_CONTROL = 0x08;
+
+    /**
+     * Byte 1 flag for whether the payload data is masked. Client frames must be masked and server
+     * frames must not be.
+     */
+    static final int B1_FLAG_MASK = 0x80;
+    /**
+     * Byte 1 mask for the payload length.
+     */
+    static final int B1_MASK_LENGTH = 0x7f;
+
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+
+    static final int OPCODE_CONTROL_CLOSE = 0x8;
+    static final int OPCODE_CONTROL_PING = 0x9;
+    static final int OPCODE_CONTROL_PONG = 0xa;
+
+    /**
+     * Maximum length of frame payload. Larger payloads, if supported by the frame type, can use the
+     * special values {@link #PAYLOAD_SHORT} or {@link #PAYLOAD_LONG}.
+     */
+    static final int PAYLOAD_BYTE_MAX = 125;
+    /**
+     * Maximum length of close message in bytes: the payload less its 2-byte status code.
+     */
+    static final int CLOSE_MESSAGE_MAX = PAYLOAD_BYTE_MAX - 2;
+    /**
+     * Value for the payload length which indicates the next two bytes are the unsigned length.
+     */
+    static final int PAYLOAD_SHORT = 126;
+    /**
+     * Maximum length of a frame payload to be denoted as {@link #PAYLOAD_SHORT}.
+     */
+    static final int PAYLOAD_SHORT_MAX = 0xffff;
+    /**
+     * Value for the payload length which indicates the next eight bytes are the unsigned length.
+     */
+    static final int PAYLOAD_LONG = 127;
+
+    /**
+     * Used when an unchecked exception was thrown in a listener.
+     */
+    static final int CLOSE_CLIENT_GOING_AWAY = 1001;
+    /**
+     * Used when an empty close frame was received (i.e., without a status code).
+     */
+    static final int CLOSE_NO_STATUS_CODE = 1005;
+
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private WebSocketProtocol() {
+    }
+
+    /**
+     * XORs {@code buffer[offset..offset + byteCount)} with the 4-byte {@code key}, where {@code
+     * buffer[offset]} is byte {@code frameOffset} of the frame's payload.
+     */
+    static void toggleMask(byte[] buffer, int offset, int byteCount, byte[] key, long frameOffset) {
+        for (int i = offset, end = offset + byteCount; i < end; i++, frameOffset++) {
+            buffer[i] = (byte) (buffer[i] ^ key[(int) (frameOffset & 3)]);
+        }
+    }
+
+    /**
+     * Returns an error message if {@code code} can't be sent in a close frame, or null if it can.
+     */
+    static String closeCodeExceptionMessage(int code) {
+        if (code < 1000 || code >= 5000) {
+            return "Code must be in range [1000,5000): " + code;
+        } else if ((code >= 1004 && code <= 1006) || (code >= 1015 && code <= 2999)) {
+            return "Code " + code + " is reserved and may not be used.";
+        } else {
+            return null;
+        }
+    }
+
+    static void validateCloseCode(int code) {
+        String message = closeCodeExceptionMessage(code);
+        if (message != null) throw new IllegalArgumentException(message);
+    }
+
+    /**
+     * Returns the {@code Sec-WebSocket-Accept} value a server answers {@code key} with.
+     */
+    static String acceptHeader(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + ACCEPT_MAGIC).getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Encodes {@code data} as padded standard base64.
+     */
+    static String base64(byte[] data) {
+        StringBuilder result = new StringBuilder((data.length + 2) / 3 * 4);
+        int i = 0;
+        for (int end = data.length - data.length % 3; i < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            result.append(BASE64[bits >> 18])
+                    .append(BASE64[(bits >> 12) & 0x3f])
+                    .append(BASE64[(bits >> 6) & 0x3f])
+                    .append(BASE64[bits & 0x3f]);
+        }
+        int remaining = data.length - i;
+        if (remaining == 1) {
+            int bits = (data[i] & 0xff) << 16;
+            result.append(BASE64[bits >> 18]).append(BASE64[(bits >> 12) & 0x3f]).append("==");
+        } else if (remaining == 2) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8;
+            result.append(BASE64[bits >> 18])
+                    .append(BASE64[(bits >> 12) & 0x3f])
+                    .append(BASE64[(bits >> 6) & 0x3f])
+                    .append('=');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,252 @@
+package com.zero.support.net.internal.ws;
+
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.util.Arrays;
+
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_FLAG_FIN;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_FLAG_RSV1;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_FLAG_RSV2;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_FLAG_RSV3;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_MASK_OPCODE;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B1_FLAG_MASK;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B1_MASK_LENGTH;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.CLOSE_NO_STATUS_CODE;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_BINARY;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTINUATION;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTROL_CLOSE;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTROL_PING;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTROL_PONG;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_FLAG_CONTROL;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_TEXT;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_BYTE_MAX;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_LONG;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_SHORT;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.UTF_8;
+
+/**
+ * Reads the frames a server sends, <a href="https://tools.ietf.org/html/rfc6455#section-5.2">RFC
+ * 6455 Section 5.2</a>. Control frames are handed to the callback as they arrive, even between
+ * the fragments of a message; the fragments of a message are joined, and decompressed if it was
+ * compressed, before it is handed over.
+ *
+ * <p>Payloads are read straight into buffers that are reused from frame to frame. A message that
+ * grew a buffer past 64 KiB doesn't keep it.
+ */
+final class WebSocketReader implements Closeable {
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final InputStream source;
+    private final FrameCallback callback;
+    private final MessageInflater inflater;
+
+    private boolean closed;
+
+    // Stateful data about the current frame.
+    private int opcode;
+    private long frameLength;
+    private boolean isFinalFrame;
+    private boolean isControlFrame;
+    private boolean readingCompressedMessage;
+
+    private final byte[] header = new byte[8];
+    private final byte[] controlFrame = new byte[PAYLOAD_BYTE_MAX];
+    private byte[] message = new byte[1024];
+    private int messageLength;
+
+    /**
+     * @param inflater decompresses messages if permessage-deflate was negotiated, or null.
+     */
+    WebSocketReader(InputStream source, FrameCallback callback, MessageInflater inflater) {
+        this.source = source;
+        this.callback = callback;
+        this.inflater = inflater;
+    }
+
+    /**
+     * Process the next protocol frame.
+     *
+     * <ul>
+     * <li>If it is a control frame this will result in a single call to {@link FrameCallback}.
+     * <li>If it is a message frame this will result in a single call to {@link
+     * FrameCallback#onReadMessage}. If the message spans multiple frames, each interleaved
+     * control frame will result in a corresponding call to {@link FrameCallback}.
+     * </ul>
+     */
+    void processNextFrame() throws IOException {
+        readHeader();
+        if (isControlFrame) {
+            readControlFrame();
+        } else {
+            readMessageFrame();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (closed) throw new IOException("closed");
+
+        int b0 = readByte();
+        opcode = b0 & B0_MASK_OPCODE;
+        isFinalFrame = (b0 & B0_FLAG_FIN) != 0;
+        isControlFrame = (opcode & OPCODE_FLAG_CONTROL) != 0;
+
+        // Control frames must be final frames (cannot contain continuations).
+        if (isControlFrame && !isFinalFrame) {
+            throw new ProtocolException("Control frames must be final.");
+        }
+
+        boolean reservedFlag1 = (b0 & B0_FLAG_RSV1) != 0;
+        if (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY) {
+            if (reservedFlag1 && inflater == null) throw new ProtocolException("Unexpected rsv1 flag");
+            readingCompressedMessage = reservedFlag1;
+        } else if (reservedFlag1) {
+            // Only the first frame of a data message may carry the compression flag.
+            throw new ProtocolException("Unexpected rsv1 flag");
+        }
+        if ((b0 & B0_FLAG_RSV2) != 0) throw new ProtocolException("Unexpected rsv2 flag");
+        if ((b0 & B0_FLAG_RSV3) != 0) throw new ProtocolException("Unexpected rsv3 flag");
+
+        int b1 = readByte();
+        if ((b1 & B1_FLAG_MASK) != 0) {
+            throw new ProtocolException("Server-sent frames must not be masked.");
+        }
+
+        frameLength = b1 & B1_MASK_LENGTH;
+        if (frameLength == PAYLOAD_SHORT) {
+            readFully(header, 0, 2);
+            frameLength = (header[0] & 0xffL) << 8 | (header[1] & 0xffL);
+        } else if (frameLength == PAYLOAD_LONG) {
+            readFully(header, 0, 8);
+            frameLength = 0L;
+            for (int i = 0; i < 8; i++) {
+                frameLength = frameLength << 8 | (header[i] & 0xffL);
+            }
+            if (frameLength < 0) {
+                throw new ProtocolException("Frame length 0x" + Long.toHexString(frameLength)
+                        + " > 0x7FFFFFFFFFFFFFFF");
+            }
+        }
+
+        if (isControlFrame && frameLength > PAYLOAD_BYTE_MAX) {
+            throw new ProtocolException("Control frame must be less than " + PAYLOAD_BYTE_MAX + "B.");
+        }
+    }
+
+    private void readControlFrame() throws IOException {
+        int length = (int) frameLength;
+        readFully(controlFrame, 0, length);
+
+        switch (opcode) {
+            case OPCODE_CONTROL_PING:
+                callback.onReadPing(Arrays.copyOf(controlFrame, length));
+                break;
+            case OPCODE_CONTROL_PONG:
+                callback.onReadPong(Arrays.copyOf(controlFrame, length));
+                break;
+            case OPCODE_CONTROL_CLOSE:
+                int code = CLOSE_NO_STATUS_CODE;
+                String reason = "";
+                if (length == 1) {
+                    throw new ProtocolException("Malformed close payload length of 1.");
+                } else if (length != 0) {
+                    code = (controlFrame[0] & 0xff) << 8 | (controlFrame[1] & 0xff);
+                    reason = new String(controlFrame, 2, length - 2, UTF_8);
+                    String codeExceptionMessage = WebSocketProtocol.closeCodeExceptionMessage(code);
+                    if (codeExceptionMessage != null) throw new ProtocolException(codeExceptionMessage);
+                }
+                callback.onReadClose(code, reason);
+                closed = true;
+                break;
+            default:
+                throw new ProtocolException("Unknown control opcode: " + Integer.toHexString(opcode));
+        }
+    }
+
+    private void readMessageFrame() throws IOException {
+        int formatOpcode = opcode;
+        if (formatOpcode != OPCODE_TEXT && formatOpcode != OPCODE_BINARY) {
+            throw new ProtocolException("Unknown opcode: " + Integer.toHexString(formatOpcode));
+        }
+
+        if (message.length > MAX_RETAINED_CAPACITY) message = new byte[1024];
+        messageLength = 0;
+        while (true) {
+            readMessagePayload();
+            if (isFinalFrame) break;
+            // Control frames may be interleaved with the fragments of a message.
+            while (true) {
+                readHeader();
+                if (!isControlFrame) break;
+                readControlFrame();
+                if (closed) return; // The rest of the message will never come.
+            }
+            if (opcode != OPCODE_CONTINUATION) {
+                throw new ProtocolException("Expected continuation opcode. Got: "
+                        + Integer.toHexString(opcode));
+            }
+        }
+
+        byte[] data = message;
+        int length = messageLength;
+        if (readingCompressedMessage) {
+            length = inflater.inflate(message, 0, messageLength);
+            data = inflater.output();
+        }
+        if (formatOpcode == OPCODE_TEXT) {
+            callback.onReadMessage(new String(data, 0, length, UTF_8));
+        } else {
+            callback.onReadMessage(Arrays.copyOf(data, length));
+        }
+    }
+
+    /**
+     * Appends the current frame's payload to {@link #message}.
+     */
+    private void readMessagePayload() throws IOException {
+        if (frameLength > Integer.MAX_VALUE - 8 - messageLength) {
+            throw new ProtocolException("Message too large: " + (messageLength + frameLength) + " bytes");
+        }
+        int length = (int) frameLength;
+        if (messageLength + length > message.length) {
+            message = Arrays.copyOf(message, Math.max(message.length * 2, messageLength + length));
+        }
+        readFully(message, messageLength, length);
+        messageLength += length;
+    }
+
+    private int readByte() throws IOException {
+        int b = source.read();
+        if (b == -1) throw new EOFException();
+        return b;
+    }
+
+    private void readFully(byte[] sink, int offset, int byteCount) throws IOException {
+        while (byteCount > 0) {
+            int read = source.read(sink, offset, byteCount);
+            if (read == -1) throw new EOFException();
+            offset += read;
+            byteCount -= read;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (inflater != null) inflater.close();
+    }
+
+    interface FrameCallback {
+        void onReadMessage(String text) throws IOException;
+
+        void onReadMessage(byte[] bytes) throws IOException;
+
+        void onReadPing(byte[] payload);
+
+        void onReadPong(byte[] payload);
+
+        void onReadClose(int code, String reason);
+    }
+}
@@ -0,0 +1,140 @@
+package com.zero.support.net.internal.ws;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_FLAG_FIN;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B0_FLAG_RSV1;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.B1_FLAG_MASK;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.CLOSE_MESSAGE_MAX;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTROL_CLOSE;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTROL_PING;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.OPCODE_CONTROL_PONG;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_BYTE_MAX;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_LONG;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_SHORT;
+import static com.zero.support.net.internal.ws.WebSocketProtocol.PAYLOAD_SHORT_MAX;
+
+/**
+ * Writes the frames of a client, <a href="https://tools.ietf.org/html/rfc6455#section-5.2">RFC
+ * 6455 Section 5.2</a>. Each frame gets a fresh mask key; the payload is masked a chunk at a time
+ * in a buffer that is reused for every frame, so the caller's data is never modified or copied
+ * whole. Messages are sent as a single frame.
+ *
+ * <p>This class is not thread safe.
+ */
+final class WebSocketWriter implements Closeable {
+    private final OutputStream sink;
+    private final Random random;
+    private final MessageDeflater deflater;
+    private final long minimumDeflateSize;
+
+    private boolean writerClosed;
+    private final byte[] maskKey = new byte[4];
+    /**
+     * Holds a frame's header, then its masked payload a chunk at a time.
+     */
+    private final byte[] buffer = new byte[8192];
+
+    /**
+     * @param deflater compresses messages of at least {@code minimumDeflateSize} bytes if
+     *                 permessage-deflate was negotiated, or null.
+     */
+    WebSocketWriter(OutputStream sink, Random random, MessageDeflater deflater, long minimumDeflateSize) {
+        this.sink = sink;
+        this.random = random;
+        this.deflater = deflater;
+        this.minimumDeflateSize = minimumDeflateSize;
+    }
+
+    void writePing(byte[] payload) throws IOException {
+        writeControlFrame(OPCODE_CONTROL_PING, payload);
+    }
+
+    void writePong(byte[] payload) throws IOException {
+        writeControlFrame(OPCODE_CONTROL_PONG, payload);
+    }
+
+    /**
+     * Send a close frame with the given code and reason, and stop writing.
+     *
+     * @param reason the reason as UTF-8, or null.
+     */
+    void writeClose(int code, byte[] reason) throws IOException {
+        int reasonLength = reason != null ? reason.length : 0;
+        if (reasonLength > CLOSE_MESSAGE_MAX) throw new IllegalArgumentException("reason too long");
+        byte[] payload = new byte[2 + reasonLength];
+        payload[0] = (byte) (code >> 8);
+        payload[1] = (byte) code;
+        if (reason != null) System.arraycopy(reason, 0, payload, 2, reasonLength);
+        try {
+            writeControlFrame(OPCODE_CONTROL_CLOSE, payload);
+        } finally {
+            writerClosed = true;
+        }
+    }
+
+    private void writeControlFrame(int opcode, byte[] payload) throws IOException {
+        if (payload.length > PAYLOAD_BYTE_MAX) {
+            throw new IllegalArgumentException("Payload size must be less than or equal to " + PAYLOAD_BYTE_MAX);
+        }
+        writeFrame(B0_FLAG_FIN | opcode, payload, payload.length);
+    }
+
+    /**
+     * Writes {@code data} as a single message frame of type {@code formatOpcode}, compressing it
+     * if permessage-deflate was negotiated and it is large enough to be worth it.
+     */
+    void writeMessageFrame(int formatOpcode, byte[] data) throws IOException {
+        int b0 = B0_FLAG_FIN | formatOpcode;
+        if (deflater != null && data.length >= minimumDeflateSize) {
+            int length = deflater.deflate(data, 0, data.length);
+            writeFrame(b0 | B0_FLAG_RSV1, deflater.output(), length);
+        } else {
+            writeFrame(b0, data, data.length);
+        }
+    }
+
+    private void writeFrame(int b0, byte[] payload, int length) throws IOException {
+        if (writerClosed) throw new IOException("closed");
+
+        int headerLength = 0;
+        buffer[headerLength++] = (byte) b0;
+        if (length <= PAYLOAD_BYTE_MAX) {
+            buffer[headerLength++] = (byte) (B1_FLAG_MASK | length);
+        } else if (length <= PAYLOAD_SHORT_MAX) {
+            buffer[headerLength++] = (byte) (B1_FLAG_MASK | PAYLOAD_SHORT);
+            buffer[headerLength++] = (byte) (length >> 8);
+            buffer[headerLength++] = (byte) length;
+        } else {
+            buffer[headerLength++] = (byte) (B1_FLAG_MASK | PAYLOAD_LONG);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[headerLength++] = (byte) ((long) length >> shift);
+            }
+        }
+        random.nextBytes(maskKey);
+        System.arraycopy(maskKey, 0, buffer, headerLength, maskKey.length);
+        headerLength += maskKey.length;
+
+        // Mask the payload into the space after the header, then a buffer at a time.
+        int offset = headerLength;
+        for (int written = 0; written < length; ) {
+            int count = Math.min(length - written, buffer.length - offset);
+            System.arraycopy(payload, written, buffer, offset, count);
+            WebSocketProtocol.toggleMask(buffer, offset, count, maskKey, written);
+            sink.write(buffer, 0, offset + count);
+            written += count;
+            offset = 0;
+        }
+        if (length == 0) sink.write(buffer, 0, headerLength);
+        sink.flush();
+    }
+
+    @Override
+    public void close() {
+        if (deflater != null) deflater.close();
+    }
+}
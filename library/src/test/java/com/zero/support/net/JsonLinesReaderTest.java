@@ -0,0 +1,60 @@
+package com.zero.support.net;
+
+import com.zero.support.net.internal.ByteArrayPool;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A record longer than the read buffer gets a larger one, which is dropped once the record has
+ * been consumed.
+ */
+public class JsonLinesReaderTest {
+    @Test
+    public void longRecordBufferIsNotRetained() throws IOException {
+        byte[] longLine = new byte[ByteArrayPool.BUFFER_SIZE * 3];
+        Arrays.fill(longLine, (byte) 'x');
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write("{\"a\":1}\n".getBytes("UTF-8"));
+        stream.write(longLine);
+        stream.write("\n{\"b\":2}\n{\"c\":3}\n".getBytes("UTF-8"));
+
+        BufferSizeDecoder decoder = new BufferSizeDecoder();
+        JsonLinesReader<String> reader = new JsonLinesReader<>(
+                new ByteArrayInputStream(stream.toByteArray()), decoder);
+        assertEquals("{\"a\":1}", reader.read());
+        assertEquals(longLine.length, reader.read().length());
+        assertEquals("{\"b\":2}", reader.read());
+        assertEquals("{\"c\":3}", reader.read());
+        assertNull(reader.read());
+        reader.close();
+
+        assertEquals(ByteArrayPool.BUFFER_SIZE, (int) decoder.bufferSizes.get(0));
+        assertTrue(decoder.bufferSizes.get(1) > ByteArrayPool.BUFFER_SIZE);
+        assertEquals(ByteArrayPool.BUFFER_SIZE, (int) decoder.bufferSizes.get(2));
+        assertEquals(ByteArrayPool.BUFFER_SIZE, (int) decoder.bufferSizes.get(3));
+    }
+
+    /**
+     * Decodes records to strings, noting the size of the buffer each was decoded in place from.
+     */
+    private static final class BufferSizeDecoder extends RecordDecoder<String> {
+        final List<Integer> bufferSizes = new ArrayList<>();
+
+        @Override
+        public String decode(byte[] data, int offset, int byteCount) throws IOException {
+            bufferSizes.add(data.length);
+            return RecordDecoder.STRING.decode(data, offset, byteCount);
+        }
+    }
+}
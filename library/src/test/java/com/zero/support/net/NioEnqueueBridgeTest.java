@@ -0,0 +1,162 @@
+package com.zero.support.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Calls enqueued on the NIO engine skip the interceptor chain, but must still offer and decode
+ * content codings like calls that are executed.
+ */
+public class NioEnqueueBridgeTest {
+    private static final String BODY = "hello, hello, hello";
+
+    private ServerSocket serverSocket;
+    private final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+    private HttpClient client;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "NioEnqueueBridgeTest server");
+        server.setDaemon(true);
+        server.start();
+        client = new HttpClient.Builder().engine(Engine.NIO).build();
+        url = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void enqueueMatchesExecute() throws Exception {
+        Response executed = client.newCall(new Request.Builder().url(url).build()).execute();
+        assertNull(executed.header("Content-Encoding"));
+        assertEquals(BODY, executed.body().string());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<String> enqueuedBody = new AtomicReference<>();
+        final AtomicReference<String> enqueuedEncoding = new AtomicReference<>();
+        client.newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                done.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    enqueuedEncoding.set(response.header("Content-Encoding"));
+                    enqueuedBody.set(response.body().string());
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(enqueuedEncoding.get());
+        assertEquals(BODY, enqueuedBody.get());
+
+        assertEquals(2, acceptEncodings.size());
+        assertEquals("gzip, deflate, br, zstd", acceptEncodings.get(0));
+        assertEquals(acceptEncodings.get(0), acceptEncodings.get(1));
+    }
+
+    /**
+     * Answers every request with a gzipped body and closes the connection.
+     */
+    private void serve() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread connection = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        InputStream in = socket.getInputStream();
+                        OutputStream out = socket.getOutputStream();
+                        String acceptEncoding = readAcceptEncoding(in);
+                        acceptEncodings.add(acceptEncoding != null ? acceptEncoding : "");
+                        byte[] body = gzip(BODY.getBytes("UTF-8"));
+                        out.write(("HTTP/1.1 200 OK\r\n"
+                                + "Content-Encoding: gzip\r\n"
+                                + "Content-Length: " + body.length + "\r\n"
+                                + "Connection: close\r\n"
+                                + "\r\n").getBytes("UTF-8"));
+                        out.write(body);
+                        out.flush();
+                    } catch (IOException ignored) {
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Reads a bodiless request up to its blank line, returning its Accept-Encoding header.
+     */
+    private static String readAcceptEncoding(InputStream in) throws IOException {
+        String result = null;
+        StringBuilder line = new StringBuilder();
+        for (int b; (b = in.read()) != -1; ) {
+            if (b == '\r') continue;
+            if (b != '\n') {
+                line.append((char) b);
+                continue;
+            }
+            if (line.length() == 0) return result;
+            String header = line.toString();
+            int colon = header.indexOf(':');
+            if (colon != -1 && header.substring(0, colon).trim().equalsIgnoreCase("Accept-Encoding")) {
+                result = header.substring(colon + 1).trim();
+            }
+            line.setLength(0);
+        }
+        throw new IOException("unexpected end of stream");
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(data);
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+package com.zero.support.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Canceling a call whose response was read in full must not disturb the pooled connection, which
+ * may already carry another call.
+ */
+public class SocketEngineCancelTest {
+    private static final long BODY_DELAY_MILLIS = 200;
+
+    private ServerSocket serverSocket;
+    private final AtomicInteger connections = new AtomicInteger();
+    private HttpClient client;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "SocketEngineCancelTest server");
+        server.setDaemon(true);
+        server.start();
+        client = new HttpClient.Builder().engine(Engine.SOCKET).build();
+        url = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void cancelAfterBodyReadDoesNotCloseReusedConnection() throws Exception {
+        Call callA = client.newCall(new Request.Builder().url(url).build());
+        Response responseA = callA.execute();
+        InputStream bodyA = responseA.body().byteStream();
+        // Read exactly Content-Length bytes without seeing -1: the connection is back in the pool.
+        assertEquals("hello", readFully(bodyA, 5));
+
+        Call callB = client.newCall(new Request.Builder().url(url).build());
+        Response responseB = callB.execute();
+        callA.cancel();
+        assertEquals("hello", responseB.body().string());
+        assertEquals(1, connections.get());
+        bodyA.close();
+    }
+
+    @Test
+    public void cancelAfterBodyClosedDoesNotCloseReusedConnection() throws Exception {
+        Call callA = client.newCall(new Request.Builder().url(url).build());
+        assertEquals("hello", callA.execute().body().string());
+
+        Call callB = client.newCall(new Request.Builder().url(url).build());
+        Response responseB = callB.execute();
+        callA.cancel();
+        assertEquals("hello", responseB.body().string());
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void deadlineDisarmedWhenConnectionReleased() throws Exception {
+        Call call = client.newCall(new Request.Builder()
+                .url(url)
+                .callTimeout(BODY_DELAY_MILLIS * 2, TimeUnit.MILLISECONDS)
+                .build());
+        InputStream body = call.execute().body().byteStream();
+        assertEquals("hello", readFully(body, 5));
+
+        Thread.sleep(BODY_DELAY_MILLIS * 3);
+        assertFalse(call.isCanceled());
+        client.dispatcher().cancelAll();
+        assertFalse(call.isCanceled());
+        body.close();
+    }
+
+    private static String readFully(InputStream in, int byteCount) throws IOException {
+        byte[] bytes = new byte[byteCount];
+        int offset = 0;
+        while (offset < byteCount) {
+            int read = in.read(bytes, offset, byteCount - offset);
+            if (read == -1) throw new IOException("unexpected end of stream");
+            offset += read;
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Answers every request on every connection with a 5-byte keep-alive response, whose body
+     * follows its headers after a short delay.
+     */
+    private void serve() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            Thread connection = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        InputStream in = socket.getInputStream();
+                        OutputStream out = socket.getOutputStream();
+                        while (skipRequest(in)) {
+                            out.write(("HTTP/1.1 200 OK\r\n"
+                                    + "Content-Length: 5\r\n"
+                                    + "\r\n").getBytes("UTF-8"));
+                            out.flush();
+                            // Hold the body back so the client has to read it from the socket.
+                            Thread.sleep(BODY_DELAY_MILLIS);
+                            out.write("hello".getBytes("UTF-8"));
+                            out.flush();
+                        }
+                    } catch (IOException | InterruptedException ignored) {
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Reads a bodiless request up to its blank line. Returns false at the end of the stream.
+     */
+    private static boolean skipRequest(InputStream in) throws IOException {
+        int matched = 0;
+        for (int b; (b = in.read()) != -1; ) {
+            if (b == '\r') continue;
+            matched = b == '\n' ? matched + 1 : 0;
+            if (matched == 2) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,141 @@
+package com.zero.support.net.internal;
+
+import com.zero.support.net.Call;
+import com.zero.support.net.ContentDecoder;
+import com.zero.support.net.Interceptor;
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+import com.zero.support.net.ResponseBody;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Stacked content codings are undone from the last applied, each by its own decoder.
+ */
+public class BridgeInterceptorTest {
+    private final BridgeInterceptor interceptor = new BridgeInterceptor(Arrays.asList(
+            ContentDecoder.GZIP, ContentDecoder.BROTLI, ContentDecoder.ZSTD));
+
+    @Test
+    public void gzipOverBrotli() throws IOException {
+        Response response = interceptor.intercept(
+                new FakeChain("br, gzip", gzip(resource("lorem.q11.br"))));
+        assertNull(response.header("Content-Encoding"));
+        assertArrayEquals(resource("lorem.txt"), response.body().bytes());
+    }
+
+    @Test
+    public void gzipOverZstd() throws IOException {
+        Response response = interceptor.intercept(
+                new FakeChain("zstd, gzip", gzip(resource("lorem.19.zst"))));
+        assertArrayEquals(resource("lorem.txt"), response.body().bytes());
+    }
+
+    @Test
+    public void zstdOverBrotliWithIdentity() throws IOException {
+        // Codings are listed in the order they were applied: br first, then zstd.
+        byte[] brotli = resource("utf8.q11.br");
+        Response response = interceptor.intercept(
+                new FakeChain("br, identity, zstd", zstdRaw(brotli)));
+        assertArrayEquals(resource("utf8.txt"), response.body().bytes());
+    }
+
+    @Test
+    public void unknownCodingLeftEncoded() throws IOException {
+        byte[] encoded = gzip(resource("lorem.q11.br"));
+        Response response = interceptor.intercept(new FakeChain("br, compress", encoded));
+        assertEquals("br, compress", response.header("Content-Encoding"));
+        assertArrayEquals(encoded, response.body().bytes());
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        InputStream in = BridgeInterceptorTest.class.getResourceAsStream("compress/" + name);
+        if (in == null) throw new IOException("no such resource: " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int count; (count = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Wraps {@code data} in a zstd frame of raw blocks, with no window descriptor or checksum.
+     */
+    private static byte[] zstdRaw(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Magic, then a single-segment descriptor with a 4-byte content size.
+        out.write(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, (byte) 0xa0}, 0, 5);
+        writeLe(out, data.length, 4);
+        int offset = 0;
+        do {
+            int size = Math.min(data.length - offset, 128 * 1024);
+            boolean last = offset + size == data.length;
+            writeLe(out, size << 3 | (last ? 1 : 0), 3);
+            out.write(data, offset, size);
+            offset += size;
+        } while (offset < data.length);
+        return out.toByteArray();
+    }
+
+    private static void writeLe(ByteArrayOutputStream out, int value, int byteCount) {
+        for (int i = 0; i < byteCount; i++) {
+            out.write(value >>> (8 * i));
+        }
+    }
+
+    private static final class FakeChain implements Interceptor.Chain {
+        private final Request request = new Request.Builder().url("http://example.com/").build();
+        private final String contentEncoding;
+        private final byte[] body;
+
+        FakeChain(String contentEncoding, byte[] body) {
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Call call() {
+            return null;
+        }
+
+        @Override
+        public Response proceed(Request request) {
+            assertEquals("gzip, br, zstd", request.header("Accept-Encoding"));
+            return new Response.Builder()
+                    .request(request)
+                    .code(200)
+                    .message("OK")
+                    .header("Content-Encoding", contentEncoding)
+                    .body(ResponseBody.create(null, body))
+                    .build();
+        }
+    }
+}
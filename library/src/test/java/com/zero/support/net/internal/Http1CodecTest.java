@@ -0,0 +1,122 @@
+package com.zero.support.net.internal;
+
+import com.zero.support.net.Engine;
+import com.zero.support.net.HttpClient;
+import com.zero.support.net.Request;
+import com.zero.support.net.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Interim 1xx responses are skipped: the final response that follows them is the one returned,
+ * and the keep-alive connection is left ready for the next exchange.
+ */
+public class Http1CodecTest {
+    private ServerSocket serverSocket;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpClient client;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "Http1CodecTest server");
+        server.setDaemon(true);
+        server.start();
+        client = new HttpClient.Builder().engine(Engine.SOCKET).build();
+        url = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void earlyHintsThenOk() throws IOException {
+        Response first = client.newCall(new Request.Builder().url(url).build()).execute();
+        assertEquals(200, first.code());
+        assertNull(first.header("Link"));
+        assertEquals("response 1", first.body().string());
+
+        Response second = client.newCall(new Request.Builder().url(url).build()).execute();
+        assertEquals(200, second.code());
+        assertEquals("response 2", second.body().string());
+        assertEquals(1, connections.get());
+    }
+
+    /**
+     * Answers every request with a 103 Early Hints response followed by a keep-alive 200.
+     */
+    private void serve() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            Thread connection = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        InputStream in = socket.getInputStream();
+                        OutputStream out = socket.getOutputStream();
+                        while (skipRequest(in)) {
+                            String body = "response " + requests.incrementAndGet();
+                            out.write(("HTTP/1.1 103 Early Hints\r\n"
+                                    + "Link: </style.css>; rel=preload\r\n"
+                                    + "\r\n"
+                                    + "HTTP/1.1 200 OK\r\n"
+                                    + "Content-Length: " + body.length() + "\r\n"
+                                    + "\r\n"
+                                    + body).getBytes("UTF-8"));
+                            out.flush();
+                        }
+                    } catch (IOException ignored) {
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Reads a bodiless request up to its blank line. Returns false at the end of the stream.
+     */
+    private static boolean skipRequest(InputStream in) throws IOException {
+        int matched = 0;
+        for (int b; (b = in.read()) != -1; ) {
+            if (b == '\r') continue;
+            matched = b == '\n' ? matched + 1 : 0;
+            if (matched == 2) return true;
+        }
+        return false;
+    }
+}
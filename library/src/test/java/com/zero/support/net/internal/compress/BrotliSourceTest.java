@@ -0,0 +1,247 @@
+package com.zero.support.net.internal.compress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes streams written by the reference encoder (brotli 1.0.9), at the quality, window and mode
+ * named in each file, and checks that pooled windows carry nothing from one response to the next.
+ */
+public class BrotliSourceTest {
+    @Test
+    public void emptyStream() throws IOException {
+        assertArrayEquals(new byte[0], decode(bytes("06")));
+        assertArrayEquals(new byte[0], decode(resource("empty.br")));
+    }
+
+    @Test
+    public void uncompressedMetablock() throws IOException {
+        assertArrayEquals("hello".getBytes("UTF-8"), decode(bytes("40001068656c6c6f03")));
+    }
+
+    @Test
+    public void qualities() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        for (String name : new String[]{"q0", "q1", "q5", "q9", "q11"}) {
+            assertArrayEquals(name, lorem, decode(resource("lorem." + name + ".br")));
+        }
+    }
+
+    @Test
+    public void windowSizes() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        assertArrayEquals(lorem, decode(resource("lorem.w10.br")));
+        assertArrayEquals(lorem, decode(resource("lorem.w24.br")));
+    }
+
+    @Test
+    public void fontMode() throws IOException {
+        assertArrayEquals(resource("lorem.txt"), decode(resource("lorem.font.br")));
+    }
+
+    @Test
+    public void incompressibleData() throws IOException {
+        assertArrayEquals(resource("random.bin"), decode(resource("random.q5.br")));
+    }
+
+    @Test
+    public void multibyteText() throws IOException {
+        assertArrayEquals(resource("utf8.txt"), decode(resource("utf8.q11.br")));
+    }
+
+    @Test
+    public void oddReadSizes() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] encoded = resource("lorem.q11.br");
+        for (int chunk : new int[]{1, 7, 4093}) {
+            InputStream in = new BrotliSource(new TrickleInputStream(encoded, chunk));
+            assertArrayEquals("chunk " + chunk, lorem, readAll(in, chunk));
+        }
+    }
+
+    @Test
+    public void singleByteReads() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        InputStream in = new BrotliSource(new ByteArrayInputStream(resource("lorem.q5.br")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b; (b = in.read()) != -1; ) {
+            out.write(b);
+        }
+        in.close();
+        assertArrayEquals(lorem, out.toByteArray());
+    }
+
+    @Test
+    public void truncatedStream() throws IOException {
+        byte[] encoded = resource("lorem.q9.br");
+        for (int length : new int[]{0, 1, encoded.length / 2, encoded.length - 1}) {
+            try {
+                decode(Arrays.copyOf(encoded, length));
+                fail("length " + length);
+            } catch (EOFException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void corruptStream() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] encoded = resource("lorem.q9.br");
+        for (int i = 0; i < encoded.length; i += 97) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x5a;
+            try {
+                // A flipped bit may still decode, but never to the original content.
+                if (Arrays.equals(lorem, decode(corrupt))) fail("offset " + i);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void readAfterClose() throws IOException {
+        InputStream in = new BrotliSource(new ByteArrayInputStream(resource("lorem.q5.br")));
+        in.read(new byte[10]);
+        in.close();
+        try {
+            in.read(new byte[10]);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("closed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void windowReusedAcrossResponses() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] random = resource("random.bin");
+        // Each stream takes the window the previous one gave back.
+        assertArrayEquals(lorem, decode(resource("lorem.w24.br")));
+        assertArrayEquals(random, decode(resource("random.q5.br")));
+        assertArrayEquals(lorem, decode(resource("lorem.q11.br")));
+        assertArrayEquals(lorem, decode(resource("lorem.w10.br")));
+        assertArrayEquals(random, decode(resource("random.q5.br")));
+    }
+
+    @Test
+    public void windowReturnedByEarlyClose() throws IOException {
+        InputStream abandoned = new BrotliSource(
+                new ByteArrayInputStream(resource("random.q5.br")));
+        assertEquals(1000, readFully(abandoned, new byte[1000]));
+        abandoned.close();
+        abandoned.close();
+        assertArrayEquals(resource("lorem.txt"), decode(resource("lorem.q11.br")));
+    }
+
+    @Test
+    public void interleavedStreams() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] utf8 = resource("utf8.txt");
+        InputStream a = new BrotliSource(new ByteArrayInputStream(resource("lorem.q11.br")));
+        InputStream b = new BrotliSource(new ByteArrayInputStream(resource("utf8.q11.br")));
+        ByteArrayOutputStream outA = new ByteArrayOutputStream();
+        ByteArrayOutputStream outB = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+        boolean doneA = false;
+        boolean doneB = false;
+        while (!doneA || !doneB) {
+            if (!doneA) doneA = copyOnce(a, outA, buffer);
+            if (!doneB) doneB = copyOnce(b, outB, buffer);
+        }
+        a.close();
+        b.close();
+        assertArrayEquals(lorem, outA.toByteArray());
+        assertArrayEquals(utf8, outB.toByteArray());
+    }
+
+    private static byte[] decode(byte[] encoded) throws IOException {
+        return readAll(new BrotliSource(new ByteArrayInputStream(encoded)), 8192);
+    }
+
+    /**
+     * Returns the bytes of the test resource {@code name}.
+     */
+    static byte[] resource(String name) throws IOException {
+        InputStream in = BrotliSourceTest.class.getResourceAsStream(name);
+        if (in == null) throw new IOException("no such resource: " + name);
+        return readAll(in, 8192);
+    }
+
+    /**
+     * Reads {@code in} to its end in reads of at most {@code chunk} bytes, then closes it.
+     */
+    static byte[] readAll(InputStream in, int chunk) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[chunk];
+            for (int count; (count = in.read(buffer, 0, chunk)) != -1; ) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static int readFully(InputStream in, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = in.read(bytes, offset, bytes.length - offset);
+            if (count == -1) break;
+            offset += count;
+        }
+        return offset;
+    }
+
+    /**
+     * Copies one read of {@code in} to {@code out}. Returns true at the end of {@code in}.
+     */
+    static boolean copyOnce(InputStream in, ByteArrayOutputStream out, byte[] buffer)
+            throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        if (count == -1) return true;
+        out.write(buffer, 0, count);
+        return false;
+    }
+
+    static byte[] bytes(String hex) {
+        hex = hex.replace(" ", "");
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+
+    /**
+     * Returns at most {@code chunk} bytes per read, like a socket that delivers data in pieces.
+     */
+    static final class TrickleInputStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        TrickleInputStream(byte[] bytes, int chunk) {
+            super(bytes);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+
+        @Override
+        public synchronized int available() {
+            return Math.min(super.available(), chunk);
+        }
+    }
+}
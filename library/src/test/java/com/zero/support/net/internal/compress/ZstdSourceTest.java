@@ -0,0 +1,200 @@
+package com.zero.support.net.internal.compress;
+
+import com.zero.support.net.internal.compress.BrotliSourceTest.TrickleInputStream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.zero.support.net.internal.compress.BrotliSourceTest.bytes;
+import static com.zero.support.net.internal.compress.BrotliSourceTest.copyOnce;
+import static com.zero.support.net.internal.compress.BrotliSourceTest.readAll;
+import static com.zero.support.net.internal.compress.BrotliSourceTest.readFully;
+import static com.zero.support.net.internal.compress.BrotliSourceTest.resource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes frames written by the reference encoder (zstd 1.5.4), at the level and window named in
+ * each file, and checks that pooled windows carry nothing from one response to the next.
+ */
+public class ZstdSourceTest {
+    @Test
+    public void emptyFrame() throws IOException {
+        assertArrayEquals(new byte[0], decode(resource("empty.zst")));
+    }
+
+    @Test
+    public void rawBlock() throws IOException {
+        assertArrayEquals("hello".getBytes("UTF-8"),
+                decode(bytes("28b52ffd200529000068656c6c6f")));
+    }
+
+    @Test
+    public void rleBlockThenRawFrame() throws IOException {
+        assertArrayEquals("aaaahello".getBytes("UTF-8"),
+                decode(bytes("28b52ffd2004230000 61 28b52ffd200529000068656c6c6f")));
+    }
+
+    @Test
+    public void levels() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        for (String level : new String[]{"-5", "1", "3", "19"}) {
+            assertArrayEquals(level, lorem, decode(resource("lorem." + level + ".zst")));
+        }
+    }
+
+    @Test
+    public void smallWindow() throws IOException {
+        assertArrayEquals(resource("lorem.txt"), decode(resource("lorem.w10.zst")));
+    }
+
+    @Test
+    public void noChecksumNoContentSize() throws IOException {
+        assertArrayEquals(resource("lorem.txt"), decode(resource("lorem.nocs.zst")));
+    }
+
+    @Test
+    public void incompressibleData() throws IOException {
+        assertArrayEquals(resource("random.bin"), decode(resource("random.3.zst")));
+    }
+
+    @Test
+    public void multibyteText() throws IOException {
+        assertArrayEquals(resource("utf8.txt"), decode(resource("utf8.19.zst")));
+    }
+
+    @Test
+    public void concatenatedAndSkippableFrames() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(resource("lorem.txt"), 0, 1000);
+        expected.write(resource("random.bin"), 0, 1000);
+        assertArrayEquals(expected.toByteArray(), decode(resource("concat.zst")));
+    }
+
+    @Test
+    public void oddReadSizes() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] encoded = resource("lorem.19.zst");
+        for (int chunk : new int[]{1, 7, 4093}) {
+            InputStream in = new ZstdSource(new TrickleInputStream(encoded, chunk));
+            assertArrayEquals("chunk " + chunk, lorem, readAll(in, chunk));
+        }
+    }
+
+    @Test
+    public void singleByteReads() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        InputStream in = new ZstdSource(new ByteArrayInputStream(resource("lorem.3.zst")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b; (b = in.read()) != -1; ) {
+            out.write(b);
+        }
+        in.close();
+        assertArrayEquals(lorem, out.toByteArray());
+    }
+
+    @Test
+    public void truncatedFrame() throws IOException {
+        byte[] encoded = resource("lorem.19.zst");
+        for (int length : new int[]{1, 4, encoded.length / 2, encoded.length - 1}) {
+            try {
+                decode(Arrays.copyOf(encoded, length));
+                fail("length " + length);
+            } catch (EOFException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void corruptFrame() throws IOException {
+        byte[] encoded = resource("lorem.19.zst");
+        // The content checksum catches any change that still decodes.
+        for (int i = 0; i < encoded.length; i += 97) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x5a;
+            try {
+                decode(corrupt);
+                fail("offset " + i);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void checksumMismatch() throws IOException {
+        byte[] corrupt = resource("lorem.3.zst");
+        corrupt[corrupt.length - 1] ^= 1;
+        try {
+            decode(corrupt);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("corrupt zstd stream: checksum mismatch", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void readAfterClose() throws IOException {
+        InputStream in = new ZstdSource(new ByteArrayInputStream(resource("lorem.3.zst")));
+        in.read(new byte[10]);
+        in.close();
+        try {
+            in.read(new byte[10]);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("closed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void windowReusedAcrossResponses() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] random = resource("random.bin");
+        // Each frame takes the window the previous one gave back.
+        assertArrayEquals(lorem, decode(resource("lorem.19.zst")));
+        assertArrayEquals(random, decode(resource("random.3.zst")));
+        assertArrayEquals(lorem, decode(resource("lorem.nocs.zst")));
+        assertArrayEquals(lorem, decode(resource("lorem.w10.zst")));
+        assertArrayEquals(random, decode(resource("random.3.zst")));
+    }
+
+    @Test
+    public void windowReturnedByEarlyClose() throws IOException {
+        InputStream abandoned = new ZstdSource(new ByteArrayInputStream(resource("random.3.zst")));
+        assertEquals(1000, readFully(abandoned, new byte[1000]));
+        abandoned.close();
+        abandoned.close();
+        assertArrayEquals(resource("lorem.txt"), decode(resource("lorem.19.zst")));
+    }
+
+    @Test
+    public void interleavedStreams() throws IOException {
+        byte[] lorem = resource("lorem.txt");
+        byte[] utf8 = resource("utf8.txt");
+        InputStream a = new ZstdSource(new ByteArrayInputStream(resource("lorem.19.zst")));
+        InputStream b = new ZstdSource(new ByteArrayInputStream(resource("utf8.19.zst")));
+        ByteArrayOutputStream outA = new ByteArrayOutputStream();
+        ByteArrayOutputStream outB = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+        boolean doneA = false;
+        boolean doneB = false;
+        while (!doneA || !doneB) {
+            if (!doneA) doneA = copyOnce(a, outA, buffer);
+            if (!doneB) doneB = copyOnce(b, outB, buffer);
+        }
+        a.close();
+        b.close();
+        assertArrayEquals(lorem, outA.toByteArray());
+        assertArrayEquals(utf8, outB.toByteArray());
+    }
+
+    private static byte[] decode(byte[] encoded) throws IOException {
+        return readAll(new ZstdSource(new ByteArrayInputStream(encoded)), 8192);
+    }
+}
@@ -0,0 +1,346 @@
+package com.zero.support.net.internal.http2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Header block examples from RFC 7541 Appendix C. Each sequence shares one decoder, so later blocks
+ * depend on the dynamic table the earlier ones left behind.
+ */
+public class HpackTest {
+    private Hpack.Reader reader;
+    private Hpack.Writer writer;
+
+    @Before
+    public void setUp() {
+        reader = new Hpack.Reader(Hpack.SETTINGS_HEADER_TABLE_SIZE);
+        writer = new Hpack.Writer();
+    }
+
+    /**
+     * C.2.1: Literal Header Field with Indexing.
+     */
+    @Test
+    public void literalHeaderFieldWithIndexing() throws IOException {
+        assertEquals(headers("custom-key", "custom-header"),
+                read("400a 6375 7374 6f6d 2d6b 6579 0d63 7573 746f 6d2d 6865 6164 6572"));
+        assertEquals(1, reader.dynamicTable.size());
+        assertEquals(55, reader.dynamicTable.dynamicTableByteCount);
+    }
+
+    /**
+     * C.2.2: Literal Header Field without Indexing.
+     */
+    @Test
+    public void literalHeaderFieldWithoutIndexing() throws IOException {
+        assertEquals(headers(":path", "/sample/path"),
+                read("040c 2f73 616d 706c 652f 7061 7468"));
+        assertEquals(0, reader.dynamicTable.size());
+    }
+
+    /**
+     * C.2.3: Literal Header Field Never Indexed.
+     */
+    @Test
+    public void literalHeaderFieldNeverIndexed() throws IOException {
+        assertEquals(headers("password", "secret"),
+                read("1008 7061 7373 776f 7264 0673 6563 7265 74"));
+        assertEquals(0, reader.dynamicTable.size());
+    }
+
+    /**
+     * C.2.4: Indexed Header Field.
+     */
+    @Test
+    public void indexedHeaderField() throws IOException {
+        assertEquals(headers(":method", "GET"), read("82"));
+        assertEquals(0, reader.dynamicTable.size());
+    }
+
+    /**
+     * C.3: Request Examples without Huffman Coding.
+     */
+    @Test
+    public void requestsWithoutHuffmanCoding() throws IOException {
+        assertEquals(firstRequest(),
+                read("8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d"));
+        assertDynamicTable(57, ":authority", "www.example.com");
+
+        assertEquals(secondRequest(),
+                read("8286 84be 5808 6e6f 2d63 6163 6865"));
+        assertDynamicTable(110,
+                "cache-control", "no-cache",
+                ":authority", "www.example.com");
+
+        assertEquals(thirdRequest(),
+                read("8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65"));
+        assertDynamicTable(164,
+                "custom-key", "custom-value",
+                "cache-control", "no-cache",
+                ":authority", "www.example.com");
+    }
+
+    /**
+     * C.4: Request Examples with Huffman Coding.
+     */
+    @Test
+    public void requestsWithHuffmanCoding() throws IOException {
+        assertEquals(firstRequest(),
+                read("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"));
+        assertDynamicTable(57, ":authority", "www.example.com");
+
+        assertEquals(secondRequest(),
+                read("8286 84be 5886 a8eb 1064 9cbf"));
+        assertDynamicTable(110,
+                "cache-control", "no-cache",
+                ":authority", "www.example.com");
+
+        assertEquals(thirdRequest(),
+                read("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf"));
+        assertDynamicTable(164,
+                "custom-key", "custom-value",
+                "cache-control", "no-cache",
+                ":authority", "www.example.com");
+    }
+
+    /**
+     * C.5: Response Examples without Huffman Coding. The 256-byte table forces evictions.
+     */
+    @Test
+    public void responsesWithoutHuffmanCoding() throws IOException {
+        reader = new Hpack.Reader(256);
+
+        assertEquals(firstResponse(), read(""
+                + "4803 3330 3258 0770 7269 7661 7465 611d 4d6f 6e2c 2032 3120 4f63 7420 3230"
+                + "3133 2032 303a 3133 3a32 3120 474d 546e 1768 7474 7073 3a2f 2f77 7777 2e65"
+                + "7861 6d70 6c65 2e63 6f6d"));
+        assertDynamicTable(222,
+                "location", "https://www.example.com",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                "cache-control", "private",
+                ":status", "302");
+
+        assertEquals(secondResponse(), read("4803 3330 37c1 c0bf"));
+        assertDynamicTable(222,
+                ":status", "307",
+                "location", "https://www.example.com",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                "cache-control", "private");
+
+        assertEquals(thirdResponse(), read(""
+                + "88c1 611d 4d6f 6e2c 2032 3120 4f63 7420 3230 3133 2032 303a 3133 3a32 3220"
+                + "474d 54c0 5a04 677a 6970 7738 666f 6f3d 4153 444a 4b48 514b 425a 584f 5157"
+                + "454f 5049 5541 5851 5745 4f49 553b 206d 6178 2d61 6765 3d33 3630 303b 2076"
+                + "6572 7369 6f6e 3d31"));
+        assertDynamicTable(215,
+                "set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1",
+                "content-encoding", "gzip",
+                "date", "Mon, 21 Oct 2013 20:13:22 GMT");
+    }
+
+    /**
+     * C.6: Response Examples with Huffman Coding.
+     */
+    @Test
+    public void responsesWithHuffmanCoding() throws IOException {
+        reader = new Hpack.Reader(256);
+
+        assertEquals(firstResponse(), read(""
+                + "4882 6402 5885 aec3 771a 4b61 96d0 7abe 9410 54d4 44a8 2005 9504 0b81 66e0"
+                + "82a6 2d1b ff6e 919d 29ad 1718 63c7 8f0b 97c8 e9ae 82ae 43d3"));
+        assertDynamicTable(222,
+                "location", "https://www.example.com",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                "cache-control", "private",
+                ":status", "302");
+
+        assertEquals(secondResponse(), read("4883 640e ffc1 c0bf"));
+        assertDynamicTable(222,
+                ":status", "307",
+                "location", "https://www.example.com",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                "cache-control", "private");
+
+        assertEquals(thirdResponse(), read(""
+                + "88c1 6196 d07a be94 1054 d444 a820 0595 040b 8166 e084 a62d 1bff c05a 839b"
+                + "d9ab 77ad 94e7 821d d7f2 e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1 ab27"
+                + "0fb5 291f 9587 3160 65c0 03ed 4ee5 b106 3d50 07"));
+        assertDynamicTable(215,
+                "set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1",
+                "content-encoding", "gzip",
+                "date", "Mon, 21 Oct 2013 20:13:22 GMT");
+    }
+
+    /**
+     * The writer Huffman codes strings that get shorter, so it produces C.4 byte for byte.
+     */
+    @Test
+    public void writerProducesHuffmanCodedRequests() {
+        assertArrayEquals(bytes("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"),
+                writer.writeHeaders(firstRequest()));
+        assertArrayEquals(bytes("8286 84be 5886 a8eb 1064 9cbf"),
+                writer.writeHeaders(secondRequest()));
+        assertArrayEquals(bytes("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf"),
+                writer.writeHeaders(thirdRequest()));
+    }
+
+    @Test
+    public void writerNeverIndexesCredentials() throws IOException {
+        List<Header> request = headers(
+                ":method", "GET",
+                "authorization", "Bearer abc",
+                "cookie", "a=b");
+        byte[] first = writer.writeHeaders(request);
+        byte[] second = writer.writeHeaders(request);
+        assertArrayEquals(first, second);
+        assertEquals(request, reader.readHeaders(first, 0, first.length));
+        assertEquals(0, reader.dynamicTable.size());
+    }
+
+    @Test
+    public void dynamicTableSizeUpdateIsWrittenBeforeNextBlock() throws IOException {
+        writer.setHeaderTableSizeSetting(256);
+        byte[] block = writer.writeHeaders(headers(":method", "GET"));
+        // 001 prefix, 5-bit prefix value 31 followed by 256 - 31 = 225 as a varint.
+        assertArrayEquals(bytes("3fe1 0182"), block);
+        assertEquals(headers(":method", "GET"), reader.readHeaders(block, 0, block.length));
+        assertEquals(256, reader.dynamicTable.maxDynamicTableByteCount);
+    }
+
+    @Test
+    public void dynamicTableSizeUpdateAboveSettingIsRejected() {
+        byte[] block = bytes("3fe2 1f"); // 31 + 4066: one byte over the setting.
+        try {
+            reader.readHeaders(block, 0, block.length);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Invalid dynamic table size update 4097", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void indexBeyondTablesIsRejected() {
+        byte[] block = bytes("be"); // 62, but the dynamic table is empty.
+        try {
+            reader.readHeaders(block, 0, block.length);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Header index too large 62", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void truncatedStringIsRejected() {
+        byte[] block = bytes("400a 6375 7374"); // Name claims 10 bytes; 3 follow.
+        try {
+            reader.readHeaders(block, 0, block.length);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("truncated header block", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void uppercaseLiteralNameIsRejected() {
+        byte[] block = bytes("0003 4b45 5901 76"); // KEY: v
+        try {
+            reader.readHeaders(block, 0, block.length);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static List<Header> firstRequest() {
+        return headers(
+                ":method", "GET",
+                ":scheme", "http",
+                ":path", "/",
+                ":authority", "www.example.com");
+    }
+
+    private static List<Header> secondRequest() {
+        return headers(
+                ":method", "GET",
+                ":scheme", "http",
+                ":path", "/",
+                ":authority", "www.example.com",
+                "cache-control", "no-cache");
+    }
+
+    private static List<Header> thirdRequest() {
+        return headers(
+                ":method", "GET",
+                ":scheme", "https",
+                ":path", "/index.html",
+                ":authority", "www.example.com",
+                "custom-key", "custom-value");
+    }
+
+    private static List<Header> firstResponse() {
+        return headers(
+                ":status", "302",
+                "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                "location", "https://www.example.com");
+    }
+
+    private static List<Header> secondResponse() {
+        return headers(
+                ":status", "307",
+                "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                "location", "https://www.example.com");
+    }
+
+    private static List<Header> thirdResponse() {
+        return headers(
+                ":status", "200",
+                "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:22 GMT",
+                "location", "https://www.example.com",
+                "content-encoding", "gzip",
+                "set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1");
+    }
+
+    private List<Header> read(String hex) throws IOException {
+        byte[] block = bytes(hex);
+        return reader.readHeaders(block, 0, block.length);
+    }
+
+    /**
+     * Asserts the decoder's dynamic table holds {@code namesAndValues}, newest first.
+     */
+    private void assertDynamicTable(int byteCount, String... namesAndValues) {
+        List<Header> entries = new ArrayList<>();
+        for (int i = 0; i < reader.dynamicTable.size(); i++) {
+            entries.add(reader.dynamicTable.get(i));
+        }
+        assertEquals(headers(namesAndValues), entries);
+        assertEquals(byteCount, reader.dynamicTable.dynamicTableByteCount);
+    }
+
+    static List<Header> headers(String... namesAndValues) {
+        List<Header> result = new ArrayList<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            result.add(new Header(namesAndValues[i], namesAndValues[i + 1]));
+        }
+        return result;
+    }
+
+    static byte[] bytes(String hex) {
+        hex = hex.replace(" ", "");
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+}
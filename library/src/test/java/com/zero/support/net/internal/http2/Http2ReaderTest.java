@@ -0,0 +1,317 @@
+package com.zero.support.net.internal.http2;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.zero.support.net.internal.http2.HpackTest.bytes;
+import static com.zero.support.net.internal.http2.HpackTest.headers;
+import static com.zero.support.net.internal.http2.Http2.FLAG_ACK;
+import static com.zero.support.net.internal.http2.Http2.FLAG_END_HEADERS;
+import static com.zero.support.net.internal.http2.Http2.FLAG_END_STREAM;
+import static com.zero.support.net.internal.http2.Http2.FLAG_NONE;
+import static com.zero.support.net.internal.http2.Http2.FLAG_PADDED;
+import static com.zero.support.net.internal.http2.Http2.FLAG_PRIORITY;
+import static com.zero.support.net.internal.http2.Http2.INITIAL_MAX_FRAME_SIZE;
+import static com.zero.support.net.internal.http2.Http2.TYPE_CONTINUATION;
+import static com.zero.support.net.internal.http2.Http2.TYPE_DATA;
+import static com.zero.support.net.internal.http2.Http2.TYPE_GOAWAY;
+import static com.zero.support.net.internal.http2.Http2.TYPE_HEADERS;
+import static com.zero.support.net.internal.http2.Http2.TYPE_PING;
+import static com.zero.support.net.internal.http2.Http2.TYPE_PUSH_PROMISE;
+import static com.zero.support.net.internal.http2.Http2.TYPE_RST_STREAM;
+import static com.zero.support.net.internal.http2.Http2.TYPE_SETTINGS;
+import static com.zero.support.net.internal.http2.Http2.TYPE_WINDOW_UPDATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Frames are written out by hand so the reader is checked against the wire format of RFC 7540
+ * rather than against our own writer.
+ */
+public class Http2ReaderTest {
+    private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    private final RecordingHandler handler = new RecordingHandler();
+
+    @Test
+    public void settings() throws IOException {
+        // HEADER_TABLE_SIZE 8192, INITIAL_WINDOW_SIZE 65536.
+        frame(TYPE_SETTINGS, FLAG_NONE, 0, bytes("0001 0000 2000 0004 0001 0000"));
+        frame(TYPE_SETTINGS, FLAG_ACK, 0, new byte[0]);
+        Http2Reader reader = reader();
+        reader.readConnectionPreface(handler);
+        assertTrue(reader.nextFrame(false, handler));
+        assertFalse(reader.nextFrame(false, handler));
+        assertEquals(Arrays.asList("settings 8192 65536", "ackSettings"), handler.events);
+    }
+
+    @Test
+    public void prefaceMustBeSettings() {
+        frame(TYPE_PING, FLAG_NONE, 0, new byte[8]);
+        try {
+            reader().readConnectionPreface(handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Expected a SETTINGS frame but was 6", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void settingsWithInvalidMaxFrameSize() {
+        frame(TYPE_SETTINGS, FLAG_NONE, 0, bytes("0005 0000 1000")); // 4096 < 16384.
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("PROTOCOL_ERROR SETTINGS_MAX_FRAME_SIZE: 4096", expected.getMessage());
+        }
+    }
+
+    /**
+     * Uses the first request of RFC 7541 C.4 as the header block.
+     */
+    @Test
+    public void headersFrame() throws IOException {
+        frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, 3,
+                bytes("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"));
+        assertTrue(reader().nextFrame(false, handler));
+        assertEquals(Arrays.asList("headers 3 true " + headers(
+                ":method", "GET",
+                ":scheme", "http",
+                ":path", "/",
+                ":authority", "www.example.com")), handler.events);
+    }
+
+    @Test
+    public void headersWithPaddingAndPriority() throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(2); // Pad length.
+        payload.write(bytes("8000 0001 10"), 0, 5); // Exclusive dependency on stream 1, weight 17.
+        payload.write(0x82); // :method GET
+        payload.write(new byte[2], 0, 2);
+        frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_PADDED | FLAG_PRIORITY, 5,
+                payload.toByteArray());
+        assertTrue(reader().nextFrame(false, handler));
+        assertEquals(Arrays.asList("headers 5 false " + headers(":method", "GET")), handler.events);
+    }
+
+    /**
+     * A header block split across CONTINUATION frames decodes as one, even where the split falls
+     * inside a Huffman coded string.
+     */
+    @Test
+    public void headersFollowedByContinuation() throws IOException {
+        byte[] block = bytes("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff");
+        frame(TYPE_HEADERS, FLAG_NONE, 3, Arrays.copyOfRange(block, 0, 6));
+        frame(TYPE_CONTINUATION, FLAG_NONE, 3, Arrays.copyOfRange(block, 6, 10));
+        frame(TYPE_CONTINUATION, FLAG_END_HEADERS, 3, Arrays.copyOfRange(block, 10, block.length));
+        Http2Reader reader = reader();
+        assertTrue(reader.nextFrame(false, handler));
+        assertFalse(reader.nextFrame(false, handler));
+        assertEquals(Arrays.asList("headers 3 false " + headers(
+                ":method", "GET",
+                ":scheme", "http",
+                ":path", "/",
+                ":authority", "www.example.com")), handler.events);
+    }
+
+    @Test
+    public void continuationOnAnotherStream() {
+        frame(TYPE_HEADERS, FLAG_NONE, 3, bytes("82"));
+        frame(TYPE_CONTINUATION, FLAG_END_HEADERS, 5, bytes("84"));
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("TYPE_CONTINUATION streamId changed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void interleavedFrameInsteadOfContinuation() {
+        frame(TYPE_HEADERS, FLAG_NONE, 3, bytes("82"));
+        frame(TYPE_DATA, FLAG_NONE, 3, bytes("00"));
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("0 != TYPE_CONTINUATION", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void dataFrame() throws IOException {
+        frame(TYPE_DATA, FLAG_END_STREAM, 3, "hello".getBytes("UTF-8"));
+        assertTrue(reader().nextFrame(false, handler));
+        assertEquals(Arrays.asList("data 3 true hello 5"), handler.events);
+    }
+
+    /**
+     * Padding is stripped from the data but still counts against flow control.
+     */
+    @Test
+    public void paddedData() throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(3);
+        payload.write("hello".getBytes("UTF-8"), 0, 5);
+        payload.write(new byte[3], 0, 3);
+        frame(TYPE_DATA, FLAG_PADDED, 3, payload.toByteArray());
+        assertTrue(reader().nextFrame(false, handler));
+        assertEquals(Arrays.asList("data 3 false hello 9"), handler.events);
+    }
+
+    @Test
+    public void paddingLongerThanFrame() {
+        frame(TYPE_DATA, FLAG_PADDED, 3, bytes("0500 00"));
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("PROTOCOL_ERROR padding 5 > remaining length 2", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void dataOnStreamZero() {
+        frame(TYPE_DATA, FLAG_NONE, 0, bytes("00"));
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("PROTOCOL_ERROR: TYPE_DATA streamId == 0", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void frameLargerThanMaxFrameSize() {
+        frame(TYPE_DATA, FLAG_NONE, 3, new byte[INITIAL_MAX_FRAME_SIZE + 1]);
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("FRAME_SIZE_ERROR: 16385", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void controlFrames() throws IOException {
+        frame(TYPE_RST_STREAM, FLAG_NONE, 3, bytes("0000 0007"));
+        frame(TYPE_PING, FLAG_ACK, 0, bytes("0000 0001 0000 0002"));
+        frame(TYPE_GOAWAY, FLAG_NONE, 0, bytes("8000 0005 0000 0000 6465 6275 67")); // "debug"
+        frame(TYPE_WINDOW_UPDATE, FLAG_NONE, 0, bytes("7fff ffff"));
+        frame(TYPE_WINDOW_UPDATE, FLAG_NONE, 3, bytes("0000 0400"));
+        Http2Reader reader = reader();
+        while (reader.nextFrame(false, handler)) {
+        }
+        assertEquals(Arrays.asList(
+                "rstStream 3 REFUSED_STREAM",
+                "ping true 1 2",
+                "goAway 5 NO_ERROR",
+                "windowUpdate 0 2147483647",
+                "windowUpdate 3 1024"), handler.events);
+    }
+
+    @Test
+    public void unknownFrameTypeIsIgnored() throws IOException {
+        frame(0x7a, 0xff, 3, bytes("0102 0304"));
+        frame(TYPE_PING, FLAG_NONE, 0, bytes("0000 0000 0000 0009"));
+        Http2Reader reader = reader();
+        assertTrue(reader.nextFrame(false, handler));
+        assertTrue(reader.nextFrame(false, handler));
+        assertEquals(Arrays.asList("ping false 0 9"), handler.events);
+    }
+
+    @Test
+    public void pushPromiseIsRejected() {
+        frame(TYPE_PUSH_PROMISE, FLAG_END_HEADERS, 3, bytes("0000 0002 82"));
+        try {
+            reader().nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("PROTOCOL_ERROR: unexpected PUSH_PROMISE", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void truncatedFrame() {
+        frame(TYPE_PING, FLAG_NONE, 0, new byte[8]);
+        byte[] truncated = Arrays.copyOf(frames.toByteArray(), 12);
+        try {
+            new Http2Reader(new ByteArrayInputStream(truncated)).nextFrame(false, handler);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private void frame(int type, int flags, int streamId, byte[] payload) {
+        int length = payload.length;
+        frames.write(length >>> 16);
+        frames.write(length >>> 8);
+        frames.write(length);
+        frames.write(type);
+        frames.write(flags);
+        frames.write(streamId >>> 24);
+        frames.write(streamId >>> 16);
+        frames.write(streamId >>> 8);
+        frames.write(streamId);
+        frames.write(payload, 0, payload.length);
+    }
+
+    private Http2Reader reader() {
+        return new Http2Reader(new ByteArrayInputStream(frames.toByteArray()));
+    }
+
+    private static final class RecordingHandler implements Http2Reader.Handler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void data(boolean inFinished, int streamId, byte[] data, int offset, int length,
+                         int frameLength) throws IOException {
+            events.add("data " + streamId + " " + inFinished + " "
+                    + new String(data, offset, length, "UTF-8") + " " + frameLength);
+        }
+
+        @Override
+        public void headers(boolean inFinished, int streamId, List<Header> headerBlock) {
+            events.add("headers " + streamId + " " + inFinished + " " + headerBlock);
+        }
+
+        @Override
+        public void rstStream(int streamId, ErrorCode errorCode) {
+            events.add("rstStream " + streamId + " " + errorCode);
+        }
+
+        @Override
+        public void settings(boolean clearPrevious, Settings settings) {
+            events.add("settings " + settings.getHeaderTableSize() + " "
+                    + settings.getInitialWindowSize());
+        }
+
+        @Override
+        public void ackSettings() {
+            events.add("ackSettings");
+        }
+
+        @Override
+        public void ping(boolean ack, int payload1, int payload2) {
+            events.add("ping " + ack + " " + payload1 + " " + payload2);
+        }
+
+        @Override
+        public void goAway(int lastGoodStreamId, ErrorCode errorCode) {
+            events.add("goAway " + lastGoodStreamId + " " + errorCode);
+        }
+
+        @Override
+        public void windowUpdate(int streamId, long windowSizeIncrement) {
+            events.add("windowUpdate " + streamId + " " + windowSizeIncrement);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.zero.support.net.internal.http2;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static com.zero.support.net.internal.http2.HpackTest.bytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Huffman coded strings from the examples of RFC 7541 Appendix C.4 and C.6.
+ */
+public class HuffmanTest {
+    private static final String[] VECTORS = {
+            "www.example.com", "f1e3 c2e5 f23a 6ba0 ab90 f4ff",
+            "no-cache", "a8eb 1064 9cbf",
+            "custom-key", "25a8 49e9 5ba9 7d7f",
+            "custom-value", "25a8 49e9 5bb8 e8b4 bf",
+            "302", "6402",
+            "307", "640e ff",
+            "private", "aec3 771a 4b",
+            "Mon, 21 Oct 2013 20:13:21 GMT",
+            "d07a be94 1054 d444 a820 0595 040b 8166 e082 a62d 1bff",
+            "https://www.example.com", "9d29 ad17 1863 c78f 0b97 c8e9 ae82 ae43 d3",
+            "gzip", "9bd9 ab",
+            "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1",
+            "94e7 821d d7f2 e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1 ab27 0fb5 291f 9587 3160"
+                    + "65c0 03ed 4ee5 b106 3d50 07",
+    };
+
+    @Test
+    public void encodeRfcVectors() throws IOException {
+        for (int i = 0; i < VECTORS.length; i += 2) {
+            byte[] plain = VECTORS[i].getBytes("UTF-8");
+            byte[] coded = bytes(VECTORS[i + 1]);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            Huffman.get().encode(plain, sink);
+            assertArrayEquals(VECTORS[i], coded, sink.toByteArray());
+            assertEquals(VECTORS[i], coded.length, Huffman.get().encodedLength(plain));
+        }
+    }
+
+    @Test
+    public void decodeRfcVectors() throws IOException {
+        for (int i = 0; i < VECTORS.length; i += 2) {
+            byte[] coded = bytes(VECTORS[i + 1]);
+            byte[] plain = Huffman.get().decode(coded, 0, coded.length);
+            assertEquals(VECTORS[i], new String(plain, "UTF-8"));
+        }
+    }
+
+    @Test
+    public void decodeRespectsOffsetAndLength() throws IOException {
+        byte[] coded = bytes("00 a8eb 1064 9cbf 00");
+        assertEquals("no-cache", new String(Huffman.get().decode(coded, 1, 6), "UTF-8"));
+    }
+
+    @Test
+    public void roundTripEveryByte() throws IOException {
+        byte[] plain = new byte[256];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) i;
+        }
+        assertRoundTrip(plain);
+    }
+
+    @Test
+    public void roundTripRandomStrings() throws IOException {
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            byte[] plain = new byte[random.nextInt(64)];
+            random.nextBytes(plain);
+            assertRoundTrip(plain);
+        }
+    }
+
+    @Test
+    public void eosIsRejected() {
+        byte[] coded = bytes("ffff ffff"); // 30 one bits is the EOS symbol.
+        try {
+            Huffman.get().decode(coded, 0, coded.length);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Huffman string contains EOS", expected.getMessage());
+        }
+    }
+
+    private static void assertRoundTrip(byte[] plain) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        Huffman.get().encode(plain, sink);
+        byte[] coded = sink.toByteArray();
+        assertEquals(coded.length, Huffman.get().encodedLength(plain));
+        assertArrayEquals(plain, Huffman.get().decode(coded, 0, coded.length));
+    }
+}